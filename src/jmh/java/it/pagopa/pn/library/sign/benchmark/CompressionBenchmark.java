@@ -0,0 +1,116 @@
+package it.pagopa.pn.library.sign.benchmark;
+
+import com.namirial.sign.library.config.CompressionConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.pojo.SignatureFormat;
+import com.namirial.sign.library.service.SignBoxClient;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU paid for compressing the XAdES uploads against the bytes saved on the wire, signing against the
+ * in-process {@link SignBoxStandIn} decoding the compressed bodies.
+ * <p>
+ * The throughput gives the cost of compressing on a link that is never the bottleneck; the {@code uploadedBytes}
+ * counter, divided by the throughput, the bytes sent per signature. Compression pays off once the bandwidth to the
+ * SignBox endpoint is below the bytes saved per signature times the signatures per second of the compressed runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlogback.configurationFile=logback-benchmark.xml"})
+public class CompressionBenchmark {
+
+    private static final byte[] SIGNED = "signed-document".getBytes(StandardCharsets.UTF_8);
+
+    /** The encoding and the level, or {@code none} */
+    @Param({"none", "gzip:1", "gzip:6", "deflate:6", "gzip:9"})
+    public String compression;
+
+    @Param({"102400", "1048576", "10485760"})
+    public int payloadSize;
+
+    private SignBoxStandIn standIn;
+    private SignBoxClient client;
+    private byte[] payload;
+
+    /**
+     * The bytes received by the stand-in, reported as a rate next to the throughput
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Traffic {
+        public long uploadedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = xml(payloadSize);
+        standIn = new SignBoxStandIn(SIGNED);
+        // aggregate and decode the body as a SignBox endpoint accepting compressed bodies does
+        standIn.setDigestSigner(document -> SIGNED);
+        client = SignBoxClient.builder()
+                .name("compression-benchmark")
+                .config(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).compression(compressionConfig()).build())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close(Duration.ofSeconds(5)).block();
+        standIn.close();
+    }
+
+    @Benchmark
+    public Object sign(Traffic traffic) {
+        long received = standIn.getReceivedBytes();
+        Object response = client.sign(null, "benchmark", payload, SignatureFormat.XADES, "BES").block();
+        traffic.uploadedBytes += standIn.getReceivedBytes() - received;
+        return response;
+    }
+
+    private CompressionConfig compressionConfig() {
+        if ("none".equals(compression)) {
+            return CompressionConfig.builder().build();
+        }
+        String[] setting = compression.split(":");
+        return CompressionConfig.builder()
+                .enabled(true)
+                .encoding(CompressionConfig.Encoding.valueOf(setting[0].toUpperCase()))
+                .level(Integer.parseInt(setting[1]))
+                .build();
+    }
+
+    /**
+     * Build an XML document of repeated records, compressing about as well as the notification documents
+     */
+    private static byte[] xml(int size) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><documents>");
+        for (int i = 0; xml.length() < size; i++) {
+            xml.append("<document id=\"").append(i).append("\"><iun>IUN-").append(i * 7919 % 100_000)
+                    .append("</iun><recipient><taxId>RSSMRA80A01H501").append((char) ('A' + i % 26))
+                    .append("</taxId><denomination>Mario Rossi</denomination></recipient><amount>")
+                    .append(i % 1000).append(".00</amount></document>");
+        }
+        return xml.append("</documents>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,73 @@
+package it.pagopa.pn.library.sign.benchmark;
+
+import com.namirial.sign.library.pojo.SignatureFormat;
+import com.namirial.sign.library.validation.DocumentValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the local pre-validation of a document, to be compared with the upload measured by
+ * {@link SignServiceClientBenchmark} for the same format and payload size.
+ * <p>
+ * The PDF check reads two kilobytes whatever the size, the XML check parses the whole document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlogback.configurationFile=logback-benchmark.xml"})
+public class DocumentValidatorBenchmark {
+
+    @Param({SignatureFormat.PADES, SignatureFormat.XADES})
+    public String format;
+
+    @Param({"10240", "1048576", "20971520", "52428800"})
+    public int payloadSize;
+
+    private ByteBuffer payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = ByteBuffer.wrap(SignatureFormat.PADES.equals(format) ? pdf(payloadSize) : xml(payloadSize));
+    }
+
+    @Benchmark
+    public ByteBuffer validate() {
+        DocumentValidator.validate(format, payload);
+        return payload;
+    }
+
+    private static byte[] pdf(int size) {
+        String header = "%PDF-1.7\n1 0 obj\n<< /Length " + size + " >>\nstream\n";
+        String trailer = "\nendstream\nendobj\n";
+        int xref = header.length() + size + trailer.length();
+        String tail = "xref\n0 2\n0000000000 65535 f \n0000000009 00000 n \ntrailer\n<< /Size 2 >>\nstartxref\n" + xref + "\n%%EOF\n";
+        StringBuilder pdf = new StringBuilder(xref + tail.length()).append(header);
+        pdf.append("x".repeat(size)).append(trailer).append(tail);
+        return pdf.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] xml(int size) {
+        String element = "<item id=\"42\">lorem ipsum dolor sit amet</item>\n";
+        StringBuilder xml = new StringBuilder(size + 64).append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>\n");
+        while (xml.length() < size) {
+            xml.append(element);
+        }
+        return xml.append("</root>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
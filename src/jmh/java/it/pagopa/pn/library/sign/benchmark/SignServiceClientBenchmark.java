@@ -0,0 +1,83 @@
+package it.pagopa.pn.library.sign.benchmark;
+
+import com.namirial.sign.library.pojo.SignatureFormat;
+import com.namirial.sign.library.service.PnSignServiceImpl;
+import it.pagopa.pn.library.sign.pojo.PnSignDocumentResponse;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client-side cost of a signature round trip (multipart encoding, header building,
+ * response aggregation and error parsing) against the in-process {@link SignBoxStandIn}.
+ * <p>
+ * Run with {@code ./mvnw -P benchmark test-compile exec:exec}; the GC profiler is enabled by default
+ * to report bytes allocated per operation ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlogback.configurationFile=logback-benchmark.xml"})
+public class SignServiceClientBenchmark {
+
+    @Param({SignatureFormat.PADES, SignatureFormat.XADES, SignatureFormat.CADES})
+    public String format;
+
+    @Param({"10240", "1048576", "20971520", "52428800"})
+    public int payloadSize;
+
+    @Param({"200", "400", "503"})
+    public int status;
+
+    private SignBoxStandIn standIn;
+    private PnSignServiceImpl signService;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        standIn = new SignBoxStandIn(payload);
+        standIn.setStatus(status);
+        signService = new PnSignServiceImpl(standIn.getUrl());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        standIn.close();
+    }
+
+    @Benchmark
+    public Object sign() {
+        try {
+            return sign(payload).block();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private Mono<PnSignDocumentResponse> sign(byte[] bytes) {
+        return switch (format) {
+            case SignatureFormat.PADES -> signService.signPdfDocument(bytes, false);
+            case SignatureFormat.XADES -> signService.signXmlDocument(bytes, false);
+            default -> signService.pkcs7Signature(bytes, false);
+        };
+    }
+}
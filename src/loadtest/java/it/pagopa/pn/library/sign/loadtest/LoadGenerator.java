@@ -0,0 +1,191 @@
+package it.pagopa.pn.library.sign.loadtest;
+
+import com.namirial.sign.library.service.PnSignServiceImpl;
+import it.pagopa.pn.library.sign.pojo.PnSignDocumentResponse;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop generator of sign requests: the requests are started at a fixed rate whatever the latency of the
+ * previous ones, as the callers of the library do, and the latency of each one is measured from the time it was
+ * due rather than from the time it was started, so that a stalled generator does not hide the queueing it causes
+ * (coordinated omission). The requests due while {@code maxInFlight} requests are running are dropped and counted.
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Settings settings;
+    private final PnSignServiceImpl signService;
+    private final byte[] document;
+    private final Recorder recorder = new Recorder(3);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public LoadGenerator(Settings settings, PnSignServiceImpl signService) {
+        this.settings = settings;
+        this.signService = signService;
+        this.document = document(settings.getFormat(), settings.getDocumentSize());
+    }
+
+    /**
+     * Run the load, the warm-up included, wait for the running requests and report the measured interval
+     * @return the report of the measured interval
+     */
+    public LoadReport run() {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / settings.getRate();
+        long warmupRequests = settings.getWarmup().toNanos() / periodNanos;
+        long totalRequests = warmupRequests + settings.getDuration().toNanos() / periodNanos;
+        Histogram latencies = new Histogram(3);
+        long dropped = 0;
+        LoadReport.Resources resources = null;
+        long startNanos = System.nanoTime();
+        long measureNanos = startNanos + warmupRequests * periodNanos;
+        long nextReportNanos = startNanos + REPORT_INTERVAL_NANOS;
+
+        log.info("Running {} requests/s of {} {} bytes for {} after a warm-up of {}", settings.getRate(),
+                settings.getFormat(), settings.getDocumentSize(), settings.getDuration(), settings.getWarmup());
+        for (long i = 0; i < totalRequests; i++) {
+            long dueNanos = startNanos + i * periodNanos;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            if (i == warmupRequests) {
+                // the warm-up requests still running are measured, their latency reflects the load
+                recorder.reset();
+                latencies.reset();
+                succeeded.set(0);
+                failed.set(0);
+                errors.clear();
+                resources = LoadReport.Resources.snapshot();
+            }
+            if (inFlight.get() >= settings.getMaxInFlight()) {
+                if (i >= warmupRequests) {
+                    dropped++;
+                }
+            } else {
+                send(dueNanos);
+            }
+            if (System.nanoTime() >= nextReportNanos) {
+                nextReportNanos += REPORT_INTERVAL_NANOS;
+                progress(latencies);
+            }
+        }
+        long endNanos = System.nanoTime() + settings.getDrainTimeout().toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < endNanos) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        latencies.add(recorder.getIntervalHistogram());
+        Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((type, count) -> errorCounts.put(type, count.sum()));
+        return new LoadReport(settings, Duration.ofNanos(System.nanoTime() - measureNanos), latencies,
+                succeeded.get(), failed.get(), dropped, inFlight.get(), errorCounts,
+                resources == null ? LoadReport.Resources.snapshot() : resources, LoadReport.Resources.snapshot());
+    }
+
+    private void send(long dueNanos) {
+        inFlight.incrementAndGet();
+        Mono.defer(this::sign)
+                .subscribe(response -> completed(dueNanos, null), error -> completed(dueNanos, error));
+    }
+
+    private Mono<PnSignDocumentResponse> sign() {
+        boolean timestamping = settings.isTimestamping();
+        switch (settings.getFormat()) {
+            case "XADES":
+                return signService.signXmlDocument(document, timestamping);
+            case "CADES":
+                return signService.pkcs7Signature(document, timestamping);
+            default:
+                return signService.signPdfDocument(document, timestamping);
+        }
+    }
+
+    private void completed(long dueNanos, Throwable error) {
+        inFlight.decrementAndGet();
+        if (error == null) {
+            recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueNanos));
+            succeeded.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+            errors.computeIfAbsent(error.getClass().getSimpleName(), type -> new LongAdder()).increment();
+        }
+    }
+
+    private void progress(Histogram latencies) {
+        Histogram interval = recorder.getIntervalHistogram();
+        latencies.add(interval);
+        log.info("In flight {}, succeeded {}, failed {}, last interval p50 {} ms p99 {} ms max {} ms", inFlight.get(),
+                succeeded.get(), failed.get(), interval.getValueAtPercentile(50) / 1000.0,
+                interval.getValueAtPercentile(99) / 1000.0, interval.getMaxValue() / 1000.0);
+    }
+
+    /**
+     * Build a document of the given size, with the header of the format so that it looks like one
+     */
+    private static byte[] document(String format, int size) {
+        byte[] document = new byte[size];
+        byte[] header = ("PADES".equals(format) ? "%PDF-1.7\n" : "XADES".equals(format) ? "<?xml version=\"1.0\"?>" : "")
+                .getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(header, 0, document, 0, Math.min(header.length, size));
+        return document;
+    }
+
+    /**
+     * Settings of the load, read from the {@code loadtest.*} properties
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class Settings {
+
+        /** The requests started per second */
+        @Builder.Default int rate = 500;
+        @Builder.Default Duration duration = Duration.ofSeconds(60);
+        /** The time spent before measuring, for the JIT compiler and the connection pool */
+        @Builder.Default Duration warmup = Duration.ofSeconds(10);
+        @Builder.Default int documentSize = 100 * 1024;
+        /** PADES, XADES or CADES */
+        @Builder.Default String format = "PADES";
+        @Builder.Default boolean timestamping = false;
+        /** The requests running at once above which the new ones are dropped */
+        @Builder.Default int maxInFlight = 5000;
+        /** The time waited at the end for the running requests */
+        @Builder.Default Duration drainTimeout = Duration.ofSeconds(60);
+
+        public static Settings fromProperties(Properties properties) {
+            var p = new LoadTestProperties(properties);
+            var defaults = Settings.builder().build();
+            return Settings.builder()
+                    .rate(p.getInt("loadtest.rate", defaults.rate))
+                    .duration(p.getSeconds("loadtest.duration-seconds", defaults.duration.toSeconds()))
+                    .warmup(p.getSeconds("loadtest.warmup-seconds", defaults.warmup.toSeconds()))
+                    .documentSize(p.getInt("loadtest.document-size", defaults.documentSize))
+                    .format(p.getString("loadtest.format", defaults.format).toUpperCase(Locale.ROOT))
+                    .timestamping(p.getBoolean("loadtest.timestamping", defaults.timestamping))
+                    .maxInFlight(p.getInt("loadtest.max-in-flight", defaults.maxInFlight))
+                    .drainTimeout(p.getSeconds("loadtest.drain-timeout-seconds", defaults.drainTimeout.toSeconds()))
+                    .build();
+        }
+    }
+}
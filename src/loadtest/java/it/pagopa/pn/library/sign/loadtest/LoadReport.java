@@ -0,0 +1,126 @@
+package it.pagopa.pn.library.sign.loadtest;
+
+import lombok.Value;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Report of the measured interval of a load test: the latency distribution of the successful requests, in
+ * microseconds, the throughput, the errors by type and the heap and garbage collection figures of the client JVM.
+ */
+@Value
+public class LoadReport {
+
+    LoadGenerator.Settings settings;
+    Duration elapsed;
+    Histogram latencies;
+    long succeeded;
+    long failed;
+    long dropped;
+    /** The requests still running once the drain timeout elapsed */
+    long abandoned;
+    Map<String, Long> errors;
+    Resources before;
+    Resources after;
+
+    /**
+     * Get the successful requests per second
+     * @return the throughput
+     */
+    public double getThroughput() {
+        return succeeded / (elapsed.toNanos() / 1e9);
+    }
+
+    /**
+     * Print the summary and the percentile distribution, in milliseconds
+     * @param out the stream to print to
+     */
+    public void print(PrintStream out) {
+        out.printf("Load: %d requests/s of %s %d bytes, timestamping %s, for %s%n", settings.getRate(),
+                settings.getFormat(), settings.getDocumentSize(), settings.isTimestamping(), settings.getDuration());
+        out.printf("Throughput: %.1f requests/s over %.1f s%n", getThroughput(), elapsed.toNanos() / 1e9);
+        out.printf("Requests: %d succeeded, %d failed, %d dropped, %d abandoned%n", succeeded, failed, dropped, abandoned);
+        errors.forEach((type, count) -> out.printf("  %s: %d%n", type, count));
+        out.printf("Latency (ms): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n", millis(50), millis(90),
+                millis(99), millis(99.9), latencies.getMaxValue() / 1000.0);
+        out.printf("Heap: %d MB used, %d MB peak, %d MB max%n", after.heapUsed >> 20, after.heapPeak >> 20, after.heapMax >> 20);
+        after.collections.forEach((name, collections) -> {
+            long[] previous = before.collections.getOrDefault(name, new long[2]);
+            out.printf("GC %s: %d collections, %d ms%n", name, collections[0] - previous[0], collections[1] - previous[1]);
+        });
+        out.println();
+        latencies.outputPercentileDistribution(out, 1000.0);
+    }
+
+    /**
+     * Write the summary and the percentile distribution, the latter in the {@code .hgrm} format of HdrHistogram
+     * that its plotter reads
+     * @param directory the directory of the reports
+     * @return the written distribution
+     * @throws IOException if the files cannot be written
+     */
+    public Path write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        String name = String.format("%s-%s-%d-%drps", settings.getFormat().toLowerCase(Locale.ROOT), settings.isTimestamping() ? "t" : "b",
+                settings.getDocumentSize(), settings.getRate());
+        try (var out = new PrintStream(Files.newOutputStream(directory.resolve(name + ".txt")), false, StandardCharsets.UTF_8)) {
+            print(out);
+        }
+        Path distribution = directory.resolve(name + ".hgrm");
+        try (var out = new PrintStream(Files.newOutputStream(distribution), false, StandardCharsets.UTF_8)) {
+            latencies.outputPercentileDistribution(out, 1000.0);
+        }
+        return distribution;
+    }
+
+    private double millis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Heap usage and cumulative collections of the JVM at a point of the test
+     */
+    @Value
+    public static class Resources {
+
+        long heapUsed;
+        /** The sum of the peak usage of the heap pools since the previous snapshot */
+        long heapPeak;
+        long heapMax;
+        /** The count and the time in milliseconds of the collections, by collector */
+        Map<String, long[]> collections;
+
+        /**
+         * Take a snapshot and reset the peak usage of the heap pools
+         * @return the snapshot
+         */
+        public static Resources snapshot() {
+            var memory = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                    pool.resetPeakUsage();
+                }
+            }
+            Map<String, long[]> collections = new LinkedHashMap<>();
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections.put(collector.getName(), new long[]{collector.getCollectionCount(), collector.getCollectionTime()});
+            }
+            return new Resources(memory.getUsed(), peak, memory.getMax(), collections);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package it.pagopa.pn.library.sign.loadtest;
+
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.PnSignServiceImpl;
+import com.namirial.sign.library.service.SignBoxClient;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Entry point of the load tests: it starts a {@link SignBoxSimulator}, unless {@code loadtest.target} names a
+ * running server, and drives a client configured by the usual {@code namirial.server.*} properties with a
+ * {@link LoadGenerator}, so that the pool sizes and the timeouts can be tried before production. The properties are
+ * the system properties, overridden by the file named by {@code loadtest.config}, if any.
+ */
+@Slf4j
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Properties properties = properties();
+        String target = new LoadTestProperties(properties).getString("loadtest.target", null);
+        Path reportDirectory = Path.of(new LoadTestProperties(properties).getString("loadtest.report-dir", "target/loadtest"));
+
+        SignBoxSimulator simulator = target == null ? new SignBoxSimulator(SignBoxSimulator.Settings.fromProperties(properties)) : null;
+        SignServiceConfig config = SignServiceConfig.fromProperties(properties).toBuilder()
+                .apiEndpoint(simulator == null ? target : simulator.getUrl())
+                .build();
+        SignBoxClient client = SignBoxClient.builder().name("loadtest").config(config).build();
+        try {
+            LoadReport report = new LoadGenerator(LoadGenerator.Settings.fromProperties(properties), new PnSignServiceImpl(client)).run();
+            report.print(System.out);
+            if (simulator != null) {
+                System.out.printf("Simulator: %d requests, %d throttled, %d failures injected%n",
+                        simulator.getRequestCount(), simulator.getThrottledCount(), simulator.getInjectedCount());
+            }
+            log.info("Latency distribution written to {}", report.write(reportDirectory));
+        } finally {
+            client.close(Duration.ofSeconds(10)).block();
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    private static Properties properties() throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(System.getProperties());
+        String file = System.getProperty("loadtest.config");
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(Path.of(file))) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+}
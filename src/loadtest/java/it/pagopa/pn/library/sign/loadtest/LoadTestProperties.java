@@ -0,0 +1,49 @@
+package it.pagopa.pn.library.sign.loadtest;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Typed access to the {@code loadtest.*} properties; missing or blank values take their default.
+ */
+final class LoadTestProperties {
+
+    private final Properties properties;
+
+    LoadTestProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+    String getString(String name, String defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    double getDouble(String name, double defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    Duration getMillis(String name, long defaultValue) {
+        return Duration.ofMillis(getLong(name, defaultValue));
+    }
+
+    Duration getSeconds(String name, long defaultValue) {
+        return Duration.ofSeconds(getLong(name, defaultValue));
+    }
+}
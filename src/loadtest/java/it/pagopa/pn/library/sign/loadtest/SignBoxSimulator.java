@@ -0,0 +1,257 @@
+package it.pagopa.pn.library.sign.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.namirial.sign.library.pojo.ServerErrorResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.Builder;
+import lombok.Value;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Simulator of the Namirial SignBox endpoint for load tests.
+ * Unlike the stand-in of the unit tests it answers with a realistic latency, growing with the size of the document
+ * and with the time stamp of level {@code T}, and injects the failures seen in production: temporary and
+ * authentication errors, slow response bodies, connection resets and throttling above a number of concurrent
+ * requests. The uploaded bodies are drained without being kept, the responses are slices of a shared buffer.
+ */
+public class SignBoxSimulator implements AutoCloseable {
+
+    private static final String REQUEST_ID_HEADER_NAME = "X-SIGNBOX-TRANSACTION-ID";
+    private static final Pattern LEVEL = Pattern.compile("name=\"level\"\r\n(?:[^\r\n]+\r\n)*\r\n([A-Z]+)\r\n");
+    private static final int TRAILER_SIZE = 512;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Settings settings;
+    private final ByteBuf document;
+    private final DisposableServer server;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong injected = new AtomicLong();
+
+    public SignBoxSimulator(Settings settings) {
+        this.settings = settings;
+        this.document = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[settings.getResponseSize()]));
+        this.server = HttpServer.create()
+                .host(settings.getHost())
+                .port(settings.getPort())
+                .handle(this::handle)
+                .bindNow();
+    }
+
+    /**
+     * Get the base URL of the simulator
+     * @return the URL to pass to the client as API endpoint
+     */
+    public String getUrl() {
+        return "http://" + server.host() + ":" + server.port() + "/";
+    }
+
+    /**
+     * Get the number of requests received
+     * @return the number of requests
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Get the number of requests refused with 429 for exceeding the concurrent requests
+     * @return the number of throttled requests
+     */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    /**
+     * Get the number of requests answered with an injected failure
+     * @return the number of failed requests
+     */
+    public long getInjectedCount() {
+        return injected.get();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        requests.incrementAndGet();
+        String requestId = request.requestHeaders().get(REQUEST_ID_HEADER_NAME, "");
+        int running = inFlight.incrementAndGet();
+        var trailer = new Trailer();
+        return request.receive()
+                .doOnNext(trailer::add)
+                .then(Mono.defer(() -> respond(request, response, requestId, running, trailer)))
+                .doFinally(signal -> inFlight.decrementAndGet());
+    }
+
+    private Mono<Void> respond(HttpServerRequest request, HttpServerResponse response, String requestId, int running, Trailer trailer) {
+        response.header(REQUEST_ID_HEADER_NAME, requestId);
+        if (settings.getMaxConcurrent() > 0 && running > settings.getMaxConcurrent()) {
+            throttled.incrementAndGet();
+            return response.status(HttpResponseStatus.TOO_MANY_REQUESTS)
+                    .header("Retry-After", Long.toString(settings.getRetryAfter().toSeconds()))
+                    .send();
+        }
+        var random = ThreadLocalRandom.current();
+        Mono<Long> latency = Mono.delay(latency(trailer));
+        double failure = random.nextDouble();
+        if ((failure -= settings.getResetRate()) < 0) {
+            injected.incrementAndGet();
+            return latency.then(Mono.<Void>fromRunnable(() -> request.withConnection(connection -> {
+                // an abortive close sends a reset instead of a fin
+                connection.channel().config().setOption(ChannelOption.SO_LINGER, 0);
+                connection.channel().close();
+            })));
+        }
+        if ((failure -= settings.getServerErrorRate()) < 0) {
+            injected.incrementAndGet();
+            return latency.then(error(response, HttpResponseStatus.SERVICE_UNAVAILABLE, requestId));
+        }
+        if ((failure -= settings.getUnauthorizedRate()) < 0) {
+            injected.incrementAndGet();
+            return latency.then(error(response, HttpResponseStatus.UNAUTHORIZED, requestId));
+        }
+        response.status(HttpResponseStatus.OK).header("Content-Type", "application/octet-stream");
+        if ((failure - settings.getSlowBodyRate()) < 0) {
+            injected.incrementAndGet();
+            return latency.then(slowBody(response));
+        }
+        return latency.then(response.send(Mono.just(document.retainedSlice())).then());
+    }
+
+    /**
+     * Compute the latency of a request: a base time, a time per megabyte uploaded and the time stamp of level T,
+     * scaled by a log-normal jitter whose median is one
+     */
+    private Duration latency(Trailer trailer) {
+        long nanos = settings.getBaseLatency().toNanos()
+                + settings.getLatencyPerMegabyte().toNanos() * trailer.size / (1024 * 1024);
+        if ("T".equals(trailer.level())) {
+            nanos += settings.getTimestampLatency().toNanos();
+        }
+        double jitter = Math.exp(settings.getJitter() * ThreadLocalRandom.current().nextGaussian());
+        return Duration.ofNanos((long) (nanos * jitter));
+    }
+
+    private Mono<Void> slowBody(HttpServerResponse response) {
+        int chunks = settings.getSlowBodyChunks();
+        int chunkSize = Math.max(1, settings.getResponseSize() / chunks);
+        // without a content length the body is chunked, each chunk flushed after the pause
+        return response.send(Flux.interval(settings.getSlowBodyPause())
+                        .take(chunks)
+                        .map(i -> document.retainedSlice((int) (i * chunkSize), i == chunks - 1 ? settings.getResponseSize() - (int) (i * chunkSize) : chunkSize)),
+                        chunk -> true)
+                .then();
+    }
+
+    private static Mono<Void> error(HttpServerResponse response, HttpResponseStatus status, String requestId) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(new ServerErrorResponse(status.code(), status.reasonPhrase(),
+                    requestId.isEmpty() ? UUID.randomUUID().toString() : requestId));
+        } catch (JsonProcessingException e) {
+            body = "{}";
+        }
+        return response.status(status)
+                .header("Content-Type", "application/json")
+                .sendString(Mono.just(body), StandardCharsets.UTF_8)
+                .then();
+    }
+
+    /**
+     * The size and the last bytes of a request body, whose trailing parts carry the level and the format
+     */
+    private static final class Trailer {
+
+        private final byte[] last = new byte[TRAILER_SIZE];
+        private int length;
+        private long size;
+
+        void add(ByteBuf chunk) {
+            int readable = chunk.readableBytes();
+            size += readable;
+            int keep = Math.min(readable, TRAILER_SIZE);
+            int shift = Math.min(length, TRAILER_SIZE - keep);
+            System.arraycopy(last, length - shift, last, 0, shift);
+            chunk.getBytes(chunk.readerIndex() + readable - keep, last, shift, keep);
+            length = shift + keep;
+        }
+
+        String level() {
+            Matcher matcher = LEVEL.matcher(new String(last, 0, length, StandardCharsets.ISO_8859_1));
+            return matcher.find() ? matcher.group(1) : null;
+        }
+    }
+
+    /**
+     * Settings of the simulator, read from the {@code loadtest.server.*} properties
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class Settings {
+
+        @Builder.Default String host = "127.0.0.1";
+        /** The port, zero for an ephemeral one */
+        @Builder.Default int port = 0;
+        @Builder.Default Duration baseLatency = Duration.ofMillis(80);
+        @Builder.Default Duration latencyPerMegabyte = Duration.ofMillis(40);
+        /** The time stamp authority delay added to the requests of level T */
+        @Builder.Default Duration timestampLatency = Duration.ofMillis(250);
+        /** The standard deviation of the logarithm of the latency factor, zero for a fixed latency */
+        @Builder.Default double jitter = 0.25;
+        @Builder.Default int responseSize = 64 * 1024;
+        @Builder.Default double serverErrorRate = 0;
+        @Builder.Default double unauthorizedRate = 0;
+        @Builder.Default double slowBodyRate = 0;
+        @Builder.Default int slowBodyChunks = 10;
+        @Builder.Default Duration slowBodyPause = Duration.ofMillis(500);
+        @Builder.Default double resetRate = 0;
+        /** The concurrent requests above which the simulator answers 429, zero for no limit */
+        @Builder.Default int maxConcurrent = 0;
+        @Builder.Default Duration retryAfter = Duration.ofSeconds(1);
+
+        public static Settings fromProperties(Properties properties) {
+            var p = new LoadTestProperties(properties);
+            var defaults = Settings.builder().build();
+            return Settings.builder()
+                    .host(p.getString("loadtest.server.host", defaults.host))
+                    .port(p.getInt("loadtest.server.port", defaults.port))
+                    .baseLatency(p.getMillis("loadtest.server.base-latency-ms", defaults.baseLatency.toMillis()))
+                    .latencyPerMegabyte(p.getMillis("loadtest.server.latency-per-mb-ms", defaults.latencyPerMegabyte.toMillis()))
+                    .timestampLatency(p.getMillis("loadtest.server.timestamp-latency-ms", defaults.timestampLatency.toMillis()))
+                    .jitter(p.getDouble("loadtest.server.jitter", defaults.jitter))
+                    .responseSize(p.getInt("loadtest.server.response-size", defaults.responseSize))
+                    .serverErrorRate(p.getDouble("loadtest.server.server-error-rate", defaults.serverErrorRate))
+                    .unauthorizedRate(p.getDouble("loadtest.server.unauthorized-rate", defaults.unauthorizedRate))
+                    .slowBodyRate(p.getDouble("loadtest.server.slow-body-rate", defaults.slowBodyRate))
+                    .slowBodyChunks(p.getInt("loadtest.server.slow-body-chunks", defaults.slowBodyChunks))
+                    .slowBodyPause(p.getMillis("loadtest.server.slow-body-pause-ms", defaults.slowBodyPause.toMillis()))
+                    .resetRate(p.getDouble("loadtest.server.reset-rate", defaults.resetRate))
+                    .maxConcurrent(p.getInt("loadtest.server.max-concurrent", defaults.maxConcurrent))
+                    .retryAfter(p.getSeconds("loadtest.server.retry-after-seconds", defaults.retryAfter.toSeconds()))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.namirial.sign.library.cache;
+
+import com.namirial.sign.library.config.SignCacheConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalescing and caching of identical sign requests, keyed by the SHA-256 of the document with the format,
+ * level and address of the request.
+ * <p>
+ * Concurrent identical requests share a single call to the service; its signed document is then kept for
+ * {@code ttl} in an LRU cache bounded both in entries and in bytes. Errors are not cached. Every caller gets its
+ * own copy of the signed document, so a caller modifying it cannot corrupt the others. A shared call is not
+ * cancelled when one of its callers cancels, since the others may still need its result.
+ */
+@Slf4j
+public class SignResultCache {
+
+    private final SignCacheConfig config;
+    private final Map<String, Mono<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * Create an empty cache
+     * @param config the cache settings
+     */
+    public SignResultCache(SignCacheConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Build the key of a request
+     * @param address the address of the request
+     * @param data the document to sign, from its position to its limit
+     * @param format the format of the signature
+     * @param level the level of the signature
+     * @return the key of the request
+     */
+    public static String key(String address, ByteBuffer data, String format, String level) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(data.duplicate());
+        return Hex.encodeHexString(digest.digest()) + "|" + format + "|" + level + "|" + address;
+    }
+
+    /**
+     * Get the signed document of a request from the cache, or from a call shared with the identical requests in flight
+     * @param key the key of the request
+     * @param call the call to the service, subscribed if no identical request is cached or in flight
+     * @return a copy of the signed document
+     */
+    public Mono<byte[]> get(String key, Supplier<Mono<byte[]>> call) {
+        return Mono.defer(() -> {
+            byte[] cached = getCached(key);
+            if (cached != null) {
+                log.debug("Signed document served from cache for key {}", key);
+                return Mono.just(cached.clone());
+            }
+            AtomicReference<Mono<byte[]>> created = new AtomicReference<>();
+            created.set(call.get()
+                    .doOnNext(signed -> put(key, signed))
+                    .doFinally(signal -> inFlight.remove(key, created.get()))
+                    .cache());
+            Mono<byte[]> shared = inFlight.putIfAbsent(key, created.get());
+            if (shared != null) {
+                log.debug("Sign request coalesced with the one in flight for key {}", key);
+            }
+            return (shared != null ? shared : created.get()).map(byte[]::clone);
+        });
+    }
+
+    /**
+     * Get the number of cached documents
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the size of the cached documents
+     * @return the total size in bytes
+     */
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    private synchronized byte[] getCached(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAtNanos >= 0) {
+            entries.remove(key);
+            bytes -= entry.value.length;
+            return null;
+        }
+        return entry.value;
+    }
+
+    private synchronized void put(String key, byte[] value) {
+        if (value.length > config.getMaxBytes() || config.getMaxEntries() <= 0) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(value, System.nanoTime() + config.getTtl().toNanos()));
+        if (previous != null) {
+            bytes -= previous.value.length;
+        }
+        bytes += value.length;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > config.getMaxEntries() || bytes > config.getMaxBytes()) {
+            bytes -= eldest.next().value.length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A cached signed document; it is never handed out, only copies of it
+     */
+    private record Entry(byte[] value, long expiresAtNanos) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.namirial.sign.library.cms;
+
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Local handling of the CMS {@code SignedData} returned by the SignBox service for a digest: the check that it signs
+ * the digest sent, and the assembly of the enveloping signature from the detached one.
+ * <p>
+ * Adding the content does not invalidate the signature, which covers the signed attributes holding the digest of the
+ * content, not the content itself.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class CmsSignedData {
+
+    public static final String SIGNED_DATA_OID = "1.2.840.113549.1.7.2";
+    public static final String DATA_OID = "1.2.840.113549.1.7.1";
+    public static final String CONTENT_TYPE_OID = "1.2.840.113549.1.9.3";
+    public static final String MESSAGE_DIGEST_OID = "1.2.840.113549.1.9.4";
+
+    private static final byte[] SIGNED_DATA = Der.oid(SIGNED_DATA_OID);
+    private static final byte[] MESSAGE_DIGEST = Der.oid(MESSAGE_DIGEST_OID);
+
+    /**
+     * Check that each signer of a detached signature signed a digest
+     * @param cms the DER encoded {@code ContentInfo} of the signature
+     * @param digest the digest of the content
+     * @throws PnSpapiPermanentErrorException if the signature is malformed or signs another digest
+     */
+    public static void checkDigest(byte[] cms, byte[] digest) {
+        try {
+            List<Der.Element> signerInfos = signerInfos(signedData(Der.parse(cms)));
+            if (signerInfos.isEmpty()) {
+                throw invalid("no signer");
+            }
+            for (Der.Element signerInfo : signerInfos) {
+                if (!messageDigest(signerInfo).contentEquals(digest)) {
+                    throw invalid("the signed digest differs from the digest sent");
+                }
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw invalid(e.getMessage());
+        }
+    }
+
+    /**
+     * Build the enveloping signature of a content from its detached signature
+     * @param cms the DER encoded {@code ContentInfo} of the detached signature
+     * @param content the signed content, from its position to its limit
+     * @return the DER encoded {@code ContentInfo} of the signature holding the content
+     * @throws PnSpapiPermanentErrorException if the signature is malformed or not detached
+     */
+    public static byte[] envelop(byte[] cms, ByteBuffer content) {
+        try {
+            Der.Element signedData = signedData(Der.parse(cms));
+            List<Der.Element> fields = signedData.children();
+            byte[][] rebuilt = new byte[fields.size()][];
+            for (int i = 0; i < fields.size(); i++) {
+                rebuilt[i] = fields.get(i).encoded();
+            }
+            // version, digestAlgorithms, encapContentInfo, ...
+            Der.Element encapContentInfo = fields.get(2);
+            List<Der.Element> encapFields = encapContentInfo.children();
+            if (encapFields.size() != 1) {
+                throw invalid("the signature already holds its content");
+            }
+            byte[] eContent = new byte[content.remaining()];
+            content.duplicate().get(eContent);
+            rebuilt[2] = Der.encode(Der.SEQUENCE, encapFields.get(0).encoded(),
+                    Der.encode(Der.context(0), Der.encode(Der.OCTET_STRING, eContent)));
+            return Der.encode(Der.SEQUENCE, SIGNED_DATA, Der.encode(Der.context(0), Der.encode(Der.SEQUENCE, rebuilt)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw invalid(e.getMessage());
+        }
+    }
+
+    private static Der.Element signedData(Der.Element contentInfo) {
+        List<Der.Element> fields = contentInfo.children();
+        if (contentInfo.tag() != Der.SEQUENCE || fields.size() != 2 || !fields.get(0).encodedEquals(SIGNED_DATA)
+                || fields.get(1).tag() != Der.context(0)) {
+            throw invalid("not a CMS SignedData");
+        }
+        Der.Element signedData = fields.get(1).children().get(0);
+        if (signedData.tag() != Der.SEQUENCE || signedData.children().size() < 4) {
+            throw invalid("malformed CMS SignedData");
+        }
+        return signedData;
+    }
+
+    private static List<Der.Element> signerInfos(Der.Element signedData) {
+        List<Der.Element> fields = signedData.children();
+        Der.Element signerInfos = fields.get(fields.size() - 1);
+        if (signerInfos.tag() != Der.SET) {
+            throw invalid("missing signerInfos");
+        }
+        return signerInfos.children();
+    }
+
+    private static Der.Element messageDigest(Der.Element signerInfo) {
+        for (Der.Element field : signerInfo.children()) {
+            if (field.tag() != Der.context(0)) {
+                continue;
+            }
+            for (Der.Element attribute : field.children()) {
+                List<Der.Element> parts = attribute.children();
+                if (parts.size() == 2 && parts.get(0).encodedEquals(MESSAGE_DIGEST)) {
+                    return parts.get(1).children().get(0);
+                }
+            }
+        }
+        throw invalid("missing messageDigest signed attribute");
+    }
+
+    private static PnSpapiPermanentErrorException invalid(String reason) {
+        return new PnSpapiPermanentErrorException("Invalid CMS signature from SignBox: " + reason);
+    }
+}
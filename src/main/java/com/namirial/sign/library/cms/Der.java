@@ -0,0 +1,193 @@
+package com.namirial.sign.library.cms;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal DER encoding and decoding, enough to read and rebuild the CMS structures returned by the SignBox service.
+ * Only definite lengths and single-byte tags are supported, as DER requires.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Der {
+
+    public static final int INTEGER = 0x02;
+    public static final int OCTET_STRING = 0x04;
+    public static final int NULL = 0x05;
+    public static final int OBJECT_IDENTIFIER = 0x06;
+    public static final int SEQUENCE = 0x30;
+    public static final int SET = 0x31;
+
+    /**
+     * Get the tag of a constructed context-specific element, e.g. {@code [0]}
+     * @param number the tag number
+     * @return the tag
+     */
+    public static int context(int number) {
+        return 0xA0 | number;
+    }
+
+    /**
+     * An element of a DER document, pointing into the document without copying it
+     * @param tag the tag of the element
+     * @param source the DER document
+     * @param offset the offset of the tag in the document
+     * @param contentOffset the offset of the content in the document
+     * @param length the length of the content
+     */
+    public record Element(int tag, byte[] source, int offset, int contentOffset, int length) {
+
+        /**
+         * Get the offset following the element
+         * @return the offset of the next element in the document
+         */
+        public int end() {
+            return contentOffset + length;
+        }
+
+        /**
+         * Get the whole element
+         * @return a copy of the tag, length and content
+         */
+        public byte[] encoded() {
+            return Arrays.copyOfRange(source, offset, end());
+        }
+
+        /**
+         * Get the content of the element
+         * @return a copy of the content
+         */
+        public byte[] content() {
+            return Arrays.copyOfRange(source, contentOffset, end());
+        }
+
+        /**
+         * Get the elements of a constructed element
+         * @return the elements of the content
+         */
+        public List<Element> children() {
+            List<Element> children = new ArrayList<>();
+            int position = contentOffset;
+            while (position < end()) {
+                Element child = parse(source, position, end());
+                children.add(child);
+                position = child.end();
+            }
+            return children;
+        }
+
+        /**
+         * Compare the content of the element
+         * @param content the expected content
+         * @return true if the content is equal
+         */
+        public boolean contentEquals(byte[] content) {
+            return Arrays.equals(source, contentOffset, end(), content, 0, content.length);
+        }
+
+        /**
+         * Compare the whole element
+         * @param encoded the expected encoded element
+         * @return true if the tag, length and content are equal
+         */
+        public boolean encodedEquals(byte[] encoded) {
+            return Arrays.equals(source, offset, end(), encoded, 0, encoded.length);
+        }
+    }
+
+    /**
+     * Parse a DER document made of a single element
+     * @param der the document
+     * @return the element
+     * @throws IllegalArgumentException if the document is not a well-formed element
+     */
+    public static Element parse(byte[] der) {
+        Element element = parse(der, 0, der.length);
+        if (element.end() != der.length) {
+            throw new IllegalArgumentException("trailing bytes after the DER element");
+        }
+        return element;
+    }
+
+    private static Element parse(byte[] der, int offset, int limit) {
+        if (offset + 2 > limit) {
+            throw new IllegalArgumentException("truncated DER element at " + offset);
+        }
+        int tag = der[offset] & 0xFF;
+        int position = offset + 1;
+        int length = der[position++] & 0xFF;
+        if (length > 0x7F) {
+            int bytes = length & 0x7F;
+            if (bytes == 0 || bytes > 4 || position + bytes > limit) {
+                throw new IllegalArgumentException("unsupported DER length at " + offset);
+            }
+            length = 0;
+            for (int i = 0; i < bytes; i++) {
+                length = (length << 8) | (der[position++] & 0xFF);
+            }
+        }
+        if (length < 0 || position + length > limit) {
+            throw new IllegalArgumentException("truncated DER element at " + offset);
+        }
+        return new Element(tag, der, offset, position, length);
+    }
+
+    /**
+     * Encode an element
+     * @param tag the tag of the element
+     * @param contents the encoded children, or the raw content of a primitive element
+     * @return the encoded element
+     */
+    public static byte[] encode(int tag, byte[]... contents) {
+        int length = 0;
+        for (byte[] content : contents) {
+            length += content.length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+        out.write(tag);
+        writeLength(out, length);
+        for (byte[] content : contents) {
+            out.writeBytes(content);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode an object identifier
+     * @param dotted the identifier in dotted notation, e.g. {@code 1.2.840.113549.1.7.2}
+     * @return the encoded element
+     */
+    public static byte[] oid(String dotted) {
+        String[] arcs = dotted.split("\\.");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeBase128(out, Long.parseLong(arcs[0]) * 40 + Long.parseLong(arcs[1]));
+        for (int i = 2; i < arcs.length; i++) {
+            writeBase128(out, Long.parseLong(arcs[i]));
+        }
+        return encode(OBJECT_IDENTIFIER, out.toByteArray());
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        if (length < 0x80) {
+            out.write(length);
+            return;
+        }
+        int bytes = (Integer.SIZE - Integer.numberOfLeadingZeros(length) + 7) / 8;
+        out.write(0x80 | bytes);
+        for (int i = bytes - 1; i >= 0; i--) {
+            out.write(length >>> (8 * i));
+        }
+    }
+
+    private static void writeBase128(ByteArrayOutputStream out, long value) {
+        int groups = Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(value) + 6) / 7);
+        for (int i = groups - 1; i >= 0; i--) {
+            int group = (int) (value >>> (7 * i)) & 0x7F;
+            out.write(i > 0 ? group | 0x80 : group);
+        }
+    }
+}
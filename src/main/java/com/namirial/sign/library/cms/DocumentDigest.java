@@ -0,0 +1,82 @@
+package com.namirial.sign.library.cms;
+
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Digest of the documents signed by hash, computed locally and streaming: a document is never held in memory to
+ * be digested.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class DocumentDigest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Digest a document held in memory or mapped from a file, possibly in several parts
+     * @param algorithm the digest algorithm, e.g. {@code SHA-256}
+     * @param parts the parts of the document in order, each from its position to its limit; the buffer positions are
+     *              left unchanged
+     * @return the digest
+     */
+    public static byte[] of(String algorithm, ByteBuffer... parts) {
+        MessageDigest digest = messageDigest(algorithm);
+        for (ByteBuffer part : parts) {
+            digest.update(part.duplicate());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Digest a file, read chunk by chunk on the bounded elastic scheduler
+     * @param algorithm the digest algorithm, e.g. {@code SHA-256}
+     * @param file the file
+     * @return a {@link Mono} that will emit the digest, or a permanent error if the file cannot be read
+     */
+    public static Mono<byte[]> of(String algorithm, Path file) {
+        return Mono.fromCallable(() -> {
+                    MessageDigest digest = messageDigest(algorithm);
+                    ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        while (channel.read(chunk) >= 0) {
+                            digest.update(chunk.flip());
+                            chunk.clear();
+                        }
+                    }
+                    return digest.digest();
+                })
+                .onErrorMap(IOException.class, e -> new PnSpapiPermanentErrorException("Unable to read file " + file + ": " + e.getMessage()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Digest a document as it is received
+     * @param algorithm the digest algorithm, e.g. {@code SHA-256}
+     * @param content the chunks of the document, each from its position to its limit
+     * @return a {@link Mono} that will emit the digest once the content completes
+     */
+    public static Mono<byte[]> of(String algorithm, Flux<ByteBuffer> content) {
+        return Mono.fromCallable(() -> messageDigest(algorithm))
+                .flatMap(digest -> content.doOnNext(chunk -> digest.update(chunk.duplicate())).then(Mono.fromCallable(digest::digest)));
+    }
+
+    private static MessageDigest messageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new PnSpapiPermanentErrorException("Unsupported digest algorithm: " + algorithm);
+        }
+    }
+}
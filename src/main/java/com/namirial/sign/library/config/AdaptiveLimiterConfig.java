@@ -0,0 +1,64 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the adaptive concurrency limiter in front of the connection pool.
+ * Missing limits default to the pool size.
+ */
+@Value
+@Builder(toBuilder = true)
+public class AdaptiveLimiterConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.limiter.enabled";
+    public static final String INITIAL_LIMIT_PROP = "namirial.server.limiter.initial-limit";
+    public static final String MIN_LIMIT_PROP = "namirial.server.limiter.min-limit";
+    public static final String MAX_LIMIT_PROP = "namirial.server.limiter.max-limit";
+    public static final String MAX_QUEUE_SIZE_PROP = "namirial.server.limiter.max-queue-size";
+    public static final String MAX_QUEUE_WAIT_PROP = "namirial.server.limiter.max-queue-wait";
+    public static final String SLOW_CALL_THRESHOLD_PROP = "namirial.server.limiter.slow-call-threshold";
+    public static final String BACKOFF_RATIO_PROP = "namirial.server.limiter.backoff-ratio";
+
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 100;
+    public static final int DEFAULT_MAX_QUEUE_WAIT = 30;         // seconds
+    public static final int DEFAULT_SLOW_CALL_THRESHOLD = 60;    // seconds
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    @Builder.Default
+    boolean enabled = false;
+    Integer initialLimit;
+    @Builder.Default
+    int minLimit = DEFAULT_MIN_LIMIT;
+    Integer maxLimit;
+    @Builder.Default
+    int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    @Builder.Default
+    Duration maxQueueWait = Duration.ofSeconds(DEFAULT_MAX_QUEUE_WAIT);
+    @Builder.Default
+    Duration slowCallThreshold = Duration.ofSeconds(DEFAULT_SLOW_CALL_THRESHOLD);
+    @Builder.Default
+    double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.limiter.*} names
+     * @return the settings
+     */
+    public static AdaptiveLimiterConfig fromProperties(Properties properties) {
+        var builder = AdaptiveLimiterConfig.builder()
+                .initialLimit(ConfigProperties.getInteger(properties, INITIAL_LIMIT_PROP))
+                .maxLimit(ConfigProperties.getInteger(properties, MAX_LIMIT_PROP));
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifInteger(properties, MIN_LIMIT_PROP, builder::minLimit);
+        ConfigProperties.ifInteger(properties, MAX_QUEUE_SIZE_PROP, builder::maxQueueSize);
+        ConfigProperties.ifSeconds(properties, MAX_QUEUE_WAIT_PROP, builder::maxQueueWait);
+        ConfigProperties.ifSeconds(properties, SLOW_CALL_THRESHOLD_PROP, builder::slowCallThreshold);
+        ConfigProperties.ifDouble(properties, BACKOFF_RATIO_PROP, builder::backoffRatio);
+        return builder.build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings of the bulkheads partitioning the connections of a client by signature format or by tenant, so that a
+ * flood of requests of one partition cannot take the connections of the others.
+ */
+@Value
+@Builder(toBuilder = true)
+public class BulkheadConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.bulkhead.enabled";
+    public static final String PARTITION_BY_PROP = "namirial.server.bulkhead.partition-by";
+    public static final String SHARES_PREFIX = "namirial.server.bulkhead.shares.";
+    public static final String DEFAULT_SHARE_PROP = "namirial.server.bulkhead.default-share";
+    public static final String MAX_QUEUE_WAIT_PROP = "namirial.server.bulkhead.max-queue-wait";
+
+    public static final double DEFAULT_SHARE = 1.0;
+    public static final int DEFAULT_MAX_QUEUE_WAIT = 30;        // seconds
+
+    /**
+     * The key of the partitions
+     */
+    public enum PartitionBy {
+        /** The signature format, e.g. {@code PADES} */
+        FORMAT,
+        /** The tenant of the request, set by {@code PnSignServiceImpl} or in the Reactor context */
+        TENANT
+    }
+
+    @Builder.Default
+    boolean enabled = false;
+    @Builder.Default
+    PartitionBy partitionBy = PartitionBy.FORMAT;
+    /** Share of the connections each partition may use at most, between 0 and 1 */
+    @Builder.Default
+    Map<String, Double> shares = Map.of();
+    /** Share of the partitions not listed in {@code shares} */
+    @Builder.Default
+    double defaultShare = DEFAULT_SHARE;
+    /** Time a request waits for a connection of its partition before being rejected */
+    @Builder.Default
+    Duration maxQueueWait = Duration.ofSeconds(DEFAULT_MAX_QUEUE_WAIT);
+
+    /**
+     * Get the share of a partition
+     * @param partition the format or tenant
+     * @return the share listed for the partition, else the default one
+     */
+    public double shareOf(String partition) {
+        return shares.getOrDefault(partition, defaultShare);
+    }
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.bulkhead.*} names
+     * @return the settings
+     */
+    public static BulkheadConfig fromProperties(Properties properties) {
+        var builder = BulkheadConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        String partitionBy = ConfigProperties.getString(properties, PARTITION_BY_PROP);
+        if (partitionBy != null) {
+            builder.partitionBy(PartitionBy.valueOf(partitionBy.toUpperCase()));
+        }
+        ConfigProperties.ifDouble(properties, DEFAULT_SHARE_PROP, builder::defaultShare);
+        ConfigProperties.ifSeconds(properties, MAX_QUEUE_WAIT_PROP, builder::maxQueueWait);
+        Map<String, Double> shares = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(SHARES_PREFIX)) {
+                ConfigProperties.ifDouble(properties, name, share -> shares.put(name.substring(SHARES_PREFIX.length()), share));
+            }
+        }
+        builder.shares(Map.copyOf(shares));
+        return builder.build();
+    }
+}
@@ -0,0 +1,70 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the circuit breaker around the SignBox service.
+ * Failure and slow call rates are percentages over a sliding window of the latest calls.
+ */
+@Value
+@Builder(toBuilder = true)
+public class CircuitBreakerConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.circuit-breaker.enabled";
+    public static final String WINDOW_SIZE_PROP = "namirial.server.circuit-breaker.window-size";
+    public static final String MIN_CALLS_PROP = "namirial.server.circuit-breaker.min-calls";
+    public static final String FAILURE_RATE_THRESHOLD_PROP = "namirial.server.circuit-breaker.failure-rate-threshold";
+    public static final String SLOW_CALL_RATE_THRESHOLD_PROP = "namirial.server.circuit-breaker.slow-call-rate-threshold";
+    public static final String SLOW_CALL_DURATION_PROP = "namirial.server.circuit-breaker.slow-call-duration";
+    public static final String OPEN_DURATION_PROP = "namirial.server.circuit-breaker.open-duration";
+    public static final String HALF_OPEN_CALLS_PROP = "namirial.server.circuit-breaker.half-open-calls";
+
+    public static final int DEFAULT_WINDOW_SIZE = 50;
+    public static final int DEFAULT_MIN_CALLS = 20;
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+    public static final int DEFAULT_SLOW_CALL_DURATION = 60;    // seconds
+    public static final int DEFAULT_OPEN_DURATION = 30;         // seconds
+    public static final int DEFAULT_HALF_OPEN_CALLS = 5;
+
+    @Builder.Default
+    boolean enabled = false;
+    @Builder.Default
+    int windowSize = DEFAULT_WINDOW_SIZE;
+    /** Calls in the window before the rates are evaluated */
+    @Builder.Default
+    int minCalls = DEFAULT_MIN_CALLS;
+    @Builder.Default
+    double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    @Builder.Default
+    double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    @Builder.Default
+    Duration slowCallDuration = Duration.ofSeconds(DEFAULT_SLOW_CALL_DURATION);
+    @Builder.Default
+    Duration openDuration = Duration.ofSeconds(DEFAULT_OPEN_DURATION);
+    /** Trial calls let through when half-open */
+    @Builder.Default
+    int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.circuit-breaker.*} names
+     * @return the settings
+     */
+    public static CircuitBreakerConfig fromProperties(Properties properties) {
+        var builder = CircuitBreakerConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifInteger(properties, WINDOW_SIZE_PROP, builder::windowSize);
+        ConfigProperties.ifInteger(properties, MIN_CALLS_PROP, builder::minCalls);
+        ConfigProperties.ifDouble(properties, FAILURE_RATE_THRESHOLD_PROP, builder::failureRateThreshold);
+        ConfigProperties.ifDouble(properties, SLOW_CALL_RATE_THRESHOLD_PROP, builder::slowCallRateThreshold);
+        ConfigProperties.ifSeconds(properties, SLOW_CALL_DURATION_PROP, builder::slowCallDuration);
+        ConfigProperties.ifSeconds(properties, OPEN_DURATION_PROP, builder::openDuration);
+        ConfigProperties.ifInteger(properties, HALF_OPEN_CALLS_PROP, builder::halfOpenCalls);
+        return builder.build();
+    }
+}
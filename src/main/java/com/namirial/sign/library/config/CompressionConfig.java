@@ -0,0 +1,99 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Settings of the compression of the request bodies, sent with a {@code Content-Encoding} header to a SignBox
+ * endpoint able to decode it.
+ * <p>
+ * XML documents compress several times, while PDF documents and digests are already compressed or too small to gain
+ * anything: only the documents of the listed {@code formats} of at least {@code threshold} bytes are compressed.
+ * The body is compressed as it is sent, so it has no {@code Content-Length} and goes chunked.
+ */
+@Value
+@Builder(toBuilder = true)
+public class CompressionConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.compression.enabled";
+    public static final String ENCODING_PROP = "namirial.server.compression.encoding";
+    public static final String FORMATS_PROP = "namirial.server.compression.formats";
+    public static final String THRESHOLD_PROP = "namirial.server.compression.threshold";
+    public static final String LEVEL_PROP = "namirial.server.compression.level";
+
+    public static final Set<String> DEFAULT_FORMATS = Set.of("XADES");
+    public static final long DEFAULT_THRESHOLD = 16 * 1024;     // bytes
+    public static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * The content encodings of the request bodies
+     */
+    public enum Encoding {
+        /** The gzip format, with its header and CRC-32 trailer */
+        GZIP("gzip"),
+        /** The zlib format, as HTTP names it */
+        DEFLATE("deflate");
+
+        private final String headerValue;
+
+        Encoding(String headerValue) {
+            this.headerValue = headerValue;
+        }
+
+        /**
+         * Get the value of the {@code Content-Encoding} header
+         * @return the name of the encoding in HTTP
+         */
+        public String headerValue() {
+            return headerValue;
+        }
+    }
+
+    @Builder.Default
+    boolean enabled = false;
+    @Builder.Default
+    Encoding encoding = Encoding.GZIP;
+    /** The signature formats whose documents are compressed, upper case */
+    @Builder.Default
+    Set<String> formats = DEFAULT_FORMATS;
+    /** The size in bytes below which a document is sent as-is */
+    @Builder.Default
+    long threshold = DEFAULT_THRESHOLD;
+    /** The deflate level, from 1 (fastest) to 9 (smallest) */
+    @Builder.Default
+    int level = DEFAULT_LEVEL;
+
+    /**
+     * Tell whether the body of a document is compressed
+     * @param format the format of the signature
+     * @param payloadLength the size of the document
+     * @return true if compression is enabled for the format and the document reaches the threshold
+     */
+    public boolean applies(String format, long payloadLength) {
+        return enabled && format != null && formats.contains(format.toUpperCase()) && payloadLength >= threshold;
+    }
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.compression.*} names
+     * @return the settings
+     */
+    public static CompressionConfig fromProperties(Properties properties) {
+        var builder = CompressionConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        String encoding = ConfigProperties.getString(properties, ENCODING_PROP);
+        if (encoding != null) {
+            builder.encoding(Encoding.valueOf(encoding.toUpperCase()));
+        }
+        ConfigProperties.ifStrings(properties, FORMATS_PROP, formats -> builder.formats(formats.stream()
+                .map(String::toUpperCase)
+                .collect(Collectors.toUnmodifiableSet())));
+        ConfigProperties.ifLong(properties, THRESHOLD_PROP, builder::threshold);
+        ConfigProperties.ifInteger(properties, LEVEL_PROP, builder::level);
+        return builder.build();
+    }
+}
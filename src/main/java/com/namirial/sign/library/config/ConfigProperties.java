@@ -0,0 +1,107 @@
+package com.namirial.sign.library.config;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
+
+/**
+ * Typed lookups of the {@code namirial.server.*} properties; blank values are treated as missing.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class ConfigProperties {
+
+    static String getString(Properties properties, String name) {
+        String value = properties.getProperty(name);
+        return StringUtils.isBlank(value) ? null : value.trim();
+    }
+
+    static Boolean getBoolean(Properties properties, String name) {
+        String value = getString(properties, name);
+        return value == null ? null : Boolean.parseBoolean(value);
+    }
+
+    static Integer getInteger(Properties properties, String name) {
+        String value = getString(properties, name);
+        return value == null ? null : Integer.parseInt(value);
+    }
+
+    static Long getLong(Properties properties, String name) {
+        String value = getString(properties, name);
+        return value == null ? null : Long.parseLong(value);
+    }
+
+    static Duration getSeconds(Properties properties, String name) {
+        Integer value = getInteger(properties, name);
+        return value == null ? null : Duration.ofSeconds(value);
+    }
+
+    static void ifBoolean(Properties properties, String name, Consumer<Boolean> consumer) {
+        Boolean value = getBoolean(properties, name);
+        if (value != null) {
+            consumer.accept(value);
+        }
+    }
+
+    static void ifInteger(Properties properties, String name, Consumer<Integer> consumer) {
+        Integer value = getInteger(properties, name);
+        if (value != null) {
+            consumer.accept(value);
+        }
+    }
+
+    static void ifIntegers(Properties properties, String name, Consumer<Set<Integer>> consumer) {
+        String value = getString(properties, name);
+        if (value != null) {
+            consumer.accept(Arrays.stream(value.split(","))
+                    .map(String::trim)
+                    .filter(StringUtils::isNotEmpty)
+                    .map(Integer::valueOf)
+                    .collect(Collectors.toUnmodifiableSet()));
+        }
+    }
+
+    static void ifStrings(Properties properties, String name, Consumer<Set<String>> consumer) {
+        String value = getString(properties, name);
+        if (value != null) {
+            consumer.accept(Arrays.stream(value.split(","))
+                    .map(String::trim)
+                    .filter(StringUtils::isNotEmpty)
+                    .collect(Collectors.toUnmodifiableSet()));
+        }
+    }
+
+    static void ifDouble(Properties properties, String name, Consumer<Double> consumer) {
+        String value = getString(properties, name);
+        if (value != null) {
+            consumer.accept(Double.parseDouble(value));
+        }
+    }
+
+    static void ifSeconds(Properties properties, String name, Consumer<Duration> consumer) {
+        Duration value = getSeconds(properties, name);
+        if (value != null) {
+            consumer.accept(value);
+        }
+    }
+
+    static void ifLong(Properties properties, String name, Consumer<Long> consumer) {
+        Long value = getLong(properties, name);
+        if (value != null) {
+            consumer.accept(value);
+        }
+    }
+
+    static void ifMillis(Properties properties, String name, Consumer<Duration> consumer) {
+        Long value = getLong(properties, name);
+        if (value != null) {
+            consumer.accept(Duration.ofMillis(value));
+        }
+    }
+}
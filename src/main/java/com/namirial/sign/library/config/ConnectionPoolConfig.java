@@ -0,0 +1,47 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the lifecycle of the SignBox connections: the connections opened at startup and their eviction.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ConnectionPoolConfig {
+
+    public static final String WARM_UP_CONNECTIONS_PROP = "namirial.server.pool.warm-up-connections";
+    public static final String MAX_IDLE_TIME_PROP = "namirial.server.pool.max-idle-time";
+    public static final String MAX_LIFE_TIME_PROP = "namirial.server.pool.max-life-time";
+    public static final String EVICTION_INTERVAL_PROP = "namirial.server.pool.eviction-interval";
+
+    /** Connections opened per endpoint by {@code SignServiceClient.start()} */
+    @Builder.Default
+    int warmUpConnections = 0;
+    /** Time after which an idle connection is closed; zero keeps idle connections */
+    @Builder.Default
+    Duration maxIdleTime = Duration.ZERO;
+    /** Time after which a connection is closed once released; zero keeps connections whatever their age */
+    @Builder.Default
+    Duration maxLifeTime = Duration.ZERO;
+    /** Interval of the background eviction of idle and expired connections; zero evicts them only when acquired */
+    @Builder.Default
+    Duration evictionInterval = Duration.ZERO;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.pool.*} names
+     * @return the settings
+     */
+    public static ConnectionPoolConfig fromProperties(Properties properties) {
+        var builder = ConnectionPoolConfig.builder();
+        ConfigProperties.ifInteger(properties, WARM_UP_CONNECTIONS_PROP, builder::warmUpConnections);
+        ConfigProperties.ifSeconds(properties, MAX_IDLE_TIME_PROP, builder::maxIdleTime);
+        ConfigProperties.ifSeconds(properties, MAX_LIFE_TIME_PROP, builder::maxLifeTime);
+        ConfigProperties.ifSeconds(properties, EVICTION_INTERVAL_PROP, builder::evictionInterval);
+        return builder.build();
+    }
+}
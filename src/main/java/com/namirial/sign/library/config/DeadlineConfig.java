@@ -0,0 +1,86 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the deadlines of the sign requests, so that a hung SignBox connection cannot hold a pooled
+ * connection indefinitely.
+ * <p>
+ * {@code connectTimeout} bounds the opening of a connection and {@code firstByteTimeout} the wait for the response
+ * once the request is sent, and then between two reads of the response; it is shorter than the overall deadline, so
+ * that a hung attempt fails in time to be retried. The overall deadline bounds a whole call, retries included, and
+ * grows with the document: {@code overallBase}, plus {@code overallPerMegabyte} for each megabyte uploaded, plus
+ * {@code overallTimestamp} for the time stamp of level {@code T}, up to {@code overallMax}.
+ * A caller may set an earlier deadline in the Reactor context of the call. Zero disables a timeout.
+ */
+@Value
+@Builder(toBuilder = true)
+public class DeadlineConfig {
+
+    public static final String CONNECT_TIMEOUT_PROP = "namirial.server.deadline.connect-timeout-ms";
+    public static final String FIRST_BYTE_TIMEOUT_PROP = "namirial.server.deadline.first-byte-timeout-ms";
+    public static final String OVERALL_BASE_PROP = "namirial.server.deadline.overall-base-ms";
+    public static final String OVERALL_PER_MEGABYTE_PROP = "namirial.server.deadline.overall-per-mb-ms";
+    public static final String OVERALL_TIMESTAMP_PROP = "namirial.server.deadline.overall-timestamp-ms";
+    public static final String OVERALL_MAX_PROP = "namirial.server.deadline.overall-max-ms";
+
+    public static final long DEFAULT_CONNECT_TIMEOUT = 10_000;      // milliseconds
+    public static final long DEFAULT_FIRST_BYTE_TIMEOUT = 30_000;   // milliseconds
+    public static final long DEFAULT_OVERALL_BASE = 120_000;        // milliseconds
+    public static final long DEFAULT_OVERALL_PER_MEGABYTE = 5_000;  // milliseconds
+    public static final long DEFAULT_OVERALL_TIMESTAMP = 60_000;    // milliseconds
+    public static final long DEFAULT_OVERALL_MAX = 600_000;         // milliseconds
+
+    private static final long MEGABYTE = 1024 * 1024;
+    private static final String TIMESTAMP_LEVEL = "T";
+
+    @Builder.Default
+    Duration connectTimeout = Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT);
+    @Builder.Default
+    Duration firstByteTimeout = Duration.ofMillis(DEFAULT_FIRST_BYTE_TIMEOUT);
+    @Builder.Default
+    Duration overallBase = Duration.ofMillis(DEFAULT_OVERALL_BASE);
+    @Builder.Default
+    Duration overallPerMegabyte = Duration.ofMillis(DEFAULT_OVERALL_PER_MEGABYTE);
+    @Builder.Default
+    Duration overallTimestamp = Duration.ofMillis(DEFAULT_OVERALL_TIMESTAMP);
+    @Builder.Default
+    Duration overallMax = Duration.ofMillis(DEFAULT_OVERALL_MAX);
+
+    /**
+     * Get the overall deadline of a call
+     * @param payloadLength the bytes of the document uploaded
+     * @param level the level of the signature, e.g. BES or T
+     * @return the time given to the call, retries included, or null if the overall deadline is disabled
+     */
+    public Duration overall(long payloadLength, String level) {
+        if (overallBase.isZero()) {
+            return null;
+        }
+        Duration deadline = overallBase.plus(overallPerMegabyte.multipliedBy(payloadLength).dividedBy(MEGABYTE));
+        if (TIMESTAMP_LEVEL.equalsIgnoreCase(level)) {
+            deadline = deadline.plus(overallTimestamp);
+        }
+        return !overallMax.isZero() && deadline.compareTo(overallMax) > 0 ? overallMax : deadline;
+    }
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.deadline.*} names
+     * @return the settings
+     */
+    public static DeadlineConfig fromProperties(Properties properties) {
+        var builder = DeadlineConfig.builder();
+        ConfigProperties.ifMillis(properties, CONNECT_TIMEOUT_PROP, builder::connectTimeout);
+        ConfigProperties.ifMillis(properties, FIRST_BYTE_TIMEOUT_PROP, builder::firstByteTimeout);
+        ConfigProperties.ifMillis(properties, OVERALL_BASE_PROP, builder::overallBase);
+        ConfigProperties.ifMillis(properties, OVERALL_PER_MEGABYTE_PROP, builder::overallPerMegabyte);
+        ConfigProperties.ifMillis(properties, OVERALL_TIMESTAMP_PROP, builder::overallTimestamp);
+        ConfigProperties.ifMillis(properties, OVERALL_MAX_PROP, builder::overallMax);
+        return builder.build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Classification table of the errors returned by the SignBox service, by HTTP status and by the {@code error_code}
+ * of the error body. An error code listed here takes precedence over the status; other statuses are temporary.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ErrorClassificationConfig {
+
+    public static final String PERMANENT_STATUS_CODES_PROP = "namirial.server.errors.permanent-status-codes";
+    public static final String THROTTLED_STATUS_CODES_PROP = "namirial.server.errors.throttled-status-codes";
+    public static final String PERMANENT_ERROR_CODES_PROP = "namirial.server.errors.permanent-error-codes";
+    public static final String TEMPORARY_ERROR_CODES_PROP = "namirial.server.errors.temporary-error-codes";
+    public static final String THROTTLED_ERROR_CODES_PROP = "namirial.server.errors.throttled-error-codes";
+
+    public static final Set<Integer> DEFAULT_PERMANENT_STATUS_CODES = Set.of(400, 401, 403, 404, 405, 411, 413, 415, 422);
+    public static final Set<Integer> DEFAULT_THROTTLED_STATUS_CODES = Set.of(429);
+
+    @Builder.Default
+    Set<Integer> permanentStatusCodes = DEFAULT_PERMANENT_STATUS_CODES;
+    /** Statuses asking to slow down; a temporary status with a {@code Retry-After} header is throttled as well */
+    @Builder.Default
+    Set<Integer> throttledStatusCodes = DEFAULT_THROTTLED_STATUS_CODES;
+    @Builder.Default
+    Set<Integer> permanentErrorCodes = Set.of();
+    @Builder.Default
+    Set<Integer> temporaryErrorCodes = Set.of();
+    @Builder.Default
+    Set<Integer> throttledErrorCodes = Set.of();
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.errors.*} names with comma separated codes
+     * @return the settings
+     */
+    public static ErrorClassificationConfig fromProperties(Properties properties) {
+        var builder = ErrorClassificationConfig.builder();
+        ConfigProperties.ifIntegers(properties, PERMANENT_STATUS_CODES_PROP, builder::permanentStatusCodes);
+        ConfigProperties.ifIntegers(properties, THROTTLED_STATUS_CODES_PROP, builder::throttledStatusCodes);
+        ConfigProperties.ifIntegers(properties, PERMANENT_ERROR_CODES_PROP, builder::permanentErrorCodes);
+        ConfigProperties.ifIntegers(properties, TEMPORARY_ERROR_CODES_PROP, builder::temporaryErrorCodes);
+        ConfigProperties.ifIntegers(properties, THROTTLED_ERROR_CODES_PROP, builder::throttledErrorCodes);
+        return builder.build();
+    }
+}
@@ -0,0 +1,50 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Properties;
+
+/**
+ * Settings of the signatures by hash, where only the digest of the document is sent to the SignBox service.
+ */
+@Value
+@Builder(toBuilder = true)
+public class HashSigningConfig {
+
+    public static final String API_ENDPOINT_PROP = "namirial.server.hash.api-endpoint";
+    public static final String DIGEST_ALGORITHM_PROP = "namirial.server.hash.digest-algorithm";
+    public static final String SIGNATURE_SIZE_PROP = "namirial.server.hash.signature-size";
+
+    public static final String DEFAULT_DIGEST_ALGORITHM = "SHA-256";
+    public static final int DEFAULT_SIGNATURE_SIZE = 16384;        // bytes
+
+    /** Address of the digest signing endpoint, with one or more comma separated endpoints; blank disables the signatures by hash */
+    @Builder.Default
+    String apiEndpoint = "";
+    /** Algorithm of the digests, as named by {@link java.security.MessageDigest} and sent to the service */
+    @Builder.Default
+    String digestAlgorithm = DEFAULT_DIGEST_ALGORITHM;
+    /** Room reserved in a PDF document for its CMS signature, timestamp and certificates included */
+    @Builder.Default
+    int signatureSize = DEFAULT_SIGNATURE_SIZE;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.hash.*} names
+     * @return the settings
+     */
+    public static HashSigningConfig fromProperties(Properties properties) {
+        var builder = HashSigningConfig.builder();
+        String apiEndpoint = ConfigProperties.getString(properties, API_ENDPOINT_PROP);
+        if (apiEndpoint != null) {
+            builder.apiEndpoint(apiEndpoint);
+        }
+        String digestAlgorithm = ConfigProperties.getString(properties, DIGEST_ALGORITHM_PROP);
+        if (digestAlgorithm != null) {
+            builder.digestAlgorithm(digestAlgorithm);
+        }
+        ConfigProperties.ifInteger(properties, SIGNATURE_SIZE_PROP, builder::signatureSize);
+        return builder.build();
+    }
+}
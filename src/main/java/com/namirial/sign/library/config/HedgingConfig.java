@@ -0,0 +1,54 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of hedged requests: for small documents, a second attempt is sent when the first one is slower
+ * than a quantile of the recent latencies, and the first success is taken.
+ */
+@Value
+@Builder(toBuilder = true)
+public class HedgingConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.hedging.enabled";
+    public static final String MAX_PAYLOAD_SIZE_PROP = "namirial.server.hedging.max-payload-size";
+    public static final String QUANTILE_PROP = "namirial.server.hedging.quantile";
+    public static final String MIN_DELAY_PROP = "namirial.server.hedging.min-delay-ms";
+    public static final String MIN_SAMPLES_PROP = "namirial.server.hedging.min-samples";
+
+    public static final long DEFAULT_MAX_PAYLOAD_SIZE = 1024 * 1024;    // 1 MB
+    public static final double DEFAULT_QUANTILE = 0.95;
+    public static final long DEFAULT_MIN_DELAY = 100;                   // milliseconds
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+
+    @Builder.Default
+    boolean enabled = false;
+    @Builder.Default
+    long maxPayloadSize = DEFAULT_MAX_PAYLOAD_SIZE;
+    @Builder.Default
+    double quantile = DEFAULT_QUANTILE;
+    @Builder.Default
+    Duration minDelay = Duration.ofMillis(DEFAULT_MIN_DELAY);
+    /** Latencies observed before hedging starts */
+    @Builder.Default
+    int minSamples = DEFAULT_MIN_SAMPLES;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.hedging.*} names
+     * @return the settings
+     */
+    public static HedgingConfig fromProperties(Properties properties) {
+        var builder = HedgingConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifLong(properties, MAX_PAYLOAD_SIZE_PROP, builder::maxPayloadSize);
+        ConfigProperties.ifDouble(properties, QUANTILE_PROP, builder::quantile);
+        ConfigProperties.ifMillis(properties, MIN_DELAY_PROP, builder::minDelay);
+        ConfigProperties.ifInteger(properties, MIN_SAMPLES_PROP, builder::minSamples);
+        return builder.build();
+    }
+}
@@ -0,0 +1,50 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Properties;
+
+/**
+ * Settings of the HTTP/2 mode, multiplexing the sign requests as streams over a few connections.
+ * HTTP/2 is negotiated with ALPN on {@code https} endpoints and with an upgrade on {@code http} endpoints,
+ * falling back to HTTP/1.1 when the server does not accept it.
+ */
+@Value
+@Builder(toBuilder = true)
+public class Http2Config {
+
+    public static final String ENABLED_PROP = "namirial.server.http2.enabled";
+    public static final String PRIOR_KNOWLEDGE_PROP = "namirial.server.http2.prior-knowledge";
+    public static final String MAX_CONNECTIONS_PROP = "namirial.server.http2.max-connections";
+    public static final String MAX_CONCURRENT_STREAMS_PROP = "namirial.server.http2.max-concurrent-streams";
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    @Builder.Default
+    boolean enabled = false;
+    /** Speak HTTP/2 at once on {@code http} endpoints (h2c with prior knowledge), without upgrade nor fallback */
+    @Builder.Default
+    boolean priorKnowledge = false;
+    /** HTTP/2 connections opened at most per endpoint */
+    @Builder.Default
+    int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    /** Streams open at most on a connection, lowered to the limit announced by the server */
+    @Builder.Default
+    int maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.http2.*} names
+     * @return the settings
+     */
+    public static Http2Config fromProperties(Properties properties) {
+        var builder = Http2Config.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifBoolean(properties, PRIOR_KNOWLEDGE_PROP, builder::priorKnowledge);
+        ConfigProperties.ifInteger(properties, MAX_CONNECTIONS_PROP, builder::maxConnections);
+        ConfigProperties.ifInteger(properties, MAX_CONCURRENT_STREAMS_PROP, builder::maxConcurrentStreams);
+        return builder.build();
+    }
+}
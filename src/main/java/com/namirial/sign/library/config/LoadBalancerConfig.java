@@ -0,0 +1,63 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the client-side balancing between the SignBox endpoints listed in {@code namirial.server.address}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class LoadBalancerConfig {
+
+    public static final String EWMA_DECAY_PROP = "namirial.server.balancer.ewma-decay";
+    public static final String EJECTION_CONSECUTIVE_FAILURES_PROP = "namirial.server.balancer.ejection-consecutive-failures";
+    public static final String EJECTION_DURATION_PROP = "namirial.server.balancer.ejection-duration";
+    public static final String MAX_EJECTION_PERCENT_PROP = "namirial.server.balancer.max-ejection-percent";
+    public static final String HEALTH_CHECK_INTERVAL_PROP = "namirial.server.balancer.health-check-interval";
+    public static final String HEALTH_CHECK_TIMEOUT_PROP = "namirial.server.balancer.health-check-timeout";
+    public static final String HEALTH_CHECK_PATH_PROP = "namirial.server.balancer.health-check-path";
+
+    public static final int DEFAULT_EWMA_DECAY = 10;                // seconds
+    public static final int DEFAULT_EJECTION_CONSECUTIVE_FAILURES = 5;
+    public static final int DEFAULT_EJECTION_DURATION = 30;         // seconds
+    public static final int DEFAULT_MAX_EJECTION_PERCENT = 50;
+    public static final int DEFAULT_HEALTH_CHECK_TIMEOUT = 5;       // seconds
+
+    /** Time over which the latency average forgets older calls */
+    @Builder.Default
+    Duration ewmaDecay = Duration.ofSeconds(DEFAULT_EWMA_DECAY);
+    @Builder.Default
+    int ejectionConsecutiveFailures = DEFAULT_EJECTION_CONSECUTIVE_FAILURES;
+    @Builder.Default
+    Duration ejectionDuration = Duration.ofSeconds(DEFAULT_EJECTION_DURATION);
+    @Builder.Default
+    int maxEjectionPercent = DEFAULT_MAX_EJECTION_PERCENT;
+    /** Interval of the active health probes; zero disables them */
+    @Builder.Default
+    Duration healthCheckInterval = Duration.ZERO;
+    @Builder.Default
+    Duration healthCheckTimeout = Duration.ofSeconds(DEFAULT_HEALTH_CHECK_TIMEOUT);
+    /** Path probed on each endpoint, resolved against the endpoint URL; blank probes the endpoint URL itself */
+    String healthCheckPath;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.balancer.*} names
+     * @return the settings
+     */
+    public static LoadBalancerConfig fromProperties(Properties properties) {
+        var builder = LoadBalancerConfig.builder()
+                .healthCheckPath(ConfigProperties.getString(properties, HEALTH_CHECK_PATH_PROP));
+        ConfigProperties.ifSeconds(properties, EWMA_DECAY_PROP, builder::ewmaDecay);
+        ConfigProperties.ifInteger(properties, EJECTION_CONSECUTIVE_FAILURES_PROP, builder::ejectionConsecutiveFailures);
+        ConfigProperties.ifSeconds(properties, EJECTION_DURATION_PROP, builder::ejectionDuration);
+        ConfigProperties.ifInteger(properties, MAX_EJECTION_PERCENT_PROP, builder::maxEjectionPercent);
+        ConfigProperties.ifSeconds(properties, HEALTH_CHECK_INTERVAL_PROP, builder::healthCheckInterval);
+        ConfigProperties.ifSeconds(properties, HEALTH_CHECK_TIMEOUT_PROP, builder::healthCheckTimeout);
+        return builder.build();
+    }
+}
@@ -0,0 +1,44 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the in-flight memory budget, admitting the sign requests by the size of their documents.
+ */
+@Value
+@Builder(toBuilder = true)
+public class MemoryBudgetConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.memory.enabled";
+    public static final String MAX_IN_FLIGHT_BYTES_PROP = "namirial.server.memory.max-in-flight-bytes";
+    public static final String MAX_QUEUE_WAIT_PROP = "namirial.server.memory.max-queue-wait";
+
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L * 1024 * 1024;   // 256 MB
+    public static final int DEFAULT_MAX_QUEUE_WAIT = 30;                         // seconds
+
+    @Builder.Default
+    boolean enabled = false;
+    /** Heap held by the requests in flight: their documents and signed documents */
+    @Builder.Default
+    long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    /** Time a request waits for its share of the budget; zero rejects it at once */
+    @Builder.Default
+    Duration maxQueueWait = Duration.ofSeconds(DEFAULT_MAX_QUEUE_WAIT);
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.memory.*} names
+     * @return the settings
+     */
+    public static MemoryBudgetConfig fromProperties(Properties properties) {
+        var builder = MemoryBudgetConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifLong(properties, MAX_IN_FLIGHT_BYTES_PROP, builder::maxInFlightBytes);
+        ConfigProperties.ifSeconds(properties, MAX_QUEUE_WAIT_PROP, builder::maxQueueWait);
+        return builder.build();
+    }
+}
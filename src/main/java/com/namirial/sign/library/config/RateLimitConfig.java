@@ -0,0 +1,100 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings of the client-side rate limiting of the requests sent with an API key, in requests and in bytes per second.
+ * The limits can be overridden per API key with the {@code namirial.server.rate-limit.api-keys.<api key>.*} properties.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RateLimitConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.rate-limit.enabled";
+    public static final String REQUESTS_PER_SECOND_PROP = "namirial.server.rate-limit.requests-per-second";
+    public static final String BYTES_PER_SECOND_PROP = "namirial.server.rate-limit.bytes-per-second";
+    public static final String BURST_PROP = "namirial.server.rate-limit.burst-ms";
+    public static final String MAX_WAIT_PROP = "namirial.server.rate-limit.max-wait-ms";
+    public static final String API_KEYS_PREFIX = "namirial.server.rate-limit.api-keys.";
+    public static final String REQUESTS_PER_SECOND_SUFFIX = ".requests-per-second";
+    public static final String BYTES_PER_SECOND_SUFFIX = ".bytes-per-second";
+
+    public static final long DEFAULT_BURST = 1_000;         // milliseconds
+    public static final long DEFAULT_MAX_WAIT = 30_000;     // milliseconds
+
+    @Builder.Default
+    boolean enabled = false;
+    /** Limits of the API keys without override */
+    @Builder.Default
+    Limit limit = Limit.UNLIMITED;
+    /** Time of traffic at the full rate that can be sent at once after an idle period */
+    @Builder.Default
+    Duration burst = Duration.ofMillis(DEFAULT_BURST);
+    /** Time a request waits for its tokens before being rejected; zero rejects it at once */
+    @Builder.Default
+    Duration maxWait = Duration.ofMillis(DEFAULT_MAX_WAIT);
+    /** Limits per API key, overriding {@code limit} */
+    @Builder.Default
+    @ToString.Exclude
+    Map<String, Limit> apiKeys = Map.of();
+
+    /**
+     * Rates of a token bucket; zero or less is unlimited
+     */
+    @Value
+    public static class Limit {
+        public static final Limit UNLIMITED = new Limit(0, 0);
+
+        double requestsPerSecond;
+        double bytesPerSecond;
+    }
+
+    /**
+     * Get the limits of an API key
+     * @param apiKey the API key
+     * @return the limits overridden for the key, else the default ones
+     */
+    public Limit limitFor(String apiKey) {
+        return apiKeys.getOrDefault(apiKey, limit);
+    }
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.rate-limit.*} names
+     * @return the settings
+     */
+    public static RateLimitConfig fromProperties(Properties properties) {
+        var builder = RateLimitConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifMillis(properties, BURST_PROP, builder::burst);
+        ConfigProperties.ifMillis(properties, MAX_WAIT_PROP, builder::maxWait);
+        Limit limit = limit(properties, REQUESTS_PER_SECOND_PROP, BYTES_PER_SECOND_PROP, Limit.UNLIMITED);
+        builder.limit(limit);
+        Map<String, Limit> apiKeys = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(API_KEYS_PREFIX) && name.endsWith(REQUESTS_PER_SECOND_SUFFIX)) {
+                apiKeys.putIfAbsent(name.substring(API_KEYS_PREFIX.length(), name.length() - REQUESTS_PER_SECOND_SUFFIX.length()), limit);
+            } else if (name.startsWith(API_KEYS_PREFIX) && name.endsWith(BYTES_PER_SECOND_SUFFIX)) {
+                apiKeys.putIfAbsent(name.substring(API_KEYS_PREFIX.length(), name.length() - BYTES_PER_SECOND_SUFFIX.length()), limit);
+            }
+        }
+        apiKeys.replaceAll((apiKey, defaults) -> limit(properties,
+                API_KEYS_PREFIX + apiKey + REQUESTS_PER_SECOND_SUFFIX, API_KEYS_PREFIX + apiKey + BYTES_PER_SECOND_SUFFIX, defaults));
+        builder.apiKeys(Map.copyOf(apiKeys));
+        return builder.build();
+    }
+
+    private static Limit limit(Properties properties, String requestsPerSecondProp, String bytesPerSecondProp, Limit defaults) {
+        double[] rates = {defaults.getRequestsPerSecond(), defaults.getBytesPerSecond()};
+        ConfigProperties.ifDouble(properties, requestsPerSecondProp, value -> rates[0] = value);
+        ConfigProperties.ifDouble(properties, bytesPerSecondProp, value -> rates[1] = value);
+        return new Limit(rates[0], rates[1]);
+    }
+}
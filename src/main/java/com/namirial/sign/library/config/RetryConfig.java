@@ -0,0 +1,68 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the retries of temporary errors: exponential backoff with jitter, bounded by a global retry budget.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RetryConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.retry.enabled";
+    public static final String MAX_ATTEMPTS_PROP = "namirial.server.retry.max-attempts";
+    public static final String INITIAL_BACKOFF_PROP = "namirial.server.retry.initial-backoff-ms";
+    public static final String MAX_BACKOFF_PROP = "namirial.server.retry.max-backoff-ms";
+    public static final String JITTER_PROP = "namirial.server.retry.jitter";
+    public static final String HONOR_RETRY_AFTER_PROP = "namirial.server.retry.honor-retry-after";
+    public static final String BUDGET_RATIO_PROP = "namirial.server.retry.budget-ratio";
+    public static final String BUDGET_MIN_RETRIES_PER_SECOND_PROP = "namirial.server.retry.budget-min-retries-per-second";
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF = 500;     // milliseconds
+    public static final long DEFAULT_MAX_BACKOFF = 30_000;      // milliseconds
+    public static final double DEFAULT_JITTER = 0.5;
+    public static final double DEFAULT_BUDGET_RATIO = 0.2;
+    public static final int DEFAULT_BUDGET_MIN_RETRIES_PER_SECOND = 1;
+
+    @Builder.Default
+    boolean enabled = false;
+    @Builder.Default
+    int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    @Builder.Default
+    Duration initialBackoff = Duration.ofMillis(DEFAULT_INITIAL_BACKOFF);
+    @Builder.Default
+    Duration maxBackoff = Duration.ofMillis(DEFAULT_MAX_BACKOFF);
+    @Builder.Default
+    double jitter = DEFAULT_JITTER;
+    @Builder.Default
+    boolean honorRetryAfter = true;
+    /** Retries allowed as a fraction of the requests */
+    @Builder.Default
+    double budgetRatio = DEFAULT_BUDGET_RATIO;
+    /** Retries always allowed, regardless of the traffic */
+    @Builder.Default
+    int budgetMinRetriesPerSecond = DEFAULT_BUDGET_MIN_RETRIES_PER_SECOND;
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.retry.*} names
+     * @return the settings
+     */
+    public static RetryConfig fromProperties(Properties properties) {
+        var builder = RetryConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifInteger(properties, MAX_ATTEMPTS_PROP, builder::maxAttempts);
+        ConfigProperties.ifMillis(properties, INITIAL_BACKOFF_PROP, builder::initialBackoff);
+        ConfigProperties.ifMillis(properties, MAX_BACKOFF_PROP, builder::maxBackoff);
+        ConfigProperties.ifDouble(properties, JITTER_PROP, builder::jitter);
+        ConfigProperties.ifBoolean(properties, HONOR_RETRY_AFTER_PROP, builder::honorRetryAfter);
+        ConfigProperties.ifDouble(properties, BUDGET_RATIO_PROP, builder::budgetRatio);
+        ConfigProperties.ifInteger(properties, BUDGET_MIN_RETRIES_PER_SECOND_PROP, builder::budgetMinRetriesPerSecond);
+        return builder.build();
+    }
+}
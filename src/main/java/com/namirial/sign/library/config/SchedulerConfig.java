@@ -0,0 +1,60 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the scheduler ordering the sign requests waiting for a connection by priority and, optionally, by size.
+ * <p>
+ * Each waiting request is given a virtual start time: its arrival time, delayed by {@code priorityStep} per priority
+ * level below {@code INTERACTIVE} and, if {@code shortestFirst}, by {@code sizePenalty} per megabyte of document.
+ * Requests are served by virtual start time, so a large or low priority request is overtaken by the small or urgent
+ * ones arrived shortly after it, but not by those arrived after its delay: waiting ages it and it is never starved.
+ */
+@Value
+@Builder(toBuilder = true)
+public class SchedulerConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.scheduler.enabled";
+    public static final String SHORTEST_FIRST_PROP = "namirial.server.scheduler.shortest-first";
+    public static final String PRIORITY_STEP_PROP = "namirial.server.scheduler.priority-step-ms";
+    public static final String SIZE_PENALTY_PROP = "namirial.server.scheduler.size-penalty-ms";
+    public static final String MAX_QUEUE_WAIT_PROP = "namirial.server.scheduler.max-queue-wait";
+
+    public static final long DEFAULT_PRIORITY_STEP = 5_000;     // milliseconds
+    public static final long DEFAULT_SIZE_PENALTY = 100;        // milliseconds per megabyte
+    public static final int DEFAULT_MAX_QUEUE_WAIT = 30;        // seconds
+
+    @Builder.Default
+    boolean enabled = false;
+    /** Serve the smaller documents first, among the requests of close virtual start times */
+    @Builder.Default
+    boolean shortestFirst = false;
+    /** Delay of the virtual start time per priority level below {@code INTERACTIVE} */
+    @Builder.Default
+    Duration priorityStep = Duration.ofMillis(DEFAULT_PRIORITY_STEP);
+    /** Delay of the virtual start time per megabyte of document, if {@code shortestFirst} */
+    @Builder.Default
+    Duration sizePenalty = Duration.ofMillis(DEFAULT_SIZE_PENALTY);
+    /** Time a request waits for a connection before being rejected */
+    @Builder.Default
+    Duration maxQueueWait = Duration.ofSeconds(DEFAULT_MAX_QUEUE_WAIT);
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.scheduler.*} names
+     * @return the settings
+     */
+    public static SchedulerConfig fromProperties(Properties properties) {
+        var builder = SchedulerConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifBoolean(properties, SHORTEST_FIRST_PROP, builder::shortestFirst);
+        ConfigProperties.ifMillis(properties, PRIORITY_STEP_PROP, builder::priorityStep);
+        ConfigProperties.ifMillis(properties, SIZE_PENALTY_PROP, builder::sizePenalty);
+        ConfigProperties.ifSeconds(properties, MAX_QUEUE_WAIT_PROP, builder::maxQueueWait);
+        return builder.build();
+    }
+}
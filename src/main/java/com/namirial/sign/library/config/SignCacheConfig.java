@@ -0,0 +1,48 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the coalescing of identical sign requests and of the cache of their signed documents.
+ */
+@Value
+@Builder(toBuilder = true)
+public class SignCacheConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.cache.enabled";
+    public static final String MAX_ENTRIES_PROP = "namirial.server.cache.max-entries";
+    public static final String MAX_BYTES_PROP = "namirial.server.cache.max-bytes";
+    public static final String TTL_PROP = "namirial.server.cache.ttl";
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;   // 64 MB
+    public static final int DEFAULT_TTL = 600;                         // seconds
+
+    @Builder.Default
+    boolean enabled = false;
+    @Builder.Default
+    int maxEntries = DEFAULT_MAX_ENTRIES;
+    /** Total size of the cached signed documents */
+    @Builder.Default
+    long maxBytes = DEFAULT_MAX_BYTES;
+    @Builder.Default
+    Duration ttl = Duration.ofSeconds(DEFAULT_TTL);
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.cache.*} names
+     * @return the settings
+     */
+    public static SignCacheConfig fromProperties(Properties properties) {
+        var builder = SignCacheConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifInteger(properties, MAX_ENTRIES_PROP, builder::maxEntries);
+        ConfigProperties.ifLong(properties, MAX_BYTES_PROP, builder::maxBytes);
+        ConfigProperties.ifSeconds(properties, TTL_PROP, builder::ttl);
+        return builder.build();
+    }
+}
@@ -0,0 +1,246 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Immutable snapshot of the SignBox client configuration.
+ * Derived values (the Basic auth header and the parsed endpoint URI) are computed once, when the snapshot is built.
+ */
+@Slf4j
+@Getter
+@EqualsAndHashCode
+@ToString(exclude = {"apiKey", "password", "authorizationHeader"})
+public final class SignServiceConfig {
+
+    // # =====================================
+    // # =        Property names             =
+    // # =====================================
+    public static final String API_KEY_PROP = "namirial.server.apikey";
+    public static final String API_ENDPOINT_PROP = "namirial.server.address";
+    public static final String USERNAME_PROP = "namirial.server.username";
+    public static final String PASSWORD_PROP = "namirial.server.password";
+    public static final String MAX_CONNECTIONS_PROP = "namirial.server.max-connections";
+    public static final String PENDING_ACQUIRE_TIMEOUT_PROP = "namirial.server.pending-acquire-timeout";
+    public static final String METRICS_ENABLED_PROP = "namirial.server.metrics.enabled";
+    public static final String VALIDATION_ENABLED_PROP = "namirial.server.validation.enabled";
+
+    // # =====================================
+    // # =        Default values             =
+    // # =====================================
+    public static final int DEFAULT_MAX_CONNECTIONS = 40;
+    public static final int DEFAULT_PENDING_ACQUIRE_TIMEOUT = 600; // 10 minutes
+
+    private static final String BASIC_AUTH = "Basic ";
+
+    private final String apiEndpoint;
+    private final String apiKey;
+    private final String username;
+    private final String password;
+    private final int maxConnections;
+    private final Duration pendingAcquireTimeout;
+    private final boolean metricsEnabled;
+    private final boolean validationEnabled;
+    private final AdaptiveLimiterConfig limiter;
+    private final RetryConfig retry;
+    private final HedgingConfig hedging;
+    private final CircuitBreakerConfig circuitBreaker;
+    private final LoadBalancerConfig balancer;
+    private final SignCacheConfig cache;
+    private final MemoryBudgetConfig memory;
+    private final Http2Config http2;
+    private final ConnectionPoolConfig pool;
+    private final ErrorClassificationConfig errors;
+    private final RateLimitConfig rateLimit;
+    private final BulkheadConfig bulkhead;
+    private final SchedulerConfig scheduler;
+    private final HashSigningConfig hash;
+    private final TimingConfig timing;
+    private final DeadlineConfig deadline;
+    private final CompressionConfig compression;
+
+    // Derived values
+    private final String authorizationHeader;
+    private final URI endpointUri;
+    private final List<String> endpoints;
+
+    @Builder(toBuilder = true)
+    private SignServiceConfig(String apiEndpoint, String apiKey, String username, String password,
+                              Integer maxConnections, Duration pendingAcquireTimeout, Boolean metricsEnabled, AdaptiveLimiterConfig limiter,
+                              RetryConfig retry, HedgingConfig hedging, CircuitBreakerConfig circuitBreaker,
+                              LoadBalancerConfig balancer, SignCacheConfig cache, MemoryBudgetConfig memory,
+                              Http2Config http2, ConnectionPoolConfig pool, ErrorClassificationConfig errors,
+                              RateLimitConfig rateLimit, BulkheadConfig bulkhead,
+                              SchedulerConfig scheduler, Boolean validationEnabled, HashSigningConfig hash,
+                              TimingConfig timing, DeadlineConfig deadline, CompressionConfig compression) {
+        this.apiEndpoint = StringUtils.defaultString(apiEndpoint);
+        this.apiKey = StringUtils.defaultString(apiKey);
+        this.username = StringUtils.defaultString(username);
+        this.password = StringUtils.defaultString(password);
+        this.maxConnections = maxConnections == null ? DEFAULT_MAX_CONNECTIONS : maxConnections;
+        this.pendingAcquireTimeout = pendingAcquireTimeout == null ? Duration.ofSeconds(DEFAULT_PENDING_ACQUIRE_TIMEOUT) : pendingAcquireTimeout;
+        this.metricsEnabled = metricsEnabled != null && metricsEnabled;
+        this.validationEnabled = validationEnabled != null && validationEnabled;
+        this.limiter = limiter == null ? AdaptiveLimiterConfig.builder().build() : limiter;
+        this.retry = retry == null ? RetryConfig.builder().build() : retry;
+        this.hedging = hedging == null ? HedgingConfig.builder().build() : hedging;
+        this.circuitBreaker = circuitBreaker == null ? CircuitBreakerConfig.builder().build() : circuitBreaker;
+        this.balancer = balancer == null ? LoadBalancerConfig.builder().build() : balancer;
+        this.cache = cache == null ? SignCacheConfig.builder().build() : cache;
+        this.memory = memory == null ? MemoryBudgetConfig.builder().build() : memory;
+        this.http2 = http2 == null ? Http2Config.builder().build() : http2;
+        this.pool = pool == null ? ConnectionPoolConfig.builder().build() : pool;
+        this.errors = errors == null ? ErrorClassificationConfig.builder().build() : errors;
+        this.rateLimit = rateLimit == null ? RateLimitConfig.builder().build() : rateLimit;
+        this.bulkhead = bulkhead == null ? BulkheadConfig.builder().build() : bulkhead;
+        this.scheduler = scheduler == null ? SchedulerConfig.builder().build() : scheduler;
+        this.hash = hash == null ? HashSigningConfig.builder().build() : hash;
+        this.timing = timing == null ? TimingConfig.builder().build() : timing;
+        this.deadline = deadline == null ? DeadlineConfig.builder().build() : deadline;
+        this.compression = compression == null ? CompressionConfig.builder().build() : compression;
+        this.authorizationHeader = BASIC_AUTH + Base64.encodeBase64String((this.username + ":" + this.password).getBytes(StandardCharsets.UTF_8));
+        this.endpoints = splitEndpoints(this.apiEndpoint);
+        this.endpointUri = this.endpoints.isEmpty() ? null : parseUri(this.endpoints.get(0));
+    }
+
+    /**
+     * Build the configuration from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.*} names
+     * @return the configuration
+     */
+    public static SignServiceConfig fromProperties(Properties properties) {
+        return SignServiceConfig.builder()
+                .apiEndpoint(properties.getProperty(API_ENDPOINT_PROP))
+                .apiKey(properties.getProperty(API_KEY_PROP))
+                .username(properties.getProperty(USERNAME_PROP))
+                .password(properties.getProperty(PASSWORD_PROP))
+                .maxConnections(ConfigProperties.getInteger(properties, MAX_CONNECTIONS_PROP))
+                .pendingAcquireTimeout(ConfigProperties.getSeconds(properties, PENDING_ACQUIRE_TIMEOUT_PROP))
+                .metricsEnabled(ConfigProperties.getBoolean(properties, METRICS_ENABLED_PROP))
+                .validationEnabled(ConfigProperties.getBoolean(properties, VALIDATION_ENABLED_PROP))
+                .limiter(AdaptiveLimiterConfig.fromProperties(properties))
+                .retry(RetryConfig.fromProperties(properties))
+                .hedging(HedgingConfig.fromProperties(properties))
+                .circuitBreaker(CircuitBreakerConfig.fromProperties(properties))
+                .balancer(LoadBalancerConfig.fromProperties(properties))
+                .cache(SignCacheConfig.fromProperties(properties))
+                .memory(MemoryBudgetConfig.fromProperties(properties))
+                .http2(Http2Config.fromProperties(properties))
+                .pool(ConnectionPoolConfig.fromProperties(properties))
+                .errors(ErrorClassificationConfig.fromProperties(properties))
+                .rateLimit(RateLimitConfig.fromProperties(properties))
+                .bulkhead(BulkheadConfig.fromProperties(properties))
+                .scheduler(SchedulerConfig.fromProperties(properties))
+                .hash(HashSigningConfig.fromProperties(properties))
+                .timing(TimingConfig.fromProperties(properties))
+                .deadline(DeadlineConfig.fromProperties(properties))
+                .compression(CompressionConfig.fromProperties(properties))
+                .build();
+    }
+
+    /**
+     * Build the configuration from the system properties
+     * @return the configuration
+     */
+    public static SignServiceConfig fromSystemProperties() {
+        return fromProperties(System.getProperties());
+    }
+
+    /**
+     * Build the configuration from a properties file; values missing in the file are read from the system properties
+     * @param file the properties file
+     * @return the configuration
+     * @throws IOException if the file cannot be read
+     */
+    public static SignServiceConfig fromFile(Path file) throws IOException {
+        Properties properties = new Properties(System.getProperties());
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Check whether the connection pool built from this configuration can be kept with another one
+     * @param other the other configuration
+     * @return true if both configurations have the same pool settings
+     */
+    public boolean hasSamePoolSettings(SignServiceConfig other) {
+        return other != null
+                && maxConnections == other.maxConnections
+                && Objects.equals(pendingAcquireTimeout, other.pendingAcquireTimeout)
+                && metricsEnabled == other.metricsEnabled
+                && http2.equals(other.http2)
+                && pool.equals(other.pool)
+                && deadline.getConnectTimeout().equals(other.deadline.getConnectTimeout());
+    }
+
+    /**
+     * Get the requests the connection pool carries at a time, sizing the local concurrency stages and the batches
+     * @return the HTTP/2 connections times their streams if HTTP/2 is enabled, {@code maxConnections} otherwise
+     */
+    public int getMaxConcurrency() {
+        if (!http2.isEnabled()) {
+            return maxConnections;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) http2.getMaxConnections() * http2.getMaxConcurrentStreams());
+    }
+
+    /**
+     * Check whether the documents signed with this configuration can be reused with another one
+     * @param other the other configuration
+     * @return true if both configurations sign with the same endpoints and account
+     */
+    public boolean hasSameSigner(SignServiceConfig other) {
+        return other != null
+                && apiEndpoint.equals(other.apiEndpoint)
+                && apiKey.equals(other.apiKey)
+                && username.equals(other.username);
+    }
+
+    /**
+     * Split a comma separated list of endpoints
+     * @param apiEndpoint one endpoint, or several separated by commas
+     * @return the endpoints, trimmed and without blanks
+     */
+    public static List<String> splitEndpoints(String apiEndpoint) {
+        return Arrays.stream(StringUtils.defaultString(apiEndpoint).split(","))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .toList();
+    }
+
+    /**
+     * Parse an endpoint URL
+     * @param apiEndpoint the endpoint
+     * @return the URI, or null if the endpoint is not a valid URI
+     */
+    public static URI parseUri(String apiEndpoint) {
+        if (StringUtils.isBlank(apiEndpoint)) {
+            return null;
+        }
+        try {
+            return URI.create(apiEndpoint);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid SignBox endpoint {}: {}", apiEndpoint, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.namirial.sign.library.config;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Polls a properties file and publishes a new {@link SignServiceConfig} whenever its content changes.
+ * Polling, rather than file system events, also detects the symbolic link swaps used by mounted secrets.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SignServiceConfigWatcher {
+
+    /**
+     * Watch a properties file
+     * @param file the properties file, using the {@code namirial.server.*} names
+     * @param interval the polling interval
+     * @param listener the consumer of the configurations, invoked with the initial one and then on every change
+     * @return a {@link Disposable} stopping the watch
+     */
+    public static Disposable watch(Path file, Duration interval, Consumer<SignServiceConfig> listener) {
+        return Flux.interval(Duration.ZERO, interval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromCallable(() -> SignServiceConfig.fromFile(file))
+                        .onErrorResume(e -> {
+                            log.error("Unable to reload SignBox configuration from {}: {}", file, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .distinctUntilChanged()
+                .subscribe(config -> {
+                    log.info("Loaded SignBox configuration from {}", file);
+                    try {
+                        listener.accept(config);
+                    } catch (RuntimeException e) {
+                        log.error("Unable to apply SignBox configuration from {}: {}", file, e.getMessage());
+                    }
+                });
+    }
+}
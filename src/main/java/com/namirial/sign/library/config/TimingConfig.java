@@ -0,0 +1,57 @@
+package com.namirial.sign.library.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Settings of the per-request timelines, splitting the time of each sign request into its phases: waiting for
+ * admission, acquiring a pooled connection, connecting, uploading, server processing and downloading.
+ * <p>
+ * The timelines of the requests slower than {@code slowThreshold} are logged in full and always delivered to the
+ * timeline listeners; the others are delivered to the listeners with probability {@code sampleRate}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class TimingConfig {
+
+    public static final String ENABLED_PROP = "namirial.server.timing.enabled";
+    public static final String SLOW_THRESHOLD_PROP = "namirial.server.timing.slow-threshold-ms";
+    public static final String SAMPLE_RATE_PROP = "namirial.server.timing.sample-rate";
+
+    public static final long DEFAULT_SLOW_THRESHOLD = 10_000;   // milliseconds
+    public static final double DEFAULT_SAMPLE_RATE = 1.0;
+
+    @Builder.Default
+    boolean enabled = false;
+    /** Latency above which a request is logged with its timeline; zero logs none */
+    @Builder.Default
+    Duration slowThreshold = Duration.ofMillis(DEFAULT_SLOW_THRESHOLD);
+    /** Fraction of the requests below the threshold whose timeline is delivered to the listeners, between 0 and 1 */
+    @Builder.Default
+    double sampleRate = DEFAULT_SAMPLE_RATE;
+
+    /**
+     * Tell whether a request is slow
+     * @param latency the latency of the request
+     * @return true if the threshold is set and the latency reaches it
+     */
+    public boolean isSlow(Duration latency) {
+        return !slowThreshold.isZero() && latency.compareTo(slowThreshold) >= 0;
+    }
+
+    /**
+     * Build the settings from properties; missing or blank values take their default
+     * @param properties the properties, using the {@code namirial.server.timing.*} names
+     * @return the settings
+     */
+    public static TimingConfig fromProperties(Properties properties) {
+        var builder = TimingConfig.builder();
+        ConfigProperties.ifBoolean(properties, ENABLED_PROP, builder::enabled);
+        ConfigProperties.ifMillis(properties, SLOW_THRESHOLD_PROP, builder::slowThreshold);
+        ConfigProperties.ifDouble(properties, SAMPLE_RATE_PROP, builder::sampleRate);
+        return builder.build();
+    }
+}
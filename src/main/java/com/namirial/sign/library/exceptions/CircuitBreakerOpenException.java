@@ -0,0 +1,15 @@
+package com.namirial.sign.library.exceptions;
+
+import com.namirial.sign.library.pojo.ErrorClassification;
+
+import java.time.Duration;
+
+/**
+ * Temporary error raised without sending the request, while the circuit breaker around the SignBox service is open.
+ */
+public class CircuitBreakerOpenException extends LocalRejectionException {
+
+    public CircuitBreakerOpenException(String message, Duration retryAfter) {
+        super(message, ErrorClassification.TEMPORARY, retryAfter);
+    }
+}
@@ -0,0 +1,21 @@
+package com.namirial.sign.library.exceptions;
+
+import com.namirial.sign.library.pojo.ErrorClassification;
+
+import java.time.Duration;
+
+/**
+ * Temporary error raised without sending the request, when a local stage refuses it: the circuit breaker, the rate
+ * limiter, the concurrency limits or the memory budget. The request says nothing about the SignBox service and is not
+ * retried by the client, whose retries would only queue again behind the same stage.
+ */
+public class LocalRejectionException extends SignServiceTemporaryErrorException {
+
+    public LocalRejectionException(String message, Throwable cause) {
+        super(message, 0, null, ErrorClassification.TEMPORARY, null, cause);
+    }
+
+    public LocalRejectionException(String message, ErrorClassification classification, Duration retryAfter) {
+        super(message, 0, null, classification, retryAfter, null);
+    }
+}
@@ -0,0 +1,44 @@
+package com.namirial.sign.library.exceptions;
+
+import com.namirial.sign.library.config.ErrorClassificationConfig;
+import com.namirial.sign.library.pojo.ErrorClassification;
+
+/**
+ * Classify the errors returned by the SignBox service with a {@link ErrorClassificationConfig} table.
+ */
+public final class SignServiceErrorClassifier {
+
+    private final ErrorClassificationConfig config;
+
+    public SignServiceErrorClassifier(ErrorClassificationConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Classify an error response
+     * @param statusCode the HTTP status code
+     * @param errorCode the {@code error_code} of the error body, or null if missing
+     * @param hasRetryAfter true if the response has a {@code Retry-After} header
+     * @return the classification of the error code if listed, else of the status
+     */
+    public ErrorClassification classify(int statusCode, Integer errorCode, boolean hasRetryAfter) {
+        if (errorCode != null) {
+            if (config.getPermanentErrorCodes().contains(errorCode)) {
+                return ErrorClassification.PERMANENT;
+            }
+            if (config.getThrottledErrorCodes().contains(errorCode)) {
+                return ErrorClassification.THROTTLED;
+            }
+            if (config.getTemporaryErrorCodes().contains(errorCode)) {
+                return ErrorClassification.TEMPORARY;
+            }
+        }
+        if (config.getPermanentStatusCodes().contains(statusCode)) {
+            return ErrorClassification.PERMANENT;
+        }
+        if (hasRetryAfter || config.getThrottledStatusCodes().contains(statusCode)) {
+            return ErrorClassification.THROTTLED;
+        }
+        return ErrorClassification.TEMPORARY;
+    }
+}
@@ -0,0 +1,27 @@
+package com.namirial.sign.library.exceptions;
+
+import com.namirial.sign.library.pojo.ErrorClassification;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import lombok.Getter;
+
+/**
+ * Permanent error returned by the SignBox service, with the HTTP status and the {@code error_code} of the error body.
+ */
+@Getter
+public class SignServicePermanentErrorException extends PnSpapiPermanentErrorException {
+
+    /** The HTTP status code */
+    private final int statusCode;
+    /** The {@code error_code} of the error body, or null if missing */
+    private final Integer errorCode;
+
+    public SignServicePermanentErrorException(String message, int statusCode, Integer errorCode) {
+        super(message);
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+    }
+
+    public ErrorClassification getClassification() {
+        return ErrorClassification.PERMANENT;
+    }
+}
@@ -0,0 +1,41 @@
+package com.namirial.sign.library.exceptions;
+
+import com.namirial.sign.library.pojo.ErrorClassification;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Temporary error returned by the SignBox service, with the HTTP status and the delay requested by the
+ * {@code Retry-After} header, if any.
+ */
+@Getter
+public class SignServiceTemporaryErrorException extends PnSpapiTemporaryErrorException {
+
+    /** The HTTP status code, or 0 if the request was not sent */
+    private final int statusCode;
+    /** The {@code error_code} of the error body, or null if missing */
+    private final Integer errorCode;
+    /** {@code TEMPORARY}, or {@code THROTTLED} if the service asked to slow down */
+    private final ErrorClassification classification;
+    private final transient Duration retryAfter;
+
+    public SignServiceTemporaryErrorException(String message, int statusCode, Duration retryAfter) {
+        this(message, statusCode, null, ErrorClassification.TEMPORARY, retryAfter);
+    }
+
+    public SignServiceTemporaryErrorException(String message, int statusCode, Integer errorCode,
+                                              ErrorClassification classification, Duration retryAfter) {
+        this(message, statusCode, errorCode, classification, retryAfter, null);
+    }
+
+    protected SignServiceTemporaryErrorException(String message, int statusCode, Integer errorCode,
+                                                 ErrorClassification classification, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+        this.classification = classification;
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,14 @@
+package com.namirial.sign.library.exceptions;
+
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+
+/**
+ * PDF document whose structure cannot be updated locally, e.g. encrypted or with its catalog in a compressed object
+ * stream; such documents are signed by the SignBox service instead.
+ */
+public class UnsupportedPdfException extends PnSpapiPermanentErrorException {
+
+    public UnsupportedPdfException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,221 @@
+package com.namirial.sign.library.metrics;
+
+import com.namirial.sign.library.exceptions.SignServiceTemporaryErrorException;
+import com.namirial.sign.library.pojo.ErrorClassification;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import org.apache.commons.lang3.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Micrometer meters of the sign calls: a latency timer tagged by format, level and outcome, and the sizes of the
+ * documents sent and received. Latencies cover the whole call as seen by the caller, retries included, up to its
+ * success, its error or its cancellation; requests served by the result cache are timed with their own outcome.
+ */
+public class SignMetrics {
+
+    public static final String SIGN_TIMER = "namirial.sign.requests";
+    public static final String REQUEST_SIZE = "namirial.sign.request.size";
+    public static final String RESPONSE_SIZE = "namirial.sign.response.size";
+    public static final String RATE_LIMIT_TIMER = "namirial.sign.rate.limited";
+
+    public static final String FORMAT_TAG = "format";
+    public static final String LEVEL_TAG = "level";
+    public static final String OUTCOME_TAG = "outcome";
+
+    public static final String OUTCOME_OK = "ok";
+    public static final String OUTCOME_TEMPORARY = "temporary";
+    public static final String OUTCOME_PERMANENT = "permanent";
+    public static final String OUTCOME_THROTTLED = "throttled";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String OUTCOME_CACHED = "cached";
+    public static final String OUTCOME_DELAYED = "delayed";
+    public static final String OUTCOME_REJECTED = "rejected";
+
+    private static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+    // format/level combinations are few: meters are looked up once and shared
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+    private final Timer rateLimitDelayed;
+    private final Timer rateLimitRejected;
+
+    /**
+     * Create the meters
+     * @param registry the registry of the meters
+     */
+    public SignMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.rateLimitDelayed = rateLimitTimer(registry, OUTCOME_DELAYED);
+        this.rateLimitRejected = rateLimitTimer(registry, OUTCOME_REJECTED);
+    }
+
+    /**
+     * Record a request throttled by the client-side rate limiter
+     * @param wait the time the request waits, or would have waited if rejected
+     * @param rejected true if the request is rejected
+     */
+    public void recordThrottle(Duration wait, boolean rejected) {
+        (rejected ? rateLimitRejected : rateLimitDelayed).record(wait);
+    }
+
+    private static Timer rateLimitTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder(RATE_LIMIT_TIMER)
+                .description("Time the sign requests wait for the client-side rate limiter")
+                .tag(OUTCOME_TAG, outcome)
+                .register(registry);
+    }
+
+    /**
+     * Record a sign call
+     * @param call the call
+     * @param format the format of the signature
+     * @param level the level of the signature
+     * @param requestSize the size of the document to sign
+     * @param responseSize the size of the signed document
+     * @return the call, recording its latency, outcome and sizes
+     */
+    public <T> Mono<T> record(Mono<T> call, String format, String level, long requestSize, ToLongFunction<T> responseSize) {
+        return Mono.defer(() -> {
+            Meters sign = meters(format, level);
+            sign.requestSize.record(requestSize);
+            Latency latency = new Latency();
+            return call
+                    .doOnSuccess(response -> {
+                        if (latency.record(sign.ok) && response != null) {
+                            sign.responseSize.record(responseSize.applyAsLong(response));
+                        }
+                    })
+                    .doOnError(e -> latency.record(sign.failed(e)))
+                    .doOnCancel(() -> latency.record(sign.cancelled));
+        });
+    }
+
+    /**
+     * Record a streaming sign call
+     * @param call the call
+     * @param format the format of the signature
+     * @param level the level of the signature
+     * @param requestSize the size of the document to sign
+     * @param chunkSize the size of a chunk of the signed document
+     * @return the call, recording its latency, outcome and sizes
+     */
+    public <T> Flux<T> record(Flux<T> call, String format, String level, long requestSize, ToLongFunction<T> chunkSize) {
+        return Flux.defer(() -> {
+            Meters sign = meters(format, level);
+            sign.requestSize.record(requestSize);
+            Latency latency = new Latency();
+            AtomicLong received = new AtomicLong();
+            return call
+                    .doOnNext(chunk -> received.addAndGet(chunkSize.applyAsLong(chunk)))
+                    .doOnComplete(() -> {
+                        if (latency.record(sign.ok)) {
+                            sign.responseSize.record(received.get());
+                        }
+                    })
+                    .doOnError(e -> latency.record(sign.failed(e)))
+                    .doOnCancel(() -> latency.record(sign.cancelled));
+        });
+    }
+
+    /**
+     * Record a sign request served by the result cache, or by an identical request in flight, without calling the service
+     * @param format the format of the signature
+     * @param level the level of the signature
+     * @param latency the time the request took
+     */
+    public void recordCached(String format, String level, Duration latency) {
+        meters(format, level).cached.record(latency);
+    }
+
+    private Meters meters(String format, String level) {
+        String formatTag = StringUtils.defaultIfBlank(format, UNKNOWN);
+        String levelTag = StringUtils.defaultIfBlank(level, UNKNOWN);
+        return meters.computeIfAbsent(formatTag + "|" + levelTag, key -> new Meters(registry, formatTag, levelTag));
+    }
+
+    /**
+     * The start of a call, recorded once with the outcome of its first terminal signal
+     */
+    private static final class Latency {
+        private final long start = System.nanoTime();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private boolean record(Timer timer) {
+            if (!recorded.compareAndSet(false, true)) {
+                return false;
+            }
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return true;
+        }
+    }
+
+    /**
+     * The meters of a format and level
+     */
+    private static final class Meters {
+        private final Timer ok;
+        private final Timer temporary;
+        private final Timer permanent;
+        private final Timer throttled;
+        private final Timer cancelled;
+        private final Timer cached;
+        private final DistributionSummary requestSize;
+        private final DistributionSummary responseSize;
+
+        private Meters(MeterRegistry registry, String format, String level) {
+            this.ok = timer(registry, format, level, OUTCOME_OK);
+            this.temporary = timer(registry, format, level, OUTCOME_TEMPORARY);
+            this.permanent = timer(registry, format, level, OUTCOME_PERMANENT);
+            this.throttled = timer(registry, format, level, OUTCOME_THROTTLED);
+            this.cancelled = timer(registry, format, level, OUTCOME_CANCELLED);
+            this.cached = timer(registry, format, level, OUTCOME_CACHED);
+            this.requestSize = summary(registry, REQUEST_SIZE, "Size of the documents sent to be signed", format, level);
+            this.responseSize = summary(registry, RESPONSE_SIZE, "Size of the signed documents received", format, level);
+        }
+
+        private Timer failed(Throwable t) {
+            if (t instanceof PnSpapiPermanentErrorException) {
+                return permanent;
+            }
+            return t instanceof SignServiceTemporaryErrorException error && error.getClassification() == ErrorClassification.THROTTLED
+                    ? throttled : temporary;
+        }
+
+        private static Timer timer(MeterRegistry registry, String format, String level, String outcome) {
+            return Timer.builder(SIGN_TIMER)
+                    .description("Latency of the sign requests to the SignBox service")
+                    .tag(FORMAT_TAG, format)
+                    .tag(LEVEL_TAG, level)
+                    .tag(OUTCOME_TAG, outcome)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(10))
+                    .maximumExpectedValue(Duration.ofMinutes(10))
+                    .register(registry);
+        }
+
+        private static DistributionSummary summary(MeterRegistry registry, String name, String description, String format, String level) {
+            return DistributionSummary.builder(name)
+                    .description(description)
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag(FORMAT_TAG, format)
+                    .tag(LEVEL_TAG, level)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(1024.0)
+                    .maximumExpectedValue(256.0 * 1024 * 1024)
+                    .register(registry);
+        }
+    }
+}
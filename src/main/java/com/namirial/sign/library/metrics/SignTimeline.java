@@ -0,0 +1,84 @@
+package com.namirial.sign.library.metrics;
+
+import lombok.Value;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Timeline of one attempt of a sign request, identified by the {@code X-SIGNBOX-TRANSACTION-ID} request id: the time
+ * spent in each phase of the attempt. A phase is missing if the attempt did not reach it, e.g. {@code CONNECT} for an
+ * attempt reusing a pooled connection; retries share the request id of the first attempt and hedged attempts add a
+ * {@code -hedge} suffix to it.
+ */
+@Value
+public class SignTimeline {
+
+    /**
+     * The phases of an attempt, in order
+     */
+    public enum Phase {
+        /** Waiting for admission: circuit breaker, bulkhead, rate limiter, scheduler and concurrency limiter */
+        QUEUE,
+        /** Waiting for a pooled connection, up to the pending acquire timeout */
+        ACQUIRE,
+        /** Opening a new connection: DNS resolution, TCP connect and TLS handshake */
+        CONNECT,
+        /** Sending the multipart request */
+        UPLOAD,
+        /** Waiting for the response headers, i.e. signing and timestamping on the server */
+        SERVER,
+        /** Receiving the signed document */
+        DOWNLOAD
+    }
+
+    public static final String OUTCOME_OK = "ok";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+
+    String requestId;
+    String format;
+    String level;
+    /** Size of the document sent, in bytes */
+    long requestSize;
+    /** Endpoint the attempt was sent to, or null if it was not admitted */
+    String endpoint;
+    Instant start;
+    Duration total;
+    /** Time spent in each phase reached by the attempt */
+    Map<Phase, Duration> phases;
+    /** {@code ok}, {@code error} or {@code cancelled} */
+    String outcome;
+    /** Message of the error, or null */
+    String error;
+
+    /**
+     * Get the time spent in a phase
+     * @param phase the phase
+     * @return the time, or {@link Duration#ZERO} if the attempt did not reach the phase
+     */
+    public Duration get(Phase phase) {
+        return phases.getOrDefault(phase, Duration.ZERO);
+    }
+
+    /**
+     * Describe the timeline on one line, for the logs
+     * @return the request id, outcome and total time, then the time of each phase reached, in milliseconds
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("requestId=").append(requestId)
+                .append(" format=").append(format)
+                .append(" level=").append(level)
+                .append(" size=").append(requestSize)
+                .append(" endpoint=").append(endpoint)
+                .append(" outcome=").append(outcome)
+                .append(" total=").append(total.toMillis()).append("ms");
+        phases.forEach((phase, duration) -> text.append(' ').append(phase.name().toLowerCase()).append('=').append(duration.toMillis()).append("ms"));
+        if (error != null) {
+            text.append(" error=").append(error);
+        }
+        return text.toString();
+    }
+}
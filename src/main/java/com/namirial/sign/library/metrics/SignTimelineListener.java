@@ -0,0 +1,19 @@
+package com.namirial.sign.library.metrics;
+
+/**
+ * Listener of the timelines of the sign requests, e.g. to export them as traces.
+ * <p>
+ * Listeners are added to a client with {@code SignBoxClient.addTimelineListener}, or discovered with
+ * {@link java.util.ServiceLoader} when the client is built, from the
+ * {@code META-INF/services/com.namirial.sign.library.metrics.SignTimelineListener} files of the classpath. They are
+ * called on the thread completing the request, so they must not block.
+ */
+@FunctionalInterface
+public interface SignTimelineListener {
+
+    /**
+     * Called once per attempt, when it terminates
+     * @param timeline the timeline of the attempt
+     */
+    void onTimeline(SignTimeline timeline);
+}
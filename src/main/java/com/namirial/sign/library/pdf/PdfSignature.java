@@ -0,0 +1,838 @@
+package com.namirial.sign.library.pdf;
+
+import com.namirial.sign.library.cms.DocumentDigest;
+import com.namirial.sign.library.exceptions.UnsupportedPdfException;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * PAdES signature of a PDF document prepared locally, so that only the digest of the document is sent to the
+ * SignBox service.
+ * <p>
+ * The signature is an incremental update appended to the document, leaving its bytes untouched: a signature
+ * dictionary with a {@code /ByteRange} and a zero-filled {@code /Contents} placeholder, an invisible signature field,
+ * the catalog or AcroForm listing the field, the first page listing its widget annotation, and a cross-reference table
+ * chained to the previous one. The digest of the byte ranges, the whole signed document but the placeholder, is signed
+ * with a detached CAdES signature, whose hex encoding then fills the placeholder in place.
+ * <p>
+ * Only the last trailer and the objects it leads to are read, each found through the cross-reference sections from
+ * the last one, the cross-reference streams of hybrid files included; the new trailer carries all the entries of the
+ * last one. Encrypted documents, documents larger than 2 GB, documents whose last cross-reference section is a stream,
+ * which a table cannot follow, and documents whose catalog, AcroForm or page tree is in a compressed object stream are
+ * rejected with an {@link UnsupportedPdfException}.
+ */
+public final class PdfSignature {
+
+    private static final byte[] EOF = ascii("%%EOF");
+    private static final byte[] STARTXREF = ascii("startxref");
+    private static final byte[] XREF = ascii("xref");
+    private static final byte[] TRAILER = ascii("trailer");
+    private static final byte[] OBJ = ascii("obj");
+    private static final byte[] STREAM = ascii("stream");
+    private static final int TRAILER_WINDOW = 1024;
+    private static final int XREF_ENTRY_LENGTH = 20;
+    private static final int MAX_PAGE_TREE_DEPTH = 32;
+
+    private static final Pattern ROOT = Pattern.compile("/Root\\s+(\\d+)\\s+(\\d+)\\s+R");
+    private static final Pattern SIZE = Pattern.compile("/Size\\s+(\\d+)");
+    private static final Pattern REFERENCE_TAIL = Pattern.compile("\\s+\\d+\\s+R\\b");
+    private static final Pattern ENCRYPT = Pattern.compile("/Encrypt\\b");
+    private static final Pattern ACROFORM_REFERENCE = Pattern.compile("/AcroForm\\s+(\\d+)\\s+(\\d+)\\s+R");
+    private static final Pattern ACROFORM_DICTIONARY = Pattern.compile("/AcroForm\\s*<<");
+    private static final Pattern FIELDS_ARRAY = Pattern.compile("/Fields\\s*\\[");
+    private static final Pattern FIELDS = Pattern.compile("/Fields\\b");
+    private static final Pattern SIG_FLAGS = Pattern.compile("/SigFlags\\s+\\d+");
+    private static final Pattern PAGES = Pattern.compile("/Pages\\s+(\\d+)\\s+(\\d+)\\s+R");
+    private static final Pattern PAGE_TREE_NODE = Pattern.compile("/Type\\s*/Pages\\b");
+    private static final Pattern FIRST_KID = Pattern.compile("/Kids\\s*\\[\\s*(\\d+)\\s+(\\d+)\\s+R");
+    private static final Pattern ANNOTS_REFERENCE = Pattern.compile("/Annots\\s+(\\d+)\\s+(\\d+)\\s+R");
+    private static final Pattern ANNOTS_ARRAY = Pattern.compile("/Annots\\s*\\[");
+    private static final Pattern PREV = Pattern.compile("/Prev\\s+(\\d+)");
+    private static final Pattern XREF_STM = Pattern.compile("/XRefStm\\s+(\\d+)");
+    private static final Pattern WIDTHS = Pattern.compile("/W\\s*\\[\\s*(\\d+)\\s+(\\d+)\\s+(\\d+)\\s*]");
+    private static final Pattern INDEX = Pattern.compile("/Index\\s*\\[([\\d\\s]*)]");
+    private static final Pattern LENGTH = Pattern.compile("/Length\\s+(\\d+)(\\s+\\d+\\s+R)?");
+    private static final Pattern FILTER = Pattern.compile("/Filter\\s*\\[?\\s*/(\\w+)");
+    private static final Pattern PREDICTOR = Pattern.compile("/Predictor\\s+(\\d+)");
+    private static final Pattern COLUMNS = Pattern.compile("/Columns\\s+(\\d+)");
+
+    // rewritten by the update, or pointing to a cross-reference stream of the previous section
+    private static final Set<String> REPLACED_TRAILER_KEYS = Set.of("/Size", "/Prev", "/XRefStm");
+
+    private static final String BYTE_RANGE_PLACEHOLDER = "/ByteRange [0 ********** ********** **********]";
+    private static final DateTimeFormatter SIGNING_TIME = DateTimeFormatter.ofPattern("'D:'yyyyMMddHHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final ByteBuffer document;
+    private final byte[] update;
+    private final int contentsOffset;
+    private final int contentsLength;
+
+    private PdfSignature(ByteBuffer document, byte[] update, int contentsOffset, int contentsLength) {
+        this.document = document;
+        this.update = update;
+        this.contentsOffset = contentsOffset;
+        this.contentsLength = contentsLength;
+    }
+
+    /**
+     * Prepare the signature of a document held in memory
+     * @param pdf the document, from its position to its limit; the buffer is not modified
+     * @param signatureSize the bytes reserved for the CMS signature
+     * @param signingTime the signing time written in the signature dictionary
+     * @return the prepared signature
+     * @throws UnsupportedPdfException if the document cannot be updated locally
+     */
+    public static PdfSignature prepare(ByteBuffer pdf, int signatureSize, Instant signingTime) {
+        ByteBuffer document = pdf.slice();
+        int length = document.limit();
+        int eof = lastIndexOf(document, EOF, Math.max(0, length - TRAILER_WINDOW), length);
+        int startxref = eof < 0 ? -1 : lastIndexOf(document, STARTXREF, Math.max(0, eof - TRAILER_WINDOW), eof);
+        if (startxref < 0) {
+            throw unsupported("missing startxref and %%EOF trailer");
+        }
+        int xref = parseNumber(document, startxref + STARTXREF.length, eof);
+        if (xref < 0 || xref >= length) {
+            throw unsupported("startxref points outside the document");
+        }
+        String trailer = trailer(document, xref);
+        if (ENCRYPT.matcher(trailer).find()) {
+            throw unsupported("encrypted document");
+        }
+        Matcher root = ROOT.matcher(trailer);
+        Matcher size = SIZE.matcher(trailer);
+        if (!root.find() || !size.find()) {
+            throw unsupported("missing /Root or /Size in the trailer");
+        }
+        int rootNumber = Integer.parseInt(root.group(1));
+        int rootGeneration = Integer.parseInt(root.group(2));
+        int signature = Integer.parseInt(size.group(1));
+        String field = (signature + 1) + " 0 R";
+
+        // the catalog, or its AcroForm if indirect, lists the new field
+        List<PdfObject> objects = new ArrayList<>();
+        String catalog = dictionary(document, xref, rootNumber, rootGeneration);
+        Matcher formReference = ACROFORM_REFERENCE.matcher(catalog);
+        Matcher formDictionary = ACROFORM_DICTIONARY.matcher(catalog);
+        if (formReference.find()) {
+            int formNumber = Integer.parseInt(formReference.group(1));
+            int formGeneration = Integer.parseInt(formReference.group(2));
+            objects.add(new PdfObject(formNumber, formGeneration, addField(dictionary(document, xref, formNumber, formGeneration), field)));
+        } else if (formDictionary.find()) {
+            int start = formDictionary.end() - 2;
+            int end = dictionaryEnd(ByteBuffer.wrap(latin1(catalog)), start);
+            objects.add(new PdfObject(rootNumber, rootGeneration,
+                    catalog.substring(0, start) + addField(catalog.substring(start, end), field) + catalog.substring(end)));
+        } else {
+            objects.add(new PdfObject(rootNumber, rootGeneration, "<< /AcroForm << /Fields [" + field + "] /SigFlags 3 >> " + catalog.substring(2)));
+        }
+
+        // the first page lists the widget of the field among its annotations
+        PdfObject page = firstPage(document, xref, catalog);
+        Matcher annotsReference = ANNOTS_REFERENCE.matcher(page.body());
+        if (annotsReference.find()) {
+            int annotsNumber = Integer.parseInt(annotsReference.group(1));
+            int annotsGeneration = Integer.parseInt(annotsReference.group(2));
+            String annots = indirectObject(document, xref, annotsNumber, annotsGeneration);
+            if (!annots.startsWith("[")) {
+                throw unsupported("/Annots of the first page is not an array");
+            }
+            objects.add(new PdfObject(annotsNumber, annotsGeneration, addToArray(annots, 0, field)));
+        } else {
+            objects.add(new PdfObject(page.number(), page.generation(), addAnnotation(page.body(), field)));
+        }
+        objects.add(new PdfObject(signature + 1, 0, "<< /Type /Annot /Subtype /Widget /FT /Sig /T (Signature" + signature + ")"
+                + " /V " + signature + " 0 R /P " + page.number() + " " + page.generation() + " R /F 132 /Rect [0 0 0 0] >>"));
+
+        StringBuilder out = new StringBuilder();
+        byte last = document.get(length - 1);
+        if (last != '\n' && last != '\r') {
+            out.append('\n');
+        }
+        long[] offsets = new long[objects.size() + 1];
+        offsets[0] = length + out.length();
+        out.append(signature).append(" 0 obj\n<< /Type /Sig /Filter /Adobe.PPKLite /SubFilter /ETSI.CAdES.detached /M (")
+                .append(SIGNING_TIME.format(signingTime)).append(") ");
+        int byteRangeOffset = out.length();
+        out.append(BYTE_RANGE_PLACEHOLDER).append(" /Contents ");
+        int contentsOffset = out.length();
+        out.append('<').append("0".repeat(2 * signatureSize)).append('>');
+        int contentsLength = out.length() - contentsOffset;
+        out.append(" >>\nendobj\n");
+        for (int i = 0; i < objects.size(); i++) {
+            PdfObject object = objects.get(i);
+            offsets[i + 1] = length + out.length();
+            out.append(object.number()).append(' ').append(object.generation()).append(" obj\n").append(object.body()).append("\nendobj\n");
+        }
+        objects.add(0, new PdfObject(signature, 0, null));
+
+        long xrefOffset = length + out.length();
+        out.append("xref\n");
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < objects.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingInt(i -> objects.get(i).number()));
+        for (int i : order) {
+            PdfObject object = objects.get(i);
+            out.append(object.number()).append(" 1\n").append(String.format("%010d %05d n \n", offsets[i], object.generation()));
+        }
+        out.append("trailer\n<< /Size ").append(signature + 2).append(carriedEntries(trailer));
+        out.append(" /Prev ").append(xref).append(" >>\nstartxref\n").append(xrefOffset).append("\n%%EOF\n");
+
+        long signedLength = length + out.length();
+        long rangeStart = length + contentsOffset + contentsLength;
+        String byteRange = String.format("/ByteRange [0 %-10d %-10d %-10d]", length + contentsOffset, rangeStart, signedLength - rangeStart);
+        if (byteRange.length() != BYTE_RANGE_PLACEHOLDER.length()) {
+            throw unsupported("document too large");
+        }
+        out.replace(byteRangeOffset, byteRangeOffset + byteRange.length(), byteRange);
+        return new PdfSignature(document, latin1(out.toString()), contentsOffset, contentsLength);
+    }
+
+    /**
+     * Prepare the signature of a file, mapping it in memory instead of reading it
+     * @param file the PDF file
+     * @param signatureSize the bytes reserved for the CMS signature
+     * @param signingTime the signing time written in the signature dictionary
+     * @return the prepared signature
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedPdfException if the file cannot be updated locally
+     */
+    public static PdfSignature prepare(Path file, int signatureSize, Instant signingTime) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                throw unsupported(size == 0 ? "empty file" : "file larger than 2 GB");
+            }
+            // the mapping stays valid once the channel is closed
+            return prepare(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), signatureSize, signingTime);
+        }
+    }
+
+    /**
+     * Get the length of the original document
+     * @return the length in bytes
+     */
+    public int getLength() {
+        return document.limit();
+    }
+
+    /**
+     * Get the byte ranges of the signed document covered by the signature
+     * @return the offset and the length of the range before the placeholder, then of the range after it
+     */
+    public long[] getByteRange() {
+        long placeholderEnd = (long) document.limit() + contentsOffset + contentsLength;
+        return new long[]{0, document.limit() + (long) contentsOffset, placeholderEnd, document.limit() + (long) update.length - placeholderEnd};
+    }
+
+    /**
+     * Digest the byte ranges, streaming the original document
+     * @param algorithm the digest algorithm, e.g. {@code SHA-256}
+     * @return the digest to sign
+     */
+    public byte[] digest(String algorithm) {
+        int after = contentsOffset + contentsLength;
+        return DocumentDigest.of(algorithm, document, ByteBuffer.wrap(update, 0, contentsOffset),
+                ByteBuffer.wrap(update, after, update.length - after));
+    }
+
+    /**
+     * Fill the placeholder with a signature
+     * @param cms the DER encoded detached CMS signature of the digest
+     * @return this signature
+     * @throws PnSpapiPermanentErrorException if the signature is larger than the placeholder
+     */
+    public PdfSignature sign(byte[] cms) {
+        byte[] hex = latin1(HexFormat.of().withUpperCase().formatHex(cms));
+        if (hex.length > contentsLength - 2) {
+            throw new PnSpapiPermanentErrorException("PDF signature of " + cms.length + " bytes larger than the "
+                    + (contentsLength - 2) / 2 + " bytes reserved, see namirial.server.hash.signature-size");
+        }
+        System.arraycopy(hex, 0, update, contentsOffset + 1, hex.length);
+        return this;
+    }
+
+    /**
+     * Get the signed document
+     * @return the original document followed by the update
+     */
+    public byte[] toByteArray() {
+        byte[] signed = new byte[document.limit() + update.length];
+        document.duplicate().get(signed, 0, document.limit());
+        System.arraycopy(update, 0, signed, document.limit(), update.length);
+        return signed;
+    }
+
+    /**
+     * Write the signed document to a file, replacing it if it exists
+     * @param target the file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer original = document.duplicate();
+            while (original.hasRemaining()) {
+                channel.write(original);
+            }
+            ByteBuffer appended = ByteBuffer.wrap(update);
+            while (appended.hasRemaining()) {
+                channel.write(appended);
+            }
+        }
+    }
+
+    /**
+     * Read the trailer dictionary of the cross-reference table at an offset
+     */
+    private static String trailer(ByteBuffer document, int xref) {
+        int position = skipWhitespace(document, xref);
+        if (!startsWith(document, position, XREF)) {
+            int obj = indexOf(document, OBJ, position);
+            // the update appends a table, whose /Prev must not point to a stream
+            throw unsupported(obj >= 0 && obj <= position + 32 ? "cross-reference stream" : "startxref does not point to a cross-reference table");
+        }
+        int trailer = indexOf(document, TRAILER, position);
+        if (trailer < 0) {
+            throw unsupported("missing trailer after the cross-reference table");
+        }
+        int start = skipWhitespace(document, trailer + TRAILER.length);
+        return text(document, start, dictionaryEnd(document, start));
+    }
+
+    /**
+     * Get the entries of a trailer carried over to the trailer of the update
+     * @return the entries but the replaced ones, each preceded by a space
+     */
+    private static String carriedEntries(String trailer) {
+        ByteBuffer buffer = ByteBuffer.wrap(latin1(trailer));
+        StringBuilder entries = new StringBuilder();
+        int position = 2;
+        while (true) {
+            position = skipWhitespace(buffer, position);
+            if (position >= buffer.limit() || startsWith(buffer, position, ascii(">>"))) {
+                return entries.toString();
+            }
+            if (buffer.get(position) != '/') {
+                throw unsupported("malformed trailer at offset " + position);
+            }
+            int keyEnd = tokenEnd(buffer, position + 1);
+            int valueEnd = valueEnd(buffer, skipWhitespace(buffer, keyEnd));
+            if (!REPLACED_TRAILER_KEYS.contains(text(buffer, position, keyEnd))) {
+                entries.append(' ').append(text(buffer, position, valueEnd));
+            }
+            position = valueEnd;
+        }
+    }
+
+    /**
+     * Find the end of the object starting at a position: a dictionary, an array, a string, a name, an indirect
+     * reference or another single token
+     */
+    private static int valueEnd(ByteBuffer buffer, int start) {
+        if (start >= buffer.limit()) {
+            throw unsupported("missing value at offset " + start);
+        }
+        byte b = buffer.get(start);
+        if (b == '<' && startsWith(buffer, start, ascii("<<"))) {
+            return dictionaryEnd(buffer, start);
+        }
+        if (b == '<') {
+            int end = indexOf(buffer, ascii(">"), start);
+            return end < 0 ? buffer.limit() : end + 1;
+        }
+        if (b == '(') {
+            return stringEnd(buffer, start);
+        }
+        if (b == '[') {
+            int position = skipWhitespace(buffer, start + 1);
+            while (position < buffer.limit() && buffer.get(position) != ']') {
+                position = skipWhitespace(buffer, valueEnd(buffer, position));
+            }
+            return position + 1;
+        }
+        int end = tokenEnd(buffer, b == '/' ? start + 1 : start);
+        if (end == start) {
+            throw unsupported("malformed value at offset " + start);
+        }
+        if (b != '/') {
+            // the object number of an indirect reference, followed by its generation and R
+            Matcher reference = REFERENCE_TAIL.matcher(text(buffer, end, Math.min(buffer.limit(), end + 24)));
+            if (reference.lookingAt()) {
+                return end + reference.end();
+            }
+        }
+        return end;
+    }
+
+    private static int tokenEnd(ByteBuffer buffer, int position) {
+        while (position < buffer.limit() && !isWhitespace(buffer.get(position)) && "()<>[]{}/%".indexOf(buffer.get(position)) < 0) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Find the first page of the document, walking down the page tree from the catalog
+     * @return the page, with its current dictionary
+     */
+    private static PdfObject firstPage(ByteBuffer document, int xref, String catalog) {
+        Matcher node = PAGES.matcher(catalog);
+        if (!node.find()) {
+            throw unsupported("missing /Pages in the catalog");
+        }
+        int number = Integer.parseInt(node.group(1));
+        int generation = Integer.parseInt(node.group(2));
+        for (int depth = 0; depth < MAX_PAGE_TREE_DEPTH; depth++) {
+            String dictionary = dictionary(document, xref, number, generation);
+            if (!PAGE_TREE_NODE.matcher(dictionary).find()) {
+                return new PdfObject(number, generation, dictionary);
+            }
+            Matcher kid = FIRST_KID.matcher(dictionary);
+            if (!kid.find()) {
+                throw unsupported("document without pages");
+            }
+            number = Integer.parseInt(kid.group(1));
+            generation = Integer.parseInt(kid.group(2));
+        }
+        throw unsupported("page tree deeper than " + MAX_PAGE_TREE_DEPTH + " levels");
+    }
+
+    /**
+     * Read the dictionary of the current definition of an object
+     */
+    private static String dictionary(ByteBuffer document, int xref, int number, int generation) {
+        String object = indirectObject(document, xref, number, generation);
+        if (!object.startsWith("<<")) {
+            throw unsupported("object " + number + " " + generation + " is not a dictionary");
+        }
+        return object;
+    }
+
+    /**
+     * Read the current definition of an object, found through the cross-reference sections
+     */
+    private static String indirectObject(ByteBuffer document, int xref, int number, int generation) {
+        int offset = skipWhitespace(document, objectOffset(document, xref, number, generation));
+        byte[] header = ascii(number + " " + generation + " obj");
+        if (!startsWith(document, offset, header)) {
+            throw unsupported("the cross-reference offset of object " + number + " " + generation + " does not point to it");
+        }
+        int start = skipWhitespace(document, offset + header.length);
+        return text(document, start, valueEnd(document, start));
+    }
+
+    /**
+     * Find the offset of the current definition of an object: in each cross-reference section from the last one,
+     * its table, then the cross-reference stream of a hybrid file, then the previous section
+     */
+    private static int objectOffset(ByteBuffer document, int xref, int number, int generation) {
+        Set<Integer> visited = new HashSet<>();
+        int section = xref;
+        while (visited.add(section)) {
+            String trailer = trailer(document, section);
+            long[] entry = tableEntry(document, section, number);
+            Matcher stream = XREF_STM.matcher(trailer);
+            if (entry == null && stream.find()) {
+                entry = streamEntry(document, parseOffset(document, stream.group(1)), number);
+            }
+            if (entry != null) {
+                if (entry[0] == 2) {
+                    throw unsupported("object " + number + " " + generation + " is in a compressed object stream");
+                }
+                if (entry[0] != 1 || entry[2] != generation) {
+                    throw unsupported("object " + number + " " + generation + " is free");
+                }
+                if (entry[1] >= document.limit()) {
+                    throw unsupported("object " + number + " " + generation + " outside the document");
+                }
+                return (int) entry[1];
+            }
+            Matcher prev = PREV.matcher(trailer);
+            if (!prev.find()) {
+                break;
+            }
+            section = parseOffset(document, prev.group(1));
+        }
+        throw unsupported("object " + number + " " + generation + " not found in the cross-reference sections");
+    }
+
+    /**
+     * Find the entry of an object in a cross-reference table
+     * @return the type, 0 for free or 1 for in use, the offset and the generation, or null if not listed
+     */
+    private static long[] tableEntry(ByteBuffer document, int xref, int number) {
+        int position = skipWhitespace(document, xref) + XREF.length;
+        while (true) {
+            position = skipWhitespace(document, position);
+            if (position >= document.limit() || startsWith(document, position, TRAILER)) {
+                return null;
+            }
+            int firstEnd = digitsEnd(document, position);
+            int countStart = skipWhitespace(document, firstEnd);
+            int countEnd = digitsEnd(document, countStart);
+            int first = parseNumber(document, position, firstEnd);
+            int count = parseNumber(document, countStart, countEnd);
+            if (first < 0 || count < 0 || count > document.limit() / XREF_ENTRY_LENGTH) {
+                throw unsupported("malformed cross-reference table at offset " + position);
+            }
+            // each entry is exactly 20 bytes: a 10-digit offset, a 5-digit generation, n or f and the end of line
+            int entries = skipWhitespace(document, countEnd);
+            if (number >= first && number - first < count) {
+                int entry = entries + (number - first) * XREF_ENTRY_LENGTH;
+                if (entry + XREF_ENTRY_LENGTH > document.limit() || digitsEnd(document, entry) != entry + 10
+                        || digitsEnd(document, entry + 11) != entry + 16) {
+                    throw unsupported("malformed cross-reference entry at offset " + entry);
+                }
+                byte type = document.get(entry + 17);
+                if (type != 'n' && type != 'f') {
+                    throw unsupported("malformed cross-reference entry at offset " + entry);
+                }
+                return new long[]{type == 'n' ? 1 : 0, parseNumber(document, entry, entry + 10), parseNumber(document, entry + 11, entry + 16)};
+            }
+            position = entries + count * XREF_ENTRY_LENGTH;
+        }
+    }
+
+    /**
+     * Find the entry of an object in the cross-reference stream of a hybrid file, uncompressed or flate encoded
+     * @return the type, 0 for free, 1 for in use or 2 for compressed, the second field and the third field, or null
+     * if not listed
+     */
+    private static long[] streamEntry(ByteBuffer document, int offset, int number) {
+        int start = skipWhitespace(document, indexOf(document, OBJ, offset) + OBJ.length);
+        int dictionaryEnd = dictionaryEnd(document, start);
+        String dictionary = text(document, start, dictionaryEnd);
+        Matcher widths = WIDTHS.matcher(dictionary);
+        Matcher length = LENGTH.matcher(dictionary);
+        if (!widths.find() || !length.find() || length.group(2) != null) {
+            throw unsupported("cross-reference stream without /W or direct /Length");
+        }
+        int[] width = {Integer.parseInt(widths.group(1)), Integer.parseInt(widths.group(2)), Integer.parseInt(widths.group(3))};
+        int entryLength = width[0] + width[1] + width[2];
+        int data = skipWhitespace(document, dictionaryEnd);
+        if (!startsWith(document, data, STREAM)) {
+            throw unsupported("malformed cross-reference stream at offset " + offset);
+        }
+        // the stream keyword ends with CRLF or LF
+        data += STREAM.length;
+        data += document.get(data) == '\r' ? 2 : 1;
+        byte[] entries = decodeStream(dictionary, document, data, Integer.parseInt(length.group(1)), entryLength);
+
+        Matcher index = INDEX.matcher(dictionary);
+        Matcher size = SIZE.matcher(dictionary);
+        String[] ranges = index.find() ? index.group(1).trim().split("\\s+") : new String[]{"0", size.find() ? size.group(1) : "0"};
+        int row = 0;
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            int first = Integer.parseInt(ranges[i]);
+            int count = Integer.parseInt(ranges[i + 1]);
+            if (number >= first && number - first < count) {
+                int entry = (row + number - first) * entryLength;
+                if (entry + entryLength > entries.length) {
+                    throw unsupported("truncated cross-reference stream at offset " + offset);
+                }
+                // a missing type field means in use
+                long type = width[0] == 0 ? 1 : bigEndian(entries, entry, width[0]);
+                return new long[]{type, bigEndian(entries, entry + width[0], width[1]), bigEndian(entries, entry + width[0] + width[1], width[2])};
+            }
+            row += count;
+        }
+        return null;
+    }
+
+    /**
+     * Decode the data of a cross-reference stream: inflate it if flate encoded, then undo its PNG predictor
+     */
+    private static byte[] decodeStream(String dictionary, ByteBuffer document, int data, int length, int columns) {
+        if (data + length > document.limit()) {
+            throw unsupported("cross-reference stream past the end of the document");
+        }
+        byte[] encoded = new byte[length];
+        document.duplicate().position(data).get(encoded);
+        Matcher filter = FILTER.matcher(dictionary);
+        if (!filter.find()) {
+            return encoded;
+        }
+        if (!"FlateDecode".equals(filter.group(1))) {
+            throw unsupported("cross-reference stream encoded with " + filter.group(1));
+        }
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(length * 4);
+        try {
+            inflater.setInput(encoded);
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(chunk);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                decoded.write(chunk, 0, inflated);
+            }
+        } catch (DataFormatException e) {
+            throw unsupported("corrupt cross-reference stream: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        Matcher predictor = PREDICTOR.matcher(dictionary);
+        if (!predictor.find() || Integer.parseInt(predictor.group(1)) < 10) {
+            return decoded.toByteArray();
+        }
+        Matcher columnsEntry = COLUMNS.matcher(dictionary);
+        return unpredict(decoded.toByteArray(), columnsEntry.find() ? Integer.parseInt(columnsEntry.group(1)) : columns);
+    }
+
+    /**
+     * Undo the PNG predictor of a stream: each row starts with the byte of its filter
+     */
+    private static byte[] unpredict(byte[] rows, int columns) {
+        int count = rows.length / (columns + 1);
+        byte[] out = new byte[count * columns];
+        for (int row = 0; row < count; row++) {
+            int filter = rows[row * (columns + 1)];
+            for (int column = 0; column < columns; column++) {
+                int raw = rows[row * (columns + 1) + 1 + column] & 0xff;
+                int left = column > 0 ? out[row * columns + column - 1] & 0xff : 0;
+                int up = row > 0 ? out[(row - 1) * columns + column] & 0xff : 0;
+                int upLeft = row > 0 && column > 0 ? out[(row - 1) * columns + column - 1] & 0xff : 0;
+                int predicted = switch (filter) {
+                    case 0 -> 0;
+                    case 1 -> left;
+                    case 2 -> up;
+                    case 3 -> (left + up) / 2;
+                    case 4 -> paeth(left, up, upLeft);
+                    default -> throw unsupported("unknown PNG predictor " + filter + " in a cross-reference stream");
+                };
+                out[row * columns + column] = (byte) (raw + predicted);
+            }
+        }
+        return out;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int toLeft = Math.abs(estimate - left);
+        int toUp = Math.abs(estimate - up);
+        int toUpLeft = Math.abs(estimate - upLeft);
+        if (toLeft <= toUp && toLeft <= toUpLeft) {
+            return left;
+        }
+        return toUp <= toUpLeft ? up : upLeft;
+    }
+
+    private static long bigEndian(byte[] entries, int offset, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = value << 8 | entries[offset + i] & 0xff;
+        }
+        return value;
+    }
+
+    private static int parseOffset(ByteBuffer document, String offset) {
+        long value = Long.parseLong(offset);
+        if (value >= document.limit()) {
+            throw unsupported("cross-reference offset " + offset + " outside the document");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Add a widget annotation to a page dictionary with no indirect {@code /Annots} array
+     */
+    private static String addAnnotation(String page, String annotation) {
+        Matcher annots = ANNOTS_ARRAY.matcher(page);
+        if (annots.find()) {
+            return addToArray(page, annots.end() - 1, annotation);
+        }
+        return "<< /Annots [" + annotation + "] " + page.substring(2);
+    }
+
+    /**
+     * Add an element at the end of the array opening at a position
+     */
+    private static String addToArray(String text, int open, String element) {
+        int close = valueEnd(ByteBuffer.wrap(latin1(text)), open) - 1;
+        return text.substring(0, close) + " " + element + text.substring(close);
+    }
+
+    /**
+     * Add a field to an AcroForm dictionary and flag the document as signed
+     */
+    private static String addField(String form, String field) {
+        Matcher fields = FIELDS_ARRAY.matcher(form);
+        String added;
+        if (fields.find()) {
+            int close = form.indexOf(']', fields.end());
+            added = form.substring(0, close) + " " + field + form.substring(close);
+        } else if (FIELDS.matcher(form).find()) {
+            throw unsupported("indirect AcroForm fields");
+        } else {
+            added = "<< /Fields [" + field + "] " + form.substring(2);
+        }
+        Matcher sigFlags = SIG_FLAGS.matcher(added);
+        return sigFlags.find() ? sigFlags.replaceFirst("/SigFlags 3") : "<< /SigFlags 3 " + added.substring(2);
+    }
+
+    /**
+     * Find the end of the dictionary starting at a position, skipping the strings and nested dictionaries
+     * @return the position after its closing {@code >>}
+     */
+    private static int dictionaryEnd(ByteBuffer buffer, int start) {
+        if (!startsWith(buffer, start, ascii("<<"))) {
+            throw unsupported("dictionary expected at offset " + start);
+        }
+        int depth = 0;
+        int position = start;
+        int limit = buffer.limit();
+        while (position < limit) {
+            byte b = buffer.get(position);
+            boolean pair = position + 1 < limit && buffer.get(position + 1) == b;
+            if (b == '<' && pair) {
+                depth++;
+                position += 2;
+            } else if (b == '>' && pair) {
+                position += 2;
+                if (--depth == 0) {
+                    return position;
+                }
+            } else if (b == '<') {
+                // hex string
+                while (position < limit && buffer.get(position) != '>') {
+                    position++;
+                }
+                position++;
+            } else if (b == '(') {
+                position = stringEnd(buffer, position);
+            } else {
+                position++;
+            }
+        }
+        throw unsupported("unterminated dictionary at offset " + start);
+    }
+
+    /**
+     * Find the end of the literal string starting at a position, with its balanced parentheses and escapes
+     */
+    private static int stringEnd(ByteBuffer buffer, int start) {
+        int depth = 0;
+        int position = start;
+        while (position < buffer.limit()) {
+            byte b = buffer.get(position++);
+            if (b == '\\') {
+                position++;
+            } else if (b == '(') {
+                depth++;
+            } else if (b == ')' && --depth == 0) {
+                return position;
+            }
+        }
+        return position;
+    }
+
+    private static int digitsEnd(ByteBuffer buffer, int position) {
+        while (position < buffer.limit() && isDigit(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int parseNumber(ByteBuffer buffer, int from, int to) {
+        int position = skipWhitespace(buffer, from);
+        long number = -1;
+        while (position < to && isDigit(buffer.get(position))) {
+            number = (number < 0 ? 0 : number * 10) + buffer.get(position++) - '0';
+            if (number > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) number;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern, int from) {
+        for (int i = from; i <= buffer.limit() - pattern.length; i++) {
+            if (startsWith(buffer, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+        for (int i = to - pattern.length; i >= from; i--) {
+            if (startsWith(buffer, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int position, byte[] pattern) {
+        if (position + pattern.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (buffer.get(position + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int position) {
+        while (position < buffer.limit() && isWhitespace(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\r' || b == '\n' || b == '\t' || b == '\f' || b == 0;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static String text(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.duplicate().position(from).get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] latin1(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static UnsupportedPdfException unsupported(String reason) {
+        return new UnsupportedPdfException("Unsupported PDF document for hash signing: " + reason);
+    }
+
+    /**
+     * An object of the update; the body of the signature dictionary is written in place
+     */
+    private record PdfObject(int number, int generation, String body) {
+    }
+}
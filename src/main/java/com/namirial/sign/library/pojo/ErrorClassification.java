@@ -0,0 +1,13 @@
+package com.namirial.sign.library.pojo;
+
+/**
+ * Classification of the errors returned by the SignBox service
+ */
+public enum ErrorClassification {
+    /** The request is wrong and must not be retried */
+    PERMANENT,
+    /** The service failed and the request may be retried */
+    TEMPORARY,
+    /** The service refused the request for now, e.g. for a quota, and the request may be retried later */
+    THROTTLED
+}
@@ -0,0 +1,23 @@
+package com.namirial.sign.library.pojo;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * A document of a sign batch
+ */
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+public class PnSignBatchRequest {
+    /** Identifier of the document, returned with its result */
+    String correlationId;
+    byte[] fileBytes;
+    /** One of the {@link SignatureFormat} values */
+    String format;
+    Boolean timestamping;
+}
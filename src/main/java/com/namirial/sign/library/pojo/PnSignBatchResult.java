@@ -0,0 +1,34 @@
+package com.namirial.sign.library.pojo;
+
+import it.pagopa.pn.library.sign.pojo.PnSignDocumentResponse;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * The result of a document of a sign batch: either the signed document or the error of its request
+ */
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+public class PnSignBatchResult {
+    String correlationId;
+    PnSignDocumentResponse response;
+    /** A {@code PnSpapiPermanentErrorException} or a {@code PnSpapiTemporaryErrorException} */
+    Throwable error;
+
+    public static PnSignBatchResult success(String correlationId, PnSignDocumentResponse response) {
+        return new PnSignBatchResult(correlationId, response, null);
+    }
+
+    public static PnSignBatchResult failure(String correlationId, Throwable error) {
+        return new PnSignBatchResult(correlationId, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
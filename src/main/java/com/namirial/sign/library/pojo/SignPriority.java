@@ -0,0 +1,16 @@
+package com.namirial.sign.library.pojo;
+
+/**
+ * Priority of a sign request, ordering the requests waiting for a connection when the scheduler is enabled
+ */
+public enum SignPriority {
+    /** A user is waiting for the signed document */
+    INTERACTIVE,
+    /** The default priority */
+    NORMAL,
+    /**
+     * Bulk signatures, overtaken by the waiting requests of higher priority arrived up to one priority step
+     * ({@code NORMAL}) or two ({@code INTERACTIVE}) after them, but not by later ones
+     */
+    BATCH
+}
@@ -0,0 +1,220 @@
+package com.namirial.sign.library.resilience;
+
+import com.namirial.sign.library.config.AdaptiveLimiterConfig;
+import com.namirial.sign.library.exceptions.LocalRejectionException;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AIMD concurrency limiter.
+ * <p>
+ * Calls run while fewer than {@code limit} are in flight; the others wait in a bounded queue for at most
+ * {@code maxQueueWait} and are shed with a {@link LocalRejectionException} beyond that, or at once
+ * when the queue is full. The limit grows by one on each good call completed while the limit was at least
+ * half used, and is multiplied by {@code backoffRatio} on each call that fails with a temporary error or
+ * lasts more than {@code slowCallThreshold}, so the allowed concurrency tracks what the server sustains.
+ * A permit is released before the outcome of its call reaches the caller, so that the stages around the limiter,
+ * e.g. the scheduler sized from {@link #getLimit()}, see it free once their own call ends.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private final AdaptiveLimiterConfig config;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+
+    /**
+     * Create a limiter
+     * @param config the limiter settings
+     * @param poolSize the size of the connection pool, used when the initial or maximum limit is not set
+     */
+    public AdaptiveConcurrencyLimiter(AdaptiveLimiterConfig config, int poolSize) {
+        this.config = config;
+        this.maxLimit = config.getMaxLimit() != null ? config.getMaxLimit() : poolSize;
+        this.minLimit = Math.min(Math.max(1, config.getMinLimit()), maxLimit);
+        int initialLimit = config.getInitialLimit() != null ? config.getInitialLimit() : maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Run a call under the limit
+     * @param call the call to run
+     * @return the call, delayed until a permit is available, or failing with a temporary error if shed
+     */
+    public <T> Mono<T> limit(Mono<T> call) {
+        return acquire().flatMap(permit -> call
+                .doOnError(permit::onError)
+                .doOnTerminate(() -> permit.release(true))
+                .doOnCancel(() -> permit.release(false)));
+    }
+
+    /**
+     * Run a streaming call under the limit
+     * @param call the call to run
+     * @return the call, delayed until a permit is available, or failing with a temporary error if shed
+     */
+    public <T> Flux<T> limit(Flux<T> call) {
+        return acquire().flatMapMany(permit -> call
+                .doOnError(permit::onError)
+                .doOnTerminate(() -> permit.release(true))
+                .doOnCancel(() -> permit.release(false)));
+    }
+
+    /**
+     * Get the current limit
+     * @return the number of calls allowed in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of calls in flight
+     * @return the number of calls holding a permit
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the number of waiting calls
+     * @return the number of calls in the queue
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    private Mono<Permit> acquire() {
+        Duration maxQueueWait = config.getMaxQueueWait();
+        return Mono.<Permit>create(sink -> {
+                    Waiter waiter = new Waiter(sink);
+                    synchronized (this) {
+                        if (inFlight < (int) limit) {
+                            waiter.permit = grant();
+                        } else if (queue.size() < config.getMaxQueueSize()) {
+                            queue.addLast(waiter);
+                        } else {
+                            sink.error(shed("queue is full"));
+                            return;
+                        }
+                    }
+                    sink.onCancel(() -> cancel(waiter));
+                    if (waiter.permit != null) {
+                        waiter.deliver();
+                    }
+                })
+                .timeout(maxQueueWait, Mono.error(() -> shed("no permit within " + maxQueueWait)));
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                return;
+            }
+        }
+        // granted while being cancelled
+        waiter.releaseUndelivered();
+    }
+
+    private Permit grant() {
+        inFlight++;
+        return new Permit(inFlight, System.nanoTime());
+    }
+
+    private void onComplete(Permit permit, boolean adjust) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            // cancelled calls say nothing about the server
+            if (adjust) {
+                adjustLimit(permit);
+            }
+            Waiter next;
+            while (inFlight < (int) limit && (next = queue.pollFirst()) != null) {
+                next.permit = grant();
+                granted.add(next);
+            }
+        }
+        granted.forEach(Waiter::deliver);
+    }
+
+    private void adjustLimit(Permit permit) {
+        if (permit.dropped) {
+            limit = Math.max(minLimit, limit * config.getBackoffRatio());
+            log.debug("Concurrency limit decreased to {}", (int) limit);
+        } else if (permit.inFlightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    private static LocalRejectionException shed(String reason) {
+        return new LocalRejectionException("SignBox concurrency limit reached: " + reason, new TimeoutException(reason));
+    }
+
+    /**
+     * A pending acquisition; its permit is set under the limiter lock when granted
+     */
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private volatile Permit permit;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+
+        private void deliver() {
+            sink.success(permit);
+        }
+
+        private void releaseUndelivered() {
+            Permit granted = permit;
+            if (granted != null) {
+                granted.release(false);
+            }
+        }
+    }
+
+    /**
+     * The right to run one call
+     */
+    private final class Permit {
+        private final int inFlightAtStart;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean dropped;
+
+        private Permit(int inFlightAtStart, long startNanos) {
+            this.inFlightAtStart = inFlightAtStart;
+            this.startNanos = startNanos;
+        }
+
+        private void onError(Throwable t) {
+            // calls rejected locally, e.g. by the open circuit breaker, were not sent
+            dropped = !(t instanceof PnSpapiPermanentErrorException) && !(t instanceof LocalRejectionException);
+        }
+
+        private void release(boolean adjust) {
+            if (released.compareAndSet(false, true)) {
+                if (System.nanoTime() - startNanos > config.getSlowCallThreshold().toNanos()) {
+                    dropped = true;
+                }
+                onComplete(this, adjust);
+            }
+        }
+    }
+}
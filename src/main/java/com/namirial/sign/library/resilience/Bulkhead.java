@@ -0,0 +1,210 @@
+package com.namirial.sign.library.resilience;
+
+import com.namirial.sign.library.config.BulkheadConfig;
+import com.namirial.sign.library.exceptions.LocalRejectionException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bulkheads partitioning the connections of a pool.
+ * <p>
+ * Each partition runs at most its share of the pool size in parallel, at least one call; the others wait in
+ * first-in first-out order for at most {@code maxQueueWait} and are rejected with a
+ * {@link LocalRejectionException} beyond that. Shares may add up to more than one, in which case the
+ * partitions only compete for the pool when all of them are busy.
+ * <p>
+ * The partitions are the formats or tenants listed in the shares, built with the bulkheads; all the others share
+ * the {@value #DEFAULT_PARTITION} partition, of the default share, so that the number of partitions stays bounded
+ * whatever the keys of the calls.
+ */
+@Slf4j
+public class Bulkhead {
+
+    /** Name of the partition shared by the formats or tenants not listed in the shares */
+    public static final String DEFAULT_PARTITION = "default";
+
+    private final BulkheadConfig config;
+    private final Map<String, Partition> partitions;
+    private final Partition defaultPartition;
+
+    /**
+     * Create the bulkheads
+     * @param config the bulkhead settings
+     * @param poolSize the size of the connection pool shared by the partitions
+     */
+    public Bulkhead(BulkheadConfig config, int poolSize) {
+        this.config = config;
+        Map<String, Partition> listed = new HashMap<>();
+        config.getShares().forEach((key, share) -> listed.put(key, new Partition(key, limitOf(poolSize, share))));
+        this.partitions = Map.copyOf(listed);
+        this.defaultPartition = new Partition(DEFAULT_PARTITION, limitOf(poolSize, config.getDefaultShare()));
+    }
+
+    /**
+     * Run a call in a partition
+     * @param partition the format or tenant of the call
+     * @param call the call to run
+     * @return the call, delayed until its partition has room, or failing with a temporary error if rejected
+     */
+    public <T> Mono<T> limit(String partition, Mono<T> call) {
+        Partition bulkhead = partition(partition);
+        return bulkhead.acquire().flatMap(permit -> call.doFinally(signal -> permit.release()));
+    }
+
+    /**
+     * Run a streaming call in a partition
+     * @param partition the format or tenant of the call
+     * @param call the call to run
+     * @return the call, delayed until its partition has room, or failing with a temporary error if rejected
+     */
+    public <T> Flux<T> limit(String partition, Flux<T> call) {
+        Partition bulkhead = partition(partition);
+        return bulkhead.acquire().flatMapMany(permit -> call.doFinally(signal -> permit.release()));
+    }
+
+    /**
+     * Get the number of calls allowed in parallel in a partition
+     * @param partition the format or tenant
+     * @return the share of the pool size of the partition, at least one; the default partition's if not listed
+     */
+    public int getLimit(String partition) {
+        return partition(partition).limit;
+    }
+
+    /**
+     * Get the number of calls running in a partition
+     * @param partition the format or tenant
+     * @return the number of calls holding a permit of the partition, the default one if not listed
+     */
+    public int getInFlight(String partition) {
+        Partition bulkhead = partition(partition);
+        synchronized (bulkhead) {
+            return bulkhead.inFlight;
+        }
+    }
+
+    private Partition partition(String partition) {
+        return partition == null ? defaultPartition : partitions.getOrDefault(partition, defaultPartition);
+    }
+
+    private static int limitOf(int poolSize, double share) {
+        return Math.max(1, (int) Math.round(poolSize * Math.min(1, share)));
+    }
+
+    /**
+     * The calls of one partition
+     */
+    private final class Partition {
+        private final String name;
+        private final int limit;
+        private final Deque<Waiter> queue = new ArrayDeque<>();
+        private int inFlight;
+
+        private Partition(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+        }
+
+        private Mono<Permit> acquire() {
+            Duration maxQueueWait = config.getMaxQueueWait();
+            return Mono.<Permit>create(sink -> {
+                        Waiter waiter = new Waiter(sink);
+                        synchronized (this) {
+                            if (inFlight < limit) {
+                                inFlight++;
+                                waiter.permit = new Permit(this);
+                            } else {
+                                queue.addLast(waiter);
+                            }
+                        }
+                        sink.onCancel(() -> cancel(waiter));
+                        if (waiter.permit != null) {
+                            waiter.deliver();
+                        }
+                    })
+                    .timeout(maxQueueWait, Mono.error(() -> rejected("no connection within " + maxQueueWait)));
+        }
+
+        private void cancel(Waiter waiter) {
+            synchronized (this) {
+                if (queue.remove(waiter)) {
+                    return;
+                }
+            }
+            // granted while being cancelled
+            waiter.releaseUndelivered();
+        }
+
+        private void release() {
+            Waiter next;
+            synchronized (this) {
+                next = queue.pollFirst();
+                if (next == null) {
+                    inFlight--;
+                } else {
+                    // the slot is handed over to the next call
+                    next.permit = new Permit(this);
+                }
+            }
+            if (next != null) {
+                next.deliver();
+            }
+        }
+
+        private LocalRejectionException rejected(String reason) {
+            log.warn("SignBox bulkhead {} of {} connections full: {}", name, limit, reason);
+            return new LocalRejectionException("SignBox bulkhead " + name + " full: " + reason, new TimeoutException(reason));
+        }
+    }
+
+    /**
+     * A pending acquisition; its permit is set under the partition lock when granted
+     */
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private volatile Permit permit;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+
+        private void deliver() {
+            sink.success(permit);
+        }
+
+        private void releaseUndelivered() {
+            Permit granted = permit;
+            if (granted != null) {
+                granted.release();
+            }
+        }
+    }
+
+    /**
+     * The right to run one call in a partition
+     */
+    private static final class Permit {
+        private final Partition partition;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Partition partition) {
+            this.partition = partition;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                partition.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.namirial.sign.library.resilience;
+
+import com.namirial.sign.library.config.CircuitBreakerConfig;
+import com.namirial.sign.library.exceptions.CircuitBreakerOpenException;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Circuit breaker around the SignBox service.
+ * <p>
+ * While closed, the outcome of the latest {@code windowSize} calls is recorded; when at least {@code minCalls} are
+ * recorded and the rate of failures (temporary errors) or of slow calls reaches its threshold, the breaker opens and
+ * calls fail at once with a {@link CircuitBreakerOpenException}. After {@code openDuration} it becomes half-open and
+ * lets {@code halfOpenCalls} trial calls through: it closes if their rates are below the thresholds, and opens again
+ * otherwise. Permanent errors are answers of the service, so they count as successes.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    /**
+     * State of the breaker
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final CircuitBreakerConfig config;
+    private final byte[] window;
+
+    private State state = State.CLOSED;
+    // incremented on each transition, so that late outcomes of the previous state are ignored
+    private long generation;
+    private long openUntilNanos;
+
+    private int windowNext;
+    private int windowCount;
+    private int failures;
+    private int slowCalls;
+
+    private int trialsStarted;
+    private int trialsCompleted;
+    private int trialFailures;
+    private int trialSlowCalls;
+
+    /**
+     * Create a closed breaker
+     * @param config the breaker settings
+     */
+    public CircuitBreaker(CircuitBreakerConfig config) {
+        this.config = config;
+        this.window = new byte[Math.max(1, config.getWindowSize())];
+    }
+
+    /**
+     * Run a call through the breaker
+     * @param call the call to run
+     * @return the call, or a {@link CircuitBreakerOpenException} if the breaker does not permit it
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            Call permit = acquire();
+            return call.doOnError(permit::onError).doFinally(permit::complete);
+        });
+    }
+
+    /**
+     * Run a streaming call through the breaker
+     * @param call the call to run
+     * @return the call, or a {@link CircuitBreakerOpenException} if the breaker does not permit it
+     */
+    public <T> Flux<T> protect(Flux<T> call) {
+        return Flux.defer(() -> {
+            Call permit = acquire();
+            return call.doOnError(permit::onError).doFinally(permit::complete);
+        });
+    }
+
+    /**
+     * Get the current state
+     * @return the state of the breaker
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Get the failure rate of the calls in the window
+     * @return the percentage of failed calls, or 0 if no call is recorded
+     */
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? 0 : failures * 100.0 / windowCount;
+    }
+
+    /**
+     * Get the slow call rate of the calls in the window
+     * @return the percentage of slow calls, or 0 if no call is recorded
+     */
+    public synchronized double getSlowCallRate() {
+        return windowCount == 0 ? 0 : slowCalls * 100.0 / windowCount;
+    }
+
+    private synchronized Call acquire() {
+        long now = System.nanoTime();
+        if (state == State.OPEN) {
+            if (now - openUntilNanos < 0) {
+                throw new CircuitBreakerOpenException("SignBox circuit breaker is open", Duration.ofNanos(openUntilNanos - now));
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= config.getHalfOpenCalls()) {
+                throw new CircuitBreakerOpenException("SignBox circuit breaker is half-open, waiting for trial calls", null);
+            }
+            trialsStarted++;
+        }
+        return new Call(generation, now);
+    }
+
+    private synchronized void onComplete(Call call, SignalType signal) {
+        if (call.generation != generation) {
+            return;
+        }
+        if (signal == SignalType.CANCEL) {
+            // cancelled calls say nothing about the service
+            if (state == State.HALF_OPEN) {
+                trialsStarted--;
+            }
+            return;
+        }
+        byte outcome = 0;
+        if (call.failed) {
+            outcome |= FAILURE;
+        }
+        if (System.nanoTime() - call.startNanos > config.getSlowCallDuration().toNanos()) {
+            outcome |= SLOW;
+        }
+        if (state == State.HALF_OPEN) {
+            onTrialComplete(outcome);
+        } else {
+            record(outcome);
+            if (windowCount >= config.getMinCalls() && exceedsThresholds(failures, slowCalls, windowCount)) {
+                log.warn("SignBox circuit breaker opened: failure rate {}%, slow call rate {}%", getFailureRate(), getSlowCallRate());
+                transition(State.OPEN);
+            }
+        }
+    }
+
+    private void onTrialComplete(byte outcome) {
+        trialsCompleted++;
+        trialFailures += outcome & FAILURE;
+        trialSlowCalls += (outcome & SLOW) >> 1;
+        if (trialsCompleted < config.getHalfOpenCalls()) {
+            return;
+        }
+        if (exceedsThresholds(trialFailures, trialSlowCalls, trialsCompleted)) {
+            log.warn("SignBox circuit breaker opened again after {} failed and {} slow trial calls", trialFailures, trialSlowCalls);
+            transition(State.OPEN);
+        } else {
+            log.info("SignBox circuit breaker closed");
+            transition(State.CLOSED);
+        }
+    }
+
+    private boolean exceedsThresholds(int failed, int slow, int total) {
+        return failed * 100.0 / total >= config.getFailureRateThreshold()
+                || slow * 100.0 / total >= config.getSlowCallRateThreshold();
+    }
+
+    private void record(byte outcome) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowNext];
+            failures -= evicted & FAILURE;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = outcome;
+        failures += outcome & FAILURE;
+        slowCalls += (outcome & SLOW) >> 1;
+        windowNext = (windowNext + 1) % window.length;
+    }
+
+    private void transition(State next) {
+        state = next;
+        generation++;
+        trialsStarted = 0;
+        trialsCompleted = 0;
+        trialFailures = 0;
+        trialSlowCalls = 0;
+        if (next == State.OPEN) {
+            openUntilNanos = System.nanoTime() + config.getOpenDuration().toNanos();
+        } else if (next == State.CLOSED) {
+            windowNext = 0;
+            windowCount = 0;
+            failures = 0;
+            slowCalls = 0;
+        } else {
+            log.info("SignBox circuit breaker half-open, letting {} trial calls through", config.getHalfOpenCalls());
+        }
+    }
+
+    /**
+     * A call permitted by the breaker
+     */
+    private final class Call {
+        private final long generation;
+        private final long startNanos;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile boolean failed;
+
+        private Call(long generation, long startNanos) {
+            this.generation = generation;
+            this.startNanos = startNanos;
+        }
+
+        private void onError(Throwable t) {
+            failed = !(t instanceof PnSpapiPermanentErrorException);
+        }
+
+        private void complete(SignalType signal) {
+            if (completed.compareAndSet(false, true)) {
+                onComplete(this, signal);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.namirial.sign.library.resilience;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Sliding window of the latest call latencies, used to compute the hedging delay.
+ */
+public class LatencyTracker {
+
+    public static final int DEFAULT_WINDOW_SIZE = 512;
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    /**
+     * Create a tracker over the {@value #DEFAULT_WINDOW_SIZE} latest latencies
+     */
+    public LatencyTracker() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a tracker
+     * @param windowSize the number of latest latencies kept
+     */
+    public LatencyTracker(int windowSize) {
+        this.samples = new long[windowSize];
+    }
+
+    /**
+     * Record a latency
+     * @param nanos the latency in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Compute a quantile of the recorded latencies
+     * @param quantile the quantile, between 0 and 1
+     * @param minSamples the number of latencies required
+     * @return the quantile, or null if fewer than {@code minSamples} latencies were recorded
+     */
+    public Duration quantile(double quantile, int minSamples) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0 || count < minSamples) {
+                return null;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return Duration.ofNanos(sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+    }
+}
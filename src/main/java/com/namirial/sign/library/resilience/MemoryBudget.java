@@ -0,0 +1,195 @@
+package com.namirial.sign.library.resilience;
+
+import com.namirial.sign.library.config.MemoryBudgetConfig;
+import com.namirial.sign.library.exceptions.LocalRejectionException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Budget of the heap held by the sign calls in flight.
+ * <p>
+ * Each call reserves the bytes it keeps on heap before it starts, and returns them when it terminates. Calls that
+ * do not fit in {@code maxInFlightBytes} wait in first-in first-out order, so that a large document is not starved
+ * by smaller ones, for at most {@code maxQueueWait}; beyond that, or at once if the wait is zero, they are rejected
+ * with a {@link LocalRejectionException}. A call larger than the whole budget runs alone.
+ */
+@Slf4j
+public class MemoryBudget {
+
+    private final MemoryBudgetConfig config;
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+
+    private long reserved;
+
+    /**
+     * Create an unused budget
+     * @param config the budget settings
+     */
+    public MemoryBudget(MemoryBudgetConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Run a call within the budget
+     * @param call the call to run
+     * @param bytes the heap held by the call
+     * @return the call, delayed until the bytes are reserved, or failing with a temporary error if rejected
+     */
+    public <T> Mono<T> reserve(Mono<T> call, long bytes) {
+        return acquire(bytes).flatMap(reservation -> call.doFinally(signal -> reservation.release()));
+    }
+
+    /**
+     * Run a streaming call within the budget
+     * @param call the call to run
+     * @param bytes the heap held by the call
+     * @return the call, delayed until the bytes are reserved, or failing with a temporary error if rejected
+     */
+    public <T> Flux<T> reserve(Flux<T> call, long bytes) {
+        return acquire(bytes).flatMapMany(reservation -> call.doFinally(signal -> reservation.release()));
+    }
+
+    /**
+     * Get the reserved bytes
+     * @return the heap held by the calls in flight
+     */
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Get the number of waiting calls
+     * @return the number of calls in the queue
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    private Mono<Reservation> acquire(long bytes) {
+        Duration maxQueueWait = config.getMaxQueueWait();
+        boolean wait = !maxQueueWait.isZero() && !maxQueueWait.isNegative();
+        Mono<Reservation> reservation = Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, bytes);
+            synchronized (this) {
+                if (queue.isEmpty() && fits(bytes)) {
+                    waiter.reservation = grant(bytes);
+                } else if (wait) {
+                    queue.addLast(waiter);
+                } else {
+                    sink.error(rejected(bytes + " bytes do not fit"));
+                    return;
+                }
+            }
+            sink.onCancel(() -> cancel(waiter));
+            if (waiter.reservation != null) {
+                waiter.deliver();
+            }
+        });
+        return wait
+                ? reservation.timeout(maxQueueWait, Mono.error(() -> rejected("no room for " + bytes + " bytes within " + maxQueueWait)))
+                : reservation;
+    }
+
+    private boolean fits(long bytes) {
+        return reserved == 0 || reserved + bytes <= config.getMaxInFlightBytes();
+    }
+
+    private void cancel(Waiter waiter) {
+        List<Waiter> granted = null;
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                // the calls queued behind a large one may fit now
+                granted = grantWaiting();
+            }
+        }
+        if (granted != null) {
+            granted.forEach(Waiter::deliver);
+        } else {
+            // granted while being cancelled
+            waiter.releaseUndelivered();
+        }
+    }
+
+    private Reservation grant(long bytes) {
+        reserved += bytes;
+        return new Reservation(bytes);
+    }
+
+    private void onRelease(long bytes) {
+        List<Waiter> granted;
+        synchronized (this) {
+            reserved -= bytes;
+            granted = grantWaiting();
+        }
+        granted.forEach(Waiter::deliver);
+    }
+
+    private List<Waiter> grantWaiting() {
+        List<Waiter> granted = new ArrayList<>();
+        Waiter next;
+        while ((next = queue.peekFirst()) != null && fits(next.bytes)) {
+            queue.pollFirst();
+            next.reservation = grant(next.bytes);
+            granted.add(next);
+        }
+        return granted;
+    }
+
+    private LocalRejectionException rejected(String reason) {
+        log.warn("SignBox memory budget of {} bytes exceeded: {}", config.getMaxInFlightBytes(), reason);
+        return new LocalRejectionException("SignBox memory budget exceeded: " + reason, new TimeoutException(reason));
+    }
+
+    /**
+     * A pending reservation; it is set under the budget lock when granted
+     */
+    private static final class Waiter {
+        private final MonoSink<Reservation> sink;
+        private final long bytes;
+        private volatile Reservation reservation;
+
+        private Waiter(MonoSink<Reservation> sink, long bytes) {
+            this.sink = sink;
+            this.bytes = bytes;
+        }
+
+        private void deliver() {
+            sink.success(reservation);
+        }
+
+        private void releaseUndelivered() {
+            Reservation granted = reservation;
+            if (granted != null) {
+                granted.release();
+            }
+        }
+    }
+
+    /**
+     * The bytes reserved by one call
+     */
+    private final class Reservation {
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                onRelease(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.namirial.sign.library.resilience;
+
+import com.namirial.sign.library.config.RateLimitConfig;
+import com.namirial.sign.library.exceptions.LocalRejectionException;
+import com.namirial.sign.library.pojo.ErrorClassification;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client-side rate limiter of the requests sent with an API key, with a token bucket in requests per second and
+ * another in bytes per second.
+ * <p>
+ * Each request takes one request token and a token per byte, and waits until both buckets hold them. The buckets
+ * hold at most {@code burst} of traffic at the full rate; a request larger than a bucket runs once the bucket is
+ * full and leaves it in debt, delaying the next ones. A request that would wait longer than {@code maxWait}, or at
+ * all if the wait is zero, is rejected with a throttled {@link SignServiceTemporaryErrorException} whose
+ * {@code Retry-After} is the wait. A request cancelled while waiting gives its tokens back.
+ * <p>
+ * The rates apply to an API key, whatever the client sending with it: the limiters built with
+ * {@link #forApiKey(RateLimitConfig, String, ThrottleListener)} share the buckets of their key.
+ */
+@Slf4j
+public class RateLimiter {
+
+    // the buckets of each API key, shared by the clients sending with it
+    private static final Map<String, Buckets> sharedBuckets = new ConcurrentHashMap<>();
+
+    private final Duration maxWait;
+    private final Buckets buckets;
+    private final ThrottleListener listener;
+
+    /**
+     * Listener of the throttled requests, e.g. to record metrics
+     */
+    @FunctionalInterface
+    public interface ThrottleListener {
+        /**
+         * @param wait the time the request waits, or would have waited if rejected
+         * @param rejected true if the request is rejected
+         */
+        void onThrottle(Duration wait, boolean rejected);
+    }
+
+    /**
+     * Create a limiter with full buckets
+     * @param config the rate limiting settings
+     * @param limit the rates of the API key
+     * @param listener the listener of the throttled requests
+     */
+    public RateLimiter(RateLimitConfig config, RateLimitConfig.Limit limit, ThrottleListener listener) {
+        this(config, new Buckets(limit, config.getBurst()), listener);
+    }
+
+    private RateLimiter(RateLimitConfig config, Buckets buckets, ThrottleListener listener) {
+        this.maxWait = config.getMaxWait();
+        this.buckets = buckets;
+        this.listener = listener;
+    }
+
+    /**
+     * Create a limiter sharing the buckets of an API key with the other limiters of the key, so that the clients
+     * sending with the same key stay within its rates together. The buckets take the rates of the latest limiter.
+     * @param config the rate limiting settings
+     * @param apiKey the API key
+     * @param listener the listener of the throttled requests
+     * @return the limiter
+     */
+    public static RateLimiter forApiKey(RateLimitConfig config, String apiKey, ThrottleListener listener) {
+        RateLimitConfig.Limit limit = config.limitFor(apiKey);
+        Buckets buckets = sharedBuckets.compute(apiKey, (key, current) -> {
+            if (current == null) {
+                return new Buckets(limit, config.getBurst());
+            }
+            current.configure(limit, config.getBurst());
+            return current;
+        });
+        return new RateLimiter(config, buckets, listener);
+    }
+
+    /**
+     * Run a call within the rates
+     * @param call the call to run
+     * @param size the bytes sent by the call
+     * @return the call, delayed until its tokens are available, or failing with a throttled error if rejected
+     */
+    public <T> Mono<T> limit(Mono<T> call, long size) {
+        return acquire(size).then(call);
+    }
+
+    /**
+     * Run a streaming call within the rates
+     * @param call the call to run
+     * @param size the bytes sent by the call
+     * @return the call, delayed until its tokens are available, or failing with a throttled error if rejected
+     */
+    public <T> Flux<T> limit(Flux<T> call, long size) {
+        return acquire(size).thenMany(call);
+    }
+
+    private Mono<Void> acquire(long size) {
+        return Mono.defer(() -> {
+            long waitNanos = buckets.reserve(size, maxWait.toNanos());
+            if (waitNanos < 0) {
+                Duration wait = Duration.ofNanos(-waitNanos);
+                listener.onThrottle(wait, true);
+                log.warn("SignBox rate limit exceeded: {} bytes would wait {} ms", size, wait.toMillis());
+                return Mono.error(new LocalRejectionException("SignBox rate limit exceeded, retry in " + wait.toMillis() + " ms",
+                        ErrorClassification.THROTTLED, wait));
+            }
+            if (waitNanos == 0) {
+                return Mono.empty();
+            }
+            Duration wait = Duration.ofNanos(waitNanos);
+            listener.onThrottle(wait, false);
+            log.debug("SignBox request delayed by {} ms by the rate limit", wait.toMillis());
+            // the tokens were taken ahead: a request cancelled while waiting gives them back
+            return Mono.delay(wait).then().doOnCancel(() -> buckets.refund(size));
+        });
+    }
+
+    /**
+     * The buckets of the requests and of the bytes of an API key
+     */
+    private static final class Buckets {
+        private final Bucket requests;
+        private final Bucket bytes;
+
+        private Buckets(RateLimitConfig.Limit limit, Duration burst) {
+            this.requests = new Bucket(limit.getRequestsPerSecond(), burst);
+            this.bytes = new Bucket(limit.getBytesPerSecond(), burst);
+        }
+
+        /**
+         * Take the tokens of a request
+         * @param size the bytes sent by the request
+         * @param maxWaitNanos the longest wait accepted
+         * @return the nanoseconds to wait for the tokens, or minus the wait if the request is rejected and took no token
+         */
+        private synchronized long reserve(long size, long maxWaitNanos) {
+            long now = System.nanoTime();
+            long waitNanos = Math.max(requests.waitNanos(now, 1), bytes.waitNanos(now, size));
+            if (waitNanos > 0 && waitNanos > maxWaitNanos) {
+                return -waitNanos;
+            }
+            requests.take(1);
+            bytes.take(size);
+            return waitNanos;
+        }
+
+        private synchronized void refund(long size) {
+            requests.refund(1);
+            bytes.refund(size);
+        }
+
+        private synchronized void configure(RateLimitConfig.Limit limit, Duration burst) {
+            long now = System.nanoTime();
+            requests.configure(now, limit.getRequestsPerSecond(), burst);
+            bytes.configure(now, limit.getBytesPerSecond(), burst);
+        }
+    }
+
+    /**
+     * A token bucket; the tokens may go negative to let a request larger than the bucket through
+     */
+    private static final class Bucket {
+        private double tokensPerNano;
+        private double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+
+        private Bucket(double perSecond, Duration burst) {
+            this.tokensPerNano = perSecond / 1e9;
+            this.capacity = perSecond * burst.toNanos() / 1e9;
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        private boolean unlimited() {
+            return tokensPerNano <= 0;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+        }
+
+        private long waitNanos(long now, double needed) {
+            if (unlimited()) {
+                return 0;
+            }
+            refill(now);
+            // a request larger than the bucket only waits for a full bucket
+            double missing = Math.min(needed, capacity) - tokens;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing / tokensPerNano);
+        }
+
+        private void take(double needed) {
+            if (!unlimited()) {
+                tokens -= needed;
+            }
+        }
+
+        private void refund(double needed) {
+            if (!unlimited()) {
+                tokens = Math.min(capacity, tokens + needed);
+            }
+        }
+
+        /**
+         * Change the rate, keeping the tokens accumulated so far within the new capacity
+         */
+        private void configure(long now, double perSecond, Duration burst) {
+            if (!unlimited()) {
+                refill(now);
+            }
+            boolean wasUnlimited = unlimited();
+            tokensPerNano = perSecond / 1e9;
+            capacity = perSecond * burst.toNanos() / 1e9;
+            tokens = wasUnlimited ? capacity : Math.min(capacity, tokens);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.namirial.sign.library.resilience;
+
+import com.namirial.sign.library.config.SchedulerConfig;
+import com.namirial.sign.library.exceptions.LocalRejectionException;
+import com.namirial.sign.library.pojo.SignPriority;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * Scheduler of the sign calls waiting for a connection.
+ * <p>
+ * At most {@code slots} calls run at a time, one per connection of the pool or per permit of the concurrency limiter,
+ * so that the calls wait here rather than in the first-in first-out queues of the limiter and of the pool: the
+ * scheduler must be the last stage where calls wait. Waiting calls are served by virtual start time, as described in
+ * {@link SchedulerConfig}, for at most {@code maxQueueWait}; beyond that they are rejected with a
+ * {@link LocalRejectionException}.
+ */
+@Slf4j
+public class RequestScheduler {
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final SchedulerConfig config;
+    private final IntSupplier slots;
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparingLong((Waiter waiter) -> waiter.virtualStart).thenComparingLong(waiter -> waiter.sequence));
+
+    private int inFlight;
+    private long sequence;
+
+    /**
+     * Create an idle scheduler
+     * @param config the scheduler settings
+     * @param slots the calls run at a time, usually the size of the connection pool
+     */
+    public RequestScheduler(SchedulerConfig config, int slots) {
+        this(config, () -> slots);
+    }
+
+    /**
+     * Create an idle scheduler whose slots follow a changing limit, e.g. the one of the concurrency limiter
+     * @param config the scheduler settings
+     * @param slots the calls run at a time, read whenever a call starts or ends
+     */
+    public RequestScheduler(SchedulerConfig config, IntSupplier slots) {
+        this.config = config;
+        this.slots = () -> Math.max(1, slots.getAsInt());
+    }
+
+    /**
+     * Run a call when its turn comes
+     * @param call the call to run
+     * @param priority the priority of the call
+     * @param size the size of the document
+     * @return the call, delayed until a slot is free for it, or failing with a temporary error if rejected
+     */
+    public <T> Mono<T> schedule(Mono<T> call, SignPriority priority, long size) {
+        return acquire(priority, size).flatMap(slot -> call.doFinally(signal -> slot.release()));
+    }
+
+    /**
+     * Run a streaming call when its turn comes
+     * @param call the call to run
+     * @param priority the priority of the call
+     * @param size the size of the document
+     * @return the call, delayed until a slot is free for it, or failing with a temporary error if rejected
+     */
+    public <T> Flux<T> schedule(Flux<T> call, SignPriority priority, long size) {
+        return acquire(priority, size).flatMapMany(slot -> call.doFinally(signal -> slot.release()));
+    }
+
+    /**
+     * Get the number of running calls
+     * @return the number of calls holding a slot
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the number of waiting calls
+     * @return the number of calls in the queue
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    private Mono<Slot> acquire(SignPriority priority, long size) {
+        Duration maxQueueWait = config.getMaxQueueWait();
+        return Mono.<Slot>create(sink -> {
+                    Waiter waiter = new Waiter(sink, virtualStart(priority, size));
+                    synchronized (this) {
+                        if (queue.isEmpty() && inFlight < slots.getAsInt()) {
+                            inFlight++;
+                            waiter.slot = new Slot();
+                        } else {
+                            waiter.sequence = sequence++;
+                            queue.add(waiter);
+                        }
+                    }
+                    sink.onCancel(() -> cancel(waiter));
+                    if (waiter.slot != null) {
+                        waiter.deliver();
+                    }
+                })
+                .timeout(maxQueueWait, Mono.error(() -> rejected(priority, size, maxQueueWait)));
+    }
+
+    private long virtualStart(SignPriority priority, long size) {
+        SignPriority effective = priority != null ? priority : SignPriority.NORMAL;
+        long virtualStart = System.nanoTime() + effective.ordinal() * config.getPriorityStep().toNanos();
+        if (config.isShortestFirst()) {
+            virtualStart += (long) ((double) size / BYTES_PER_MEGABYTE * config.getSizePenalty().toNanos());
+        }
+        return virtualStart;
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            if (queue.remove(waiter)) {
+                return;
+            }
+        }
+        // granted while being cancelled
+        waiter.releaseUndelivered();
+    }
+
+    private void onRelease() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            // the slots may have grown or shrunk with the limit since the call started
+            int available = slots.getAsInt();
+            Waiter next;
+            while (inFlight < available && (next = queue.poll()) != null) {
+                inFlight++;
+                next.slot = new Slot();
+                granted.add(next);
+            }
+        }
+        granted.forEach(Waiter::deliver);
+    }
+
+    private LocalRejectionException rejected(SignPriority priority, long size, Duration maxQueueWait) {
+        String reason = "no connection within " + maxQueueWait;
+        log.warn("SignBox request of priority {} and {} bytes not scheduled: {}", priority, size, reason);
+        return new LocalRejectionException("SignBox scheduler queue full: " + reason, new TimeoutException(reason));
+    }
+
+    /**
+     * A pending call; its slot is set under the scheduler lock when granted
+     */
+    private static final class Waiter {
+        private final MonoSink<Slot> sink;
+        private final long virtualStart;
+        private long sequence;
+        private volatile Slot slot;
+
+        private Waiter(MonoSink<Slot> sink, long virtualStart) {
+            this.sink = sink;
+            this.virtualStart = virtualStart;
+        }
+
+        private void deliver() {
+            sink.success(slot);
+        }
+
+        private void releaseUndelivered() {
+            Slot granted = slot;
+            if (granted != null) {
+                granted.release();
+            }
+        }
+    }
+
+    /**
+     * The right to run one call
+     */
+    private final class Slot {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                onRelease();
+            }
+        }
+    }
+}
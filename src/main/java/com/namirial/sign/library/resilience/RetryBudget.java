@@ -0,0 +1,70 @@
+package com.namirial.sign.library.resilience;
+
+/**
+ * Token bucket bounding the extra load sent by retries and hedged requests.
+ * <p>
+ * Each request deposits {@code ratio} tokens and each retry withdraws one, so retries stay within a fraction
+ * of the traffic; {@code minPerSecond} tokens are also deposited every second, so that a low traffic can still
+ * be retried. The balance is capped, so that a quiet period does not allow a burst of retries.
+ */
+public class RetryBudget {
+
+    // Requests whose deposits the bucket can hold
+    private static final int CAPACITY_REQUESTS = 100;
+
+    private final double ratio;
+    private final int minPerSecond;
+    private final double capacity;
+
+    private double balance;
+    private long lastRefillNanos;
+
+    /**
+     * Create a budget
+     * @param ratio the retries allowed as a fraction of the requests
+     * @param minPerSecond the retries always allowed per second
+     */
+    public RetryBudget(double ratio, int minPerSecond) {
+        this.ratio = Math.max(0, ratio);
+        this.minPerSecond = Math.max(0, minPerSecond);
+        this.capacity = Math.max(1, this.minPerSecond + this.ratio * CAPACITY_REQUESTS);
+        this.balance = Math.min(capacity, this.minPerSecond);
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Record a request
+     */
+    public synchronized void onRequest() {
+        refill();
+        balance = Math.min(capacity, balance + ratio);
+    }
+
+    /**
+     * Withdraw a retry from the budget
+     * @return true if the retry is allowed
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (balance >= 1) {
+            balance -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the available retries
+     * @return the number of retries allowed now
+     */
+    public synchronized int getAvailable() {
+        refill();
+        return (int) balance;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        balance = Math.min(capacity, balance + minPerSecond * (now - lastRefillNanos) / 1e9);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,154 @@
+package com.namirial.sign.library.resilience;
+
+import com.namirial.sign.library.config.HedgingConfig;
+import com.namirial.sign.library.config.RetryConfig;
+import com.namirial.sign.library.exceptions.LocalRejectionException;
+import com.namirial.sign.library.exceptions.SignServiceTemporaryErrorException;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Retries and hedging of the sign calls.
+ * <p>
+ * Temporary errors are retried with an exponential backoff and a random jitter, waiting at least the
+ * {@code Retry-After} delay requested by the service; permanent errors and the requests rejected locally, see
+ * {@link LocalRejectionException}, are never retried. Small documents are hedged: when the call is slower than a
+ * quantile of the recent latencies, a second call is sent and the first success is taken. Retries and hedged calls share a {@link RetryBudget}, so that they cannot multiply the load
+ * of a server that is already failing.
+ */
+@Slf4j
+@Getter
+public class RetryPolicy {
+
+    private final RetryConfig retry;
+    private final HedgingConfig hedging;
+    private final RetryBudget budget;
+    private final LatencyTracker latencies = new LatencyTracker();
+
+    /**
+     * Create a policy
+     * @param retry the retry settings
+     * @param hedging the hedging settings
+     */
+    public RetryPolicy(RetryConfig retry, HedgingConfig hedging) {
+        this.retry = retry;
+        this.hedging = hedging;
+        this.budget = new RetryBudget(retry.getBudgetRatio(), retry.getBudgetMinRetriesPerSecond());
+    }
+
+    /**
+     * Apply the policy to a call
+     * @param attempt the call, subscribed once per attempt
+     * @param hedge the hedged call, subscribed when the attempt is slow
+     * @param payloadSize the size of the document, deciding whether the call is hedged
+     * @return the call with retries and hedging
+     */
+    public <T> Mono<T> apply(Mono<T> attempt, Mono<T> hedge, long payloadSize) {
+        Mono<T> call = hedging.isEnabled() && payloadSize <= hedging.getMaxPayloadSize()
+                ? hedged(attempt, hedge)
+                : attempt;
+        return Mono.defer(() -> {
+            budget.onRequest();
+            return retry.isEnabled() ? call.retryWhen(retrySpec(() -> false)) : call;
+        });
+    }
+
+    /**
+     * Apply the policy to a streaming call; it is retried only if it fails before emitting anything
+     * @param attempt the call, subscribed once per attempt
+     * @return the call with retries
+     */
+    public <T> Flux<T> apply(Flux<T> attempt) {
+        return Flux.defer(() -> {
+            budget.onRequest();
+            if (!retry.isEnabled()) {
+                return attempt;
+            }
+            AtomicBoolean emitted = new AtomicBoolean();
+            return attempt.doOnNext(item -> emitted.set(true)).retryWhen(retrySpec(emitted::get));
+        });
+    }
+
+    private <T> Mono<T> hedged(Mono<T> attempt, Mono<T> hedge) {
+        return Mono.defer(() -> {
+            Duration delay = latencies.quantile(hedging.getQuantile(), hedging.getMinSamples());
+            if (delay == null) {
+                return timed(attempt);
+            }
+            Duration hedgeDelay = delay.compareTo(hedging.getMinDelay()) < 0 ? hedging.getMinDelay() : delay;
+            AtomicReference<Throwable> firstError = new AtomicReference<>();
+            Sinks.Empty<Void> attemptFailed = Sinks.empty();
+            Mono<T> first = timed(attempt).doOnError(e -> {
+                firstError.compareAndSet(null, e);
+                attemptFailed.tryEmitEmpty();
+            });
+            // a failed attempt is left to the retries rather than hedged
+            Mono<T> second = Mono.firstWithSignal(Mono.delay(hedgeDelay).then(), attemptFailed.asMono())
+                    .then(Mono.defer(() -> {
+                        if (firstError.get() != null || !budget.tryAcquire()) {
+                            return Mono.<T>empty();
+                        }
+                        log.debug("Hedging SignBox request after {} ms", hedgeDelay.toMillis());
+                        return timed(hedge).doOnError(e -> firstError.compareAndSet(null, e));
+                    }));
+            return Mono.firstWithValue(first, second)
+                    .onErrorMap(e -> firstError.get() != null ? firstError.get() : e);
+        });
+    }
+
+    private <T> Mono<T> timed(Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnNext(value -> latencies.record(System.nanoTime() - start));
+        });
+    }
+
+    private Retry retrySpec(BooleanSupplier committed) {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            Throwable failure = signal.failure();
+            Duration delay = committed.getAsBoolean() ? null : nextDelay(signal.totalRetries(), failure);
+            return delay == null ? Mono.error(failure) : Mono.delay(delay);
+        }));
+    }
+
+    /**
+     * Compute the delay before the next attempt
+     * @param retries the number of retries already done
+     * @param failure the error of the last attempt
+     * @return the delay, or null if the error must not be retried
+     */
+    Duration nextDelay(long retries, Throwable failure) {
+        // a local rejection was never sent: retrying it would only queue again behind the same stage
+        if (!(failure instanceof PnSpapiTemporaryErrorException) || failure instanceof LocalRejectionException
+                || retries + 1 >= retry.getMaxAttempts()) {
+            return null;
+        }
+        long backoff = retry.getInitialBackoff().toMillis() << Math.min(retries, 30);
+        backoff = Math.min(backoff, retry.getMaxBackoff().toMillis());
+        long delay = Math.round(backoff * (1 - retry.getJitter() * ThreadLocalRandom.current().nextDouble()));
+        if (retry.isHonorRetryAfter() && failure instanceof SignServiceTemporaryErrorException error && error.getRetryAfter() != null) {
+            if (error.getRetryAfter().compareTo(retry.getMaxBackoff()) > 0) {
+                log.warn("Not retrying SignBox request: Retry-After of {} s exceeds the maximum backoff", error.getRetryAfter().toSeconds());
+                return null;
+            }
+            delay = Math.max(delay, error.getRetryAfter().toMillis());
+        }
+        if (!budget.tryAcquire()) {
+            log.warn("Not retrying SignBox request: retry budget exhausted");
+            return null;
+        }
+        log.info("Retrying SignBox request in {} ms after: {}", delay, failure.getMessage());
+        return Duration.ofMillis(delay);
+    }
+}
@@ -0,0 +1,109 @@
+package com.namirial.sign.library.service;
+
+import com.namirial.sign.library.config.CompressionConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming compressor of a request body: each chunk of the body is deflated as it is sent into a buffer of the
+ * channel allocator, released by the channel once written, so neither the whole body nor its compressed form is
+ * held in memory. A compressor is used by one request at a time and must be ended to free its native memory.
+ */
+final class BodyCompressor {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int OUTPUT_SIZE = 16 * 1024;
+
+    private final ByteBufAllocator allocator;
+    private final Deflater deflater;
+    // the gzip trailer holds the CRC-32 and the size of the uncompressed body; null for the zlib format
+    private final CRC32 crc;
+    private long inputLength;
+
+    BodyCompressor(CompressionConfig.Encoding encoding, int level, ByteBufAllocator allocator) {
+        this.allocator = allocator;
+        boolean gzip = encoding == CompressionConfig.Encoding.GZIP;
+        this.deflater = new Deflater(level, gzip);
+        this.crc = gzip ? new CRC32() : null;
+    }
+
+    /**
+     * Get the header of the compressed body
+     * @return the gzip header, or an empty buffer for the zlib format, whose header comes with the first output
+     */
+    ByteBuf start() {
+        if (crc == null) {
+            return allocator.buffer(0);
+        }
+        ByteBuf header = allocator.buffer(10);
+        // magic, deflate method, no flags, no modification time, no extra flags, unknown OS
+        header.writeShortLE(GZIP_MAGIC).writeByte(Deflater.DEFLATED).writeByte(0).writeIntLE(0).writeByte(0).writeByte(0xff);
+        return header;
+    }
+
+    /**
+     * Compress a chunk of the body
+     * @param input the chunk, from its position to its limit, consumed before returning
+     * @return the compressed output so far, possibly empty
+     */
+    ByteBuf compress(ByteBuffer input) {
+        inputLength += input.remaining();
+        if (crc != null) {
+            crc.update(input.duplicate());
+        }
+        deflater.setInput(input);
+        ByteBuf output = allocator.buffer(OUTPUT_SIZE);
+        try {
+            while (!deflater.needsInput()) {
+                deflate(output);
+            }
+        } catch (RuntimeException e) {
+            output.release();
+            throw e;
+        }
+        return output;
+    }
+
+    /**
+     * Flush the compressed body
+     * @return the last compressed output, followed by the gzip trailer
+     */
+    ByteBuf finish() {
+        deflater.finish();
+        ByteBuf output = allocator.buffer(OUTPUT_SIZE);
+        try {
+            while (!deflater.finished()) {
+                deflate(output);
+            }
+            if (crc != null) {
+                output.writeIntLE((int) crc.getValue()).writeIntLE((int) inputLength);
+            }
+        } catch (RuntimeException e) {
+            output.release();
+            throw e;
+        }
+        return output;
+    }
+
+    /**
+     * Free the native memory of the compressor
+     */
+    void end() {
+        deflater.end();
+    }
+
+    private void deflate(ByteBuf output) {
+        if (!output.isWritable()) {
+            output.ensureWritable(OUTPUT_SIZE);
+        }
+        int writerIndex = output.writerIndex();
+        // a view of the writable bytes: pooled buffers are a single chunk of memory
+        ByteBuffer target = output.nioBuffer(writerIndex, output.writableBytes());
+        int written = deflater.deflate(target);
+        output.writerIndex(writerIndex + written);
+    }
+}
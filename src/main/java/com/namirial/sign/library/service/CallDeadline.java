@@ -0,0 +1,76 @@
+package com.namirial.sign.library.service;
+
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Overall deadline of a sign call, shared by its attempts through the Reactor context. When it elapses, the HTTP
+ * exchanges in flight fail with the deadline error before the call is cancelled: the circuit breaker and the load
+ * balancer around them record a failure, as for any timeout, instead of a cancellation that says nothing about the
+ * service.
+ */
+final class CallDeadline {
+
+    /** Key of the deadline of the call in the Reactor context of its attempts */
+    static final String CONTEXT_KEY = "namirial.sign.call-deadline";
+
+    private final Duration duration;
+    private final Sinks.One<PnSpapiTemporaryErrorException> expiry = Sinks.one();
+
+    CallDeadline(Duration duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Get the timer of the deadline, failing the exchanges in flight when it fires
+     * @return A {@link Mono} emitting once the deadline has elapsed
+     */
+    Mono<Long> timer() {
+        return Mono.delay(duration).doOnNext(tick -> expiry.tryEmitValue(exceeded(duration)));
+    }
+
+    /**
+     * Get the error of a call past its deadline
+     * @return The temporary error
+     */
+    PnSpapiTemporaryErrorException exceeded() {
+        return exceeded(duration);
+    }
+
+    /**
+     * Fail an exchange, closing its connection, once the deadline of its call has elapsed
+     * @param exchange The tracker of the connection of the exchange
+     * @param response The response of the exchange
+     * @return The response, or the deadline error
+     */
+    <T> Mono<T> bound(CancellableExchange exchange, Mono<T> response) {
+        return Mono.firstWithSignal(response, expired(exchange));
+    }
+
+    /**
+     * Fail a streaming exchange, closing its connection, once the deadline of its call has elapsed
+     * @param exchange The tracker of the connection of the exchange
+     * @param response The response of the exchange
+     * @return The response, ending with the deadline error if not complete in time
+     */
+    <T> Flux<T> bound(CancellableExchange exchange, Flux<T> response) {
+        return response.takeUntilOther(expired(exchange));
+    }
+
+    private <T> Mono<T> expired(CancellableExchange exchange) {
+        return expiry.asMono().flatMap(error -> {
+            exchange.cancel();
+            return Mono.error(error);
+        });
+    }
+
+    static PnSpapiTemporaryErrorException exceeded(Duration deadline) {
+        String reason = "no response within " + deadline.toMillis() + " ms";
+        return new PnSpapiTemporaryErrorException("SignBox deadline exceeded: " + reason, new TimeoutException(reason));
+    }
+}
@@ -0,0 +1,38 @@
+package com.namirial.sign.library.service;
+
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.http.client.HttpClientState;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracker of the connection carrying the HTTP exchange of one attempt of a sign request, from the moment its
+ * request is prepared to the moment its response is complete. An attempt cancelled in between, e.g. by its deadline
+ * or by the caller, closes the connection: a half-sent request or a half-read response cannot be reused, and
+ * closing it at once gives its pool slot back instead of waiting for the server to answer.
+ */
+final class CancellableExchange implements ConnectionObserver {
+
+    private final AtomicReference<Connection> connection = new AtomicReference<>();
+
+    @Override
+    public void onStateChange(Connection connection, State newState) {
+        if (newState == HttpClientState.REQUEST_PREPARED) {
+            this.connection.set(connection);
+        } else if (newState == HttpClientState.RESPONSE_COMPLETED || newState == State.RELEASED || newState == State.DISCONNECTING) {
+            // the connection may now serve another request, it must no longer be closed by this one
+            this.connection.compareAndSet(connection, null);
+        }
+    }
+
+    /**
+     * Close the connection of the exchange, if still in progress
+     */
+    void cancel() {
+        Connection current = connection.getAndSet(null);
+        if (current != null && !current.isDisposed()) {
+            current.dispose();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.namirial.sign.library.service;
+
+import com.namirial.sign.library.config.CompressionConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.NettyOutbound;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hand-built multipart/form-data body for the SignBox sign request.
+ * The document is framed by a small per-request header (the file part headers) and a trailer
+ * holding the {@code level} and {@code format} parts, and the {@code digestAlgorithm} part when the
+ * payload is the digest of the document, so the payload itself is sent as-is
+ * without being copied by an encoder: buffers are wrapped, files are sent with
+ * {@link NettyOutbound#sendFile(Path)}. A compressed body is instead read and deflated chunk by chunk as it is sent.
+ */
+final class MultipartBody {
+
+    private static final String BOUNDARY = "NamirialSignBoundary" + UUID.randomUUID().toString().replace("-", "");
+    static final String CONTENT_TYPE = "multipart/form-data; boundary=" + BOUNDARY;
+
+    private static final String CRLF = "\r\n";
+    private static final String DELIMITER = "--" + BOUNDARY;
+    // the size of the chunks of the document fed to the compressor
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // level/format combinations are few: trailers are built once and shared
+    private static final Map<String, byte[]> TRAILERS = new ConcurrentHashMap<>();
+
+    private final String format;
+    private final String level;
+    private final byte[] header;
+    private final byte[] trailer;
+    private final ByteBuffer payload;
+    private final Path file;
+    private final long payloadLength;
+
+    private MultipartBody(String filename, String format, String level, String digestAlgorithm, ByteBuffer payload, Path file, long payloadLength) {
+        String fileHeader = DELIMITER + CRLF +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"" + CRLF +
+                "Content-Type: application/octet-stream" + CRLF +
+                "Content-Transfer-Encoding: binary" + CRLF +
+                CRLF;
+        this.format = format;
+        this.level = level;
+        this.header = fileHeader.getBytes(StandardCharsets.US_ASCII);
+        this.trailer = TRAILERS.computeIfAbsent(level + "|" + format + "|" + digestAlgorithm, k -> buildTrailer(level, format, digestAlgorithm));
+        this.payload = payload;
+        this.file = file;
+        this.payloadLength = payloadLength;
+    }
+
+    /**
+     * Build the multipart body for a document held in memory.
+     * The buffer is wrapped, not copied, and must not be modified until the request completes.
+     * @param filename The filename of the file part
+     * @param format The format of the signature
+     * @param level The level of the signature
+     * @param payload The document to sign, from its position to its limit
+     * @return The multipart body
+     */
+    static MultipartBody of(String filename, String format, String level, ByteBuffer payload) {
+        return new MultipartBody(filename, format, level, null, payload.duplicate(), null, payload.remaining());
+    }
+
+    /**
+     * Build the multipart body for the digest of a document
+     * @param filename The filename of the file part
+     * @param format The format of the signature
+     * @param level The level of the signature
+     * @param digestAlgorithm The algorithm of the digest
+     * @param digest The digest to sign
+     * @return The multipart body
+     */
+    static MultipartBody ofDigest(String filename, String format, String level, String digestAlgorithm, byte[] digest) {
+        return new MultipartBody(filename, format, level, digestAlgorithm, ByteBuffer.wrap(digest), null, digest.length);
+    }
+
+    /**
+     * Build the multipart body for a document stored in a file
+     * @param filename The filename of the file part
+     * @param format The format of the signature
+     * @param level The level of the signature
+     * @param file The document to sign
+     * @return The multipart body
+     * @throws IOException if the size of the file cannot be read
+     */
+    static MultipartBody of(String filename, String format, String level, Path file) throws IOException {
+        return new MultipartBody(filename, format, level, null, null, file, Files.size(file));
+    }
+
+    private static byte[] buildTrailer(String level, String format, String digestAlgorithm) {
+        String trailer = CRLF +
+                part("level", level) +
+                part("format", format) +
+                (digestAlgorithm != null ? part("digestAlgorithm", digestAlgorithm) : "") +
+                DELIMITER + "--" + CRLF;
+        return trailer.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String part(String name, String value) {
+        return DELIMITER + CRLF +
+                "Content-Disposition: form-data; name=\"" + name + "\"" + CRLF +
+                "Content-Type: text/plain; charset=UTF-8" + CRLF +
+                CRLF +
+                value + CRLF;
+    }
+
+    /**
+     * Get the format of the signature
+     * @return The format part of the body
+     */
+    String format() {
+        return format;
+    }
+
+    /**
+     * Get the level of the signature
+     * @return The level part of the body
+     */
+    String level() {
+        return level;
+    }
+
+    /**
+     * Get the length of the document
+     * @return The length of the document in bytes
+     */
+    long payloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Tell whether the document is held in memory
+     * @return true if the document is a buffer, false if it is a file
+     */
+    boolean inMemory() {
+        return file == null;
+    }
+
+    /**
+     * Get the length of the whole body
+     * @return The value of the Content-Length header
+     */
+    long contentLength() {
+        return header.length + payloadLength + trailer.length;
+    }
+
+    /**
+     * Write the body to the request
+     * @param out The outbound of the request
+     * @return The outbound completing when the whole body has been written
+     */
+    NettyOutbound writeTo(NettyOutbound out) {
+        if (file == null) {
+            return out.send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(header(), Unpooled.wrappedBuffer(payload), trailer())));
+        }
+        // the header goes as a Flux, since a Mono would be sent as a complete message, and the
+        // parts are chained with then() because chained send* calls re-subscribe to earlier parts
+        return out.send(Flux.defer(() -> Flux.just(header())))
+                .then(out.sendFile(file))
+                .then(out.send(Mono.fromSupplier(this::trailer)));
+    }
+
+    /**
+     * Write the body to the request, compressed as it is sent; the request has no Content-Length
+     * @param out The outbound of the request
+     * @param compression The compression settings, giving the encoding and the level
+     * @return The outbound completing when the whole body has been written
+     */
+    NettyOutbound writeCompressedTo(NettyOutbound out, CompressionConfig compression) {
+        return out.send(Flux.using(() -> new BodyCompressor(compression.getEncoding(), compression.getLevel(), out.alloc()),
+                compressor -> Flux.concat(
+                                Mono.fromSupplier(compressor::start),
+                                chunks().map(compressor::compress),
+                                Mono.fromSupplier(compressor::finish))
+                        .filter(MultipartBody::readableOrReleased),
+                BodyCompressor::end));
+    }
+
+    /**
+     * Get the body as a sequence of chunks, each one consumed before the next one is emitted: the chunks of a file
+     * share one buffer
+     */
+    private Flux<ByteBuffer> chunks() {
+        Flux<ByteBuffer> document;
+        if (file == null) {
+            int chunks = (int) ((payloadLength + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            document = Flux.range(0, chunks).map(i -> {
+                ByteBuffer chunk = payload.duplicate();
+                chunk.position(payload.position() + i * CHUNK_SIZE);
+                chunk.limit(Math.min(payload.limit(), chunk.position() + CHUNK_SIZE));
+                return chunk;
+            });
+        } else {
+            document = Flux.using(() -> FileChannel.open(file, StandardOpenOption.READ),
+                    channel -> Flux.<ByteBuffer, ByteBuffer>generate(() -> ByteBuffer.allocate(CHUNK_SIZE), (chunk, sink) -> {
+                        chunk.clear();
+                        try {
+                            if (channel.read(chunk) < 0) {
+                                sink.complete();
+                            } else {
+                                sink.next(chunk.flip());
+                            }
+                        } catch (IOException e) {
+                            sink.error(e);
+                        }
+                        return chunk;
+                    }),
+                    MultipartBody::close);
+        }
+        return Flux.concat(Mono.fromSupplier(() -> ByteBuffer.wrap(header)), document, Mono.fromSupplier(() -> ByteBuffer.wrap(trailer)));
+    }
+
+    private static boolean readableOrReleased(ByteBuf buffer) {
+        if (buffer.isReadable()) {
+            return true;
+        }
+        buffer.release();
+        return false;
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing was written to the file
+        }
+    }
+
+    private ByteBuf header() {
+        return Unpooled.wrappedBuffer(header);
+    }
+
+    private ByteBuf trailer() {
+        return Unpooled.wrappedBuffer(trailer);
+    }
+}
@@ -1,23 +1,88 @@
 package com.namirial.sign.library.service;
 
+import com.namirial.sign.library.cms.CmsSignedData;
+import com.namirial.sign.library.cms.DocumentDigest;
+import com.namirial.sign.library.config.HashSigningConfig;
+import com.namirial.sign.library.exceptions.UnsupportedPdfException;
+import com.namirial.sign.library.pdf.PdfSignature;
+import com.namirial.sign.library.pojo.PnSignBatchRequest;
+import com.namirial.sign.library.pojo.PnSignBatchResult;
+import com.namirial.sign.library.pojo.SignPriority;
 import com.namirial.sign.library.pojo.SignatureLevel;
 import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
 import it.pagopa.pn.library.sign.pojo.PnSignDocumentResponse;
 import com.namirial.sign.library.pojo.SignatureFormat;
 import it.pagopa.pn.library.sign.service.PnSignService;
-import lombok.AllArgsConstructor;
-import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.UUID;
+import java.util.function.Function;
 
 @Slf4j
-@NoArgsConstructor
-@AllArgsConstructor
 public class PnSignServiceImpl implements PnSignService {
 
-    private String apiEndpoint;
+    private final SignBoxClient client;
+    private final String apiEndpoint;
+    private final String tenant;
+    private final SignPriority priority;
+
+    /**
+     * Sign with the default client at its configured endpoint
+     */
+    public PnSignServiceImpl() {
+        this(SignServiceClient.getDefault(), null, null);
+    }
+
+    /**
+     * Sign with the default client
+     * @param apiEndpoint the endpoint overriding the configured one if not blank
+     */
+    public PnSignServiceImpl(String apiEndpoint) {
+        this(SignServiceClient.getDefault(), apiEndpoint, null);
+    }
+
+    /**
+     * Sign with a client at its configured endpoint
+     * @param client the client, e.g. the one of a tenant
+     */
+    public PnSignServiceImpl(SignBoxClient client) {
+        this(client, null, null);
+    }
+
+    /**
+     * Sign with a client on behalf of a tenant
+     * @param client the client, e.g. the one of a tenant
+     * @param apiEndpoint the endpoint overriding the configured one if not blank
+     * @param tenant the tenant of the requests, partitioning the connections if the bulkheads are by tenant
+     */
+    public PnSignServiceImpl(SignBoxClient client, String apiEndpoint, String tenant) {
+        this(client, apiEndpoint, tenant, null);
+    }
+
+    private PnSignServiceImpl(SignBoxClient client, String apiEndpoint, String tenant, SignPriority priority) {
+        this.client = client;
+        this.apiEndpoint = apiEndpoint;
+        this.tenant = tenant;
+        this.priority = priority;
+    }
+
+    /**
+     * Get a service signing with another priority, e.g. {@code INTERACTIVE} when a user waits for the signed document
+     * @param priority the priority of the requests, ordering them in the scheduler queue if enabled
+     * @return a service with the same client, endpoint and tenant
+     */
+    public PnSignServiceImpl withPriority(SignPriority priority) {
+        return new PnSignServiceImpl(client, apiEndpoint, tenant, priority);
+    }
 
     /**
      * Sign a PDF document with PAdES format
@@ -52,6 +117,248 @@ public class PnSignServiceImpl implements PnSignService {
         return applySignature(SignatureFormat.CADES, timestamping, fileBytes);
     }
 
+    /**
+     * Sign a PDF file with PAdES format, streaming it from disk
+     * @param file the PDF file to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link PnSignDocumentResponse} with the signed document
+     */
+    public Mono<PnSignDocumentResponse> signPdfDocument(Path file, Boolean timestamping) {
+        return applySignature(SignatureFormat.PADES, timestamping, file);
+    }
+
+    /**
+     * Sign an XML file with XAdES format, streaming it from disk
+     * @param file the XML file to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link PnSignDocumentResponse} with the signed document
+     */
+    public Mono<PnSignDocumentResponse> signXmlDocument(Path file, Boolean timestamping) {
+        return applySignature(SignatureFormat.XADES, timestamping, file);
+    }
+
+    /**
+     * Sign a generic file with CAdES format, streaming it from disk
+     * @param file the file to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link PnSignDocumentResponse} with the signed document
+     */
+    public Mono<PnSignDocumentResponse> pkcs7Signature(Path file, Boolean timestamping) {
+        return applySignature(SignatureFormat.CADES, timestamping, file);
+    }
+
+    /**
+     * Sign a generic document with CAdES format, sending only its digest to the SignBox service
+     * @param fileBytes the document to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @param enveloping if true, the signature holds the document, otherwise it is detached from it
+     * @return a {@link PnSignDocumentResponse} with the DER encoded signature
+     */
+    public Mono<PnSignDocumentResponse> pkcs7DigestSignature(byte[] fileBytes, Boolean timestamping, boolean enveloping) {
+        if(fileBytes == null || fileBytes.length == 0) {
+            return Mono.error(new PnSpapiPermanentErrorException("fileBytes cannot be null or empty"));
+        }
+        String digestAlgorithm = client.getConfig().getHash().getDigestAlgorithm();
+        return Mono.fromCallable(() -> DocumentDigest.of(digestAlgorithm, ByteBuffer.wrap(fileBytes)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(digest -> applyDigestSignature(digest, digestAlgorithm, timestamping, fileBytes.length))
+                .map(response -> enveloping
+                        ? new PnSignDocumentResponse(CmsSignedData.envelop(response.getSignedDocument(), ByteBuffer.wrap(fileBytes)))
+                        : response);
+    }
+
+    /**
+     * Sign a generic file with CAdES format, digesting it from disk and sending only its digest to the SignBox service
+     * @param file the file to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @param enveloping if true, the signature holds the file, read in memory once signed, otherwise it is detached from it
+     * @return a {@link PnSignDocumentResponse} with the DER encoded signature
+     */
+    public Mono<PnSignDocumentResponse> pkcs7DigestSignature(Path file, Boolean timestamping, boolean enveloping) {
+        if(file == null || !Files.isRegularFile(file)) {
+            return Mono.error(new PnSpapiPermanentErrorException("file cannot be null and must be a regular file"));
+        }
+        String digestAlgorithm = client.getConfig().getHash().getDigestAlgorithm();
+        Mono<PnSignDocumentResponse> detached = DocumentDigest.of(digestAlgorithm, file)
+                .flatMap(digest -> applyDigestSignature(digest, digestAlgorithm, timestamping, -1));
+        if (!enveloping) {
+            return detached;
+        }
+        return detached.flatMap(response -> Mono.fromCallable(() -> Files.readAllBytes(file))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(IOException.class, e -> new PnSpapiPermanentErrorException("Unable to read file " + file + ": " + e.getMessage()))
+                .map(content -> new PnSignDocumentResponse(CmsSignedData.envelop(response.getSignedDocument(), ByteBuffer.wrap(content)))));
+    }
+
+    /**
+     * Sign a generic document with CAdES format as it is received, digesting its chunks and sending only its digest
+     * to the SignBox service
+     * @param content the chunks of the document to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link PnSignDocumentResponse} with the DER encoded detached signature
+     */
+    public Mono<PnSignDocumentResponse> pkcs7DigestSignature(Flux<ByteBuffer> content, Boolean timestamping) {
+        if(content == null) {
+            return Mono.error(new PnSpapiPermanentErrorException("content cannot be null or empty"));
+        }
+        String digestAlgorithm = client.getConfig().getHash().getDigestAlgorithm();
+        Flux<ByteBuffer> chunks = content.filter(ByteBuffer::hasRemaining)
+                .switchIfEmpty(Mono.error(() -> new PnSpapiPermanentErrorException("content cannot be null or empty")));
+        return DocumentDigest.of(digestAlgorithm, chunks)
+                .flatMap(digest -> applyDigestSignature(digest, digestAlgorithm, timestamping, -1));
+    }
+
+    /**
+     * Sign a PDF document with PAdES format, preparing the signature locally and sending only the digest of its byte
+     * ranges to the SignBox service. A document that cannot be updated locally, e.g. encrypted, is uploaded instead.
+     * @param fileBytes the PDF document to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link PnSignDocumentResponse} with the signed document
+     */
+    public Mono<PnSignDocumentResponse> signPdfDocumentByHash(byte[] fileBytes, Boolean timestamping) {
+        if(fileBytes == null || fileBytes.length == 0) {
+            return Mono.error(new PnSpapiPermanentErrorException("fileBytes cannot be null or empty"));
+        }
+        HashSigningConfig hash = client.getConfig().getHash();
+        return Mono.fromCallable(() -> PdfSignature.prepare(ByteBuffer.wrap(fileBytes), hash.getSignatureSize(), Instant.now()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(signature -> applyPdfDigestSignature(signature, hash.getDigestAlgorithm(), timestamping))
+                .map(signature -> new PnSignDocumentResponse(signature.toByteArray()))
+                .onErrorResume(UnsupportedPdfException.class, e -> {
+                    log.warn("{}, uploading the whole document", e.getMessage());
+                    return applySignature(SignatureFormat.PADES, timestamping, fileBytes);
+                });
+    }
+
+    /**
+     * Sign a PDF file with PAdES format, preparing the signature locally and sending only the digest of its byte
+     * ranges to the SignBox service. A file that cannot be updated locally, e.g. encrypted, is uploaded instead.
+     * @param file the PDF file to sign, mapped in memory rather than read
+     * @param target the file the signed document is written to, replaced if it exists
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link Mono} that will emit the target file once written
+     */
+    public Mono<Path> signPdfDocumentByHash(Path file, Path target, Boolean timestamping) {
+        if(file == null || !Files.isRegularFile(file) || target == null) {
+            return Mono.error(new PnSpapiPermanentErrorException("file cannot be null and must be a regular file, target cannot be null"));
+        }
+        HashSigningConfig hash = client.getConfig().getHash();
+        return Mono.fromCallable(() -> PdfSignature.prepare(file, hash.getSignatureSize(), Instant.now()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(signature -> applyPdfDigestSignature(signature, hash.getDigestAlgorithm(), timestamping))
+                .flatMap(signature -> Mono.fromCallable(() -> {
+                    signature.writeTo(target);
+                    return target;
+                }).subscribeOn(Schedulers.boundedElastic()))
+                .onErrorResume(UnsupportedPdfException.class, e -> {
+                    log.warn("{}, uploading the whole file", e.getMessage());
+                    return applySignature(SignatureFormat.PADES, timestamping, file)
+                            .flatMap(response -> Mono.fromCallable(() -> Files.write(target, response.getSignedDocument()))
+                                    .subscribeOn(Schedulers.boundedElastic()));
+                })
+                .onErrorMap(IOException.class, e -> new PnSpapiPermanentErrorException("Unable to sign file " + file + " to " + target + ": " + e.getMessage()));
+    }
+
+    /**
+     * Sign a PDF document with PAdES format, streaming the signed document as it is received
+     * @param fileBytes the PDF document to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> signPdfDocumentStream(byte[] fileBytes, Boolean timestamping) {
+        return applySignatureStream(SignatureFormat.PADES, timestamping, fileBytes);
+    }
+
+    /**
+     * Sign a PDF file with PAdES format, streaming both the file and the signed document
+     * @param file the PDF file to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> signPdfDocumentStream(Path file, Boolean timestamping) {
+        return applySignatureStream(SignatureFormat.PADES, timestamping, file);
+    }
+
+    /**
+     * Sign an XML document with XAdES format, streaming the signed document as it is received
+     * @param fileBytes the XML document to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> signXmlDocumentStream(byte[] fileBytes, Boolean timestamping) {
+        return applySignatureStream(SignatureFormat.XADES, timestamping, fileBytes);
+    }
+
+    /**
+     * Sign an XML file with XAdES format, streaming both the file and the signed document
+     * @param file the XML file to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> signXmlDocumentStream(Path file, Boolean timestamping) {
+        return applySignatureStream(SignatureFormat.XADES, timestamping, file);
+    }
+
+    /**
+     * Sign a generic document with CAdES format, streaming the signed document as it is received
+     * @param fileBytes the document to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> pkcs7SignatureStream(byte[] fileBytes, Boolean timestamping) {
+        return applySignatureStream(SignatureFormat.CADES, timestamping, fileBytes);
+    }
+
+    /**
+     * Sign a generic file with CAdES format, streaming both the file and the signed document
+     * @param file the file to sign
+     * @param timestamping if true, the signature will be timestamped
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> pkcs7SignatureStream(Path file, Boolean timestamping) {
+        return applySignatureStream(SignatureFormat.CADES, timestamping, file);
+    }
+
+    /**
+     * Sign a batch of documents, as many at a time as the connections to the SignBox service, or their streams with HTTP/2
+     * @param requests the documents to sign
+     * @return a {@link Flux} emitting the result of each document as soon as it is available
+     */
+    public Flux<PnSignBatchResult> signBatch(Flux<PnSignBatchRequest> requests) {
+        return signBatch(requests, client.getMaxConcurrency(), false);
+    }
+
+    /**
+     * Sign a batch of documents.
+     * A failed document does not fail the batch: its error is emitted as its result. Documents are requested from
+     * the source only as results are consumed, so at most {@code parallelism} are signed and held at a time.
+     * @param requests the documents to sign
+     * @param parallelism the maximum number of documents signed at a time
+     * @param ordered if true, the results are emitted in the order of the requests, otherwise as soon as they are available
+     * @return a {@link Flux} emitting the result of each document
+     */
+    public Flux<PnSignBatchResult> signBatch(Flux<PnSignBatchRequest> requests, int parallelism, boolean ordered) {
+        Function<PnSignBatchRequest, Mono<PnSignBatchResult>> signItem = request -> Mono.defer(() -> signBatchItem(request))
+                .map(response -> PnSignBatchResult.success(request.getCorrelationId(), response))
+                .onErrorResume(e -> Mono.just(PnSignBatchResult.failure(request.getCorrelationId(), e)));
+        return ordered
+                ? requests.flatMapSequential(signItem, parallelism, 1)
+                : requests.flatMap(signItem, parallelism, 1);
+    }
+
+    /**
+     * Sign a document of a batch
+     * @param request the document to sign
+     * @return a {@link PnSignDocumentResponse} with the signed document
+     */
+    private Mono<PnSignDocumentResponse> signBatchItem(PnSignBatchRequest request) {
+        String format = request.getFormat();
+        if (!SignatureFormat.PADES.equals(format) && !SignatureFormat.XADES.equals(format) && !SignatureFormat.CADES.equals(format)) {
+            return Mono.error(new PnSpapiPermanentErrorException("Unsupported signature format: " + format));
+        }
+        return applySignature(format, Boolean.TRUE.equals(request.getTimestamping()), request.getFileBytes());
+    }
+
     /**
      * Apply the signature to the document
      * @param format the signature format
@@ -67,7 +374,126 @@ public class PnSignServiceImpl implements PnSignService {
         var requestId = UUID.randomUUID().toString();
         String message = "Invoked [sign{}] request {} with params format={}, level={}, requestBody length: {} bytes.";
         log.info(message, format, requestId, format, level, fileBytes.length);
-        return SignServiceClient.sign(apiEndpoint, requestId, fileBytes, format, level);
+        return withContext(client.sign(apiEndpoint, requestId, fileBytes, format, level));
+    }
+
+    /**
+     * Apply the signature to the file
+     * @param format the signature format
+     * @param timestamping if true, the signature will be timestamped
+     * @param file the file to sign
+     * @return a {@link PnSignDocumentResponse} with the signed document
+     */
+    private Mono<PnSignDocumentResponse> applySignature(String format, Boolean timestamping, Path file) {
+        if(file == null || !Files.isRegularFile(file)) {
+            return Mono.error(new PnSpapiPermanentErrorException("file cannot be null and must be a regular file"));
+        }
+        String level = timestamping ? SignatureLevel.TIMESTAMP : SignatureLevel.BASIC;
+        var requestId = UUID.randomUUID().toString();
+        String message = "Invoked [sign{}] request {} with params format={}, level={}, file: {}.";
+        log.info(message, format, requestId, format, level, file);
+        return withContext(client.sign(apiEndpoint, requestId, file, format, level));
+    }
+
+    /**
+     * Apply the signature to the digest of a document
+     * @param digest the digest of the document
+     * @param digestAlgorithm the algorithm of the digest
+     * @param timestamping if true, the signature will be timestamped
+     * @param length the length of the document, for the log, or -1 if unknown
+     * @return a {@link PnSignDocumentResponse} with the detached signature
+     */
+    private Mono<PnSignDocumentResponse> applyDigestSignature(byte[] digest, String digestAlgorithm, Boolean timestamping, long length) {
+        return applyDigestSignature(SignatureFormat.CADES, digest, digestAlgorithm, timestamping, length);
+    }
+
+    /**
+     * Apply the signature to the byte ranges of a prepared PDF document, filling its placeholder
+     * @param signature the prepared signature
+     * @param digestAlgorithm the algorithm of the digest
+     * @param timestamping if true, the signature will be timestamped
+     * @return the signature, filled with the detached signature of its byte ranges
+     */
+    private Mono<PdfSignature> applyPdfDigestSignature(PdfSignature signature, String digestAlgorithm, Boolean timestamping) {
+        return Mono.fromCallable(() -> signature.digest(digestAlgorithm))
+                .flatMap(digest -> applyDigestSignature(SignatureFormat.PADES, digest, digestAlgorithm, timestamping, signature.getLength()))
+                .map(response -> signature.sign(response.getSignedDocument()));
+    }
+
+    /**
+     * Apply the signature to the digest of a document
+     * @param format the signature format of the document, for the log; the digest always gets a CAdES signature
+     * @param digest the digest of the document
+     * @param digestAlgorithm the algorithm of the digest
+     * @param timestamping if true, the signature will be timestamped
+     * @param length the length of the document, for the log, or -1 if unknown
+     * @return a {@link PnSignDocumentResponse} with the detached signature
+     */
+    private Mono<PnSignDocumentResponse> applyDigestSignature(String format, byte[] digest, String digestAlgorithm, Boolean timestamping, long length) {
+        String level = Boolean.TRUE.equals(timestamping) ? SignatureLevel.TIMESTAMP : SignatureLevel.BASIC;
+        var requestId = UUID.randomUUID().toString();
+        String message = "Invoked [signDigest{}] request {} with params format={}, level={}, digestAlgorithm={}, document length: {} bytes.";
+        log.info(message, format, requestId, format, level, digestAlgorithm, length);
+        return withContext(client.signDigest(null, requestId, digest, digestAlgorithm, level));
+    }
+
+    /**
+     * Apply the signature to the document, streaming the response
+     * @param format the signature format
+     * @param timestamping if true, the signature will be timestamped
+     * @param fileBytes the document to sign
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    private Flux<ByteBuffer> applySignatureStream(String format, Boolean timestamping, byte[] fileBytes) {
+        if(fileBytes == null || fileBytes.length == 0) {
+            return Flux.error(new PnSpapiPermanentErrorException("fileBytes cannot be null or empty"));
+        }
+        String level = timestamping ? SignatureLevel.TIMESTAMP : SignatureLevel.BASIC;
+        var requestId = UUID.randomUUID().toString();
+        String message = "Invoked [signStream{}] request {} with params format={}, level={}, requestBody length: {} bytes.";
+        log.info(message, format, requestId, format, level, fileBytes.length);
+        return withContext(client.signStream(apiEndpoint, requestId, fileBytes, format, level));
+    }
+
+    /**
+     * Apply the signature to the file, streaming the response
+     * @param format the signature format
+     * @param timestamping if true, the signature will be timestamped
+     * @param file the file to sign
+     * @return a {@link Flux} emitting the signed document chunk by chunk
+     */
+    private Flux<ByteBuffer> applySignatureStream(String format, Boolean timestamping, Path file) {
+        if(file == null || !Files.isRegularFile(file)) {
+            return Flux.error(new PnSpapiPermanentErrorException("file cannot be null and must be a regular file"));
+        }
+        String level = timestamping ? SignatureLevel.TIMESTAMP : SignatureLevel.BASIC;
+        var requestId = UUID.randomUUID().toString();
+        String message = "Invoked [signStream{}] request {} with params format={}, level={}, file: {}.";
+        log.info(message, format, requestId, format, level, file);
+        return withContext(client.signStream(apiEndpoint, requestId, file, format, level));
+    }
+
+    /**
+     * Set the tenant and the priority of a call in its context, if any
+     * @param call the sign call
+     * @return the call, tagged with the tenant and the priority
+     */
+    private <T> Mono<T> withContext(Mono<T> call) {
+        return call.contextWrite(this::tag);
+    }
+
+    /**
+     * Set the tenant and the priority of a streaming call in its context, if any
+     * @param call the sign call
+     * @return the call, tagged with the tenant and the priority
+     */
+    private <T> Flux<T> withContext(Flux<T> call) {
+        return call.contextWrite(this::tag);
+    }
+
+    private Context tag(Context context) {
+        Context tagged = tenant == null ? context : context.put(SignBoxClient.TENANT_CONTEXT_KEY, tenant);
+        return priority == null ? tagged : tagged.put(SignBoxClient.PRIORITY_CONTEXT_KEY, priority);
     }
 
 }
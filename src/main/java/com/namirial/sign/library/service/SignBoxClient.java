@@ -0,0 +1,1190 @@
+package com.namirial.sign.library.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.namirial.sign.library.cache.SignResultCache;
+import com.namirial.sign.library.cms.CmsSignedData;
+import com.namirial.sign.library.config.BulkheadConfig;
+import com.namirial.sign.library.config.CompressionConfig;
+import com.namirial.sign.library.config.HashSigningConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.config.SignServiceConfigWatcher;
+import com.namirial.sign.library.config.TimingConfig;
+import com.namirial.sign.library.exceptions.SignServiceErrorClassifier;
+import com.namirial.sign.library.exceptions.SignServicePermanentErrorException;
+import com.namirial.sign.library.exceptions.SignServiceTemporaryErrorException;
+import com.namirial.sign.library.metrics.SignMetrics;
+import com.namirial.sign.library.metrics.SignTimeline;
+import com.namirial.sign.library.metrics.SignTimelineListener;
+import com.namirial.sign.library.pojo.ErrorClassification;
+import com.namirial.sign.library.pojo.ServerErrorResponse;
+import com.namirial.sign.library.pojo.SignPriority;
+import com.namirial.sign.library.pojo.SignatureFormat;
+import com.namirial.sign.library.resilience.AdaptiveConcurrencyLimiter;
+import com.namirial.sign.library.resilience.Bulkhead;
+import com.namirial.sign.library.resilience.CircuitBreaker;
+import com.namirial.sign.library.resilience.MemoryBudget;
+import com.namirial.sign.library.resilience.RateLimiter;
+import com.namirial.sign.library.resilience.RequestScheduler;
+import com.namirial.sign.library.resilience.RetryPolicy;
+import com.namirial.sign.library.validation.DocumentValidator;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.timeout.ReadTimeoutException;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import it.pagopa.pn.library.sign.pojo.PnSignDocumentResponse;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.ByteBufMono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Client of the Namirial SignBox service, owning its configuration, credentials and connection pool.
+ * <p>
+ * Clients are built with {@link #builder()}; each one is isolated from the others, so a tenant or a kind of
+ * document given its own client cannot take the connections of the others. Within a client, the connections
+ * can be further partitioned by format or tenant with bulkheads. {@link SignServiceClient} gives static access
+ * to a default client configured from the system properties.
+ */
+@Slf4j
+public class SignBoxClient {
+
+    // # =====================================
+    // # =        Constants                  =
+    // # =====================================
+    private static final String API_KEY_HEADER_NAME = "X-SIGNBOX-EASYSIGN";
+    private static final String REQUEST_ID_HEADER_NAME = "X-SIGNBOX-TRANSACTION-ID";
+    private static final String HEDGE_REQUEST_ID_SUFFIX = "-hedge";
+    private static final String AUTHORIZATION_HEADER_NAME = "Authorization";
+    /** Key of the tenant of a request in the Reactor context, used by the bulkheads partitioned by tenant */
+    public static final String TENANT_CONTEXT_KEY = "namirial.sign.tenant";
+    /** Key of the {@link SignPriority} of a request in the Reactor context, used by the scheduler */
+    public static final String PRIORITY_CONTEXT_KEY = "namirial.sign.priority";
+    /** Key of the {@link Instant} deadline of a request in the Reactor context, shortening the configured overall deadline */
+    public static final String DEADLINE_CONTEXT_KEY = "namirial.sign.deadline";
+    private static final String DEFAULT_PARTITION = "default";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // built once: parse the error bodies straight from the response buffer
+    private static final ObjectReader errorReader = objectMapper.readerFor(ServerErrorResponse.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private static final ObjectReader stringReader = objectMapper.readerFor(String.class);
+
+    // registered on the global registry, like the reactor-netty meters, and shared by the clients
+    private static final SignMetrics metrics = new SignMetrics(Metrics.globalRegistry);
+
+    // # =====================================
+    // # =        Configuration and pool     =
+    // # =====================================
+    private final String name;
+    private final AtomicReference<ClientState> state;
+    private final List<SignTimelineListener> timelineListeners = new CopyOnWriteArrayList<>();
+
+    // set by close(), cleared by start()
+    private volatile boolean closed;
+
+    /**
+     * Build a client
+     * @param name The name of the client, tagging the meters of its connection pool; null for the default client
+     * @param config The configuration, read from the system properties if null
+     */
+    @Builder
+    private SignBoxClient(String name, SignServiceConfig config) {
+        this.name = name;
+        this.state = new AtomicReference<>(ClientState.of(name, config != null ? config : SignServiceConfig.fromSystemProperties(), null));
+        ServiceLoader.load(SignTimelineListener.class).forEach(timelineListeners::add);
+    }
+
+    /**
+     * Get the name of the client
+     * @return The name given to the builder, or null for the default client
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Add a listener of the timelines of the requests, called if timing is enabled
+     * @param listener The listener
+     */
+    public void addTimelineListener(SignTimelineListener listener) {
+        timelineListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener of the timelines of the requests
+     * @param listener The listener
+     */
+    public void removeTimelineListener(SignTimelineListener listener) {
+        timelineListeners.remove(listener);
+    }
+
+    /**
+     * Configuration snapshot and the resources built from it
+     */
+    private record ClientState(SignServiceConfig config, SignServiceConnectionPool pool, AdaptiveConcurrencyLimiter limiter,
+                               RetryPolicy retryPolicy, CircuitBreaker circuitBreaker,
+                               Map<String, SignServiceLoadBalancer> balancers, SignResultCache cache,
+                               MemoryBudget memoryBudget, SignServiceErrorClassifier errorClassifier, RateLimiter rateLimiter,
+                               Bulkhead bulkhead, RequestScheduler scheduler) {
+
+        /**
+         * Build the state for a configuration, keeping the resources of the previous state whose settings did not change
+         */
+        static ClientState of(String name, SignServiceConfig config, ClientState previous) {
+            boolean keepPool = previous != null && previous.config().hasSamePoolSettings(config);
+            boolean keepLimiter = keepPool && previous.config().getLimiter().equals(config.getLimiter());
+            var pool = keepPool ? previous.pool() : new SignServiceConnectionPool(name, config);
+            AdaptiveConcurrencyLimiter limiter = null;
+            if (keepLimiter) {
+                limiter = previous.limiter();
+            } else if (config.getLimiter().isEnabled()) {
+                limiter = new AdaptiveConcurrencyLimiter(config.getLimiter(), config.getMaxConcurrency());
+            }
+            boolean keepRetryPolicy = previous != null
+                    && previous.config().getRetry().equals(config.getRetry())
+                    && previous.config().getHedging().equals(config.getHedging());
+            var retryPolicy = keepRetryPolicy ? previous.retryPolicy() : new RetryPolicy(config.getRetry(), config.getHedging());
+            CircuitBreaker circuitBreaker = null;
+            if (previous != null && previous.config().getCircuitBreaker().equals(config.getCircuitBreaker())) {
+                circuitBreaker = previous.circuitBreaker();
+            } else if (config.getCircuitBreaker().isEnabled()) {
+                circuitBreaker = new CircuitBreaker(config.getCircuitBreaker());
+            }
+            Map<String, SignServiceLoadBalancer> balancers = new ConcurrentHashMap<>();
+            if (keepPool && previous.config().getBalancer().equals(config.getBalancer())) {
+                balancers.putAll(previous.balancers());
+                if (!previous.config().getApiEndpoint().equals(config.getApiEndpoint())) {
+                    balancers.remove(previous.config().getApiEndpoint());
+                }
+            }
+            SignResultCache cache = null;
+            if (previous != null && previous.cache() != null && previous.config().getCache().equals(config.getCache())
+                    && previous.config().hasSameSigner(config)) {
+                cache = previous.cache();
+            } else if (config.getCache().isEnabled()) {
+                cache = new SignResultCache(config.getCache());
+            }
+            MemoryBudget memoryBudget = null;
+            if (previous != null && previous.config().getMemory().equals(config.getMemory())) {
+                memoryBudget = previous.memoryBudget();
+            } else if (config.getMemory().isEnabled()) {
+                memoryBudget = new MemoryBudget(config.getMemory());
+            }
+            var errorClassifier = previous != null && previous.config().getErrors().equals(config.getErrors())
+                    ? previous.errorClassifier()
+                    : new SignServiceErrorClassifier(config.getErrors());
+            RateLimiter rateLimiter = null;
+            if (previous != null && previous.config().getRateLimit().equals(config.getRateLimit())
+                    && previous.config().getApiKey().equals(config.getApiKey())) {
+                rateLimiter = previous.rateLimiter();
+            } else if (config.getRateLimit().isEnabled()) {
+                rateLimiter = RateLimiter.forApiKey(config.getRateLimit(), config.getApiKey(), (wait, rejected) -> {
+                    if (config.isMetricsEnabled()) {
+                        metrics.recordThrottle(wait, rejected);
+                    }
+                });
+            }
+            Bulkhead bulkhead = null;
+            if (keepPool && previous.config().getBulkhead().equals(config.getBulkhead())) {
+                bulkhead = previous.bulkhead();
+            } else if (config.getBulkhead().isEnabled()) {
+                bulkhead = new Bulkhead(config.getBulkhead(), config.getMaxConcurrency());
+            }
+            RequestScheduler scheduler = null;
+            if (keepPool && previous.config().getScheduler().equals(config.getScheduler()) && previous.limiter() == limiter) {
+                scheduler = previous.scheduler();
+            } else if (config.getScheduler().isEnabled()) {
+                // the scheduler is the last stage where calls wait: it runs no more calls than the limiter lets through
+                scheduler = limiter != null
+                        ? new RequestScheduler(config.getScheduler(), limiter::getLimit)
+                        : new RequestScheduler(config.getScheduler(), config.getMaxConcurrency());
+            }
+            return new ClientState(config, pool, limiter, retryPolicy, circuitBreaker, balancers, cache, memoryBudget, errorClassifier,
+                    rateLimiter, bulkhead, scheduler);
+        }
+
+        /**
+         * Get the balancer of an address, building it on first use
+         * @param apiEndpoint The address overriding the configured one if not blank, with one or more comma separated endpoints
+         * @return The balancer between the endpoints of the address
+         */
+        SignServiceLoadBalancer balancer(String apiEndpoint) {
+            String address = StringUtils.isNotBlank(apiEndpoint) ? apiEndpoint : config.getApiEndpoint();
+            return balancers.computeIfAbsent(address, key -> new SignServiceLoadBalancer(key, config.getBalancer(), pool.httpClient()));
+        }
+    }
+
+    /**
+     * Get the current configuration
+     * @return The configuration snapshot used by new requests
+     */
+    public SignServiceConfig getConfig() {
+        return state.get().config();
+    }
+
+    /**
+     * Replace the configuration.
+     * New requests use the new snapshot at once; if the pool settings changed, a new connection pool is built
+     * and the previous one is disposed once its in-flight requests complete.
+     * @param config The new configuration
+     */
+    public synchronized void configure(SignServiceConfig config) {
+        ClientState previous = state.get();
+        if (previous.config().equals(config)) {
+            return;
+        }
+        ClientState next = ClientState.of(name, config, previous);
+        state.set(next);
+        log.info("SignBox configuration updated: {}", config);
+        if (next.pool() != previous.pool()) {
+            previous.pool().retire();
+        }
+        previous.balancers().forEach((address, balancer) -> {
+            if (next.balancers().get(address) != balancer) {
+                balancer.dispose();
+            }
+        });
+    }
+
+    /**
+     * Watch a properties file and apply its configuration whenever it changes, e.g. to rotate credentials
+     * @param file The properties file, using the {@code namirial.server.*} names
+     * @param interval The polling interval
+     * @return A {@link Disposable} stopping the watch
+     */
+    public Disposable watchConfig(Path file, Duration interval) {
+        return SignServiceConfigWatcher.watch(file, interval, this::configure);
+    }
+
+    /**
+     * Start the client, opening the configured warm-up connections to each endpoint.
+     * A closed client is reopened with a new connection pool.
+     * @return A {@link Mono} that will emit the number of connections opened
+     */
+    public Mono<Integer> start() {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                if (closed) {
+                    state.set(ClientState.of(name, getConfig(), null));
+                    closed = false;
+                    log.info("SignBox client reopened");
+                }
+            }
+            return warmUp(getConfig().getPool().getWarmUpConnections());
+        });
+    }
+
+    /**
+     * Open connections to each endpoint ahead of the first requests
+     * @param connections The connections to open per endpoint
+     * @return A {@link Mono} that will emit the number of connections opened
+     */
+    public Mono<Integer> warmUp(int connections) {
+        return Mono.defer(() -> {
+            if (connections <= 0) {
+                return Mono.just(0);
+            }
+            ClientState current = acquireState();
+            return current.pool().warmUp(current.config().getEndpoints(), connections)
+                    .doOnNext(opened -> log.info("Opened {} connections to the SignBox endpoints", opened))
+                    .doFinally(signal -> current.pool().release());
+        });
+    }
+
+    /**
+     * Close the client: new requests are rejected at once, in-flight requests are given some time to complete,
+     * then the connection pool is disposed. The client can be reopened with {@link #start()}.
+     * @param timeout The time given to the in-flight requests; the connections still in use are then closed
+     * @return A {@link Mono} completing once the connection pool is disposed
+     */
+    public Mono<Void> close(Duration timeout) {
+        return Mono.defer(() -> {
+            ClientState current;
+            synchronized (this) {
+                closed = true;
+                current = state.get();
+            }
+            log.info("Closing SignBox client, waiting up to {} ms for in-flight requests", timeout.toMillis());
+            current.balancers().values().forEach(SignServiceLoadBalancer::dispose);
+            return current.pool().drain(timeout);
+        });
+    }
+
+    /**
+     * Get the state of the circuit breaker, for monitoring
+     * @return The state of the breaker, {@code CLOSED} if it is disabled
+     */
+    public CircuitBreaker.State getCircuitBreakerState() {
+        var circuitBreaker = state.get().circuitBreaker();
+        return circuitBreaker == null ? CircuitBreaker.State.CLOSED : circuitBreaker.getState();
+    }
+
+    /**
+     * Get the endpoints of the configured address new requests may go to, for monitoring
+     * @return The endpoints neither ejected nor failing their health probes
+     */
+    public List<String> getAvailableEndpoints() {
+        ClientState current = state.get();
+        var balancer = current.balancers().get(current.config().getApiEndpoint());
+        // no request went to the address yet: all its endpoints are candidates
+        return balancer == null ? current.config().getEndpoints() : balancer.availableEndpoints();
+    }
+
+    /**
+     * Get the current state, registering a request on its pool
+     * @return The state to use for the request
+     */
+    private ClientState acquireState() {
+        while (true) {
+            if (closed) {
+                throw closedError();
+            }
+            ClientState current = state.get();
+            if (current.pool().acquire()) {
+                return current;
+            }
+        }
+    }
+
+    private static PnSpapiTemporaryErrorException closedError() {
+        return new PnSpapiTemporaryErrorException("SignBox client is closed");
+    }
+
+    /**
+     * Sign a document using the Namirial SignBox service
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param data The data to sign as byte array
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Mono} that will emit the response from the service
+     */
+    public Mono<PnSignDocumentResponse> sign(String apiEndpoint, String requestId, byte[] data, String format, String level) {
+        return sign(apiEndpoint, requestId, ByteBuffer.wrap(data), format, level);
+    }
+
+    /**
+     * Sign a document using the Namirial SignBox service.
+     * The buffer is wrapped as-is in the request body and must not be modified until the returned {@link Mono} terminates.
+     * If the cache is enabled, identical requests in flight share one call and recent signed documents are served from the cache;
+     * the key of the document is computed off the caller thread.
+     * If validation is enabled, a malformed PDF or XML document fails with a permanent error before being sent.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param data The data to sign, from its position to its limit
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Mono} that will emit the response from the service
+     */
+    public Mono<PnSignDocumentResponse> sign(String apiEndpoint, String requestId, ByteBuffer data, String format, String level) {
+        return validated(format, data).then(Mono.defer(() -> {
+            ClientState current = state.get();
+            Mono<PnSignDocumentResponse> call = sign(apiEndpoint, requestId, MultipartBody.of(requestId, format, level, data));
+            if (current.cache() == null) {
+                return call;
+            }
+            String address = StringUtils.isNotBlank(apiEndpoint) ? apiEndpoint : current.config().getApiEndpoint();
+            // hashing the whole document is too slow for the caller thread, often an event loop
+            return Mono.fromCallable(() -> SignResultCache.key(address, data, format, level))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(key -> cached(current.cache(), key, call, format, level))
+                    .map(PnSignDocumentResponse::new);
+        }));
+    }
+
+    /**
+     * Get a signed document from the cache, timing the requests served without calling the service
+     * @param cache The result cache
+     * @param key The key of the request
+     * @param call The call to the service, metered on its own
+     * @param format The format of the signature
+     * @param level The level of the signature
+     * @return A {@link Mono} that will emit the signed document
+     */
+    private Mono<byte[]> cached(SignResultCache cache, String key, Mono<PnSignDocumentResponse> call, String format, String level) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean sent = new AtomicBoolean();
+            return cache.get(key, () -> call.doOnSubscribe(subscription -> sent.set(true)).map(PnSignDocumentResponse::getSignedDocument))
+                    .doOnNext(signed -> {
+                        if (!sent.get() && getConfig().isMetricsEnabled()) {
+                            metrics.recordCached(format, level, Duration.ofNanos(System.nanoTime() - start));
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Sign a file using the Namirial SignBox service.
+     * The file is streamed from disk, using zero-copy file transfer when the connection allows it.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param file The file to sign
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Mono} that will emit the response from the service
+     */
+    public Mono<PnSignDocumentResponse> sign(String apiEndpoint, String requestId, Path file, String format, String level) {
+        return validated(format, file).then(fileBody(requestId, file, format, level)).flatMap(body -> sign(apiEndpoint, requestId, body));
+    }
+
+    /**
+     * Sign the digest of a document using the digest signing endpoint of the Namirial SignBox service.
+     * Only the digest is sent; the response is checked to sign that digest.
+     * Without a digest signing endpoint, configured or passed, the call fails with a permanent error.
+     * @param apiEndpoint The endpoint to use for the request, overriding the configured digest signing endpoint if not blank
+     * @param requestId The request id
+     * @param digest The digest of the document
+     * @param digestAlgorithm The algorithm of the digest, e.g. {@code SHA-256}
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Mono} that will emit the detached CAdES signature of the document, DER encoded
+     */
+    public Mono<PnSignDocumentResponse> signDigest(String apiEndpoint, String requestId, byte[] digest, String digestAlgorithm, String level) {
+        return Mono.defer(() -> {
+            String address = StringUtils.isNotBlank(apiEndpoint) ? apiEndpoint : getConfig().getHash().getApiEndpoint();
+            if (StringUtils.isBlank(address)) {
+                // the sign endpoint would take the digest for the document itself
+                return Mono.error(new PnSpapiPermanentErrorException("No SignBox digest signing endpoint configured: set " + HashSigningConfig.API_ENDPOINT_PROP));
+            }
+            MultipartBody body = MultipartBody.ofDigest(requestId, SignatureFormat.CADES, level, digestAlgorithm, digest);
+            return sign(address, requestId, body)
+                    .doOnNext(response -> CmsSignedData.checkDigest(response.getSignedDocument(), digest));
+        });
+    }
+
+    /**
+     * Sign a document using the Namirial SignBox service, streaming the signed document as it is received.
+     * Each emitted buffer is a copy of a received chunk, so it can be consumed asynchronously.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param data The data to sign as byte array
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Flux} that will emit the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> signStream(String apiEndpoint, String requestId, byte[] data, String format, String level) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        return validated(format, buffer).thenMany(Flux.defer(() -> signStream(apiEndpoint, requestId, MultipartBody.of(requestId, format, level, buffer))));
+    }
+
+    /**
+     * Get the heap held by a call until it terminates
+     * @param body The multipart body
+     * @param aggregated True if the signed document is aggregated in memory, false if it is streamed
+     * @return The size of the document if held in memory, plus the size expected for the signed document if aggregated
+     */
+    private static long heapBytes(MultipartBody body, boolean aggregated) {
+        return (body.inMemory() ? body.payloadLength() : 0) + (aggregated ? body.payloadLength() : 0);
+    }
+
+    /**
+     * Sign a file using the Namirial SignBox service, streaming the signed document as it is received.
+     * Each emitted buffer is a copy of a received chunk, so it can be consumed asynchronously.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param file The file to sign
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Flux} that will emit the signed document chunk by chunk
+     */
+    public Flux<ByteBuffer> signStream(String apiEndpoint, String requestId, Path file, String format, String level) {
+        return validated(format, file).then(fileBody(requestId, file, format, level)).flatMapMany(body -> signStream(apiEndpoint, requestId, body));
+    }
+
+    /**
+     * Check a document before it is uploaded, if validation is enabled, on a worker thread: the XML documents are parsed
+     * @param format The format of the signature
+     * @param data The document, from its position to its limit
+     * @return A {@link Mono} completing if the document is valid, or failing with a permanent error
+     */
+    private Mono<Void> validated(String format, ByteBuffer data) {
+        return Mono.defer(() -> getConfig().isValidationEnabled()
+                ? Mono.<Void>fromRunnable(() -> DocumentValidator.validate(format, data)).subscribeOn(Schedulers.boundedElastic())
+                : Mono.empty());
+    }
+
+    /**
+     * Check a file before it is uploaded, if validation is enabled, on a worker thread: the file is read
+     * @param format The format of the signature
+     * @param file The file to sign
+     * @return A {@link Mono} completing if the file is valid, or failing with a permanent error
+     */
+    private Mono<Void> validated(String format, Path file) {
+        return Mono.defer(() -> getConfig().isValidationEnabled()
+                ? Mono.<Void>fromRunnable(() -> DocumentValidator.validate(format, file)).subscribeOn(Schedulers.boundedElastic())
+                : Mono.empty());
+    }
+
+    /**
+     * Build the multipart body of a file
+     * @param requestId The request id
+     * @param file The file to sign
+     * @param format The format of the signature
+     * @param level The level of the signature
+     * @return A {@link Mono} that will emit the body, or a permanent error if the file is empty or unreadable
+     */
+    private static Mono<MultipartBody> fileBody(String requestId, Path file, String format, String level) {
+        return Mono.fromCallable(() -> MultipartBody.of(requestId, format, level, file))
+                .onErrorMap(IOException.class, e -> new PnSpapiPermanentErrorException("Unable to read file " + file + ": " + e.getMessage()))
+                .filter(body -> body.payloadLength() > 0)
+                .switchIfEmpty(Mono.error(() -> new PnSpapiPermanentErrorException("file cannot be empty")));
+    }
+
+    /**
+     * Send the multipart sign request, with the configured retries and hedging, and aggregate the response
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param body The multipart body
+     * @return A {@link Mono} that will emit the response from the service
+     */
+    private Mono<PnSignDocumentResponse> sign(String apiEndpoint, String requestId, MultipartBody body) {
+        Mono<PnSignDocumentResponse> call = deadlined(budgeted(Mono.defer(() -> closed ? Mono.<PnSignDocumentResponse>error(closedError()) : state.get().retryPolicy().apply(
+                signAttempt(apiEndpoint, requestId, body),
+                signAttempt(apiEndpoint, requestId + HEDGE_REQUEST_ID_SUFFIX, body),
+                body.payloadLength())), heapBytes(body, true)), body);
+        return Mono.defer(() -> getConfig().isMetricsEnabled()
+                ? metrics.record(call, body.format(), body.level(), body.payloadLength(), response -> response.getSignedDocument().length)
+                : call);
+    }
+
+    /**
+     * Send the multipart sign request once and aggregate the response
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param body The multipart body
+     * @return A {@link Mono} that will emit the response from the service
+     */
+    private Mono<PnSignDocumentResponse> signAttempt(String apiEndpoint, String requestId, MultipartBody body) {
+        return timed(requestId, body, timeline -> bulkheaded(rateLimited(scheduled(limited(Mono.using(this::acquireState, current -> protect(current, exchanged(exchange -> current.balancer(apiEndpoint).call(endpoint -> bounded(exchange, request(current, endpoint, requestId, body, timeline, exchange)
+                .responseSingle((response, responseBody) -> {
+                    var responseId = response.responseHeaders().get(REQUEST_ID_HEADER_NAME);
+                    if (response.status().code() == 200) {
+                        return responseBody.asByteArray().flatMap(buffer -> parseResponse(response, buffer, responseId));
+                    }
+                    return SignBoxClient.<PnSignDocumentResponse>getError(current, response, responseBody, responseId);
+                }))))), current -> current.pool().release())), body), body.contentLength()), body)
+                .onErrorResume(SignBoxClient::resumeError));
+    }
+
+    /**
+     * Send the multipart sign request, with the configured retries, and stream the response
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param body The multipart body
+     * @return A {@link Flux} that will emit the signed document chunk by chunk
+     */
+    private Flux<ByteBuffer> signStream(String apiEndpoint, String requestId, MultipartBody body) {
+        Flux<ByteBuffer> call = deadlined(budgeted(Flux.defer(() -> closed ? Flux.<ByteBuffer>error(closedError()) : state.get().retryPolicy().apply(signStreamAttempt(apiEndpoint, requestId, body))),
+                heapBytes(body, false)), body);
+        return Flux.defer(() -> getConfig().isMetricsEnabled()
+                ? metrics.record(call, body.format(), body.level(), body.payloadLength(), ByteBuffer::remaining)
+                : call);
+    }
+
+    /**
+     * Send the multipart sign request once and stream the response
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param body The multipart body
+     * @return A {@link Flux} that will emit the signed document chunk by chunk
+     */
+    private Flux<ByteBuffer> signStreamAttempt(String apiEndpoint, String requestId, MultipartBody body) {
+        return timedMany(requestId, body, timeline -> bulkheaded(rateLimited(scheduled(limited(Flux.using(this::acquireState, current -> protect(current, exchangedMany(exchange -> current.balancer(apiEndpoint).callMany(endpoint -> bounded(exchange, request(current, endpoint, requestId, body, timeline, exchange)
+                .response((response, responseBody) -> {
+                    var responseId = response.responseHeaders().get(REQUEST_ID_HEADER_NAME);
+                    if (response.status().code() == 200) {
+                        log.info("Streaming response from requestId {} with status code: {}, reason: {}", responseId, response.status().code(), response.status().reasonPhrase());
+                        return responseBody.asByteArray().map(ByteBuffer::wrap);
+                    }
+                    return SignBoxClient.<ByteBuffer>getError(current, response, responseBody.aggregate(), responseId);
+                }))))), current -> current.pool().release())), body), body.contentLength()), body)
+                .onErrorResume(SignBoxClient::resumeError));
+    }
+
+    /**
+     * Run the HTTP exchange of an attempt, closing its connection if the attempt is cancelled before the response
+     * is complete
+     * @param exchange The exchange, given the tracker of its connection
+     * @return The exchange
+     */
+    private static <T> Mono<T> exchanged(Function<CancellableExchange, Mono<T>> exchange) {
+        return Mono.defer(() -> {
+            var connection = new CancellableExchange();
+            return exchange.apply(connection).doOnCancel(connection::cancel);
+        });
+    }
+
+    /**
+     * Run the HTTP exchange of a streaming attempt, closing its connection if the attempt is cancelled before the
+     * response is complete
+     * @param exchange The exchange, given the tracker of its connection
+     * @return The exchange
+     */
+    private static <T> Flux<T> exchangedMany(Function<CancellableExchange, Flux<T>> exchange) {
+        return Flux.defer(() -> {
+            var connection = new CancellableExchange();
+            return exchange.apply(connection).doOnCancel(connection::cancel);
+        });
+    }
+
+    /**
+     * Fail the exchange of an attempt once the overall deadline of its call has elapsed, if bounded
+     * @param exchange The tracker of the connection of the exchange
+     * @param response The response of the exchange
+     * @return The response, or the deadline error
+     */
+    private static <T> Mono<T> bounded(CancellableExchange exchange, Mono<T> response) {
+        return Mono.deferContextual(context -> {
+            CallDeadline deadline = context.getOrDefault(CallDeadline.CONTEXT_KEY, null);
+            return deadline == null ? response : deadline.bound(exchange, response);
+        });
+    }
+
+    /**
+     * Fail the exchange of a streaming attempt once the overall deadline of its call has elapsed, if bounded
+     * @param exchange The tracker of the connection of the exchange
+     * @param response The response of the exchange
+     * @return The response, ending with the deadline error if not complete in time
+     */
+    private static <T> Flux<T> bounded(CancellableExchange exchange, Flux<T> response) {
+        return Flux.deferContextual(context -> {
+            CallDeadline deadline = context.getOrDefault(CallDeadline.CONTEXT_KEY, null);
+            return deadline == null ? response : deadline.bound(exchange, response);
+        });
+    }
+
+    /**
+     * Bound a call by its overall deadline: the configured one, grown with the size and the level of the document,
+     * or the deadline set by the caller in the Reactor context if earlier. Once elapsed, the exchange in flight fails
+     * with a temporary error, closing its connection, and whatever is left of the call, e.g. a backoff, is cancelled.
+     * @param call The call to run, retries included
+     * @param body The multipart body
+     * @return The call, bounded by its deadline
+     */
+    private <T> Mono<T> deadlined(Mono<T> call, MultipartBody body) {
+        return Mono.deferContextual(context -> {
+            Duration deadline = deadline(context, body);
+            if (deadline == null) {
+                return call;
+            }
+            if (deadline.isZero()) {
+                return Mono.error(CallDeadline.exceeded(deadline));
+            }
+            var callDeadline = new CallDeadline(deadline);
+            return call.contextWrite(Context.of(CallDeadline.CONTEXT_KEY, callDeadline))
+                    .timeout(callDeadline.timer(), Mono.error(callDeadline::exceeded));
+        });
+    }
+
+    /**
+     * Bound a streaming call by its overall deadline, the whole download included
+     * @param call The call to run, retries included
+     * @param body The multipart body
+     * @return The call, bounded by its deadline
+     */
+    private <T> Flux<T> deadlined(Flux<T> call, MultipartBody body) {
+        return Flux.deferContextual(context -> {
+            Duration deadline = deadline(context, body);
+            if (deadline == null) {
+                return call;
+            }
+            if (deadline.isZero()) {
+                return Flux.error(CallDeadline.exceeded(deadline));
+            }
+            var callDeadline = new CallDeadline(deadline);
+            return call.contextWrite(Context.of(CallDeadline.CONTEXT_KEY, callDeadline))
+                    .takeUntilOther(callDeadline.timer().then(Mono.error(callDeadline::exceeded)));
+        });
+    }
+
+    /**
+     * Get the overall deadline of a call
+     * @param context The Reactor context of the call, with the deadline of the caller if any
+     * @param body The multipart body
+     * @return The time left to the call, zero if the deadline of the caller has passed, or null if unbounded
+     */
+    private Duration deadline(ContextView context, MultipartBody body) {
+        Duration deadline = getConfig().getDeadline().overall(body.payloadLength(), body.level());
+        Instant callerDeadline = context.getOrDefault(DEADLINE_CONTEXT_KEY, null);
+        if (callerDeadline == null) {
+            return deadline;
+        }
+        Duration left = Duration.between(Instant.now(), callerDeadline);
+        if (left.isNegative()) {
+            return Duration.ZERO;
+        }
+        return deadline == null || left.compareTo(deadline) < 0 ? left : deadline;
+    }
+
+    /**
+     * Record the timeline of an attempt, if timing is enabled
+     * @param requestId The request id of the attempt
+     * @param body The multipart body
+     * @param attempt The attempt, given the recorder of its timeline, null if timing is disabled
+     * @return The attempt, delivering its timeline once it terminates
+     */
+    private <T> Mono<T> timed(String requestId, MultipartBody body, Function<SignTimelineRecorder, Mono<T>> attempt) {
+        return Mono.defer(() -> {
+            TimingConfig timing = getConfig().getTiming();
+            if (!timing.isEnabled()) {
+                return attempt.apply(null);
+            }
+            var timeline = new SignTimelineRecorder(requestId, body);
+            return attempt.apply(timeline)
+                    .doOnError(timeline::failed)
+                    .doFinally(signal -> publish(timing, timeline.finish(signal)));
+        });
+    }
+
+    /**
+     * Record the timeline of a streaming attempt, if timing is enabled
+     * @param requestId The request id of the attempt
+     * @param body The multipart body
+     * @param attempt The attempt, given the recorder of its timeline, null if timing is disabled
+     * @return The attempt, delivering its timeline once it terminates
+     */
+    private <T> Flux<T> timedMany(String requestId, MultipartBody body, Function<SignTimelineRecorder, Flux<T>> attempt) {
+        return Flux.defer(() -> {
+            TimingConfig timing = getConfig().getTiming();
+            if (!timing.isEnabled()) {
+                return attempt.apply(null);
+            }
+            var timeline = new SignTimelineRecorder(requestId, body);
+            return attempt.apply(timeline)
+                    .doOnError(timeline::failed)
+                    .doFinally(signal -> publish(timing, timeline.finish(signal)));
+        });
+    }
+
+    /**
+     * Log the timeline of a slow attempt and deliver the timeline to the listeners, if slow or sampled
+     * @param timing The timing settings
+     * @param timeline The timeline of the attempt
+     */
+    private void publish(TimingConfig timing, SignTimeline timeline) {
+        boolean slow = timing.isSlow(timeline.getTotal());
+        if (slow) {
+            log.warn("Slow SignBox request: {}", timeline);
+        } else {
+            log.debug("SignBox request timeline: {}", timeline);
+        }
+        if (!slow && ThreadLocalRandom.current().nextDouble() >= timing.getSampleRate()) {
+            return;
+        }
+        for (SignTimelineListener listener : timelineListeners) {
+            try {
+                listener.onTimeline(timeline);
+            } catch (RuntimeException e) {
+                log.warn("SignBox timeline listener {} failed: {}", listener.getClass().getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run the HTTP exchange of an attempt through the circuit breaker, if enabled.
+     * The breaker sits inside the local queues: their rejections and their waits say nothing about the service.
+     * @param current The configuration and pool used by the attempt
+     * @param exchange The exchange to run
+     * @return The exchange, or a temporary error while the breaker is open
+     */
+    private static <T> Mono<T> protect(ClientState current, Mono<T> exchange) {
+        var circuitBreaker = current.circuitBreaker();
+        return circuitBreaker == null ? exchange : circuitBreaker.protect(exchange);
+    }
+
+    /**
+     * Run the HTTP exchange of a streaming attempt through the circuit breaker, if enabled
+     * @param current The configuration and pool used by the attempt
+     * @param exchange The exchange to run
+     * @return The exchange, or a temporary error while the breaker is open
+     */
+    private static <T> Flux<T> protect(ClientState current, Flux<T> exchange) {
+        var circuitBreaker = current.circuitBreaker();
+        return circuitBreaker == null ? exchange : circuitBreaker.protect(exchange);
+    }
+
+    /**
+     * Run a call within the memory budget, if enabled
+     * @param call The call to run
+     * @param bytes The heap held by the call
+     * @return The call, delayed or rejected by the budget
+     */
+    private <T> Mono<T> budgeted(Mono<T> call, long bytes) {
+        return Mono.defer(() -> {
+            var memoryBudget = state.get().memoryBudget();
+            return memoryBudget == null || bytes == 0 ? call : memoryBudget.reserve(call, bytes);
+        });
+    }
+
+    /**
+     * Run a streaming call within the memory budget, if enabled
+     * @param call The call to run
+     * @param bytes The heap held by the call
+     * @return The call, delayed or rejected by the budget
+     */
+    private <T> Flux<T> budgeted(Flux<T> call, long bytes) {
+        return Flux.defer(() -> {
+            var memoryBudget = state.get().memoryBudget();
+            return memoryBudget == null || bytes == 0 ? call : memoryBudget.reserve(call, bytes);
+        });
+    }
+
+    /**
+     * Run a call within the rates of the API key, if enabled
+     * @param call The call to run
+     * @param size The bytes sent by the call
+     * @return The call, delayed or rejected by the rate limiter
+     */
+    private <T> Mono<T> rateLimited(Mono<T> call, long size) {
+        return Mono.defer(() -> {
+            var rateLimiter = state.get().rateLimiter();
+            return rateLimiter == null ? call : rateLimiter.limit(call, size);
+        });
+    }
+
+    /**
+     * Run a streaming call within the rates of the API key, if enabled
+     * @param call The call to run
+     * @param size The bytes sent by the call
+     * @return The call, delayed or rejected by the rate limiter
+     */
+    private <T> Flux<T> rateLimited(Flux<T> call, long size) {
+        return Flux.defer(() -> {
+            var rateLimiter = state.get().rateLimiter();
+            return rateLimiter == null ? call : rateLimiter.limit(call, size);
+        });
+    }
+
+    /**
+     * Run a call in the bulkhead of its partition, if enabled
+     * @param call The call to run
+     * @param body The multipart body, giving the format of the call
+     * @return The call, delayed or rejected by the bulkhead
+     */
+    private <T> Mono<T> bulkheaded(Mono<T> call, MultipartBody body) {
+        return Mono.deferContextual(context -> {
+            var bulkhead = state.get().bulkhead();
+            return bulkhead == null ? call : bulkhead.limit(partition(body, context), call);
+        });
+    }
+
+    /**
+     * Run a streaming call in the bulkhead of its partition, if enabled
+     * @param call The call to run
+     * @param body The multipart body, giving the format of the call
+     * @return The call, delayed or rejected by the bulkhead
+     */
+    private <T> Flux<T> bulkheaded(Flux<T> call, MultipartBody body) {
+        return Flux.deferContextual(context -> {
+            var bulkhead = state.get().bulkhead();
+            return bulkhead == null ? call : bulkhead.limit(partition(body, context), call);
+        });
+    }
+
+    /**
+     * Run a call when the scheduler gives it its turn, if enabled
+     * @param call The call to run
+     * @param body The multipart body, giving the size of the call
+     * @return The call, delayed or rejected by the scheduler
+     */
+    private <T> Mono<T> scheduled(Mono<T> call, MultipartBody body) {
+        return Mono.deferContextual(context -> {
+            var scheduler = state.get().scheduler();
+            return scheduler == null ? call : scheduler.schedule(call, context.getOrDefault(PRIORITY_CONTEXT_KEY, SignPriority.NORMAL), body.payloadLength());
+        });
+    }
+
+    /**
+     * Run a streaming call when the scheduler gives it its turn, if enabled
+     * @param call The call to run
+     * @param body The multipart body, giving the size of the call
+     * @return The call, delayed or rejected by the scheduler
+     */
+    private <T> Flux<T> scheduled(Flux<T> call, MultipartBody body) {
+        return Flux.deferContextual(context -> {
+            var scheduler = state.get().scheduler();
+            return scheduler == null ? call : scheduler.schedule(call, context.getOrDefault(PRIORITY_CONTEXT_KEY, SignPriority.NORMAL), body.payloadLength());
+        });
+    }
+
+    /**
+     * Get the bulkhead partition of a call
+     * @param body The multipart body
+     * @param context The Reactor context of the call
+     * @return The format of the call, or its tenant if partitioned by tenant
+     */
+    private String partition(MultipartBody body, ContextView context) {
+        if (getConfig().getBulkhead().getPartitionBy() == BulkheadConfig.PartitionBy.TENANT) {
+            return context.getOrDefault(TENANT_CONTEXT_KEY, DEFAULT_PARTITION);
+        }
+        return StringUtils.isNotBlank(body.format()) ? body.format().toUpperCase() : DEFAULT_PARTITION;
+    }
+
+    /**
+     * Run a call under the adaptive concurrency limiter, if enabled
+     * @param call The call to run
+     * @return The call, delayed or shed by the limiter
+     */
+    private <T> Mono<T> limited(Mono<T> call) {
+        return Mono.defer(() -> {
+            var limiter = state.get().limiter();
+            return limiter == null ? call : limiter.limit(call);
+        });
+    }
+
+    /**
+     * Run a streaming call under the adaptive concurrency limiter, if enabled
+     * @param call The call to run
+     * @return The call, delayed or shed by the limiter
+     */
+    private <T> Flux<T> limited(Flux<T> call) {
+        return Flux.defer(() -> {
+            var limiter = state.get().limiter();
+            return limiter == null ? call : limiter.limit(call);
+        });
+    }
+
+    /**
+     * Prepare the multipart sign request
+     * @param current The configuration and pool to use
+     * @param endpoint The endpoint chosen for the request
+     * @param requestId The request id
+     * @param body The multipart body
+     * @param timeline The recorder of the timeline of the attempt, observing its connection, or null
+     * @param exchange The tracker of the connection, closing it if the attempt is cancelled
+     * @return The request, ready to receive the response
+     */
+    private HttpClient.ResponseReceiver<?> request(ClientState current, SignServiceLoadBalancer.Endpoint endpoint, String requestId, MultipartBody body,
+                                                   SignTimelineRecorder timeline, CancellableExchange exchange) {
+        SignServiceConfig config = current.config();
+        HttpClient httpClient = current.pool().httpClient().observe(exchange);
+        if (timeline != null) {
+            timeline.admitted(endpoint.address());
+            httpClient = httpClient.observe(timeline).doOnResolve(timeline::resolving);
+        }
+        CompressionConfig compression = config.getCompression();
+        boolean compressed = compression.applies(body.format(), body.payloadLength());
+        var request = httpClient
+                .headers(h -> {
+                    h.set(AUTHORIZATION_HEADER_NAME, config.getAuthorizationHeader());
+                    h.set(API_KEY_HEADER_NAME, config.getApiKey());
+                    h.set(REQUEST_ID_HEADER_NAME, requestId);
+                    h.set(HttpHeaderNames.CONTENT_TYPE, MultipartBody.CONTENT_TYPE);
+                    if (compressed) {
+                        // the compressed length is known once sent: the body goes chunked
+                        h.set(HttpHeaderNames.CONTENT_ENCODING, compression.getEncoding().headerValue());
+                    } else {
+                        h.set(HttpHeaderNames.CONTENT_LENGTH, body.contentLength());
+                    }
+                })
+                .post();
+        request = endpoint.uri() != null ? request.uri(endpoint.uri()) : request.uri(endpoint.address());
+        Duration firstByteTimeout = config.getDeadline().getFirstByteTimeout();
+        return request.send((req, out) -> {
+            if (!firstByteTimeout.isZero()) {
+                // armed once the request is sent, then between two reads of the response
+                req.responseTimeout(firstByteTimeout);
+            }
+            return compressed ? body.writeCompressedTo(out, compression) : body.writeTo(out);
+        });
+    }
+
+    /**
+     * Map an error response to the exception of its classification
+     * @param current The configuration to use
+     * @param response The response from the service
+     * @param responseBody The aggregated response body
+     * @param responseId The response id
+     * @return A {@link Mono} that will emit the error
+     */
+    private static <T> Mono<T> getError(ClientState current, HttpClientResponse response, ByteBufMono responseBody, String responseId) {
+        // parsed while reactor-netty still holds the aggregated buffer, which is released once the error is built
+        return responseBody.map(buffer -> classifyError(current.errorClassifier(), response, buffer, responseId))
+                .switchIfEmpty(Mono.fromSupplier(() -> classifyError(current.errorClassifier(), response, Unpooled.EMPTY_BUFFER, responseId)))
+                .flatMap(error -> Mono.<T>error(error));
+    }
+
+    /**
+     * Parse the response from the service
+     * @param response The response from the service
+     * @param buffer The response body as byte array
+     * @param responseId The request id
+     * @return A {@link Mono} that will emit the response from the service
+     */
+    private static Mono<PnSignDocumentResponse> parseResponse(HttpClientResponse response, byte[] buffer, String responseId) {
+        log.info("Received response from requestId {} with status code: {}, reason: {}", responseId, response.status().code(), response.status().reasonPhrase());
+        return Mono.just(new PnSignDocumentResponse(buffer));
+    }
+
+    /**
+     * Resume from error
+     * @param t The error that occurred
+     * @return A {@link Mono} that will emit the error
+     */
+    private static <T> Mono<T> resumeError(Throwable t) {
+        log.error("Resume from error with instanceof [{}]: {} ", ExceptionUtils.getRootCause(t).getClass().getCanonicalName(), t.getMessage());
+        if (t instanceof PnSpapiPermanentErrorException || t instanceof PnSpapiTemporaryErrorException) {
+            return Mono.error(t);
+        }
+        if (t instanceof ReadTimeoutException) {
+            return Mono.error(new PnSpapiTemporaryErrorException("SignBox response timeout: no data within the first byte timeout", t));
+        }
+        return Mono.error(new PnSpapiTemporaryErrorException(t.getMessage(), t));
+    }
+
+    /**
+     * Build the exception of an error response, classified by its status and error code
+     * @param errorClassifier The classification table
+     * @param response The response from the service
+     * @param buffer The response body, empty if missing
+     * @param responseId The response id
+     * @return A {@link SignServicePermanentErrorException} or a {@link SignServiceTemporaryErrorException}
+     */
+    private static Throwable classifyError(SignServiceErrorClassifier errorClassifier, HttpClientResponse response, ByteBuf buffer, String responseId) {
+        int statusCode = response.status().code();
+        ServerErrorResponse errorResponse = getServerErrorResponse(buffer);
+        Integer errorCode = errorResponse != null ? errorResponse.getErrorCode() : null;
+        String message = errorResponse != null && errorResponse.getDetail() != null ? errorResponse.getDetail() : response.status().reasonPhrase();
+        String retryAfter = response.responseHeaders().get(HttpHeaderNames.RETRY_AFTER);
+        ErrorClassification classification = errorClassifier.classify(statusCode, errorCode, StringUtils.isNotBlank(retryAfter));
+        if (classification == ErrorClassification.PERMANENT) {
+            log.error("Received permanent status code {} from requestId {} with reason: {}", statusCode, responseId, response.status().reasonPhrase());
+            return new SignServicePermanentErrorException(message, statusCode, errorCode);
+        }
+        log.error("Received {} error status code {} from requestId {} with reason: {}", classification.name().toLowerCase(), statusCode, responseId, response.status().reasonPhrase());
+        return new SignServiceTemporaryErrorException(message, statusCode, errorCode, classification, parseRetryAfter(retryAfter));
+    }
+
+    /**
+     * Parse a Retry-After header, given either in seconds or as an HTTP date
+     * @param value The header value
+     * @return The delay, or null if the header is missing or invalid
+     */
+    static Duration parseRetryAfter(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration delay = Duration.between(Instant.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ex) {
+                log.warn("Invalid Retry-After header: {}", value);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Get the server error response
+     * @param buffer The response body, holding the JSON error or a JSON string quoting it; it is read without being copied
+     * @return The server error response, or null if the body is empty or is not a JSON error
+     */
+    private static ServerErrorResponse getServerErrorResponse(ByteBuf buffer) {
+        if (!buffer.isReadable()) {
+            return null;
+        }
+        try (InputStream in = new ByteBufInputStream(buffer.duplicate())) {
+            ServerErrorResponse errorResponse = buffer.getByte(buffer.readerIndex()) == '"'
+                    ? errorReader.readValue(stringReader.<String>readValue(in))
+                    : errorReader.readValue(in);
+            log.debug("Response deserialized: {}", errorResponse);
+            return errorResponse;
+        } catch (IOException e) {
+            log.error("Error while parsing response body: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the API key
+     * @return The API key
+     */
+    public String getApiKey() {
+        return getConfig().getApiKey();
+    }
+
+    /**
+     * Get the API endpoint
+     * @return The API endpoint
+     */
+    public String getApiEndpoint() {
+        return getConfig().getApiEndpoint();
+    }
+
+    /**
+     * Get the maximum number of connections
+     * @return The maximum number of connections
+     */
+    public Integer getMaxConnections() {
+        return getConfig().getMaxConnections();
+    }
+
+    /**
+     * Get the maximum number of requests in flight
+     * @return The maximum number of connections, or of HTTP/2 streams if HTTP/2 is enabled
+     */
+    public int getMaxConcurrency() {
+        return getConfig().getMaxConcurrency();
+    }
+
+    /**
+     * Get the pending acquire timeout
+     * @return The pending acquire timeout in seconds
+     */
+    public Integer getPendingAcquireTimeout() {
+        return (int) getConfig().getPendingAcquireTimeout().toSeconds();
+    }
+
+    /**
+     * Get the username
+     * @return The username
+     */
+    public String getUsername(){
+        return getConfig().getUsername();
+    }
+
+    /**
+     * Get the password
+     * @return The password
+     */
+    public String getPassword(){
+        return getConfig().getPassword();
+    }
+}
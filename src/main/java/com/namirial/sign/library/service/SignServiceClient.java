@@ -1,61 +1,120 @@
 package com.namirial.sign.library.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.namirial.sign.library.pojo.ServerErrorResponse;
-import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
-import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.resilience.CircuitBreaker;
 import it.pagopa.pn.library.sign.pojo.PnSignDocumentResponse;
-import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.exception.ExceptionUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
-import reactor.netty.http.client.HttpClientResponse;
-import reactor.netty.resources.ConnectionProvider;
 
-import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.List;
 
-@Slf4j
+/**
+ * Static access to the default {@link SignBoxClient}, configured from the system properties.
+ * <p>
+ * The system properties are read once, when this class is first used; properties set later are applied with
+ * {@code configure(SignServiceConfig.fromSystemProperties())}, instead of being read again on each call.
+ * <p>
+ * Tenants or kinds of documents needing their own credentials or connections use clients built with
+ * {@link SignBoxClient#builder()} instead.
+ */
 public class SignServiceClient {
 
-    // # =====================================
-    // # =        System properties          =
-    // # =====================================
-    private static final String API_KEY_PROP = "namirial.server.apikey";
-    private static final String API_ENDPOINT_PROP = "namirial.server.address";
-    private static final String USERNAME_PROP = "namirial.server.username";
-    private static final String PASSWORD_PROP = "namirial.server.password";
-    private static final String MAX_CONNECTIONS_PROP = "namirial.server.max-connections";
-    private static final String PENDING_ACQUIRE_TIMEOUT = "namirial.server.pending-acquire-timeout";
-
     // # =====================================
     // # =        Default values             =
     // # =====================================
-    public static final int DEFAULT_MAX_CONNECTIONS = 40;
-    private static final int DEFAULT_PENDING_ACQUIRE_TIMEOUT = 600; // 10 minutes
+    public static final int DEFAULT_MAX_CONNECTIONS = SignServiceConfig.DEFAULT_MAX_CONNECTIONS;
 
     // # =====================================
     // # =        Constants                  =
     // # =====================================
-    private static final String API_KEY_HEADER_NAME = "X-SIGNBOX-EASYSIGN";
-    private static final String REQUEST_ID_HEADER_NAME = "X-SIGNBOX-TRANSACTION-ID";
     public static final String AUTHORIZATION_HEADER_NAME = "Authorization";
     public static final String BASIC_AUTH = "Basic ";
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final SignBoxClient defaultClient = SignBoxClient.builder().build();
 
-    // # =====================================
-    // # =        Connection provider        =
-    // # =====================================
-    private static final ConnectionProvider provider = ConnectionProvider.builder("custom")
-                    .maxConnections(getMaxConnections())
-                    .pendingAcquireTimeout(Duration.ofSeconds(getPendingAcquireTimeout()))
-                    .pendingAcquireMaxCount(-1)
-                    .build();
+    /**
+     * Get the default client
+     * @return The client used by the static methods
+     */
+    public static SignBoxClient getDefault() {
+        return defaultClient;
+    }
+
+    /**
+     * Get the current configuration
+     * @return The configuration snapshot used by new requests
+     */
+    public static SignServiceConfig getConfig() {
+        return defaultClient.getConfig();
+    }
+
+    /**
+     * Replace the configuration.
+     * New requests use the new snapshot at once; if the pool settings changed, a new connection pool is built
+     * and the previous one is disposed once its in-flight requests complete.
+     * @param config The new configuration
+     */
+    public static void configure(SignServiceConfig config) {
+        defaultClient.configure(config);
+    }
+
+    /**
+     * Watch a properties file and apply its configuration whenever it changes, e.g. to rotate credentials
+     * @param file The properties file, using the {@code namirial.server.*} names
+     * @param interval The polling interval
+     * @return A {@link Disposable} stopping the watch
+     */
+    public static Disposable watchConfig(Path file, Duration interval) {
+        return defaultClient.watchConfig(file, interval);
+    }
+
+    /**
+     * Start the client, opening the configured warm-up connections to each endpoint.
+     * A closed client is reopened with a new connection pool.
+     * @return A {@link Mono} that will emit the number of connections opened
+     */
+    public static Mono<Integer> start() {
+        return defaultClient.start();
+    }
+
+    /**
+     * Open connections to each endpoint ahead of the first requests
+     * @param connections The connections to open per endpoint
+     * @return A {@link Mono} that will emit the number of connections opened
+     */
+    public static Mono<Integer> warmUp(int connections) {
+        return defaultClient.warmUp(connections);
+    }
+
+    /**
+     * Close the client: new requests are rejected at once, in-flight requests are given some time to complete,
+     * then the connection pool is disposed. The client can be reopened with {@link #start()}.
+     * @param timeout The time given to the in-flight requests; the connections still in use are then closed
+     * @return A {@link Mono} completing once the connection pool is disposed
+     */
+    public static Mono<Void> close(Duration timeout) {
+        return defaultClient.close(timeout);
+    }
+
+    /**
+     * Get the state of the circuit breaker, for monitoring
+     * @return The state of the breaker, {@code CLOSED} if it is disabled
+     */
+    public static CircuitBreaker.State getCircuitBreakerState() {
+        return defaultClient.getCircuitBreakerState();
+    }
 
-    private static final HttpClient httpClient = HttpClient.create(provider);
+    /**
+     * Get the endpoints of the configured address new requests may go to, for monitoring
+     * @return The endpoints neither ejected nor failing their health probes
+     */
+    public static List<String> getAvailableEndpoints() {
+        return defaultClient.getAvailableEndpoints();
+    }
 
     /**
      * Sign a document using the Namirial SignBox service
@@ -67,112 +126,78 @@ public class SignServiceClient {
      * @return A {@link Mono} that will emit the response from the service
      */
     public static Mono<PnSignDocumentResponse> sign(String apiEndpoint, String requestId, byte[] data, String format, String level) {
-        return httpClient
-                .headers(h -> {
-                    h.set(AUTHORIZATION_HEADER_NAME, BASIC_AUTH + Base64.encodeBase64String((getUsername() + ":" + getPassword()).getBytes()));
-                    h.set(API_KEY_HEADER_NAME, getApiKey());
-                    h.set(REQUEST_ID_HEADER_NAME, requestId);
-                })
-                .post()
-                .uri(StringUtils.isNotBlank(apiEndpoint) ? apiEndpoint : getApiEndpoint())
-                .sendForm((req, form) -> {
-                    form.multipart(true)
-                            .file("file", requestId, new ByteArrayInputStream(data), "application/octet-stream")
-                            .attr("level", level)
-                            .attr("format", format);
-                })
-                .responseSingle((response, responseBody) -> {
-                    var responseId = response.responseHeaders().get(REQUEST_ID_HEADER_NAME);
-                    return switch (response.status().code()) {
-                        case 200 ->
-                                responseBody.asByteArray().flatMap(buffer -> parseResponse(response, buffer, responseId));
-                        case 401 ->
-                                responseBody.asByteArray().flatMap(buffer -> getPermanentError(response, buffer, responseId))
-                                        .switchIfEmpty(Mono.error(new PnSpapiPermanentErrorException(response.status().reasonPhrase())));
-                        default ->
-                                responseBody.asByteArray().flatMap(buffer -> getTemporaryError(response, buffer, responseId))
-                                        .switchIfEmpty(Mono.error(new PnSpapiTemporaryErrorException(response.status().reasonPhrase())));
-
-                    };
-                })
-                .onErrorResume(SignServiceClient::resumeError);
-    }
-
-    /**
-     * Parse the response from the service
-     * @param response The response from the service
-     * @param buffer The response body as byte array
-     * @param responseId The request id
+        return defaultClient.sign(apiEndpoint, requestId, data, format, level);
+    }
+
+    /**
+     * Sign a document using the Namirial SignBox service.
+     * The buffer is wrapped as-is in the request body and must not be modified until the returned {@link Mono} terminates.
+     * If the cache is enabled, identical requests in flight share one call and recent signed documents are served from the cache.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param data The data to sign, from its position to its limit
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
      * @return A {@link Mono} that will emit the response from the service
      */
-    private static Mono<PnSignDocumentResponse> parseResponse(HttpClientResponse response, byte[] buffer, String responseId) {
-        log.info("Received response from requestId {} with status code: {}, reason: {}", responseId, response.status().code(), response.status().reasonPhrase());
-        return Mono.just(new PnSignDocumentResponse(buffer));
+    public static Mono<PnSignDocumentResponse> sign(String apiEndpoint, String requestId, ByteBuffer data, String format, String level) {
+        return defaultClient.sign(apiEndpoint, requestId, data, format, level);
     }
 
     /**
-     * Resume from error
-     * @param t The error that occurred
-     * @return A {@link Mono} that will emit the error
+     * Sign a file using the Namirial SignBox service.
+     * The file is streamed from disk, using zero-copy file transfer when the connection allows it.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param file The file to sign
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Mono} that will emit the response from the service
      */
-    private static Mono<PnSignDocumentResponse> resumeError(Throwable t) {
-        log.error("Resume from error with instanceof [{}]: {} ", ExceptionUtils.getRootCause(t).getClass().getCanonicalName(), t.getMessage());
-        if (t instanceof PnSpapiPermanentErrorException) {
-            return Mono.error(t);
-        }
-        return Mono.error(new PnSpapiTemporaryErrorException(t.getMessage(), t));
+    public static Mono<PnSignDocumentResponse> sign(String apiEndpoint, String requestId, Path file, String format, String level) {
+        return defaultClient.sign(apiEndpoint, requestId, file, format, level);
     }
 
     /**
-     * Get a temporary error
-     * @param response The response from the service
-     * @param buffer The response body as byte array
-     * @param responseId The response id
-     * @return A {@link Mono} that will emit the error
+     * Sign the digest of a document using the digest signing endpoint of the Namirial SignBox service.
+     * Only the digest is sent; the response is checked to sign that digest.
+     * @param apiEndpoint The endpoint to use for the request, overriding the configured digest signing endpoint if not blank
+     * @param requestId The request id
+     * @param digest The digest of the document
+     * @param digestAlgorithm The algorithm of the digest, e.g. {@code SHA-256}
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Mono} that will emit the detached CAdES signature of the document, DER encoded
      */
-    private static Mono<PnSignDocumentResponse> getTemporaryError(HttpClientResponse response, byte[] buffer, String responseId) {
-        log.error("Received temporary error status code {} from requestId {} with reason: {}", response.status().code(), responseId, response.status().reasonPhrase());
-        ServerErrorResponse errorResponse = getServerErrorResponse(buffer);
-        if (errorResponse != null) {
-            return Mono.error(new PnSpapiTemporaryErrorException(errorResponse.getDetail()));
-        }
-        return Mono.error(new PnSpapiTemporaryErrorException(response.status().reasonPhrase()));
+    public static Mono<PnSignDocumentResponse> signDigest(String apiEndpoint, String requestId, byte[] digest, String digestAlgorithm, String level) {
+        return defaultClient.signDigest(apiEndpoint, requestId, digest, digestAlgorithm, level);
     }
 
     /**
-     * Get a permanent error
-     * @param response The response from the service
-     * @param buffer The response body as byte array
-     * @param responseId The response id
-     * @return A {@link Mono} that will emit the error
+     * Sign a document using the Namirial SignBox service, streaming the signed document as it is received.
+     * Each emitted buffer is a copy of a received chunk, so it can be consumed asynchronously.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param data The data to sign as byte array
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Flux} that will emit the signed document chunk by chunk
      */
-    private static Mono<PnSignDocumentResponse> getPermanentError(HttpClientResponse response, byte[] buffer, String responseId) {
-        log.error("Received permanent status code {} from requestId {} with reason: {}", response.status().code(), responseId, response.status().reasonPhrase());
-        ServerErrorResponse errorResponse = getServerErrorResponse(buffer);
-        if (errorResponse != null) {
-            return Mono.error(new PnSpapiPermanentErrorException(errorResponse.getDetail()));
-        }
-        return Mono.error(new PnSpapiPermanentErrorException(response.status().reasonPhrase()));
+    public static Flux<ByteBuffer> signStream(String apiEndpoint, String requestId, byte[] data, String format, String level) {
+        return defaultClient.signStream(apiEndpoint, requestId, data, format, level);
     }
 
     /**
-     * Get the server error response
-     * @param buffer The response body as byte array
-     * @return The server error response
+     * Sign a file using the Namirial SignBox service, streaming the signed document as it is received.
+     * Each emitted buffer is a copy of a received chunk, so it can be consumed asynchronously.
+     * @param apiEndpoint The endpoint to use for the request
+     * @param requestId The request id
+     * @param file The file to sign
+     * @param format The format of the signature (e.g. CADES, PADES, XADES)
+     * @param level The level of the signature (e.g. BES, T)
+     * @return A {@link Flux} that will emit the signed document chunk by chunk
      */
-    private static ServerErrorResponse getServerErrorResponse(byte[] buffer) {
-        ServerErrorResponse errorResponse = null;
-        try {
-            String stringBody = new String(buffer).replace("\\", "");
-            if (stringBody.startsWith("\"") && stringBody.endsWith("\"")) {
-                stringBody = stringBody.substring(1, stringBody.length() - 1);
-            }
-            errorResponse = objectMapper.readValue(stringBody, ServerErrorResponse.class);
-            log.debug("Response deserialized: {}", errorResponse);
-        } catch (Exception e) {
-            log.error("Error while parsing response body: {}", e.getMessage());
-        }
-        return errorResponse;
+    public static Flux<ByteBuffer> signStream(String apiEndpoint, String requestId, Path file, String format, String level) {
+        return defaultClient.signStream(apiEndpoint, requestId, file, format, level);
     }
 
     /**
@@ -180,7 +205,7 @@ public class SignServiceClient {
      * @return The API key
      */
     public static String getApiKey() {
-        return StringUtils.isBlank(System.getProperty(API_KEY_PROP)) ? "" : System.getProperty(API_KEY_PROP);
+        return defaultClient.getApiKey();
     }
 
     /**
@@ -188,7 +213,7 @@ public class SignServiceClient {
      * @return The API endpoint
      */
     public static String getApiEndpoint() {
-        return StringUtils.isBlank(System.getProperty(API_ENDPOINT_PROP)) ? "" : System.getProperty(API_ENDPOINT_PROP);
+        return defaultClient.getApiEndpoint();
     }
 
     /**
@@ -196,15 +221,23 @@ public class SignServiceClient {
      * @return The maximum number of connections
      */
     public static Integer getMaxConnections() {
-        return StringUtils.isBlank(System.getProperty(MAX_CONNECTIONS_PROP)) ? DEFAULT_MAX_CONNECTIONS : Integer.parseInt(System.getProperty(MAX_CONNECTIONS_PROP));
+        return defaultClient.getMaxConnections();
+    }
+
+    /**
+     * Get the maximum number of requests in flight
+     * @return The maximum number of connections, or of HTTP/2 streams if HTTP/2 is enabled
+     */
+    public static int getMaxConcurrency() {
+        return defaultClient.getMaxConcurrency();
     }
 
     /**
      * Get the pending acquire timeout
-     * @return The pending acquire timeout
+     * @return The pending acquire timeout in seconds
      */
     public static Integer getPendingAcquireTimeout() {
-        return StringUtils.isBlank(System.getProperty(PENDING_ACQUIRE_TIMEOUT)) ? DEFAULT_PENDING_ACQUIRE_TIMEOUT : Integer.parseInt(System.getProperty(PENDING_ACQUIRE_TIMEOUT));
+        return defaultClient.getPendingAcquireTimeout();
     }
 
     /**
@@ -212,7 +245,7 @@ public class SignServiceClient {
      * @return The username
      */
     public static String getUsername(){
-        return StringUtils.isBlank(System.getProperty(USERNAME_PROP)) ? "" : System.getProperty(USERNAME_PROP);
+        return defaultClient.getUsername();
     }
 
     /**
@@ -220,6 +253,6 @@ public class SignServiceClient {
      * @return The password
      */
     public static String getPassword(){
-        return StringUtils.isBlank(System.getProperty(PASSWORD_PROP)) ? "" : System.getProperty(PASSWORD_PROP);
+        return defaultClient.getPassword();
     }
 }
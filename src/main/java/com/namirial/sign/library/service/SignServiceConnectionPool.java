@@ -0,0 +1,187 @@
+package com.namirial.sign.library.service;
+
+import com.namirial.sign.library.config.ConnectionPoolConfig;
+import com.namirial.sign.library.config.Http2Config;
+import com.namirial.sign.library.config.SignServiceConfig;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.Http2AllocationStrategy;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Connection pool to the SignBox service, with the count of the requests using it.
+ * A retired pool accepts no new requests and is disposed once the last in-flight request completes,
+ * so a pool can be replaced without dropping in-flight signatures.
+ * <p>
+ * In HTTP/2 mode the requests are multiplexed as streams over at most {@code http2.maxConnections} connections
+ * per endpoint; connections falling back to HTTP/1.1 are bounded by {@code maxConnections} as usual.
+ */
+@Slf4j
+final class SignServiceConnectionPool {
+
+    // name tag of the reactor-netty connection provider meters
+    static final String PROVIDER_NAME = "namirial-signbox";
+
+    private final ConnectionProvider provider;
+    private final HttpClient httpClient;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean disposed = new AtomicBoolean();
+    private final Sinks.Empty<Void> terminated = Sinks.empty();
+    private volatile boolean retired;
+
+    /**
+     * Build the pool of a client
+     * @param name The name of the client, suffixed to the provider name; null for the default client
+     * @param config The configuration of the client
+     */
+    SignServiceConnectionPool(String name, SignServiceConfig config) {
+        Http2Config http2 = config.getHttp2();
+        ConnectionPoolConfig pool = config.getPool();
+        var builder = ConnectionProvider.builder(name == null ? PROVIDER_NAME : PROVIDER_NAME + "-" + name)
+                .maxConnections(config.getMaxConnections())
+                .pendingAcquireTimeout(config.getPendingAcquireTimeout())
+                .pendingAcquireMaxCount(-1)
+                .metrics(config.isMetricsEnabled());
+        if (isPositive(pool.getMaxIdleTime())) {
+            builder.maxIdleTime(pool.getMaxIdleTime());
+        }
+        if (isPositive(pool.getMaxLifeTime())) {
+            builder.maxLifeTime(pool.getMaxLifeTime());
+        }
+        if (isPositive(pool.getEvictionInterval())) {
+            builder.evictInBackground(pool.getEvictionInterval());
+        }
+        if (http2.isEnabled()) {
+            // applies to the HTTP/2 connections only, the HTTP/1.1 ones keep maxConnections
+            builder.allocationStrategy(Http2AllocationStrategy.builder()
+                    .maxConnections(http2.getMaxConnections())
+                    .maxConcurrentStreams(http2.getMaxConcurrentStreams())
+                    .build());
+        }
+        this.provider = builder.build();
+        HttpClient client = HttpClient.create(provider)
+                .protocol(protocols(http2))
+                .metrics(config.isMetricsEnabled(), Function.identity());
+        Duration connectTimeout = config.getDeadline().getConnectTimeout();
+        if (isPositive(connectTimeout)) {
+            client = client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(Integer.MAX_VALUE, connectTimeout.toMillis()));
+        }
+        this.httpClient = client;
+    }
+
+    /**
+     * Get the protocols offered to the SignBox endpoints
+     * @param http2 The HTTP/2 settings
+     * @return HTTP/1.1 if HTTP/2 is disabled; h2 over TLS and h2c otherwise, with HTTP/1.1 as fallback unless
+     * h2c is spoken with prior knowledge
+     */
+    private static HttpProtocol[] protocols(Http2Config http2) {
+        if (!http2.isEnabled()) {
+            return new HttpProtocol[]{HttpProtocol.HTTP11};
+        }
+        return http2.isPriorKnowledge()
+                ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.H2C}
+                : new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.H2C, HttpProtocol.HTTP11};
+    }
+
+    private static boolean isPositive(Duration duration) {
+        return !duration.isZero() && !duration.isNegative();
+    }
+
+    HttpClient httpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Open connections to the endpoints ahead of the first requests, paying DNS, TCP and TLS setup at startup.
+     * Each connection is opened by a bodyless HEAD request, whatever its answer; in HTTP/2 mode the requests
+     * share the connections opened for them.
+     * @param addresses The endpoints
+     * @param connections The connections to open per endpoint
+     * @return A {@link Mono} that will emit the number of connections opened
+     */
+    Mono<Integer> warmUp(List<String> addresses, int connections) {
+        return httpClient.warmup()
+                .thenMany(Flux.fromIterable(addresses))
+                .flatMap(address -> Flux.range(0, connections)
+                        .flatMap(i -> httpClient.head()
+                                .uri(address)
+                                .responseSingle((response, body) -> body.then(Mono.just(1)))
+                                .onErrorResume(e -> {
+                                    log.warn("Unable to open a connection to SignBox endpoint {}: {}", address, e.getMessage());
+                                    return Mono.empty();
+                                }), connections))
+                .reduce(0, Integer::sum);
+    }
+
+    /**
+     * Register a request on the pool
+     * @return false if the pool has been retired, in which case the request must use the current pool
+     */
+    boolean acquire() {
+        inFlight.incrementAndGet();
+        if (retired) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Unregister a request from the pool, disposing it if it is retired and idle
+     */
+    void release() {
+        if (inFlight.decrementAndGet() == 0 && retired) {
+            dispose();
+        }
+    }
+
+    /**
+     * Stop accepting requests and dispose the pool as soon as no request is using it
+     */
+    void retire() {
+        retired = true;
+        if (inFlight.get() == 0) {
+            dispose();
+        }
+    }
+
+    /**
+     * Retire the pool and wait for its in-flight requests to complete before disposing it
+     * @param timeout The time given to the in-flight requests; the connections still in use are then closed
+     * @return A {@link Mono} completing once the pool is disposed
+     */
+    Mono<Void> drain(Duration timeout) {
+        return Mono.defer(() -> {
+            retire();
+            return terminated.asMono()
+                    .timeout(timeout)
+                    .onErrorResume(TimeoutException.class, e -> {
+                        log.warn("{} SignBox requests still in flight after {} ms, closing their connections", inFlight.get(), timeout.toMillis());
+                        dispose();
+                        return terminated.asMono();
+                    });
+        });
+    }
+
+    private void dispose() {
+        if (disposed.compareAndSet(false, true)) {
+            log.info("Disposing retired SignBox connection pool");
+            provider.disposeLater()
+                    .doFinally(signal -> terminated.tryEmitEmpty())
+                    .subscribe();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.namirial.sign.library.service;
+
+import com.namirial.sign.library.config.LoadBalancerConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.exceptions.SignServiceTemporaryErrorException;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Client-side balancing between the SignBox endpoints of a comma separated address.
+ * <p>
+ * Each call goes to the better of two endpoints picked at random (power of two choices), scored by their
+ * outstanding requests times their peak EWMA latency, so a slow node receives fewer requests. An endpoint
+ * failing {@code ejectionConsecutiveFailures} times in a row with a 5xx or a transport error is ejected for
+ * {@code ejectionDuration}, at most {@code maxEjectionPercent} of the endpoints at a time; active health probes,
+ * if enabled, also remove the endpoints not answering from the rotation until they answer again.
+ * Connections are pooled per endpoint by the shared connection provider.
+ */
+@Slf4j
+final class SignServiceLoadBalancer {
+
+    private final LoadBalancerConfig config;
+    private final List<Endpoint> endpoints;
+    private final Disposable healthChecks;
+
+    SignServiceLoadBalancer(String apiEndpoint, LoadBalancerConfig config, HttpClient httpClient) {
+        this.config = config;
+        List<String> addresses = SignServiceConfig.splitEndpoints(apiEndpoint);
+        // an address without endpoints is kept as-is, and fails when the request is sent
+        this.endpoints = addresses.isEmpty()
+                ? List.of(new Endpoint(StringUtils.defaultString(apiEndpoint)))
+                : addresses.stream().map(Endpoint::new).toList();
+        if (endpoints.size() > 1 && !config.getHealthCheckInterval().isZero() && !config.getHealthCheckInterval().isNegative()) {
+            this.healthChecks = Flux.interval(config.getHealthCheckInterval(), config.getHealthCheckInterval(), Schedulers.parallel())
+                    .onBackpressureDrop()
+                    .concatMap(tick -> Flux.fromIterable(endpoints).flatMap(endpoint -> probe(httpClient, endpoint)))
+                    .subscribe();
+        } else {
+            this.healthChecks = null;
+        }
+    }
+
+    /**
+     * Run a call on the chosen endpoint, recording its outcome
+     * @param call The call, given the endpoint
+     * @return The call
+     */
+    <T> Mono<T> call(Function<Endpoint, Mono<T>> call) {
+        return Mono.defer(() -> {
+            Endpoint endpoint = choose();
+            Outcome outcome = endpoint.start();
+            return call.apply(endpoint)
+                    .doOnError(outcome::onError)
+                    .doOnTerminate(outcome::complete)
+                    .doOnCancel(outcome::cancel);
+        });
+    }
+
+    /**
+     * Run a streaming call on the chosen endpoint, recording its outcome
+     * @param call The call, given the endpoint
+     * @return The call
+     */
+    <T> Flux<T> callMany(Function<Endpoint, Flux<T>> call) {
+        return Flux.defer(() -> {
+            Endpoint endpoint = choose();
+            Outcome outcome = endpoint.start();
+            return call.apply(endpoint)
+                    .doOnError(outcome::onError)
+                    .doOnTerminate(outcome::complete)
+                    .doOnCancel(outcome::cancel);
+        });
+    }
+
+    /**
+     * Get the endpoints new calls may go to
+     * @return The addresses of the endpoints neither ejected nor failing their health probes
+     */
+    List<String> availableEndpoints() {
+        long now = System.nanoTime();
+        return endpoints.stream().filter(endpoint -> endpoint.isAvailable(now)).map(Endpoint::address).toList();
+    }
+
+    /**
+     * Stop the health probes
+     */
+    void dispose() {
+        if (healthChecks != null) {
+            healthChecks.dispose();
+        }
+    }
+
+    /**
+     * Choose the endpoint of a call
+     * @return The less loaded of two available endpoints picked at random, or of two endpoints if none is available
+     */
+    Endpoint choose() {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.nanoTime();
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = endpoints;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        var random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = candidates.get(first);
+        Endpoint b = candidates.get(second);
+        return a.score(now) <= b.score(now) ? a : b;
+    }
+
+    private Mono<Boolean> probe(HttpClient httpClient, Endpoint endpoint) {
+        String target = endpoint.address;
+        if (StringUtils.isNotBlank(config.getHealthCheckPath()) && endpoint.uri != null) {
+            target = endpoint.uri.resolve(config.getHealthCheckPath()).toString();
+        }
+        return httpClient.get()
+                .uri(target)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code() < 500)))
+                .timeout(config.getHealthCheckTimeout())
+                .onErrorReturn(false)
+                .doOnNext(endpoint::setHealthy);
+    }
+
+    private synchronized boolean tryEject(Endpoint endpoint, long now) {
+        long ejected = endpoints.stream().filter(e -> e.isEjected(now)).count();
+        if ((ejected + 1) * 100 > (long) config.getMaxEjectionPercent() * endpoints.size()) {
+            return false;
+        }
+        endpoint.ejectedUntilNanos = now + config.getEjectionDuration().toNanos();
+        log.warn("SignBox endpoint {} ejected for {} s after {} consecutive failures",
+                endpoint.address, config.getEjectionDuration().toSeconds(), config.getEjectionConsecutiveFailures());
+        return true;
+    }
+
+    /**
+     * A SignBox endpoint, with its load and health
+     */
+    final class Endpoint {
+        private final String address;
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private double ewmaNanos;
+        private long lastUpdateNanos;
+        private int consecutiveFailures;
+        private volatile long ejectedUntilNanos;
+        private volatile boolean healthy = true;
+
+        private Endpoint(String address) {
+            this.address = address;
+            this.uri = SignServiceConfig.parseUri(address);
+        }
+
+        String address() {
+            return address;
+        }
+
+        URI uri() {
+            return uri;
+        }
+
+        private boolean isEjected(long now) {
+            return ejectedUntilNanos != 0 && now - ejectedUntilNanos < 0;
+        }
+
+        private boolean isAvailable(long now) {
+            return healthy && !isEjected(now);
+        }
+
+        private void setHealthy(boolean healthy) {
+            if (this.healthy != healthy) {
+                log.warn("SignBox endpoint {} is {}", address, healthy ? "healthy again" : "not answering health probes");
+            }
+            this.healthy = healthy;
+        }
+
+        private synchronized double score(long now) {
+            // the average decays towards zero while the endpoint is not used, so it is tried again
+            double ewma = lastUpdateNanos == 0 ? 0 : ewmaNanos * Math.exp(-(double) (now - lastUpdateNanos) / config.getEwmaDecay().toNanos());
+            return ewma * (outstanding.get() + 1);
+        }
+
+        private Outcome start() {
+            outstanding.incrementAndGet();
+            return new Outcome(this, System.nanoTime());
+        }
+
+        private void complete(long latencyNanos, boolean failed) {
+            outstanding.decrementAndGet();
+            long now = System.nanoTime();
+            boolean eject;
+            synchronized (this) {
+                if (lastUpdateNanos == 0 || latencyNanos > ewmaNanos) {
+                    // peak EWMA: latency spikes are taken at once, recoveries are smoothed
+                    ewmaNanos = latencyNanos;
+                } else {
+                    double weight = Math.exp(-(double) (now - lastUpdateNanos) / config.getEwmaDecay().toNanos());
+                    ewmaNanos = ewmaNanos * weight + latencyNanos * (1 - weight);
+                }
+                lastUpdateNanos = now;
+                consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+                eject = consecutiveFailures >= config.getEjectionConsecutiveFailures() && !isEjected(now);
+            }
+            if (eject && tryEject(this, now)) {
+                synchronized (this) {
+                    consecutiveFailures = 0;
+                }
+            }
+        }
+
+        private void cancel() {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * The outcome of a call on an endpoint
+     */
+    private static final class Outcome {
+        private final Endpoint endpoint;
+        private final long startNanos;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile boolean failed;
+
+        private Outcome(Endpoint endpoint, long startNanos) {
+            this.endpoint = endpoint;
+            this.startNanos = startNanos;
+        }
+
+        private void onError(Throwable t) {
+            // 4xx answers and permanent errors say nothing about the health of the endpoint
+            failed = !(t instanceof PnSpapiPermanentErrorException)
+                    && !(t instanceof SignServiceTemporaryErrorException error && error.getStatusCode() > 0 && error.getStatusCode() < 500);
+        }
+
+        // recorded before the result reaches the caller, so that its next call sees the ejection
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                endpoint.complete(System.nanoTime() - startNanos, failed);
+            }
+        }
+
+        private void cancel() {
+            if (completed.compareAndSet(false, true)) {
+                endpoint.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.namirial.sign.library.service;
+
+import com.namirial.sign.library.metrics.SignTimeline;
+import reactor.core.publisher.SignalType;
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.http.client.HttpClientState;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Recorder of the timeline of one attempt of a sign request, observing the lifecycle events of its connection and
+ * HTTP exchange. The events are marked on the event loop and read once the attempt terminates.
+ */
+final class SignTimelineRecorder implements ConnectionObserver {
+
+    private final String requestId;
+    private final String format;
+    private final String level;
+    private final long requestSize;
+    private final Instant start = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    private volatile String endpoint;
+    private volatile long admittedNanos;
+    private volatile long resolvingNanos;
+    private volatile long connectedNanos;
+    private volatile long readyNanos;
+    private volatile long sentNanos;
+    private volatile long receivedNanos;
+    private volatile Throwable error;
+
+    SignTimelineRecorder(String requestId, MultipartBody body) {
+        this.requestId = requestId;
+        this.format = body.format();
+        this.level = body.level();
+        this.requestSize = body.payloadLength();
+    }
+
+    /**
+     * Mark the admission of the attempt, when its HTTP request is built
+     * @param endpoint the endpoint chosen for the request
+     */
+    void admitted(String endpoint) {
+        this.endpoint = endpoint;
+        this.admittedNanos = System.nanoTime();
+    }
+
+    /**
+     * Mark the resolution of the address of a new connection, the first step of connecting
+     */
+    void resolving(Connection connection, SocketAddress address) {
+        if (resolvingNanos == 0) {
+            resolvingNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void onStateChange(Connection connection, State newState) {
+        long now = System.nanoTime();
+        if (newState == State.CONNECTED) {
+            connectedNanos = now;
+        } else if (newState == State.CONFIGURED || newState == State.ACQUIRED) {
+            // a new connection once set up, TLS included, or a pooled one
+            if (readyNanos == 0) {
+                readyNanos = now;
+            }
+        } else if (newState == HttpClientState.REQUEST_SENT) {
+            sentNanos = now;
+        } else if (newState == HttpClientState.RESPONSE_RECEIVED) {
+            receivedNanos = now;
+        }
+    }
+
+    /**
+     * Record the error of the attempt
+     * @param error the error
+     */
+    void failed(Throwable error) {
+        this.error = error;
+    }
+
+    /**
+     * Build the timeline of the terminated attempt
+     * @param signal the terminal signal of the attempt
+     * @return the timeline
+     */
+    SignTimeline finish(SignalType signal) {
+        long endNanos = System.nanoTime();
+        Map<SignTimeline.Phase, Duration> phases = new EnumMap<>(SignTimeline.Phase.class);
+        long connectNanos = resolvingNanos != 0 ? resolvingNanos : connectedNanos;
+        put(phases, SignTimeline.Phase.QUEUE, startNanos, admittedNanos != 0 ? admittedNanos : endNanos);
+        if (admittedNanos != 0) {
+            long acquiredNanos = connectNanos != 0 ? connectNanos : readyNanos;
+            put(phases, SignTimeline.Phase.ACQUIRE, admittedNanos, acquiredNanos != 0 ? acquiredNanos : endNanos);
+        }
+        if (connectNanos != 0) {
+            put(phases, SignTimeline.Phase.CONNECT, connectNanos, readyNanos != 0 ? readyNanos : endNanos);
+        }
+        if (readyNanos != 0) {
+            put(phases, SignTimeline.Phase.UPLOAD, readyNanos, sentNanos != 0 ? sentNanos : receivedNanos != 0 ? receivedNanos : endNanos);
+        }
+        if (sentNanos != 0) {
+            put(phases, SignTimeline.Phase.SERVER, sentNanos, receivedNanos != 0 ? receivedNanos : endNanos);
+        }
+        if (receivedNanos != 0) {
+            put(phases, SignTimeline.Phase.DOWNLOAD, receivedNanos, endNanos);
+        }
+        Throwable failure = error;
+        String outcome;
+        if (signal == SignalType.CANCEL) {
+            outcome = SignTimeline.OUTCOME_CANCELLED;
+        } else {
+            outcome = failure == null ? SignTimeline.OUTCOME_OK : SignTimeline.OUTCOME_ERROR;
+        }
+        return new SignTimeline(requestId, format, level, requestSize, endpoint, start, Duration.ofNanos(endNanos - startNanos),
+                Collections.unmodifiableMap(phases), outcome, failure == null ? null : failure.getMessage());
+    }
+
+    private static void put(Map<SignTimeline.Phase, Duration> phases, SignTimeline.Phase phase, long from, long to) {
+        // a response may come before the end of the upload, e.g. an early error
+        phases.put(phase, Duration.ofNanos(Math.max(0, to - from)));
+    }
+}
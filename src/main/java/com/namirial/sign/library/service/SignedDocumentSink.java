@@ -0,0 +1,66 @@
+package com.namirial.sign.library.service;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers to write a streamed signed document to a caller-supplied sink.
+ * Writes are performed on the bounded elastic scheduler, never on the Netty event loop.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SignedDocumentSink {
+
+    /**
+     * Write the signed document to a channel, chunk by chunk as it is received.
+     * The channel is not closed.
+     * @param signedDocument the signed document, as emitted by the streaming sign methods
+     * @param channel the channel to write to
+     * @return a {@link Mono} that will emit the number of bytes written
+     */
+    public static Mono<Long> write(Flux<ByteBuffer> signedDocument, WritableByteChannel channel) {
+        return signedDocument
+                .publishOn(Schedulers.boundedElastic())
+                .concatMap(chunk -> Mono.fromCallable(() -> writeFully(chunk, channel)))
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Write the signed document to a file, chunk by chunk as it is received.
+     * The file is created or truncated.
+     * @param signedDocument the signed document, as emitted by the streaming sign methods
+     * @param file the file to write to
+     * @return a {@link Mono} that will emit the number of bytes written
+     */
+    public static Mono<Long> write(Flux<ByteBuffer> signedDocument, Path file) {
+        return Mono.using(
+                () -> FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+                channel -> write(signedDocument, channel),
+                SignedDocumentSink::closeQuietly);
+    }
+
+    private static long writeFully(ByteBuffer chunk, WritableByteChannel channel) throws IOException {
+        long written = 0;
+        while (chunk.hasRemaining()) {
+            written += channel.write(chunk);
+        }
+        return written;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing to do: the write outcome has already been signalled
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.namirial.sign.library.validation;
+
+import com.namirial.sign.library.pojo.SignatureFormat;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fast local checks of the documents before they are uploaded, rejecting with a {@link PnSpapiPermanentErrorException}
+ * the documents the SignBox service would reject after the whole upload.
+ * <p>
+ * PDF documents are checked for the {@code %PDF-} header, and for a trailing {@code %%EOF} preceded by a
+ * {@code startxref} pointing to a cross-reference table or stream inside the document: only the first and last
+ * kilobyte are read. XML documents are checked for well-formedness with a streaming StAX parser, with DTDs and
+ * external entities disabled. Other formats are not checked.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class DocumentValidator {
+
+    private static final byte[] PDF_HEADER = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PDF_EOF = "%%EOF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PDF_STARTXREF = "startxref".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PDF_XREF = "xref".getBytes(StandardCharsets.US_ASCII);
+    // the header may follow some garbage, the trailer may be followed by some, as tolerated by PDF readers
+    private static final int PDF_HEADER_WINDOW = 1024;
+    private static final int PDF_TRAILER_WINDOW = 1024;
+    private static final int PDF_XREF_WINDOW = 32;
+
+    private static final XMLInputFactory xmlInputFactory = xmlInputFactory();
+
+    /**
+     * Check a document
+     * @param format the signature format, e.g. {@code PADES}
+     * @param data the document, from its position to its limit; the buffer position is left unchanged
+     * @throws PnSpapiPermanentErrorException if the document is not a valid document of its format
+     */
+    public static void validate(String format, ByteBuffer data) {
+        if (SignatureFormat.PADES.equals(format)) {
+            validatePdf(data.duplicate());
+        } else if (SignatureFormat.XADES.equals(format)) {
+            try (InputStream in = new ByteBufferInputStream(data.duplicate())) {
+                validateXml(in);
+            } catch (IOException e) {
+                throw invalid("XML", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Check a file
+     * @param format the signature format, e.g. {@code PADES}
+     * @param file the file
+     * @throws PnSpapiPermanentErrorException if the file is not a valid document of its format, or cannot be read
+     */
+    public static void validate(String format, Path file) {
+        try {
+            if (SignatureFormat.PADES.equals(format)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    validatePdf(channel);
+                }
+            } else if (SignatureFormat.XADES.equals(format)) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                    validateXml(in);
+                }
+            }
+        } catch (IOException e) {
+            throw new PnSpapiPermanentErrorException("Unable to read file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void validatePdf(ByteBuffer data) {
+        int start = data.position();
+        int length = data.remaining();
+        ByteBuffer head = data.duplicate().limit(start + Math.min(length, PDF_HEADER_WINDOW));
+        ByteBuffer tail = data.duplicate().position(start + Math.max(0, length - PDF_TRAILER_WINDOW));
+        int startxref = checkPdf(head, tail, length);
+        ByteBuffer xref = data.duplicate().position(start + startxref).limit(start + Math.min(length, startxref + PDF_XREF_WINDOW));
+        checkXref(xref);
+    }
+
+    private static void validatePdf(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            // larger than a ByteBuffer, left to the service
+            return;
+        }
+        int length = (int) size;
+        ByteBuffer head = read(channel, 0, Math.min(length, PDF_HEADER_WINDOW));
+        ByteBuffer tail = read(channel, Math.max(0, length - PDF_TRAILER_WINDOW), Math.min(length, PDF_TRAILER_WINDOW));
+        int startxref = checkPdf(head, tail, length);
+        checkXref(read(channel, startxref, Math.min(length - startxref, PDF_XREF_WINDOW)));
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+            // read until full or end of file
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Check the header and the trailer of a PDF document
+     * @return the offset of the last cross-reference section
+     */
+    private static int checkPdf(ByteBuffer head, ByteBuffer tail, int length) {
+        if (indexOf(head, PDF_HEADER, head.position()) < 0) {
+            throw invalid("PDF", "missing %PDF- header");
+        }
+        int eof = lastIndexOf(tail, PDF_EOF);
+        if (eof < 0) {
+            throw invalid("PDF", "missing %%EOF marker, the document may be truncated");
+        }
+        int startxref = lastIndexOf(tail.duplicate().limit(eof), PDF_STARTXREF);
+        if (startxref < 0) {
+            throw invalid("PDF", "missing startxref before %%EOF");
+        }
+        long offset = parseOffset(tail, startxref + PDF_STARTXREF.length, eof);
+        if (offset < 0 || offset >= length) {
+            throw invalid("PDF", "startxref points outside the document");
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Check that a cross-reference section starts with {@code xref} or with a {@code N G obj} stream object
+     */
+    private static void checkXref(ByteBuffer xref) {
+        int position = skipWhitespace(xref, xref.position());
+        if (position < xref.limit() && (startsWith(xref, position, PDF_XREF) || isDigit(xref.get(position)))) {
+            return;
+        }
+        throw invalid("PDF", "startxref does not point to a cross-reference section");
+    }
+
+    private static long parseOffset(ByteBuffer buffer, int from, int to) {
+        int position = skipWhitespace(buffer, from);
+        long offset = -1;
+        while (position < to && isDigit(buffer.get(position))) {
+            offset = (offset < 0 ? 0 : offset * 10) + buffer.get(position++) - '0';
+            if (offset > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return offset;
+    }
+
+    private static void validateXml(InputStream in) {
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                reader.next();
+            }
+        } catch (XMLStreamException e) {
+            throw invalid("XML", e.getMessage());
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // nothing to release
+            }
+        }
+    }
+
+    private static XMLInputFactory xmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    private static PnSpapiPermanentErrorException invalid(String type, String reason) {
+        return new PnSpapiPermanentErrorException("Invalid " + type + " document: " + reason);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern, int from) {
+        for (int i = from; i <= buffer.limit() - pattern.length; i++) {
+            if (startsWith(buffer, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte[] pattern) {
+        for (int i = buffer.limit() - pattern.length; i >= buffer.position(); i--) {
+            if (startsWith(buffer, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int position, byte[] pattern) {
+        if (position + pattern.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (buffer.get(position + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int position) {
+        while (position < buffer.limit() && isWhitespace(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\r' || b == '\n' || b == '\t' || b == '\f' || b == 0;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * An input stream over a buffer, reading it without copying it
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package it.pagopa.pn.library.sign.cache;
+
+import com.namirial.sign.library.cache.SignResultCache;
+import com.namirial.sign.library.config.SignCacheConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.SignServiceClient;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignResultCacheTest {
+
+    private static final SignCacheConfig CONFIG = SignCacheConfig.builder().enabled(true).build();
+
+    @AfterEach
+    void afterEach() {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+    }
+
+    @Test
+    @DisplayName("Share one call between identical requests in flight and serve copies of the cached result")
+    void testCoalesceAndCache() {
+        var cache = new SignResultCache(CONFIG);
+        var calls = new AtomicInteger();
+        Sinks.One<byte[]> result = Sinks.one();
+        var call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return result.asMono();
+        });
+
+        var first = cache.get("key", () -> call).toFuture();
+        var second = cache.get("key", () -> call).toFuture();
+        result.tryEmitValue(new byte[]{1, 2, 3});
+
+        assertEquals(1, calls.get());
+        assertArrayEquals(new byte[]{1, 2, 3}, first.join());
+        assertNotSame(first.join(), second.join());
+        first.join()[0] = 9;
+        StepVerifier.create(cache.get("key", () -> call)).assertNext(cached -> assertArrayEquals(new byte[]{1, 2, 3}, cached)).verifyComplete();
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Do not cache errors")
+    void testErrors() {
+        var cache = new SignResultCache(CONFIG);
+        var calls = new AtomicInteger();
+        var call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.<byte[]>error(new PnSpapiTemporaryErrorException("unavailable"))
+                : Mono.just(new byte[]{1}));
+
+        StepVerifier.create(cache.get("key", () -> call)).expectError(PnSpapiTemporaryErrorException.class).verify();
+        StepVerifier.create(cache.get("key", () -> call)).expectNextCount(1).verifyComplete();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("Evict the least recently used entries beyond the size bounds, and the expired ones")
+    void testEviction() throws InterruptedException {
+        var cache = new SignResultCache(CONFIG.toBuilder().maxEntries(2).maxBytes(10).ttl(Duration.ofMillis(100)).build());
+        cache.get("a", () -> Mono.just(new byte[4])).block();
+        cache.get("b", () -> Mono.just(new byte[4])).block();
+        cache.get("a", () -> Mono.error(new IllegalStateException("not cached"))).block();
+        cache.get("c", () -> Mono.just(new byte[4])).block();
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.sizeInBytes());
+        StepVerifier.create(cache.get("a", () -> Mono.error(new IllegalStateException("not cached")))).expectNextCount(1).verifyComplete();
+
+        cache.get("d", () -> Mono.just(new byte[8])).block();
+        assertEquals(1, cache.size());
+        cache.get("e", () -> Mono.just(new byte[11])).block();
+        assertEquals(1, cache.size());
+
+        Thread.sleep(150);
+        StepVerifier.create(cache.get("d", () -> Mono.just(new byte[1]))).assertNext(value -> assertEquals(1, value.length)).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Sign identical documents once")
+    void testClientCache() {
+        try (var standIn = new SignBoxStandIn("signed".getBytes(StandardCharsets.UTF_8))) {
+            SignServiceClient.configure(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).cache(CONFIG).build());
+            byte[] document = "document".getBytes(StandardCharsets.UTF_8);
+
+            for (int i = 0; i < 3; i++) {
+                StepVerifier.create(SignServiceClient.sign(null, "request-" + i, document, "CADES", "BES")).expectNextCount(1).verifyComplete();
+            }
+            StepVerifier.create(SignServiceClient.sign(null, "request-3", ByteBuffer.wrap(document), "CADES", "T")).expectNextCount(1).verifyComplete();
+            assertEquals(2, standIn.getRequestCount());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package it.pagopa.pn.library.sign.cms;
+
+import com.namirial.sign.library.cms.CmsSignedData;
+import com.namirial.sign.library.cms.Der;
+import com.namirial.sign.library.cms.DocumentDigest;
+import com.namirial.sign.library.config.HashSigningConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.PnSignServiceImpl;
+import com.namirial.sign.library.service.SignBoxClient;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import it.pagopa.pn.library.sign.server.TestDigestSigner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CmsSignedDataTest {
+
+    private static final String SHA_256 = HashSigningConfig.DEFAULT_DIGEST_ALGORITHM;
+
+    private final TestDigestSigner signer = new TestDigestSigner();
+    private SignBoxStandIn standIn;
+    private SignBoxClient client;
+    private byte[] document;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void beforeEach() {
+        document = new byte[256 * 1024];
+        new Random(42).nextBytes(document);
+        standIn = new SignBoxStandIn(new byte[0]);
+        standIn.setDigestSigner(signer);
+        client = SignBoxClient.builder()
+                .name("digest")
+                .config(SignServiceConfig.builder()
+                        .apiEndpoint(standIn.getUrl())
+                        .hash(HashSigningConfig.builder().apiEndpoint(standIn.getUrl()).build())
+                        .build())
+                .build();
+    }
+
+    @AfterEach
+    void afterEach() {
+        client.close(Duration.ofSeconds(5)).block();
+        standIn.close();
+    }
+
+    @Test
+    @DisplayName("Sign the digest of a document and verify the detached signature locally")
+    void testDetached() {
+        var signService = new PnSignServiceImpl(client);
+
+        StepVerifier.create(signService.pkcs7DigestSignature(document, false, false))
+                .assertNext(response -> {
+                    assertTrue(response.getSignedDocument().length < 1024);
+                    assertSignedDigest(response.getSignedDocument(), DocumentDigest.of(SHA_256, ByteBuffer.wrap(document)));
+                    assertEquals(1, encapContentInfo(response.getSignedDocument()).children().size());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Assemble the enveloping signature of a file and of a stream locally")
+    void testEnvelopingAndStreams() throws IOException {
+        var signService = new PnSignServiceImpl(client);
+        Path file = Files.write(directory.resolve("document.bin"), document);
+
+        StepVerifier.create(signService.pkcs7DigestSignature(file, true, true))
+                .assertNext(response -> {
+                    assertSignedDigest(response.getSignedDocument(), DocumentDigest.of(SHA_256, ByteBuffer.wrap(document)));
+                    List<Der.Element> encap = encapContentInfo(response.getSignedDocument()).children();
+                    assertEquals(2, encap.size());
+                    assertTrue(encap.get(1).children().get(0).contentEquals(document));
+                })
+                .verifyComplete();
+
+        Flux<ByteBuffer> chunks = Flux.range(0, 4).map(i -> ByteBuffer.wrap(document, i * 65536, 65536));
+        StepVerifier.create(signService.pkcs7DigestSignature(chunks, false))
+                .assertNext(response -> assertSignedDigest(response.getSignedDocument(), DocumentDigest.of(SHA_256, ByteBuffer.wrap(document))))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Reject a signature of another digest")
+    void testWrongDigest() {
+        byte[] other = DocumentDigest.of(SHA_256, ByteBuffer.wrap("other".getBytes(StandardCharsets.UTF_8)));
+        standIn.setDigestSigner(digest -> signer.apply(other));
+
+        StepVerifier.create(client.signDigest(null, "request", DocumentDigest.of(SHA_256, ByteBuffer.wrap(document)), SHA_256, "BES"))
+                .expectError(PnSpapiPermanentErrorException.class)
+                .verify();
+        assertThrows(PnSpapiPermanentErrorException.class, () -> CmsSignedData.checkDigest(new byte[]{0x30, 0x00}, other));
+    }
+
+    @Test
+    @DisplayName("Reject an empty stream and a client without digest signing endpoint before sending anything")
+    void testRejected() {
+        StepVerifier.create(new PnSignServiceImpl(client).pkcs7DigestSignature(Flux.just(ByteBuffer.allocate(0)), false))
+                .expectErrorMessage("content cannot be null or empty")
+                .verify();
+
+        var uploadOnly = SignBoxClient.builder()
+                .name("upload-only")
+                .config(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).build())
+                .build();
+        StepVerifier.create(new PnSignServiceImpl(uploadOnly).pkcs7DigestSignature(document, false, false))
+                .expectError(PnSpapiPermanentErrorException.class)
+                .verify();
+        assertEquals(0, standIn.getRequestCount());
+        uploadOnly.close(Duration.ofSeconds(5)).block();
+    }
+
+    private void assertSignedDigest(byte[] cms, byte[] digest) {
+        assertDoesNotThrow(() -> CmsSignedData.checkDigest(cms, digest));
+        List<Der.Element> signedData = signedData(cms).children();
+        Der.Element signerInfo = signedData.get(signedData.size() - 1).children().get(0);
+        List<Der.Element> fields = signerInfo.children();
+        assertTrue(signer.verify(fields.get(3).encoded(), fields.get(5).content()));
+    }
+
+    private static Der.Element signedData(byte[] cms) {
+        return Der.parse(cms).children().get(1).children().get(0);
+    }
+
+    private static Der.Element encapContentInfo(byte[] cms) {
+        return signedData(cms).children().get(2);
+    }
+}
@@ -0,0 +1,125 @@
+package it.pagopa.pn.library.sign.config;
+
+import com.namirial.sign.library.config.Http2Config;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.SignServiceClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignServiceConfigTest {
+
+    private MockWebServer mockWebServer;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    @DisplayName("Build the configuration from properties with defaults and derived values")
+    void testFromProperties() {
+        var properties = new Properties();
+        properties.setProperty(SignServiceConfig.API_ENDPOINT_PROP, "http://localhost:8080/sign");
+        properties.setProperty(SignServiceConfig.USERNAME_PROP, "user");
+        properties.setProperty(SignServiceConfig.PASSWORD_PROP, "secret");
+        properties.setProperty(SignServiceConfig.PENDING_ACQUIRE_TIMEOUT_PROP, "30");
+
+        var config = SignServiceConfig.fromProperties(properties);
+
+        assertEquals("http://localhost:8080/sign", config.getEndpointUri().toString());
+        assertEquals("Basic " + Base64.getEncoder().encodeToString("user:secret".getBytes(StandardCharsets.UTF_8)), config.getAuthorizationHeader());
+        assertEquals("", config.getApiKey());
+        assertEquals(SignServiceConfig.DEFAULT_MAX_CONNECTIONS, config.getMaxConnections());
+        assertEquals(Duration.ofSeconds(30), config.getPendingAcquireTimeout());
+        assertFalse(config.toString().contains("secret"));
+
+        assertTrue(config.hasSamePoolSettings(config.toBuilder().password("rotated").build()));
+        assertFalse(config.hasSamePoolSettings(config.toBuilder().maxConnections(10).build()));
+        assertNull(SignServiceConfig.builder().build().getEndpointUri());
+    }
+
+    @Test
+    @DisplayName("Size the requests in flight from the HTTP/2 streams when HTTP/2 is enabled")
+    void testMaxConcurrency() {
+        var config = SignServiceConfig.builder().maxConnections(10).build();
+        assertEquals(10, config.getMaxConcurrency());
+
+        var http2 = Http2Config.builder().enabled(true).maxConnections(2).maxConcurrentStreams(50).build();
+        assertEquals(100, config.toBuilder().http2(http2).build().getMaxConcurrency());
+    }
+
+    @Test
+    @DisplayName("Rotate credentials and pool settings while signing")
+    void testConfigure() throws InterruptedException {
+        var bytes = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+        var config = SignServiceConfig.builder()
+                .apiEndpoint(mockWebServer.url("/").toString())
+                .apiKey("key-1")
+                .username("user")
+                .password("first")
+                .build();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("signed"));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("signed"));
+
+        SignServiceClient.configure(config);
+        StepVerifier.create(SignServiceClient.sign(null, "request-1", bytes, "CADES", "BES")).expectNextCount(1).verifyComplete();
+        SignServiceClient.configure(config.toBuilder().apiKey("key-2").password("second").maxConnections(2).build());
+        StepVerifier.create(SignServiceClient.sign(null, "request-2", bytes, "CADES", "BES")).expectNextCount(1).verifyComplete();
+
+        var first = mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+        var second = mockWebServer.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("key-1", first.getHeader("X-SIGNBOX-EASYSIGN"));
+        assertEquals(config.getAuthorizationHeader(), first.getHeader("Authorization"));
+        assertEquals("key-2", second.getHeader("X-SIGNBOX-EASYSIGN"));
+        assertEquals(SignServiceClient.getConfig().getAuthorizationHeader(), second.getHeader("Authorization"));
+        assertEquals(2, SignServiceClient.getMaxConnections());
+    }
+
+    @Test
+    @DisplayName("Reload the configuration when the watched file changes")
+    void testWatchConfig(@TempDir Path tempDir) throws IOException, InterruptedException {
+        var file = tempDir.resolve("signbox.properties");
+        Files.writeString(file, SignServiceConfig.API_KEY_PROP + "=watched-1\n");
+
+        var watch = SignServiceClient.watchConfig(file, Duration.ofMillis(50));
+        try {
+            awaitApiKey("watched-1");
+            Files.writeString(file, SignServiceConfig.API_KEY_PROP + "=watched-2\n");
+            awaitApiKey("watched-2");
+        } finally {
+            watch.dispose();
+        }
+    }
+
+    private static void awaitApiKey(String expected) throws InterruptedException {
+        for (int i = 0; i < 100 && !expected.equals(SignServiceClient.getApiKey()); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, SignServiceClient.getApiKey());
+    }
+}
@@ -0,0 +1,91 @@
+package it.pagopa.pn.library.sign.exceptions;
+
+import com.namirial.sign.library.config.ErrorClassificationConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.exceptions.SignServiceErrorClassifier;
+import com.namirial.sign.library.exceptions.SignServicePermanentErrorException;
+import com.namirial.sign.library.exceptions.SignServiceTemporaryErrorException;
+import com.namirial.sign.library.pojo.ErrorClassification;
+import com.namirial.sign.library.service.SignServiceClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignServiceErrorClassifierTest {
+
+    private static final byte[] DOCUMENT = "document".getBytes(StandardCharsets.UTF_8);
+
+    private MockWebServer mockWebServer;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        SignServiceClient.configure(SignServiceConfig.builder()
+                .apiEndpoint(mockWebServer.url("/").toString())
+                .errors(ErrorClassificationConfig.builder().permanentErrorCodes(Set.of(1001)).build())
+                .build());
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    @DisplayName("Classify by error code first, then by status and Retry-After")
+    void testClassify() {
+        var properties = new Properties();
+        properties.setProperty(ErrorClassificationConfig.THROTTLED_STATUS_CODES_PROP, "429, 509");
+        properties.setProperty(ErrorClassificationConfig.TEMPORARY_ERROR_CODES_PROP, "42");
+        var classifier = new SignServiceErrorClassifier(ErrorClassificationConfig.fromProperties(properties));
+
+        assertEquals(ErrorClassification.PERMANENT, classifier.classify(413, null, false));
+        assertEquals(ErrorClassification.TEMPORARY, classifier.classify(413, 42, false));
+        assertEquals(ErrorClassification.THROTTLED, classifier.classify(509, null, false));
+        assertEquals(ErrorClassification.THROTTLED, classifier.classify(503, null, true));
+        assertEquals(ErrorClassification.TEMPORARY, classifier.classify(503, null, false));
+    }
+
+    @Test
+    @DisplayName("Surface the classification, status and error code on the exceptions")
+    void testExceptions() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(415)
+                .setBody("{\"error_code\":7,\"detail\":\"Unsupported file\",\"transaction_id\":\"t1\"}"));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503)
+                .setBody("\"{\\\"error_code\\\":1001,\\\"detail\\\":\\\"Invalid certificate\\\"}\""));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "3"));
+
+        StepVerifier.create(SignServiceClient.sign(null, "request-1", DOCUMENT, "PADES", "BES"))
+                .expectErrorSatisfies(e -> {
+                    var error = assertInstanceOf(SignServicePermanentErrorException.class, e);
+                    assertEquals(415, error.getStatusCode());
+                    assertEquals(7, error.getErrorCode());
+                    assertEquals("Unsupported file", error.getMessage());
+                })
+                .verify();
+        StepVerifier.create(SignServiceClient.sign(null, "request-2", DOCUMENT, "PADES", "BES"))
+                .expectErrorSatisfies(e -> assertEquals(1001, assertInstanceOf(SignServicePermanentErrorException.class, e).getErrorCode()))
+                .verify();
+        StepVerifier.create(SignServiceClient.sign(null, "request-3", DOCUMENT, "PADES", "BES"))
+                .expectErrorSatisfies(e -> {
+                    var error = assertInstanceOf(SignServiceTemporaryErrorException.class, e);
+                    assertEquals(ErrorClassification.THROTTLED, error.getClassification());
+                    assertEquals(Duration.ofSeconds(3), error.getRetryAfter());
+                })
+                .verify();
+    }
+}
@@ -0,0 +1,101 @@
+package it.pagopa.pn.library.sign.metrics;
+
+import com.namirial.sign.library.config.SignCacheConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.metrics.SignMetrics;
+import com.namirial.sign.library.service.SignServiceClient;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignMetricsTest {
+
+    private static final byte[] SIGNED = "signed-document".getBytes(StandardCharsets.UTF_8);
+
+    private SimpleMeterRegistry registry;
+    private SignBoxStandIn standIn;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = new SimpleMeterRegistry();
+        Metrics.globalRegistry.add(registry);
+        standIn = new SignBoxStandIn(SIGNED);
+        SignServiceClient.configure(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).metricsEnabled(true).build());
+    }
+
+    @AfterEach
+    void afterEach() {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+        standIn.close();
+        Metrics.globalRegistry.remove(registry);
+        registry.close();
+    }
+
+    @Test
+    @DisplayName("Record the latency by format, level and outcome, and the document sizes")
+    void testSignMeters() {
+        byte[] document = new byte[2048];
+        StepVerifier.create(SignServiceClient.sign(null, "request-1", document, "PADES", "BES")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(SignServiceClient.signStream(null, "request-2", document, "PADES", "BES")).thenConsumeWhile(b -> true).verifyComplete();
+        standIn.setStatus(401);
+        StepVerifier.create(SignServiceClient.sign(null, "request-3", document, "PADES", "BES")).expectError(PnSpapiPermanentErrorException.class).verify();
+
+        var ok = registry.get(SignMetrics.SIGN_TIMER).tags(SignMetrics.FORMAT_TAG, "PADES", SignMetrics.LEVEL_TAG, "BES", SignMetrics.OUTCOME_TAG, SignMetrics.OUTCOME_OK).timer();
+        assertEquals(2, ok.count());
+        var permanent = registry.get(SignMetrics.SIGN_TIMER).tags(SignMetrics.FORMAT_TAG, "PADES", SignMetrics.OUTCOME_TAG, SignMetrics.OUTCOME_PERMANENT).timer();
+        assertEquals(1, permanent.count());
+
+        var requestSize = registry.get(SignMetrics.REQUEST_SIZE).tags(SignMetrics.FORMAT_TAG, "PADES").summary();
+        assertEquals(3, requestSize.count());
+        assertEquals(3 * 2048.0, requestSize.totalAmount());
+        var responseSize = registry.get(SignMetrics.RESPONSE_SIZE).tags(SignMetrics.FORMAT_TAG, "PADES").summary();
+        assertEquals(2, responseSize.count());
+        assertEquals(2.0 * SIGNED.length, responseSize.totalAmount());
+    }
+
+    @Test
+    @DisplayName("Record the cancelled requests and the requests served by the cache")
+    void testCancelledAndCached() {
+        byte[] document = new byte[2048];
+        standIn.setDelay(Duration.ofMillis(300));
+        StepVerifier.create(SignServiceClient.sign(null, "request-1", document, "CADES", "BES"))
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(50))
+                .thenCancel()
+                .verify();
+        var cancelled = registry.get(SignMetrics.SIGN_TIMER).tags(SignMetrics.FORMAT_TAG, "CADES", SignMetrics.OUTCOME_TAG, SignMetrics.OUTCOME_CANCELLED).timer();
+        assertEquals(1, cancelled.count());
+
+        standIn.setDelay(Duration.ZERO);
+        SignServiceClient.configure(SignServiceClient.getConfig().toBuilder().cache(SignCacheConfig.builder().enabled(true).build()).build());
+        for (int i = 2; i <= 4; i++) {
+            StepVerifier.create(SignServiceClient.sign(null, "request-" + i, ByteBuffer.wrap(document), "CADES", "BES")).expectNextCount(1).verifyComplete();
+        }
+        var ok = registry.get(SignMetrics.SIGN_TIMER).tags(SignMetrics.FORMAT_TAG, "CADES", SignMetrics.OUTCOME_TAG, SignMetrics.OUTCOME_OK).timer();
+        assertEquals(1, ok.count());
+        var cached = registry.get(SignMetrics.SIGN_TIMER).tags(SignMetrics.FORMAT_TAG, "CADES", SignMetrics.OUTCOME_TAG, SignMetrics.OUTCOME_CACHED).timer();
+        assertEquals(2, cached.count());
+    }
+
+    @Test
+    @DisplayName("Expose the connection pool gauges of reactor-netty")
+    void testPoolMeters() {
+        StepVerifier.create(SignServiceClient.sign(null, "request-1", new byte[16], "CADES", "BES")).expectNextCount(1).verifyComplete();
+
+        assertNotNull(registry.find("reactor.netty.connection.provider.active.connections").tag("name", "namirial-signbox").gauge());
+        assertNotNull(registry.find("reactor.netty.connection.provider.idle.connections").tag("name", "namirial-signbox").gauge());
+        assertNotNull(registry.find("reactor.netty.connection.provider.pending.connections").tag("name", "namirial-signbox").gauge());
+    }
+}
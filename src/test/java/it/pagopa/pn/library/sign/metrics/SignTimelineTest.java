@@ -0,0 +1,114 @@
+package it.pagopa.pn.library.sign.metrics;
+
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.config.TimingConfig;
+import com.namirial.sign.library.metrics.SignTimeline;
+import com.namirial.sign.library.service.SignBoxClient;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignTimelineTest {
+
+    private static final byte[] SIGNED = "signed-document".getBytes(StandardCharsets.UTF_8);
+
+    private final BlockingQueue<SignTimeline> timelines = new LinkedBlockingQueue<>();
+    private SignBoxStandIn standIn;
+    private SignBoxClient client;
+
+    @BeforeEach
+    void beforeEach() {
+        standIn = new SignBoxStandIn(SIGNED);
+        client = client(TimingConfig.builder().enabled(true).build());
+    }
+
+    @AfterEach
+    void afterEach() {
+        client.close(Duration.ofSeconds(5)).block();
+        standIn.close();
+    }
+
+    @Test
+    @DisplayName("Deliver the timeline of each request, a new connection being connected and a pooled one not")
+    void testTimeline() throws InterruptedException {
+        StepVerifier.create(client.sign(null, "request-1", new byte[2048], "PADES", "BES")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(client.signStream(null, "request-2", new byte[2048], "PADES", "BES")).thenConsumeWhile(b -> true).verifyComplete();
+
+        SignTimeline first = timelines.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals("request-1", first.getRequestId());
+        assertEquals(SignTimeline.OUTCOME_OK, first.getOutcome());
+        assertEquals(2048, first.getRequestSize());
+        assertEquals(standIn.getUrl(), first.getEndpoint());
+        assertTrue(first.getPhases().containsKey(SignTimeline.Phase.CONNECT));
+        assertTrue(first.getPhases().containsKey(SignTimeline.Phase.SERVER));
+        long phases = first.getPhases().values().stream().mapToLong(Duration::toNanos).sum();
+        assertTrue(phases <= first.getTotal().toNanos());
+
+        SignTimeline second = timelines.poll(5, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals("request-2", second.getRequestId());
+        assertFalse(second.getPhases().containsKey(SignTimeline.Phase.CONNECT));
+        assertTrue(second.getPhases().containsKey(SignTimeline.Phase.DOWNLOAD));
+    }
+
+    @Test
+    @DisplayName("Deliver the slow requests only when not sampled, with their error")
+    void testSlowRequests() throws InterruptedException {
+        client.configure(client.getConfig().toBuilder()
+                .timing(TimingConfig.builder().enabled(true).slowThreshold(Duration.ofNanos(1)).sampleRate(0).build())
+                .build());
+        standIn.setStatus(401);
+
+        StepVerifier.create(client.sign(null, "request-1", new byte[16], "CADES", "BES")).expectError(PnSpapiPermanentErrorException.class).verify();
+
+        SignTimeline timeline = timelines.poll(5, TimeUnit.SECONDS);
+        assertNotNull(timeline);
+        assertEquals(SignTimeline.OUTCOME_ERROR, timeline.getOutcome());
+        assertNotNull(timeline.getError());
+        assertTrue(timeline.toString().startsWith("requestId=request-1 format=CADES level=BES"));
+
+        client.configure(client.getConfig().toBuilder()
+                .timing(TimingConfig.builder().enabled(true).slowThreshold(Duration.ZERO).sampleRate(0).build())
+                .build());
+        StepVerifier.create(client.sign(null, "request-2", new byte[16], "CADES", "BES")).expectError(PnSpapiPermanentErrorException.class).verify();
+        assertNull(timelines.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("Read the timing settings from properties")
+    void testFromProperties() {
+        var properties = new Properties();
+        properties.setProperty(TimingConfig.ENABLED_PROP, "true");
+        properties.setProperty(TimingConfig.SLOW_THRESHOLD_PROP, "2500");
+
+        var config = TimingConfig.fromProperties(properties);
+
+        assertTrue(config.isEnabled());
+        assertTrue(config.isSlow(Duration.ofMillis(2500)));
+        assertFalse(config.isSlow(Duration.ofMillis(2499)));
+        assertEquals(TimingConfig.DEFAULT_SAMPLE_RATE, config.getSampleRate());
+    }
+
+    private SignBoxClient client(TimingConfig timing) {
+        var signBoxClient = SignBoxClient.builder()
+                .name("timing")
+                .config(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).timing(timing).build())
+                .build();
+        signBoxClient.addTimelineListener(timelines::add);
+        return signBoxClient;
+    }
+}
@@ -0,0 +1,272 @@
+package it.pagopa.pn.library.sign.pdf;
+
+import com.namirial.sign.library.cms.CmsSignedData;
+import com.namirial.sign.library.cms.Der;
+import com.namirial.sign.library.cms.DocumentDigest;
+import com.namirial.sign.library.config.HashSigningConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.exceptions.UnsupportedPdfException;
+import com.namirial.sign.library.pdf.PdfSignature;
+import com.namirial.sign.library.service.PnSignServiceImpl;
+import com.namirial.sign.library.service.SignBoxClient;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import it.pagopa.pn.library.sign.server.TestDigestSigner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfSignatureTest {
+
+    private static final String SHA_256 = HashSigningConfig.DEFAULT_DIGEST_ALGORITHM;
+    private static final Pattern BYTE_RANGE = Pattern.compile("/ByteRange \\[0 (\\d+) +(\\d+) +(\\d+) *]");
+    private static final Path SAMPLE = Path.of("src/test/resources/in/sample.pdf");
+    private static final String PAGES = "<< /Type /Pages /Kids [3 0 R] /Count 1 >>";
+    private static final String PAGE = "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] >>";
+
+    private final TestDigestSigner signer = new TestDigestSigner();
+    private SignBoxStandIn standIn;
+    private SignBoxClient client;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void beforeEach() {
+        standIn = new SignBoxStandIn(new byte[0]);
+        standIn.setDigestSigner(signer);
+        client = SignBoxClient.builder()
+                .name("pdf")
+                .config(SignServiceConfig.builder()
+                        .apiEndpoint(standIn.getUrl())
+                        .hash(HashSigningConfig.builder().apiEndpoint(standIn.getUrl()).build())
+                        .build())
+                .build();
+    }
+
+    @AfterEach
+    void afterEach() {
+        client.close(Duration.ofSeconds(5)).block();
+        standIn.close();
+    }
+
+    @Test
+    @DisplayName("Sign a PDF document by hash, sending only its digest, and verify the signature locally")
+    void testSignByHash() throws IOException {
+        byte[] document = Files.readAllBytes(SAMPLE);
+        var signService = new PnSignServiceImpl(client);
+
+        StepVerifier.create(signService.signPdfDocumentByHash(document, true))
+                .assertNext(response -> {
+                    byte[] signed = response.getSignedDocument();
+                    assertArrayEquals(document, Arrays.copyOf(signed, document.length));
+                    assertSigned(signed);
+                })
+                .verifyComplete();
+        assertEquals(1, standIn.getRequestCount());
+        assertTrue(standIn.getReceivedBytes() < 4096);
+    }
+
+    @Test
+    @DisplayName("Sign a PDF file by hash twice, each signature listing its own field and widget")
+    void testSignFileTwice() throws IOException {
+        var signService = new PnSignServiceImpl(client);
+        Path once = directory.resolve("once.pdf");
+        Path twice = directory.resolve("twice.pdf");
+
+        StepVerifier.create(signService.signPdfDocumentByHash(SAMPLE, once, false)).expectNext(once).verifyComplete();
+        StepVerifier.create(signService.signPdfDocumentByHash(once, twice, false)).expectNext(twice).verifyComplete();
+
+        byte[] signed = Files.readAllBytes(twice);
+        assertSigned(signed);
+        String text = new String(signed, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("/Fields [26 0 R 28 0 R]"));
+        assertTrue(text.contains("3 0 obj\n<< /Annots [26 0 R 28 0 R] /Type/Page/Parent 2 0 R"));
+        assertTrue(text.contains("/T (Signature27) /V 27 0 R /P 3 0 R /F 132 /Rect [0 0 0 0]"));
+    }
+
+    @Test
+    @DisplayName("List the field in an indirect AcroForm and flag the document as signed")
+    void testIndirectAcroForm() {
+        byte[] document = pdf("<< /Type /Catalog /Pages 2 0 R /AcroForm 4 0 R >>", PAGES, PAGE,
+                "<< /Fields [] /SigFlags 0 /DA (/Helv 0 Tf 0 g) >>");
+
+        PdfSignature signature = PdfSignature.prepare(ByteBuffer.wrap(document), 1024, Instant.now());
+        byte[] signed = signature.toByteArray();
+        String update = new String(signed, document.length, signed.length - document.length, StandardCharsets.ISO_8859_1);
+
+        assertTrue(update.startsWith("\n5 0 obj\n<< /Type /Sig"));
+        assertTrue(update.contains("4 0 obj\n<< /Fields [ 6 0 R] /SigFlags 3 /DA (/Helv 0 Tf 0 g) >>\nendobj"));
+        assertTrue(update.contains("3 0 obj\n<< /Annots [6 0 R]  /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] >>\nendobj"));
+        assertTrue(update.contains("/V 5 0 R /P 3 0 R /F 132 /Rect [0 0 0 0] >>"));
+        assertFalse(update.contains("1 0 obj"));
+        assertTrue(update.contains("trailer\n<< /Size 7 /Root 1 0 R /Prev "));
+        assertThrows(PnSpapiPermanentErrorException.class, () -> signature.sign(new byte[1025]));
+    }
+
+    @Test
+    @DisplayName("Upload the PDF documents that cannot be updated locally")
+    void testFallback() {
+        byte[] plain = pdf("<< /Type /Catalog /Pages 2 0 R >>", PAGES, PAGE);
+        String text = new String(plain, StandardCharsets.ISO_8859_1).replace("/Root 1 0 R", "/Root 1 0 R /Encrypt 9 0 R");
+        byte[] document = text.getBytes(StandardCharsets.ISO_8859_1);
+        assertThrows(UnsupportedPdfException.class, () -> PdfSignature.prepare(ByteBuffer.wrap(document), 1024, Instant.now()));
+
+        byte[] signedDocument = "signed by the service".getBytes(StandardCharsets.UTF_8);
+        try (var uploadStandIn = new SignBoxStandIn(signedDocument)) {
+            var uploadClient = SignBoxClient.builder()
+                    .name("pdf-upload")
+                    .config(SignServiceConfig.builder().apiEndpoint(uploadStandIn.getUrl()).build())
+                    .build();
+            StepVerifier.create(new PnSignServiceImpl(uploadClient).signPdfDocumentByHash(document, false))
+                    .assertNext(response -> assertArrayEquals(signedDocument, response.getSignedDocument()))
+                    .verifyComplete();
+            assertTrue(uploadStandIn.getReceivedBytes() > document.length);
+            uploadClient.close(Duration.ofSeconds(5)).block();
+        }
+    }
+
+    @Test
+    @DisplayName("Carry over all the entries of the previous trailer but the rewritten ones")
+    void testTrailerEntries() {
+        byte[] plain = pdf("<< /Type /Catalog /Pages 2 0 R >>", PAGES, PAGE);
+        String text = new String(plain, StandardCharsets.ISO_8859_1).replace("/Root 1 0 R",
+                "/Root 1 0 R /Info 2 0 R /ID [<0A1B> <2C3D>] /Custom << /Name (a [b]) >> /XRefStm 10");
+        byte[] document = text.getBytes(StandardCharsets.ISO_8859_1);
+
+        byte[] signed = PdfSignature.prepare(ByteBuffer.wrap(document), 1024, Instant.now()).toByteArray();
+        String update = new String(signed, document.length, signed.length - document.length, StandardCharsets.ISO_8859_1);
+
+        assertTrue(update.contains("trailer\n<< /Size 6 /Root 1 0 R /Info 2 0 R /ID [<0A1B> <2C3D>] /Custom << /Name (a [b]) >> /Prev "));
+        assertFalse(update.contains("/XRefStm"));
+    }
+
+    @Test
+    @DisplayName("Update the current definition of the objects, found through the cross-reference tables")
+    void testSupersededObjects() {
+        // the page lists an annotation in an indirect array; a stream holds text looking like older definitions
+        byte[] document = pdf("<< /Type /Catalog /Pages 2 0 R >>", PAGES,
+                "<< /Type /Page /Parent 2 0 R /Annots 4 0 R >>", "[5 0 R]",
+                "<< /Type /Annot /Subtype /Link /Rect [0 0 10 10] >>",
+                "<< /Length 67 >>\nstream\n1 0 obj\n<< /Type /Catalog /Stale true >>\nendobj\n4 0 obj\n[ ]\nendobj\nendstream");
+
+        byte[] signed = PdfSignature.prepare(ByteBuffer.wrap(document), 1024, Instant.now()).toByteArray();
+        String update = new String(signed, document.length, signed.length - document.length, StandardCharsets.ISO_8859_1);
+
+        assertTrue(update.contains("1 0 obj\n<< /AcroForm << /Fields [8 0 R] /SigFlags 3 >>  /Type /Catalog /Pages 2 0 R >>\nendobj"));
+        assertTrue(update.contains("4 0 obj\n[5 0 R 8 0 R]\nendobj"));
+        assertFalse(update.contains("3 0 obj"));
+        assertFalse(update.contains("/Stale"));
+    }
+
+    @Test
+    @DisplayName("Upload the PDF documents whose last cross-reference section is a stream")
+    void testCrossReferenceStream() {
+        byte[] document = xrefStreamPdf();
+        assertThrows(UnsupportedPdfException.class, () -> PdfSignature.prepare(ByteBuffer.wrap(document), 1024, Instant.now()));
+
+        byte[] signedDocument = "signed by the service".getBytes(StandardCharsets.UTF_8);
+        try (var uploadStandIn = new SignBoxStandIn(signedDocument)) {
+            var uploadClient = SignBoxClient.builder()
+                    .name("pdf-xref-stream")
+                    .config(SignServiceConfig.builder().apiEndpoint(uploadStandIn.getUrl()).build())
+                    .build();
+            StepVerifier.create(new PnSignServiceImpl(uploadClient).signPdfDocumentByHash(document, false))
+                    .assertNext(response -> assertArrayEquals(signedDocument, response.getSignedDocument()))
+                    .verifyComplete();
+            assertTrue(uploadStandIn.getReceivedBytes() > document.length);
+            uploadClient.close(Duration.ofSeconds(5)).block();
+        }
+    }
+
+    /**
+     * Check the last signature of a document: its byte ranges cover the whole document but the placeholder, whose
+     * CMS signature signs their digest
+     */
+    private void assertSigned(byte[] signed) {
+        String text = new String(signed, StandardCharsets.ISO_8859_1);
+        Matcher byteRange = BYTE_RANGE.matcher(text);
+        int contentsStart = -1;
+        int contentsEnd = -1;
+        int lengthAfter = -1;
+        while (byteRange.find()) {
+            contentsStart = Integer.parseInt(byteRange.group(1));
+            contentsEnd = Integer.parseInt(byteRange.group(2));
+            lengthAfter = Integer.parseInt(byteRange.group(3));
+        }
+        assertEquals(signed.length, contentsEnd + lengthAfter);
+        assertEquals('<', signed[contentsStart]);
+        assertEquals('>', signed[contentsEnd - 1]);
+
+        byte[] padded = HexFormat.of().parseHex(text, contentsStart + 1, contentsEnd - 1);
+        // the signature, a long form DER sequence, is followed by the zero padding
+        byte[] cms = Arrays.copyOf(padded, 4 + ((padded[2] & 0xFF) << 8 | padded[3] & 0xFF));
+        byte[] digest = DocumentDigest.of(SHA_256, ByteBuffer.wrap(signed, 0, contentsStart),
+                ByteBuffer.wrap(signed, contentsEnd, signed.length - contentsEnd));
+        assertDoesNotThrow(() -> CmsSignedData.checkDigest(cms, digest));
+        List<Der.Element> signedData = Der.parse(cms).children().get(1).children().get(0).children();
+        List<Der.Element> fields = signedData.get(signedData.size() - 1).children().get(0).children();
+        assertTrue(signer.verify(fields.get(3).encoded(), fields.get(5).content()));
+    }
+
+    /**
+     * Build a PDF document with a cross-reference table, object 1 being the catalog, without end of line after
+     * its {@code %%EOF}
+     */
+    private static byte[] pdf(String... objects) {
+        StringBuilder out = new StringBuilder("%PDF-1.4\n");
+        int[] offsets = new int[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            offsets[i] = out.length();
+            out.append(i + 1).append(" 0 obj\n").append(objects[i]).append("\nendobj\n");
+        }
+        int xref = out.length();
+        out.append("xref\n0 ").append(objects.length + 1).append("\n0000000000 65535 f \n");
+        for (int offset : offsets) {
+            out.append(String.format("%010d 00000 n \n", offset));
+        }
+        out.append("trailer\n<< /Size ").append(objects.length + 1).append(" /Root 1 0 R >>\nstartxref\n").append(xref).append("\n%%EOF");
+        return out.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Build a PDF 1.5 document whose cross-reference section is an uncompressed stream, object 3, with 1 byte for
+     * the type, 2 for the offset and 1 for the generation of each entry
+     */
+    private static byte[] xrefStreamPdf() {
+        String[] objects = {"<< /Type /Catalog /Pages 2 0 R >>", PAGES, PAGE};
+        StringBuilder out = new StringBuilder("%PDF-1.5\n");
+        int[] offsets = new int[objects.length + 1];
+        for (int i = 0; i < objects.length; i++) {
+            offsets[i] = out.length();
+            out.append(i + 1).append(" 0 obj\n").append(objects[i]).append("\nendobj\n");
+        }
+        offsets[objects.length] = out.length();
+        StringBuilder entries = new StringBuilder().append((char) 0).append((char) 0).append((char) 0).append((char) 0xFF);
+        for (int offset : offsets) {
+            entries.append((char) 1).append((char) (offset >> 8)).append((char) (offset & 0xFF)).append((char) 0);
+        }
+        out.append(objects.length + 1).append(" 0 obj\n<< /Type /XRef /Size ").append(objects.length + 2)
+                .append(" /W [1 2 1] /Root 1 0 R /Length ").append(entries.length()).append(" >>\nstream\n")
+                .append(entries).append("\nendstream\nendobj\nstartxref\n").append(offsets[objects.length]).append("\n%%EOF\n");
+        return out.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,77 @@
+package it.pagopa.pn.library.sign.resilience;
+
+import com.namirial.sign.library.config.AdaptiveLimiterConfig;
+import com.namirial.sign.library.resilience.AdaptiveConcurrencyLimiter;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    @DisplayName("Queue calls above the limit and shed them when the queue is full")
+    void testQueueAndShed() {
+        var limiter = new AdaptiveConcurrencyLimiter(AdaptiveLimiterConfig.builder().enabled(true).maxQueueSize(1).build(), 2);
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+
+        var firstCall = limiter.limit(first.asMono()).subscribe();
+        var secondCall = limiter.limit(second.asMono()).subscribe();
+        var queued = limiter.limit(Mono.just("queued"));
+
+        StepVerifier.create(queued)
+                .then(() -> {
+                    assertEquals(2, limiter.getInFlight());
+                    assertEquals(1, limiter.getQueueSize());
+                    StepVerifier.create(limiter.limit(Mono.just("shed"))).expectError(PnSpapiTemporaryErrorException.class).verify();
+                    first.tryEmitValue("done");
+                })
+                .expectNext("queued")
+                .verifyComplete();
+
+        assertEquals(0, limiter.getQueueSize());
+        secondCall.dispose();
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(firstCall.isDisposed());
+    }
+
+    @Test
+    @DisplayName("Shed calls waiting longer than the maximum queue wait")
+    void testQueueTimeout() {
+        var config = AdaptiveLimiterConfig.builder().enabled(true).maxLimit(1).maxQueueWait(Duration.ofMillis(50)).build();
+        var limiter = new AdaptiveConcurrencyLimiter(config, 40);
+        var running = limiter.limit(Mono.never()).subscribe();
+
+        StepVerifier.create(limiter.limit(Mono.just("late"))).expectError(PnSpapiTemporaryErrorException.class).verify(Duration.ofSeconds(1));
+        assertEquals(0, limiter.getQueueSize());
+        running.dispose();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Decrease the limit on temporary errors and increase it on good calls")
+    void testAdaptLimit() {
+        var config = AdaptiveLimiterConfig.builder().enabled(true).initialLimit(10).backoffRatio(0.5).build();
+        var limiter = new AdaptiveConcurrencyLimiter(config, 20);
+
+        StepVerifier.create(limiter.limit(Mono.error(new PnSpapiTemporaryErrorException("overloaded")))).expectError().verify();
+        assertEquals(5, limiter.getLimit());
+        StepVerifier.create(limiter.limit(Mono.error(new PnSpapiPermanentErrorException("unauthorized")))).expectError().verify();
+        assertEquals(5, limiter.getLimit());
+
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(limiter.limit(Mono.error(new PnSpapiTemporaryErrorException("overloaded")))).expectError().verify();
+        }
+        assertEquals(1, limiter.getLimit());
+        StepVerifier.create(limiter.limit(Mono.just("ok"))).expectNext("ok").verifyComplete();
+        assertEquals(2, limiter.getLimit());
+    }
+}
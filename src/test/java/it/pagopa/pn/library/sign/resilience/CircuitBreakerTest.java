@@ -0,0 +1,135 @@
+package it.pagopa.pn.library.sign.resilience;
+
+import com.namirial.sign.library.config.AdaptiveLimiterConfig;
+import com.namirial.sign.library.config.CircuitBreakerConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.exceptions.CircuitBreakerOpenException;
+import com.namirial.sign.library.resilience.CircuitBreaker;
+import com.namirial.sign.library.service.SignServiceClient;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final CircuitBreakerConfig CONFIG = CircuitBreakerConfig.builder()
+            .enabled(true)
+            .windowSize(4)
+            .minCalls(4)
+            .openDuration(Duration.ofMillis(100))
+            .halfOpenCalls(2)
+            .build();
+
+    @AfterEach
+    void afterEach() {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+    }
+
+    @Test
+    @DisplayName("Open when the failure rate reaches the threshold and fail fast while open")
+    void testOpen() {
+        var breaker = new CircuitBreaker(CONFIG);
+        StepVerifier.create(breaker.protect(Mono.just("ok"))).expectNext("ok").verifyComplete();
+        StepVerifier.create(breaker.protect(Mono.error(new PnSpapiPermanentErrorException("unauthorized")))).expectError().verify();
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(50, breaker.getFailureRate());
+
+        StepVerifier.create(breaker.protect(Mono.just("ok")))
+                .expectErrorSatisfies(e -> {
+                    assertInstanceOf(PnSpapiTemporaryErrorException.class, e);
+                    assertTrue(((CircuitBreakerOpenException) e).getRetryAfter().toMillis() <= 100);
+                })
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Close after successful trial calls and open again after failed ones")
+    void testHalfOpen() throws InterruptedException {
+        var breaker = new CircuitBreaker(CONFIG.toBuilder().minCalls(2).build());
+        fail(breaker);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(150);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        var pending = breaker.protect(Mono.never()).subscribe();
+        fail(breaker);
+        StepVerifier.create(breaker.protect(Mono.just("ok"))).expectError(CircuitBreakerOpenException.class).verify();
+        pending.dispose();
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(150);
+        StepVerifier.create(breaker.protect(Mono.just("ok"))).expectNext("ok").verifyComplete();
+        StepVerifier.create(breaker.protect(Mono.just("ok"))).expectNext("ok").verifyComplete();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+    }
+
+    @Test
+    @DisplayName("Open when the slow call rate reaches the threshold")
+    void testSlowCalls() {
+        var breaker = new CircuitBreaker(CONFIG.toBuilder().minCalls(2).slowCallDuration(Duration.ofMillis(10)).build());
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(breaker.protect(Mono.delay(Duration.ofMillis(20)))).expectNextCount(1).verifyComplete();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(100, breaker.getSlowCallRate());
+    }
+
+    @Test
+    @DisplayName("Keep the local rejections and queue time out of the circuit breaker")
+    void testLocalQueues() throws IOException {
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setResponseCode(200).setBody("signed").setHeadersDelay(150, TimeUnit.MILLISECONDS));
+            }
+            server.start();
+            SignServiceClient.configure(SignServiceConfig.builder()
+                    .apiEndpoint(server.url("/").toString())
+                    .limiter(AdaptiveLimiterConfig.builder().enabled(true).maxLimit(1).maxQueueSize(1).build())
+                    .circuitBreaker(CONFIG.toBuilder()
+                            .minCalls(2)
+                            .slowCallRateThreshold(50)
+                            .slowCallDuration(Duration.ofMillis(250))
+                            .build())
+                    .build());
+            byte[] document = "document".getBytes(StandardCharsets.UTF_8);
+
+            // one call runs, one waits for it in the limiter queue and one is shed by the limiter
+            StepVerifier.create(Flux.range(0, 3)
+                            .flatMap(i -> SignServiceClient.sign(null, "request-" + i, document, "CADES", "BES")
+                                    .map(response -> "signed")
+                                    .onErrorResume(PnSpapiTemporaryErrorException.class, e -> Mono.just("shed"))))
+                    .recordWith(ArrayList::new)
+                    .expectNextCount(3)
+                    .consumeRecordedWith(outcomes -> assertEquals(1, outcomes.stream().filter("shed"::equals).count()))
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+            assertEquals(2, server.getRequestCount());
+            assertEquals(CircuitBreaker.State.CLOSED, SignServiceClient.getCircuitBreakerState());
+        }
+    }
+
+    private static void fail(CircuitBreaker breaker) {
+        StepVerifier.create(breaker.protect(Mono.error(new PnSpapiTemporaryErrorException("unavailable")))).expectError().verify();
+    }
+}
@@ -0,0 +1,106 @@
+package it.pagopa.pn.library.sign.resilience;
+
+import com.namirial.sign.library.config.MemoryBudgetConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.resilience.MemoryBudget;
+import com.namirial.sign.library.service.SignServiceClient;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryBudgetTest {
+
+    private static final MemoryBudgetConfig CONFIG = MemoryBudgetConfig.builder().enabled(true).maxInFlightBytes(100).build();
+
+    @AfterEach
+    void afterEach() {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+    }
+
+    @Test
+    @DisplayName("Queue the calls not fitting in the budget and admit them in order as bytes are released")
+    void testQueue() {
+        var budget = new MemoryBudget(CONFIG);
+        Sinks.One<String> first = Sinks.one();
+
+        var running = budget.reserve(first.asMono(), 60).subscribe();
+        var large = budget.reserve(Mono.just("large"), 80).toFuture();
+        var small = budget.reserve(Mono.just("small"), 10).toFuture();
+
+        assertEquals(60, budget.getReserved());
+        assertEquals(2, budget.getQueueSize());
+        assertFalse(small.isDone());
+
+        first.tryEmitValue("done");
+        assertEquals("large", large.join());
+        assertEquals("small", small.join());
+        assertEquals(0, budget.getReserved());
+        assertEquals(0, budget.getQueueSize());
+        assertTrue(running.isDisposed());
+    }
+
+    @Test
+    @DisplayName("Reject the calls waiting longer than the maximum queue wait, and run a call larger than the budget alone")
+    void testRejectAndOversize() {
+        var budget = new MemoryBudget(CONFIG.toBuilder().maxQueueWait(Duration.ofMillis(50)).build());
+        var running = budget.reserve(Mono.never(), 500).subscribe();
+
+        assertEquals(500, budget.getReserved());
+        StepVerifier.create(budget.reserve(Mono.just("late"), 1)).expectError(PnSpapiTemporaryErrorException.class).verify(Duration.ofSeconds(1));
+        assertEquals(0, budget.getQueueSize());
+        running.dispose();
+        assertEquals(0, budget.getReserved());
+
+        var noWait = new MemoryBudget(CONFIG.toBuilder().maxQueueWait(Duration.ZERO).build());
+        var held = noWait.reserve(Mono.never(), 100).subscribe();
+        StepVerifier.create(noWait.reserve(Mono.just("rejected"), 1)).expectError(PnSpapiTemporaryErrorException.class).verify();
+        held.dispose();
+    }
+
+    @Test
+    @DisplayName("Reserve an in-memory document and its signed copy until the call terminates")
+    void testClientReservation() throws IOException, InterruptedException {
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setResponseCode(200).setBody("signed").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+            }
+            server.start();
+            SignServiceClient.configure(SignServiceConfig.builder()
+                    .apiEndpoint(server.url("/").toString())
+                    .memory(CONFIG.toBuilder().maxQueueWait(Duration.ZERO).build())
+                    .build());
+            byte[] document = new byte[40];
+
+            // the document and its signed copy: 80 of the 100 bytes of the budget
+            var first = SignServiceClient.sign(null, "request-0", document, "CADES", "BES").toFuture();
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (server.getRequestCount() == 0) {
+                assertTrue(System.nanoTime() < deadline, "first request not received");
+                Thread.sleep(10);
+            }
+            StepVerifier.create(SignServiceClient.sign(null, "request-1", document, "CADES", "BES"))
+                    .expectError(PnSpapiTemporaryErrorException.class)
+                    .verify(Duration.ofSeconds(1));
+            // a streamed call holds only its document
+            StepVerifier.create(SignServiceClient.signStream(null, "request-2", new byte[20], "CADES", "BES"))
+                    .expectNextCount(1)
+                    .verifyComplete();
+
+            assertArrayEquals("signed".getBytes(StandardCharsets.UTF_8), first.join().getSignedDocument());
+            assertEquals(2, server.getRequestCount());
+        }
+    }
+}
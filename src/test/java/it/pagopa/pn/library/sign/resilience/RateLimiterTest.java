@@ -0,0 +1,107 @@
+package it.pagopa.pn.library.sign.resilience;
+
+import com.namirial.sign.library.config.RateLimitConfig;
+import com.namirial.sign.library.exceptions.SignServiceTemporaryErrorException;
+import com.namirial.sign.library.pojo.ErrorClassification;
+import com.namirial.sign.library.resilience.RateLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static final RateLimitConfig CONFIG = RateLimitConfig.builder()
+            .enabled(true)
+            .limit(new RateLimitConfig.Limit(10, 0))
+            .burst(Duration.ofMillis(200))
+            .build();
+
+    @Test
+    @DisplayName("Let a burst through, then delay the requests to the rate")
+    void testDelay() {
+        List<Duration> waits = new ArrayList<>();
+        var limiter = new RateLimiter(CONFIG, CONFIG.getLimit(), (wait, rejected) -> waits.add(wait));
+
+        StepVerifier.create(limiter.limit(Mono.just("1"), 0)).expectNext("1").verifyComplete();
+        StepVerifier.create(limiter.limit(Mono.just("2"), 0)).expectNext("2").verifyComplete();
+        assertTrue(waits.isEmpty());
+
+        StepVerifier.create(limiter.limit(Mono.just("3"), 0)).expectNext("3").verifyComplete();
+        assertEquals(1, waits.size());
+        assertTrue(waits.get(0).toMillis() > 50);
+    }
+
+    @Test
+    @DisplayName("Reject the requests waiting longer than the maximum wait with a throttled error")
+    void testReject() {
+        List<Boolean> rejections = new ArrayList<>();
+        var config = CONFIG.toBuilder().limit(new RateLimitConfig.Limit(0, 1000)).maxWait(Duration.ZERO).build();
+        var limiter = new RateLimiter(config, config.getLimit(), (wait, rejected) -> rejections.add(rejected));
+
+        StepVerifier.create(limiter.limit(Mono.just("large"), 5000)).expectNext("large").verifyComplete();
+        StepVerifier.create(limiter.limit(Mono.just("next"), 100))
+                .expectErrorSatisfies(e -> {
+                    var error = assertInstanceOf(SignServiceTemporaryErrorException.class, e);
+                    assertEquals(ErrorClassification.THROTTLED, error.getClassification());
+                    assertTrue(error.getRetryAfter().toMillis() > 1000);
+                })
+                .verify();
+        assertEquals(List.of(true), rejections);
+    }
+
+    @Test
+    @DisplayName("Share the buckets of an API key between the limiters of the key")
+    void testSharedApiKey() {
+        List<Duration> waits = new ArrayList<>();
+        var first = RateLimiter.forApiKey(CONFIG, "shared-key", (wait, rejected) -> waits.add(wait));
+        var second = RateLimiter.forApiKey(CONFIG, "shared-key", (wait, rejected) -> waits.add(wait));
+        var other = RateLimiter.forApiKey(CONFIG, "other-key", (wait, rejected) -> waits.add(wait));
+
+        StepVerifier.create(first.limit(Mono.just("1"), 0)).expectNext("1").verifyComplete();
+        StepVerifier.create(second.limit(Mono.just("2"), 0)).expectNext("2").verifyComplete();
+        StepVerifier.create(other.limit(Mono.just("other"), 0)).expectNext("other").verifyComplete();
+        assertTrue(waits.isEmpty());
+
+        StepVerifier.create(second.limit(Mono.just("3"), 0)).expectNext("3").verifyComplete();
+        assertEquals(1, waits.size());
+    }
+
+    @Test
+    @DisplayName("Give back the tokens of a request cancelled while waiting")
+    void testRefundOnCancel() {
+        List<Duration> waits = new ArrayList<>();
+        var limiter = new RateLimiter(CONFIG, CONFIG.getLimit(), (wait, rejected) -> waits.add(wait));
+        StepVerifier.create(limiter.limit(Mono.just("1"), 0)).expectNext("1").verifyComplete();
+        StepVerifier.create(limiter.limit(Mono.just("2"), 0)).expectNext("2").verifyComplete();
+
+        limiter.limit(Mono.just("cancelled"), 0).subscribe().dispose();
+        StepVerifier.create(limiter.limit(Mono.just("3"), 0)).expectNext("3").verifyComplete();
+
+        // the next token comes 100 ms after the burst, not 200 ms as if the cancelled request had kept its own
+        assertEquals(2, waits.size());
+        assertTrue(waits.get(1).toMillis() <= waits.get(0).toMillis());
+    }
+
+    @Test
+    @DisplayName("Read the limits per API key from properties")
+    void testFromProperties() {
+        var properties = new Properties();
+        properties.setProperty(RateLimitConfig.REQUESTS_PER_SECOND_PROP, "5");
+        properties.setProperty(RateLimitConfig.API_KEYS_PREFIX + "key-1" + RateLimitConfig.BYTES_PER_SECOND_SUFFIX, "1048576");
+
+        var config = RateLimitConfig.fromProperties(properties);
+
+        assertEquals(Map.of("key-1", new RateLimitConfig.Limit(5, 1048576)), config.getApiKeys());
+        assertEquals(new RateLimitConfig.Limit(5, 0), config.limitFor("key-2"));
+        assertFalse(config.toString().contains("key-1"));
+    }
+}
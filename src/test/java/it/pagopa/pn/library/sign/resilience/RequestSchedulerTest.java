@@ -0,0 +1,127 @@
+package it.pagopa.pn.library.sign.resilience;
+
+import com.namirial.sign.library.config.AdaptiveLimiterConfig;
+import com.namirial.sign.library.config.SchedulerConfig;
+import com.namirial.sign.library.pojo.SignPriority;
+import com.namirial.sign.library.resilience.AdaptiveConcurrencyLimiter;
+import com.namirial.sign.library.resilience.RequestScheduler;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestSchedulerTest {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private static final SchedulerConfig CONFIG = SchedulerConfig.builder()
+            .enabled(true)
+            .shortestFirst(true)
+            .build();
+
+    @Test
+    @DisplayName("Serve the waiting calls by priority and size")
+    void testOrder() {
+        var scheduler = new RequestScheduler(CONFIG, 1);
+        List<String> served = new CopyOnWriteArrayList<>();
+        Sinks.One<String> running = Sinks.one();
+        scheduler.schedule(running.asMono(), SignPriority.NORMAL, 0).subscribe();
+
+        scheduler.schedule(record(served, "batch"), SignPriority.BATCH, 1024).subscribe();
+        scheduler.schedule(record(served, "large"), SignPriority.NORMAL, 40 * MEGABYTE).subscribe();
+        scheduler.schedule(record(served, "small"), SignPriority.NORMAL, 5 * 1024).subscribe();
+        scheduler.schedule(record(served, "interactive"), SignPriority.INTERACTIVE, 40 * MEGABYTE).subscribe();
+        assertEquals(4, scheduler.getQueueSize());
+
+        running.tryEmitValue("done");
+
+        assertEquals(List.of("interactive", "small", "large", "batch"), served);
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Serve a large call waiting longer than its size penalty before newer small ones")
+    void testAging() throws InterruptedException {
+        var scheduler = new RequestScheduler(CONFIG.toBuilder().sizePenalty(Duration.ofMillis(1)).build(), 1);
+        List<String> served = new CopyOnWriteArrayList<>();
+        Sinks.One<String> running = Sinks.one();
+        scheduler.schedule(running.asMono(), SignPriority.NORMAL, 0).subscribe();
+
+        scheduler.schedule(record(served, "large"), SignPriority.NORMAL, 50 * MEGABYTE).subscribe();
+        Thread.sleep(100);
+        scheduler.schedule(record(served, "small"), SignPriority.NORMAL, 5 * 1024).subscribe();
+
+        running.tryEmitValue("done");
+
+        assertEquals(List.of("large", "small"), served);
+    }
+
+    @Test
+    @DisplayName("Reject the calls waiting longer than the maximum wait and free their place")
+    void testReject() {
+        var scheduler = new RequestScheduler(CONFIG.toBuilder().maxQueueWait(Duration.ofMillis(100)).build(), 1);
+        Sinks.One<String> running = Sinks.one();
+        scheduler.schedule(running.asMono(), SignPriority.NORMAL, 0).subscribe();
+
+        StepVerifier.create(scheduler.schedule(Mono.just("waiting"), SignPriority.INTERACTIVE, 0))
+                .expectError(PnSpapiTemporaryErrorException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(0, scheduler.getQueueSize());
+
+        running.tryEmitValue("done");
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Run no more calls than the concurrency limit, so that the calls wait by priority in the scheduler")
+    void testLimiterSlots() {
+        var limiter = new AdaptiveConcurrencyLimiter(AdaptiveLimiterConfig.builder().enabled(true).maxLimit(1).maxQueueSize(0).build(), 4);
+        var scheduler = new RequestScheduler(CONFIG, limiter::getLimit);
+        List<String> served = new CopyOnWriteArrayList<>();
+        Sinks.One<String> running = Sinks.one();
+        scheduler.schedule(limiter.limit(running.asMono()), SignPriority.NORMAL, 0).subscribe();
+
+        scheduler.schedule(limiter.limit(record(served, "batch")), SignPriority.BATCH, 0).subscribe();
+        scheduler.schedule(limiter.limit(record(served, "interactive")), SignPriority.INTERACTIVE, 0).subscribe();
+        assertEquals(2, scheduler.getQueueSize());
+        assertEquals(0, limiter.getQueueSize());
+
+        // the permit is free when the scheduler hands the slot over: the limiter, not queueing, would shed the call otherwise
+        running.tryEmitValue("done");
+
+        assertEquals(List.of("interactive", "batch"), served);
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Read the scheduler settings from properties")
+    void testFromProperties() {
+        var properties = new Properties();
+        properties.setProperty(SchedulerConfig.ENABLED_PROP, "true");
+        properties.setProperty(SchedulerConfig.PRIORITY_STEP_PROP, "250");
+
+        var config = SchedulerConfig.fromProperties(properties);
+
+        assertTrue(config.isEnabled());
+        assertFalse(config.isShortestFirst());
+        assertEquals(Duration.ofMillis(250), config.getPriorityStep());
+        assertEquals(Duration.ofMillis(SchedulerConfig.DEFAULT_SIZE_PENALTY), config.getSizePenalty());
+    }
+
+    private static Mono<String> record(List<String> served, String name) {
+        return Mono.fromSupplier(() -> {
+            served.add(name);
+            return name;
+        });
+    }
+}
@@ -0,0 +1,155 @@
+package it.pagopa.pn.library.sign.resilience;
+
+import com.namirial.sign.library.config.HedgingConfig;
+import com.namirial.sign.library.config.RetryConfig;
+import com.namirial.sign.library.exceptions.CircuitBreakerOpenException;
+import com.namirial.sign.library.exceptions.LocalRejectionException;
+import com.namirial.sign.library.exceptions.SignServiceTemporaryErrorException;
+import com.namirial.sign.library.pojo.ErrorClassification;
+import com.namirial.sign.library.resilience.RetryPolicy;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private static final RetryConfig RETRY = RetryConfig.builder()
+            .enabled(true)
+            .initialBackoff(Duration.ofMillis(1))
+            .maxBackoff(Duration.ofSeconds(1))
+            .budgetMinRetriesPerSecond(10)
+            .build();
+    private static final HedgingConfig NO_HEDGING = HedgingConfig.builder().build();
+
+    @Test
+    @DisplayName("Retry temporary errors up to the maximum attempts")
+    void testRetryTemporaryErrors() {
+        var policy = new RetryPolicy(RETRY, NO_HEDGING);
+        var attempts = new AtomicInteger();
+        var call = Mono.defer(() -> attempts.incrementAndGet() < 3
+                ? Mono.<String>error(new PnSpapiTemporaryErrorException("unavailable"))
+                : Mono.just("signed"));
+
+        StepVerifier.create(policy.apply(call, call, 0)).expectNext("signed").verifyComplete();
+        assertEquals(3, attempts.get());
+
+        attempts.set(-10);
+        StepVerifier.create(policy.apply(call, call, 0)).expectError(PnSpapiTemporaryErrorException.class).verify();
+        assertEquals(-7, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Do not retry permanent errors, nor when the retry budget is exhausted")
+    void testNoRetry() {
+        var attempts = new AtomicInteger();
+        var permanent = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.<String>error(new PnSpapiPermanentErrorException("unauthorized"));
+        });
+        StepVerifier.create(new RetryPolicy(RETRY, NO_HEDGING).apply(permanent, permanent, 0))
+                .expectError(PnSpapiPermanentErrorException.class).verify();
+        assertEquals(1, attempts.get());
+
+        attempts.set(0);
+        var temporary = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.<String>error(new PnSpapiTemporaryErrorException("unavailable"));
+        });
+        var noBudget = new RetryPolicy(RETRY.toBuilder().budgetRatio(0).budgetMinRetriesPerSecond(0).build(), NO_HEDGING);
+        StepVerifier.create(noBudget.apply(temporary, temporary, 0)).expectError(PnSpapiTemporaryErrorException.class).verify();
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Do not retry requests rejected locally, throttled or not")
+    void testNoRetryLocalRejections() {
+        var policy = new RetryPolicy(RETRY, NO_HEDGING);
+        for (var rejection : List.of(
+                new LocalRejectionException("SignBox memory budget exceeded", new TimeoutException()),
+                new LocalRejectionException("SignBox rate limit exceeded", ErrorClassification.THROTTLED, Duration.ofMillis(1)),
+                new CircuitBreakerOpenException("SignBox circuit breaker is open", Duration.ofMillis(1)))) {
+            var attempts = new AtomicInteger();
+            var call = Mono.defer(() -> {
+                attempts.incrementAndGet();
+                return Mono.<String>error(rejection);
+            });
+            StepVerifier.create(policy.apply(call, call, 0)).expectErrorMatches(e -> e == rejection).verify();
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    @DisplayName("Wait for the Retry-After delay, and give up when it exceeds the maximum backoff")
+    void testRetryAfter() {
+        var policy = new RetryPolicy(RETRY, NO_HEDGING);
+        var attempts = new AtomicInteger();
+        var call = Mono.defer(() -> attempts.incrementAndGet() == 1
+                ? Mono.<String>error(new SignServiceTemporaryErrorException("busy", 503, Duration.ofMillis(300)))
+                : Mono.just("signed"));
+
+        long start = System.nanoTime();
+        StepVerifier.create(policy.apply(call, call, 0)).expectNext("signed").verifyComplete();
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 300);
+
+        attempts.set(0);
+        var tooLate = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.<String>error(new SignServiceTemporaryErrorException("busy", 503, Duration.ofMinutes(5)));
+        });
+        StepVerifier.create(policy.apply(tooLate, tooLate, 0)).expectError(SignServiceTemporaryErrorException.class).verify();
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Retry a stream only if it failed before emitting")
+    void testRetryStream() {
+        var policy = new RetryPolicy(RETRY, NO_HEDGING);
+        var attempts = new AtomicInteger();
+        var failFirst = Flux.defer(() -> attempts.incrementAndGet() == 1
+                ? Flux.<String>error(new PnSpapiTemporaryErrorException("unavailable"))
+                : Flux.just("a", "b"));
+        StepVerifier.create(policy.apply(failFirst)).expectNext("a", "b").verifyComplete();
+        assertEquals(2, attempts.get());
+
+        attempts.set(0);
+        var failAfterChunk = Flux.defer(() -> {
+            attempts.incrementAndGet();
+            return Flux.just("a").concatWith(Flux.error(new PnSpapiTemporaryErrorException("reset")));
+        });
+        StepVerifier.create(policy.apply(failAfterChunk)).expectNext("a").expectError(PnSpapiTemporaryErrorException.class).verify();
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Hedge small documents slower than the latency quantile")
+    void testHedging() {
+        var hedging = HedgingConfig.builder().enabled(true).minSamples(5).minDelay(Duration.ofMillis(20)).maxPayloadSize(100).build();
+        var policy = new RetryPolicy(RETRY.toBuilder().enabled(false).build(), hedging);
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(policy.apply(Mono.just("fast"), Mono.just("hedge"), 10)).expectNext("fast").verifyComplete();
+        }
+
+        StepVerifier.create(policy.apply(Mono.never(), Mono.just("hedge"), 10))
+                .expectNext("hedge")
+                .verifyComplete();
+        StepVerifier.create(policy.apply(Mono.<String>never(), Mono.just("hedge"), 1000))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+        StepVerifier.create(policy.apply(Mono.error(new PnSpapiPermanentErrorException("unauthorized")), Mono.just("hedge"), 10))
+                .expectError(PnSpapiPermanentErrorException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+}
@@ -0,0 +1,209 @@
+package it.pagopa.pn.library.sign.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.namirial.sign.library.pojo.ServerErrorResponse;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * In-process stand-in of the Namirial SignBox endpoint.
+ * It drains the uploaded multipart body and answers with a fixed signed document
+ * or, when configured with an error status, with a {@link ServerErrorResponse} body.
+ */
+public class SignBoxStandIn implements AutoCloseable {
+
+    private static final String REQUEST_ID_HEADER_NAME = "X-SIGNBOX-TRANSACTION-ID";
+    private static final String API_KEY_HEADER_NAME = "X-SIGNBOX-EASYSIGN";
+    private static final String CONTENT_ENCODING_HEADER_NAME = "Content-Encoding";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final DisposableServer server;
+    private final byte[] signedDocument;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final Set<String> protocols = ConcurrentHashMap.newKeySet();
+    private final Set<String> apiKeys = ConcurrentHashMap.newKeySet();
+    private volatile int status = 200;
+    private volatile Duration delay = Duration.ZERO;
+    private volatile Function<byte[], byte[]> digestSigner;
+
+    public SignBoxStandIn(byte[] signedDocument) {
+        this(signedDocument, HttpProtocol.HTTP11);
+    }
+
+    /**
+     * Start a stand-in speaking the given protocols, e.g. {@link HttpProtocol#H2C} for HTTP/2 over clear text
+     * @param signedDocument the document returned by successful requests
+     * @param protocols the protocols accepted by the server
+     */
+    public SignBoxStandIn(byte[] signedDocument, HttpProtocol... protocols) {
+        this.signedDocument = signedDocument;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .protocol(protocols)
+                .doOnConnection(connection -> connectionCount.incrementAndGet())
+                .handle(this::handle)
+                .bindNow();
+    }
+
+    /**
+     * Set the status code returned by the next requests
+     * @param status the HTTP status code (200 returns the signed document)
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Delay the responses of the next requests, once their body is received, e.g. to simulate a hung server
+     * @param delay the delay before the response headers
+     */
+    public void setDelay(Duration delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Get the base URL of the stand-in
+     * @return the URL to pass to the client as API endpoint
+     */
+    public String getUrl() {
+        return "http://" + server.host() + ":" + server.port() + "/";
+    }
+
+    /**
+     * Get the number of requests received
+     * @return the number of requests
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Get the number of request body bytes received
+     * @return the bytes of all the request bodies
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Get the number of connections accepted
+     * @return the number of connections
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Get the protocol versions of the requests received
+     * @return the versions, e.g. {@code HTTP/1.1} or {@code HTTP/2.0}
+     */
+    public Set<String> getProtocols() {
+        return Set.copyOf(protocols);
+    }
+
+    /**
+     * Answer the requests with the signature of their file part instead of the fixed signed document
+     * @param digestSigner the signer of the digest sent as file part, e.g. a {@link TestDigestSigner}
+     */
+    public void setDigestSigner(Function<byte[], byte[]> digestSigner) {
+        this.digestSigner = digestSigner;
+    }
+
+    /**
+     * Get the API keys of the requests received
+     * @return the values of the API key header
+     */
+    public Set<String> getApiKeys() {
+        return Set.copyOf(apiKeys);
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        requestCount.incrementAndGet();
+        protocols.add(request.version().text());
+        apiKeys.add(request.requestHeaders().get(API_KEY_HEADER_NAME, ""));
+        var requestId = request.requestHeaders().get(REQUEST_ID_HEADER_NAME, "");
+        var contentEncoding = request.requestHeaders().get(CONTENT_ENCODING_HEADER_NAME, "");
+        var signer = digestSigner;
+        Mono<byte[]> signed = signer == null
+                ? request.receive().doOnNext(chunk -> receivedBytes.addAndGet(chunk.readableBytes())).then(Mono.just(signedDocument))
+                : request.receive().aggregate().asByteArray()
+                        .doOnNext(body -> receivedBytes.addAndGet(body.length))
+                        .map(body -> signer.apply(filePart(decode(contentEncoding, body))));
+        return signed
+                .delayUntil(document -> delay.isZero() ? Mono.empty() : Mono.delay(delay))
+                .flatMap(document -> {
+                    int code = status;
+                    response.status(code).header(REQUEST_ID_HEADER_NAME, requestId);
+                    if (code == 200) {
+                        return response.header("Content-Type", "application/octet-stream")
+                                .send(Mono.just(Unpooled.wrappedBuffer(document)))
+                                .then();
+                    }
+                    return response.header("Content-Type", "application/json")
+                            .sendString(Mono.just(errorBody(code)), StandardCharsets.UTF_8)
+                            .then();
+                });
+    }
+
+    /**
+     * Decode a body sent with a {@code Content-Encoding}, as a SignBox endpoint accepting compressed bodies does
+     */
+    private static byte[] decode(String contentEncoding, byte[] body) {
+        if (contentEncoding.isEmpty()) {
+            return body;
+        }
+        var in = new ByteArrayInputStream(body);
+        try (InputStream decoded = "gzip".equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(in) : new InflaterInputStream(in)) {
+            return decoded.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] filePart(byte[] body) {
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        int start = text.indexOf("\r\n\r\n", text.indexOf("name=\"file\"")) + 4;
+        int end = text.indexOf("\r\n--", start);
+        return Arrays.copyOfRange(body, start, end);
+    }
+
+    private static String errorBody(int code) {
+        var error = new ServerErrorResponse(code, HttpResponseStatus.valueOf(code).reasonPhrase(), UUID.randomUUID().toString());
+        try {
+            return objectMapper.writeValueAsString(error);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
@@ -0,0 +1,103 @@
+package it.pagopa.pn.library.sign.server;
+
+import com.namirial.sign.library.cms.CmsSignedData;
+import com.namirial.sign.library.cms.Der;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.function.Function;
+
+/**
+ * Signer of SHA-256 digests with a test RSA key, answering like the SignBox digest signing endpoint with a detached
+ * CMS {@code SignedData}. The signer is identified by a subject key identifier, so no certificate is needed.
+ */
+public class TestDigestSigner implements Function<byte[], byte[]> {
+
+    private static final byte[] SHA256 = Der.encode(Der.SEQUENCE, Der.oid("2.16.840.1.101.3.4.2.1"), Der.encode(Der.NULL));
+    private static final byte[] SHA256_WITH_RSA = Der.encode(Der.SEQUENCE, Der.oid("1.2.840.113549.1.1.11"), Der.encode(Der.NULL));
+    private static final byte[] SUBJECT_KEY_IDENTIFIER = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    private final KeyPair keyPair;
+
+    public TestDigestSigner() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.keyPair = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the public key of the signer
+     * @return the key verifying the signatures
+     */
+    public PublicKey getPublicKey() {
+        return keyPair.getPublic();
+    }
+
+    @Override
+    public byte[] apply(byte[] digest) {
+        byte[] signedAttributes = Der.encode(Der.SET,
+                attribute(CmsSignedData.CONTENT_TYPE_OID, Der.oid(CmsSignedData.DATA_OID)),
+                attribute(CmsSignedData.MESSAGE_DIGEST_OID, Der.encode(Der.OCTET_STRING, digest)));
+        byte[] signerInfo = Der.encode(Der.SEQUENCE,
+                Der.encode(Der.INTEGER, new byte[]{3}),
+                Der.encode(0x80, SUBJECT_KEY_IDENTIFIER),
+                SHA256,
+                implicit(signedAttributes),
+                SHA256_WITH_RSA,
+                Der.encode(Der.OCTET_STRING, sign(signedAttributes)));
+        byte[] signedData = Der.encode(Der.SEQUENCE,
+                Der.encode(Der.INTEGER, new byte[]{3}),
+                Der.encode(Der.SET, SHA256),
+                Der.encode(Der.SEQUENCE, Der.oid(CmsSignedData.DATA_OID)),
+                Der.encode(Der.SET, signerInfo));
+        return Der.encode(Der.SEQUENCE, Der.oid(CmsSignedData.SIGNED_DATA_OID), Der.encode(Der.context(0), signedData));
+    }
+
+    /**
+     * Verify the signature of the signed attributes of a signature built by this signer
+     * @param signedAttributes the {@code [0] IMPLICIT} signed attributes, as found in the signer info
+     * @param signature the signature value
+     * @return true if the signature is valid
+     */
+    public boolean verify(byte[] signedAttributes, byte[] signature) {
+        try {
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(keyPair.getPublic());
+            byte[] set = signedAttributes.clone();
+            // the signature covers the attributes DER encoded as a SET
+            set[0] = (byte) Der.SET;
+            verifier.update(set);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] sign(byte[] signedAttributes) {
+        try {
+            Signature signer = Signature.getInstance("SHA256withRSA");
+            signer.initSign(keyPair.getPrivate());
+            signer.update(signedAttributes);
+            return signer.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] attribute(String type, byte[] value) {
+        return Der.encode(Der.SEQUENCE, Der.oid(type), Der.encode(Der.SET, value));
+    }
+
+    private static byte[] implicit(byte[] set) {
+        byte[] implicit = set.clone();
+        implicit[0] = (byte) Der.context(0);
+        return implicit;
+    }
+}
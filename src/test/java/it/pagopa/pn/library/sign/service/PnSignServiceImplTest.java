@@ -2,11 +2,16 @@ package it.pagopa.pn.library.sign.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.namirial.sign.library.pojo.PnSignBatchRequest;
+import com.namirial.sign.library.pojo.PnSignBatchResult;
 import com.namirial.sign.library.pojo.ServerErrorResponse;
+import com.namirial.sign.library.pojo.SignatureFormat;
 import com.namirial.sign.library.service.PnSignServiceImpl;
+import com.namirial.sign.library.service.SignedDocumentSink;
 import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
 import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
 import it.pagopa.pn.library.sign.pojo.PnSignDocumentResponse;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -16,13 +21,22 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 @Slf4j
 public class PnSignServiceImplTest {
     private static MockWebServer mockWebServer;
@@ -43,6 +57,40 @@ public class PnSignServiceImplTest {
         mockWebServer.shutdown();
     }
 
+    @Test
+    @DisplayName("Sign a batch of documents, returning the error of the failed ones as their result")
+    void testSignBatch() {
+        try (var standIn = new SignBoxStandIn("signed".getBytes(StandardCharsets.UTF_8))) {
+            var batchService = new PnSignServiceImpl(standIn.getUrl());
+            var requests = Flux.range(0, 30).map(i -> new PnSignBatchRequest("doc-" + i,
+                    i % 10 == 0 ? new byte[0] : ("document-" + i).getBytes(StandardCharsets.UTF_8),
+                    i == 7 ? "UNKNOWN" : SignatureFormat.CADES, i % 2 == 0));
+
+            List<PnSignBatchResult> ordered = batchService.signBatch(requests, 4, true).collectList().block();
+            assertNotNull(ordered);
+            assertEquals(30, ordered.size());
+            for (int i = 0; i < 30; i++) {
+                var result = ordered.get(i);
+                assertEquals("doc-" + i, result.getCorrelationId());
+                if (i % 10 == 0 || i == 7) {
+                    assertFalse(result.isSuccess());
+                    assertInstanceOf(PnSpapiPermanentErrorException.class, result.getError());
+                } else {
+                    assertTrue(result.isSuccess());
+                    assertArrayEquals("signed".getBytes(StandardCharsets.UTF_8), result.getResponse().getSignedDocument());
+                }
+            }
+            assertEquals(26, standIn.getRequestCount());
+
+            standIn.setStatus(503);
+            StepVerifier.create(batchService.signBatch(requests.skip(1).take(5)))
+                    .recordWith(ArrayList::new)
+                    .expectNextCount(5)
+                    .consumeRecordedWith(results -> assertTrue(results.stream().allMatch(r -> r.getError() instanceof PnSpapiTemporaryErrorException)))
+                    .verifyComplete();
+        }
+    }
+
     @Test
     @DisplayName("Sign a PDF file using PADES format and BES and T level correctly")
     void testSignPdfDocument() throws IOException {
@@ -144,6 +192,74 @@ public class PnSignServiceImplTest {
         checkAssertionsBasedOnErrors(responseMono);
     }
 
+    @Test
+    @DisplayName("Sign files streamed from disk and send a well-formed multipart body")
+    void testSignPathDocument() throws IOException, InterruptedException {
+        var pdf = Path.of("src/test/resources/in/sample.pdf");
+        var xml = Path.of("src/test/resources/in/sample.xml");
+        var pdfBytes = Files.readAllBytes(pdf);
+        mockWebServer.enqueue(getOkResponse(pdfBytes));
+        mockWebServer.enqueue(getOkResponse(pdfBytes));
+        mockWebServer.enqueue(getOkResponse(pdfBytes));
+
+        StepVerifier.create(((PnSignServiceImpl) signService).signPdfDocument(pdf, false)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(((PnSignServiceImpl) signService).signXmlDocument(xml, true)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(((PnSignServiceImpl) signService).pkcs7Signature(pdf, false)).expectNextCount(1).verifyComplete();
+
+        var request = mockWebServer.takeRequest();
+        var contentType = request.getHeader("Content-Type");
+        assertNotNull(contentType);
+        assertTrue(contentType.startsWith("multipart/form-data; boundary="));
+        var boundary = contentType.substring(contentType.indexOf('=') + 1);
+        var body = request.getBody().readByteArray();
+        assertEquals(body.length, request.getBodySize());
+        var text = new String(body, StandardCharsets.ISO_8859_1);
+        assertTrue(text.startsWith("--" + boundary + "\r\n"));
+        assertTrue(text.contains("name=\"level\"\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\nBES\r\n"));
+        assertTrue(text.contains("name=\"format\"\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\nPADES\r\n"));
+        assertTrue(text.endsWith("--" + boundary + "--\r\n"));
+        assertTrue(text.contains(new String(pdfBytes, StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    @DisplayName("Reject missing and empty files before uploading")
+    void testSignPathDocumentWithErrors(@TempDir Path tempDir) throws IOException {
+        var service = (PnSignServiceImpl) signService;
+        var empty = Files.createFile(tempDir.resolve("empty.pdf"));
+
+        StepVerifier.create(service.signPdfDocument((Path) null, false)).expectError(PnSpapiPermanentErrorException.class).verify();
+        StepVerifier.create(service.signPdfDocument(tempDir.resolve("missing.pdf"), false)).expectError(PnSpapiPermanentErrorException.class).verify();
+        StepVerifier.create(service.signPdfDocument(empty, false)).expectError(PnSpapiPermanentErrorException.class).verify();
+        assertEquals(0, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Stream the signed document to a file and handle possible failures")
+    void testSignDocumentStream(@TempDir Path tempDir) throws IOException {
+        var service = (PnSignServiceImpl) signService;
+        var pdf = Path.of("src/test/resources/in/sample.pdf");
+        var pdfBytes = Files.readAllBytes(pdf);
+        mockWebServer.enqueue(getOkResponse(pdfBytes));
+        mockWebServer.enqueue(getOkResponse(pdfBytes));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+
+        var target = tempDir.resolve("signed.pdf");
+        StepVerifier.create(SignedDocumentSink.write(service.signPdfDocumentStream(pdfBytes, false), target))
+                .expectNext((long) pdfBytes.length)
+                .verifyComplete();
+        assertArrayEquals(pdfBytes, Files.readAllBytes(target));
+
+        StepVerifier.create(SignedDocumentSink.write(service.pkcs7SignatureStream(pdf, true), target))
+                .expectNext((long) pdfBytes.length)
+                .verifyComplete();
+        assertArrayEquals(pdfBytes, Files.readAllBytes(target));
+
+        StepVerifier.create(service.signXmlDocumentStream(pdfBytes, false)).expectError(PnSpapiPermanentErrorException.class).verify();
+        StepVerifier.create(service.signXmlDocumentStream(pdfBytes, false)).expectError(PnSpapiTemporaryErrorException.class).verify();
+        StepVerifier.create(service.signPdfDocumentStream((byte[]) null, false)).expectError(PnSpapiPermanentErrorException.class).verify();
+    }
+
     @Test
     @DisplayName("Test IOException handling")
     void testInternalException() throws IOException {
@@ -181,7 +297,7 @@ public class PnSignServiceImplTest {
     }
 
     private static void checkAssertionsBasedOnErrors(Mono<PnSignDocumentResponse> responseMono) {
-        StepVerifier.create(responseMono).expectErrorMatches(t -> t instanceof PnSpapiTemporaryErrorException).verify();
+        StepVerifier.create(responseMono).expectErrorMatches(t -> t instanceof PnSpapiPermanentErrorException).verify();
         StepVerifier.create(responseMono).expectErrorMatches(t -> t instanceof PnSpapiPermanentErrorException).verify();
         StepVerifier.create(responseMono).expectErrorMatches(t -> t instanceof PnSpapiTemporaryErrorException).verify();
         StepVerifier.create(responseMono).expectErrorMatches(t -> t instanceof PnSpapiTemporaryErrorException).verify();
@@ -207,7 +323,7 @@ public class PnSignServiceImplTest {
                 """;
 
         // Mock responses
-        MockResponse error400 = new MockResponse().setResponseCode(400).setBody(badRequestErrorBody); // Temporary error
+        MockResponse error400 = new MockResponse().setResponseCode(400).setBody(badRequestErrorBody); // Permanent error
         MockResponse error401 = new MockResponse().setResponseCode(401);                              // Permanent error
         MockResponse error500 = new MockResponse().setResponseCode(500).setBody(genericErrorBody);    // Temporary error
         MockResponse error501 = new MockResponse().setResponseCode(501);                              // Temporary error
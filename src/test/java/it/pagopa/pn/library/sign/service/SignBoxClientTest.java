@@ -0,0 +1,117 @@
+package it.pagopa.pn.library.sign.service;
+
+import com.namirial.sign.library.config.BulkheadConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.resilience.Bulkhead;
+import com.namirial.sign.library.service.SignBoxClient;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignBoxClientTest {
+
+    private static final byte[] DOCUMENT = "document".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    @DisplayName("Sign with the endpoint and credentials of each client")
+    void testIsolatedClients() {
+        try (var standInA = new SignBoxStandIn("signed-a".getBytes(StandardCharsets.UTF_8));
+             var standInB = new SignBoxStandIn("signed-b".getBytes(StandardCharsets.UTF_8))) {
+            var clientA = SignBoxClient.builder()
+                    .name("tenant-a")
+                    .config(SignServiceConfig.builder().apiEndpoint(standInA.getUrl()).apiKey("key-a").build())
+                    .build();
+            var clientB = SignBoxClient.builder()
+                    .name("tenant-b")
+                    .config(SignServiceConfig.builder().apiEndpoint(standInB.getUrl()).apiKey("key-b").build())
+                    .build();
+
+            StepVerifier.create(clientA.sign(null, "request-a", DOCUMENT, "CADES", "BES"))
+                    .assertNext(response -> assertArrayEquals("signed-a".getBytes(StandardCharsets.UTF_8), response.getSignedDocument()))
+                    .verifyComplete();
+            StepVerifier.create(clientB.sign(null, "request-b", DOCUMENT, "CADES", "BES"))
+                    .assertNext(response -> assertArrayEquals("signed-b".getBytes(StandardCharsets.UTF_8), response.getSignedDocument()))
+                    .verifyComplete();
+
+            assertEquals(Set.of("key-a"), standInA.getApiKeys());
+            assertEquals(Set.of("key-b"), standInB.getApiKeys());
+
+            StepVerifier.create(clientA.close(Duration.ofSeconds(5))).verifyComplete();
+            StepVerifier.create(clientA.sign(null, "request-a", DOCUMENT, "CADES", "BES"))
+                    .expectError(PnSpapiTemporaryErrorException.class)
+                    .verify();
+            StepVerifier.create(clientB.sign(null, "request-b", DOCUMENT, "CADES", "BES")).expectNextCount(1).verifyComplete();
+            StepVerifier.create(clientB.close(Duration.ofSeconds(5))).verifyComplete();
+        }
+    }
+
+    @Test
+    @DisplayName("Hold the calls of a full partition without blocking the other partitions")
+    void testBulkheadPartitions() {
+        var config = BulkheadConfig.builder()
+                .enabled(true)
+                .shares(Map.of("PADES", 0.5))
+                .defaultShare(0.25)
+                .maxQueueWait(Duration.ofMillis(200))
+                .build();
+        var bulkhead = new Bulkhead(config, 4);
+        assertEquals(2, bulkhead.getLimit("PADES"));
+        assertEquals(1, bulkhead.getLimit("XADES"));
+
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        var running = bulkhead.limit("PADES", first.asMono()).subscribe();
+        bulkhead.limit("PADES", second.asMono()).subscribe();
+        assertEquals(2, bulkhead.getInFlight("PADES"));
+
+        StepVerifier.create(bulkhead.limit("PADES", Mono.just("queued")))
+                .expectError(PnSpapiTemporaryErrorException.class)
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(bulkhead.limit("XADES", Mono.just("other"))).expectNext("other").verifyComplete();
+
+        // the formats not listed share the default partition
+        Sinks.One<String> unlisted = Sinks.one();
+        var held = bulkhead.limit("XADES", unlisted.asMono()).subscribe();
+        assertEquals(1, bulkhead.getInFlight("CADES"));
+        StepVerifier.create(bulkhead.limit("CADES", Mono.just("queued")))
+                .expectError(PnSpapiTemporaryErrorException.class)
+                .verify(Duration.ofSeconds(5));
+        held.dispose();
+
+        var queued = bulkhead.limit("PADES", Mono.just("queued"));
+        running.dispose();
+        StepVerifier.create(queued).expectNext("queued").verifyComplete();
+        second.tryEmitValue("done");
+        assertEquals(0, bulkhead.getInFlight("PADES"));
+        assertEquals(0, bulkhead.getInFlight("XADES"));
+        assertEquals(0, bulkhead.getInFlight(Bulkhead.DEFAULT_PARTITION));
+    }
+
+    @Test
+    @DisplayName("Read the bulkhead shares from properties")
+    void testFromProperties() {
+        var properties = new Properties();
+        properties.setProperty(BulkheadConfig.ENABLED_PROP, "true");
+        properties.setProperty(BulkheadConfig.PARTITION_BY_PROP, "tenant");
+        properties.setProperty(BulkheadConfig.SHARES_PREFIX + "tenant-a", "0.75");
+
+        var config = SignServiceConfig.fromProperties(properties).getBulkhead();
+
+        assertTrue(config.isEnabled());
+        assertEquals(BulkheadConfig.PartitionBy.TENANT, config.getPartitionBy());
+        assertEquals(0.75, config.shareOf("tenant-a"));
+        assertEquals(BulkheadConfig.DEFAULT_SHARE, config.shareOf("tenant-b"));
+    }
+}
@@ -0,0 +1,120 @@
+package it.pagopa.pn.library.sign.service;
+
+import com.namirial.sign.library.config.CompressionConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.SignBoxClient;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignServiceCompressionTest {
+
+    private SignBoxStandIn standIn;
+    private SignBoxClient client;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void beforeEach() {
+        standIn = new SignBoxStandIn(new byte[0]);
+        // answer with the document received, decoded
+        standIn.setDigestSigner(Function.identity());
+    }
+
+    @AfterEach
+    void afterEach() {
+        if (client != null) {
+            client.close(Duration.ofSeconds(5)).block();
+        }
+        standIn.close();
+    }
+
+    @Test
+    @DisplayName("Upload an XML document compressed with gzip, the stand-in receiving it whole")
+    void testGzip() {
+        client = client(CompressionConfig.builder().enabled(true).build());
+        byte[] document = xml(300_000);
+
+        StepVerifier.create(client.sign(null, "request-1", document, "XADES", "BES"))
+                .assertNext(response -> assertArrayEquals(document, response.getSignedDocument()))
+                .verifyComplete();
+        assertTrue(standIn.getReceivedBytes() < document.length / 4);
+    }
+
+    @Test
+    @DisplayName("Upload an XML file compressed with deflate, read chunk by chunk")
+    void testDeflateFile() throws IOException {
+        client = client(CompressionConfig.builder().enabled(true).encoding(CompressionConfig.Encoding.DEFLATE).level(1).build());
+        byte[] document = xml(200_000);
+        Path file = Files.write(directory.resolve("document.xml"), document);
+
+        StepVerifier.create(client.sign(null, "request-1", file, "XADES", "T"))
+                .assertNext(response -> assertArrayEquals(document, response.getSignedDocument()))
+                .verifyComplete();
+        assertTrue(standIn.getReceivedBytes() < document.length / 4);
+    }
+
+    @Test
+    @DisplayName("Upload as-is the documents of the other formats and the ones below the threshold")
+    void testUncompressed() {
+        client = client(CompressionConfig.builder().enabled(true).build());
+        byte[] document = xml(100_000);
+        byte[] small = xml(1000);
+
+        StepVerifier.create(client.sign(null, "request-1", document, "PADES", "BES"))
+                .assertNext(response -> assertArrayEquals(document, response.getSignedDocument()))
+                .verifyComplete();
+        StepVerifier.create(client.sign(null, "request-2", small, "XADES", "BES"))
+                .assertNext(response -> assertArrayEquals(small, response.getSignedDocument()))
+                .verifyComplete();
+        assertTrue(standIn.getReceivedBytes() > document.length + small.length);
+    }
+
+    @Test
+    @DisplayName("Read the compression settings from properties")
+    void testFromProperties() {
+        var properties = new Properties();
+        properties.setProperty(CompressionConfig.ENABLED_PROP, "true");
+        properties.setProperty(CompressionConfig.ENCODING_PROP, "deflate");
+        properties.setProperty(CompressionConfig.FORMATS_PROP, "xades, cades");
+
+        var config = CompressionConfig.fromProperties(properties);
+
+        assertEquals(CompressionConfig.Encoding.DEFLATE, config.getEncoding());
+        assertEquals(Set.of("XADES", "CADES"), config.getFormats());
+        assertTrue(config.applies("CAdES", CompressionConfig.DEFAULT_THRESHOLD));
+        assertFalse(config.applies("PADES", CompressionConfig.DEFAULT_THRESHOLD));
+        assertFalse(config.applies("XADES", CompressionConfig.DEFAULT_THRESHOLD - 1));
+    }
+
+    private SignBoxClient client(CompressionConfig compression) {
+        return SignBoxClient.builder()
+                .name("compression")
+                .config(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).compression(compression).build())
+                .build();
+    }
+
+    private static byte[] xml(int size) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?><documents>");
+        for (int i = 0; xml.length() < size; i++) {
+            xml.append("<document id=\"").append(i).append("\"><recipient>Mario Rossi</recipient></document>");
+        }
+        return xml.append("</documents>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,182 @@
+package it.pagopa.pn.library.sign.service;
+
+import com.namirial.sign.library.config.CircuitBreakerConfig;
+import com.namirial.sign.library.config.DeadlineConfig;
+import com.namirial.sign.library.config.LoadBalancerConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.resilience.CircuitBreaker;
+import com.namirial.sign.library.service.SignBoxClient;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignServiceDeadlineTest {
+
+    private static final byte[] SIGNED = "signed-document".getBytes(StandardCharsets.UTF_8);
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private SignBoxStandIn standIn;
+    private SignBoxClient client;
+
+    @BeforeEach
+    void beforeEach() {
+        standIn = new SignBoxStandIn(SIGNED);
+        standIn.setDelay(Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void afterEach() {
+        client.close(Duration.ofSeconds(1)).block();
+        standIn.close();
+    }
+
+    @Test
+    @DisplayName("Fail a call past the deadline of the caller, closing its connection so the next call gets the slot")
+    void testCallerDeadline() {
+        client = client(DeadlineConfig.builder().build());
+
+        StepVerifier.create(client.sign(null, "request-1", new byte[1024], "PADES", "BES")
+                        .contextWrite(Context.of(SignBoxClient.DEADLINE_CONTEXT_KEY, Instant.now().plusMillis(300))))
+                .expectErrorSatisfies(e -> {
+                    assertInstanceOf(PnSpapiTemporaryErrorException.class, e);
+                    assertTrue(e.getMessage().contains("deadline exceeded"));
+                })
+                .verify(Duration.ofSeconds(5));
+
+        standIn.setDelay(Duration.ZERO);
+        StepVerifier.create(client.sign(null, "request-2", new byte[1024], "PADES", "BES"))
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertEquals(2, standIn.getConnectionCount());
+    }
+
+    @Test
+    @DisplayName("Fail a call whose deadline has passed without sending it")
+    void testPassedDeadline() {
+        client = client(DeadlineConfig.builder().build());
+
+        StepVerifier.create(client.sign(null, "request-1", new byte[1024], "PADES", "BES")
+                        .contextWrite(Context.of(SignBoxClient.DEADLINE_CONTEXT_KEY, Instant.now().minusSeconds(1))))
+                .expectError(PnSpapiTemporaryErrorException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(0, standIn.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Fail a call and a streaming call without response within the configured timeouts")
+    void testConfiguredTimeouts() {
+        client = client(DeadlineConfig.builder().firstByteTimeout(Duration.ofMillis(200)).build());
+        StepVerifier.create(client.sign(null, "request-1", new byte[1024], "XADES", "BES"))
+                .expectErrorSatisfies(e -> {
+                    assertInstanceOf(PnSpapiTemporaryErrorException.class, e);
+                    assertTrue(e.getMessage().contains("first byte timeout"));
+                })
+                .verify(Duration.ofSeconds(5));
+        client.close(Duration.ofSeconds(1)).block();
+
+        client = client(DeadlineConfig.builder().overallBase(Duration.ofMillis(300)).build());
+        StepVerifier.create(client.signStream(null, "request-2", new byte[1024], "XADES", "BES"))
+                .expectErrorSatisfies(e -> assertTrue(e.getMessage().contains("deadline exceeded")))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Count the attempts past their deadline as failures of the circuit breaker")
+    void testDeadlineOpensBreaker() {
+        client = SignBoxClient.builder()
+                .name("deadline-breaker")
+                .config(SignServiceConfig.builder()
+                        .apiEndpoint(standIn.getUrl())
+                        .deadline(DeadlineConfig.builder().overallBase(Duration.ofMillis(300)).build())
+                        .circuitBreaker(CircuitBreakerConfig.builder()
+                                .enabled(true)
+                                .minCalls(2)
+                                .failureRateThreshold(50)
+                                .slowCallDuration(Duration.ofSeconds(60))
+                                .build())
+                        .build())
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(client.sign(null, "request-" + i, new byte[1024], "CADES", "BES"))
+                    .expectErrorSatisfies(e -> assertTrue(e.getMessage().contains("deadline exceeded")))
+                    .verify(Duration.ofSeconds(5));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreakerState());
+
+        StepVerifier.create(client.sign(null, "request-2", new byte[1024], "CADES", "BES"))
+                .expectError(PnSpapiTemporaryErrorException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(2, standIn.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Eject an endpoint whose attempts run past their deadline")
+    void testDeadlineEjectsEndpoint() {
+        try (var answering = new SignBoxStandIn(SIGNED)) {
+            client = SignBoxClient.builder()
+                    .name("deadline-balancer")
+                    .config(SignServiceConfig.builder()
+                            .apiEndpoint(standIn.getUrl() + ", " + answering.getUrl())
+                            .deadline(DeadlineConfig.builder().overallBase(Duration.ofMillis(300)).build())
+                            // without latency history, the endpoints are picked at random
+                            .balancer(LoadBalancerConfig.builder().ewmaDecay(Duration.ofNanos(1)).ejectionConsecutiveFailures(2).build())
+                            .build())
+                    .build();
+
+            for (int i = 0; i < 20 && standIn.getRequestCount() < 2; i++) {
+                client.sign(null, "request-" + i, new byte[1024], "CADES", "BES")
+                        .onErrorResume(e -> Mono.empty())
+                        .block(Duration.ofSeconds(5));
+            }
+            assertEquals(2, standIn.getRequestCount());
+            assertEquals(List.of(answering.getUrl()), client.getAvailableEndpoints());
+        }
+    }
+
+    @Test
+    @DisplayName("Grow the overall deadline with the size and the level of the document, up to its maximum")
+    void testOverallDeadline() {
+        var config = DeadlineConfig.builder()
+                .overallBase(Duration.ofSeconds(1))
+                .overallPerMegabyte(Duration.ofSeconds(1))
+                .overallTimestamp(Duration.ofSeconds(2))
+                .overallMax(Duration.ofSeconds(10))
+                .build();
+
+        assertEquals(Duration.ofSeconds(3), config.overall(2 * MEGABYTE, "BES"));
+        assertEquals(Duration.ofSeconds(5), config.overall(2 * MEGABYTE, "T"));
+        assertEquals(Duration.ofSeconds(10), config.overall(100 * MEGABYTE, "T"));
+        assertNull(config.toBuilder().overallBase(Duration.ZERO).build().overall(MEGABYTE, "BES"));
+
+        var properties = new Properties();
+        properties.setProperty(DeadlineConfig.CONNECT_TIMEOUT_PROP, "2000");
+        properties.setProperty(DeadlineConfig.OVERALL_TIMESTAMP_PROP, "45000");
+        var fromProperties = DeadlineConfig.fromProperties(properties);
+        assertEquals(Duration.ofSeconds(2), fromProperties.getConnectTimeout());
+        assertEquals(Duration.ofSeconds(45), fromProperties.getOverallTimestamp());
+        assertEquals(Duration.ofMillis(DeadlineConfig.DEFAULT_FIRST_BYTE_TIMEOUT), fromProperties.getFirstByteTimeout());
+    }
+
+    private SignBoxClient client(DeadlineConfig deadline) {
+        return SignBoxClient.builder()
+                .name("deadline")
+                .config(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).maxConnections(1).deadline(deadline).build())
+                .build();
+    }
+}
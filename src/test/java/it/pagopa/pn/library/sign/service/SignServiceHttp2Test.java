@@ -0,0 +1,64 @@
+package it.pagopa.pn.library.sign.service;
+
+import com.namirial.sign.library.config.Http2Config;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.SignServiceClient;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.HttpProtocol;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignServiceHttp2Test {
+
+    private static final byte[] DOCUMENT = "document".getBytes(StandardCharsets.UTF_8);
+
+    private SignBoxStandIn standIn;
+
+    @AfterEach
+    void afterEach() {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+        standIn.close();
+    }
+
+    @Test
+    @DisplayName("Multiplex concurrent requests over one h2c connection")
+    void testPriorKnowledge() {
+        standIn = new SignBoxStandIn("signed".getBytes(StandardCharsets.UTF_8), HttpProtocol.H2C);
+        configure(Http2Config.builder().enabled(true).priorKnowledge(true).maxConnections(1).maxConcurrentStreams(10).build());
+
+        assertEquals(50, signAll(50));
+        assertEquals(Set.of("HTTP/2.0"), standIn.getProtocols());
+    }
+
+    @Test
+    @DisplayName("Fall back to HTTP/1.1 when the server does not accept HTTP/2")
+    void testFallback() {
+        standIn = new SignBoxStandIn("signed".getBytes(StandardCharsets.UTF_8));
+        configure(Http2Config.builder().enabled(true).build());
+
+        assertEquals(10, signAll(10));
+        assertEquals(Set.of("HTTP/1.1"), standIn.getProtocols());
+    }
+
+    private void configure(Http2Config http2) {
+        SignServiceClient.configure(SignServiceConfig.builder()
+                .apiEndpoint(standIn.getUrl())
+                .http2(http2)
+                .build());
+    }
+
+    private static long signAll(int count) {
+        return Flux.range(0, count)
+                .flatMap(i -> SignServiceClient.sign(null, "request-" + i, DOCUMENT, "CADES", "BES"))
+                .count()
+                .block(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,65 @@
+package it.pagopa.pn.library.sign.service;
+
+import com.namirial.sign.library.config.ConnectionPoolConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.SignServiceClient;
+import it.pagopa.pn.library.exceptions.PnSpapiTemporaryErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignServiceLifecycleTest {
+
+    private static final byte[] DOCUMENT = "document".getBytes(StandardCharsets.UTF_8);
+
+    private SignBoxStandIn standIn;
+
+    @BeforeEach
+    void beforeEach() {
+        standIn = new SignBoxStandIn("signed".getBytes(StandardCharsets.UTF_8));
+        SignServiceClient.configure(SignServiceConfig.builder()
+                .apiEndpoint(standIn.getUrl())
+                .pool(ConnectionPoolConfig.builder().warmUpConnections(3).build())
+                .build());
+    }
+
+    @AfterEach
+    void afterEach() {
+        SignServiceClient.start().block(Duration.ofSeconds(5));
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+        standIn.close();
+    }
+
+    @Test
+    @DisplayName("Open the warm-up connections at startup and reuse them")
+    void testWarmUp() {
+        StepVerifier.create(SignServiceClient.start()).expectNext(3).verifyComplete();
+        assertEquals(3, standIn.getConnectionCount());
+
+        StepVerifier.create(SignServiceClient.sign(null, "request", DOCUMENT, "CADES", "BES")).expectNextCount(1).verifyComplete();
+        assertEquals(3, standIn.getConnectionCount());
+    }
+
+    @Test
+    @DisplayName("Reject new requests once closed and accept them again once restarted")
+    void testClose() {
+        StepVerifier.create(SignServiceClient.sign(null, "request-1", DOCUMENT, "CADES", "BES")).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(SignServiceClient.close(Duration.ofSeconds(5))).verifyComplete();
+        StepVerifier.create(SignServiceClient.sign(null, "request-2", DOCUMENT, "CADES", "BES"))
+                .expectError(PnSpapiTemporaryErrorException.class)
+                .verify();
+        assertEquals(1, standIn.getRequestCount());
+
+        StepVerifier.create(SignServiceClient.start()).expectNext(3).verifyComplete();
+        StepVerifier.create(SignServiceClient.sign(null, "request-3", DOCUMENT, "CADES", "BES")).expectNextCount(1).verifyComplete();
+    }
+}
@@ -0,0 +1,101 @@
+package it.pagopa.pn.library.sign.service;
+
+import com.namirial.sign.library.config.LoadBalancerConfig;
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.service.SignServiceClient;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignServiceLoadBalancingTest {
+
+    private static final byte[] DOCUMENT = "document".getBytes(StandardCharsets.UTF_8);
+
+    private SignBoxStandIn first;
+    private SignBoxStandIn second;
+
+    @BeforeEach
+    void beforeEach() {
+        first = new SignBoxStandIn("signed-1".getBytes(StandardCharsets.UTF_8));
+        second = new SignBoxStandIn("signed-2".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void afterEach() {
+        SignServiceClient.configure(SignServiceConfig.fromSystemProperties());
+        first.close();
+        second.close();
+    }
+
+    @Test
+    @DisplayName("Spread the requests over the listed endpoints")
+    void testBalance() {
+        configure(LoadBalancerConfig.builder().build());
+
+        assertEquals(20, signAll(20));
+        assertTrue(first.getRequestCount() > 0);
+        assertTrue(second.getRequestCount() > 0);
+        assertEquals(20, first.getRequestCount() + second.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Eject an endpoint after consecutive server errors")
+    void testEjection() {
+        // without latency history, the endpoints are picked at random, whatever their response times
+        configure(LoadBalancerConfig.builder().ewmaDecay(Duration.ofNanos(1)).ejectionConsecutiveFailures(2).build());
+        first.setStatus(503);
+
+        signAll(20);
+        assertEquals(2, first.getRequestCount());
+        assertEquals(18, second.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Leave out the endpoints not answering the health probes")
+    void testHealthCheck() throws InterruptedException {
+        configure(LoadBalancerConfig.builder().healthCheckInterval(Duration.ofMillis(200)).healthCheckTimeout(Duration.ofMillis(500)).build());
+        signAll(1);
+        assertEquals(2, SignServiceClient.getAvailableEndpoints().size());
+        first.close();
+
+        awaitAvailableEndpoints(List.of(second.getUrl()), Duration.ofSeconds(5));
+        assertEquals(10, signAll(10));
+    }
+
+    private static void awaitAvailableEndpoints(List<String> expected, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!expected.equals(SignServiceClient.getAvailableEndpoints())) {
+            assertTrue(System.nanoTime() < deadline, "available endpoints still " + SignServiceClient.getAvailableEndpoints());
+            Thread.sleep(20);
+        }
+    }
+
+    private void configure(LoadBalancerConfig balancer) {
+        SignServiceClient.configure(SignServiceConfig.builder()
+                .apiEndpoint(first.getUrl() + ", " + second.getUrl())
+                .balancer(balancer)
+                .build());
+    }
+
+    private static int signAll(int count) {
+        int signed = 0;
+        for (int i = 0; i < count; i++) {
+            var response = SignServiceClient.sign(null, "request-" + i, DOCUMENT, "CADES", "BES")
+                    .onErrorResume(e -> Mono.empty())
+                    .block(Duration.ofSeconds(5));
+            if (response != null) {
+                signed++;
+            }
+        }
+        return signed;
+    }
+}
@@ -0,0 +1,97 @@
+package it.pagopa.pn.library.sign.validation;
+
+import com.namirial.sign.library.config.SignServiceConfig;
+import com.namirial.sign.library.pojo.SignatureFormat;
+import com.namirial.sign.library.service.SignBoxClient;
+import com.namirial.sign.library.validation.DocumentValidator;
+import it.pagopa.pn.library.exceptions.PnSpapiPermanentErrorException;
+import it.pagopa.pn.library.sign.server.SignBoxStandIn;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentValidatorTest {
+
+    private static final byte[] PDF = pdf();
+    private static final byte[] XML = "<?xml version=\"1.0\"?><root><child a=\"1\">text</child></root>".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Accept a well-formed PDF and reject truncated or corrupted ones")
+    void testPdf() {
+        assertDoesNotThrow(() -> DocumentValidator.validate(SignatureFormat.PADES, ByteBuffer.wrap(PDF)));
+
+        byte[] truncated = Arrays.copyOf(PDF, PDF.length - 20);
+        assertThrows(PnSpapiPermanentErrorException.class, () -> DocumentValidator.validate(SignatureFormat.PADES, ByteBuffer.wrap(truncated)));
+
+        byte[] noHeader = PDF.clone();
+        noHeader[1] = 'X';
+        assertThrows(PnSpapiPermanentErrorException.class, () -> DocumentValidator.validate(SignatureFormat.PADES, ByteBuffer.wrap(noHeader)));
+
+        byte[] badOffset = new String(PDF, StandardCharsets.US_ASCII).replace("startxref\n", "startxref\n9").getBytes(StandardCharsets.US_ASCII);
+        assertThrows(PnSpapiPermanentErrorException.class, () -> DocumentValidator.validate(SignatureFormat.PADES, ByteBuffer.wrap(badOffset)));
+    }
+
+    @Test
+    @DisplayName("Accept a well-formed XML and reject a malformed one")
+    void testXml() {
+        assertDoesNotThrow(() -> DocumentValidator.validate(SignatureFormat.XADES, ByteBuffer.wrap(XML)));
+
+        byte[] malformed = "<root><child></root>".getBytes(StandardCharsets.UTF_8);
+        assertThrows(PnSpapiPermanentErrorException.class, () -> DocumentValidator.validate(SignatureFormat.XADES, ByteBuffer.wrap(malformed)));
+
+        assertDoesNotThrow(() -> DocumentValidator.validate(SignatureFormat.CADES, ByteBuffer.wrap(malformed)));
+    }
+
+    @Test
+    @DisplayName("Check the files without loading them and leave the buffers unchanged")
+    void testFilesAndBuffers() throws IOException {
+        Path pdf = Files.write(directory.resolve("document.pdf"), PDF);
+        Path xml = Files.write(directory.resolve("document.xml"), Arrays.copyOf(XML, XML.length - 3));
+        assertDoesNotThrow(() -> DocumentValidator.validate(SignatureFormat.PADES, pdf));
+        assertThrows(PnSpapiPermanentErrorException.class, () -> DocumentValidator.validate(SignatureFormat.XADES, xml));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PDF.length + 4).put(new byte[4]).put(PDF).position(4);
+        DocumentValidator.validate(SignatureFormat.PADES, buffer);
+        assertEquals(4, buffer.position());
+    }
+
+    @Test
+    @DisplayName("Reject an invalid document before sending it when validation is enabled")
+    void testClient() {
+        try (var standIn = new SignBoxStandIn("signed".getBytes(StandardCharsets.UTF_8))) {
+            var client = SignBoxClient.builder()
+                    .name("validation")
+                    .config(SignServiceConfig.builder().apiEndpoint(standIn.getUrl()).validationEnabled(true).build())
+                    .build();
+
+            StepVerifier.create(client.sign(null, "request-1", Arrays.copyOf(PDF, 40), SignatureFormat.PADES, "BES"))
+                    .expectError(PnSpapiPermanentErrorException.class)
+                    .verify();
+            assertEquals(0, standIn.getRequestCount());
+
+            StepVerifier.create(client.sign(null, "request-2", PDF, SignatureFormat.PADES, "BES")).expectNextCount(1).verifyComplete();
+            assertEquals(1, standIn.getRequestCount());
+            StepVerifier.create(client.close(Duration.ofSeconds(5))).verifyComplete();
+        }
+    }
+
+    private static byte[] pdf() {
+        String body = "%PDF-1.4\n1 0 obj\n<< /Type /Catalog >>\nendobj\n";
+        String xref = "xref\n0 2\n0000000000 65535 f \n0000000009 00000 n \ntrailer\n<< /Size 2 /Root 1 0 R >>\n";
+        return (body + xref + "startxref\n" + body.length() + "\n%%EOF\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}